@@ -10,23 +10,36 @@ import org.apache.logging.log4j.ThreadContext;
 
 import lombok.extern.log4j.Log4j2;
 
+/**
+ * Generates log events. Without arguments a single thread logs every 6 seconds, optional arguments turn it into a load
+ * generator: {@code <threads> <eventsPerSecondPerThread>}.
+ */
 @Log4j2
 public final class SimpleLogsGeneratorApp {
 
+	private static final long DEFAULT_PERIOD_MICROS = TimeUnit.SECONDS.toMicros(6L);
+
 	private final ScheduledExecutorService executor;
+	private final int threads;
+	private final long periodMicros;
 
-	private SimpleLogsGeneratorApp() {
+	private SimpleLogsGeneratorApp(int threads,
+			long periodMicros) {
 		log.debug("Creating app...");
-		this.executor = Executors.newSingleThreadScheduledExecutor();
+		this.threads = threads;
+		this.periodMicros = periodMicros;
+		this.executor = Executors.newScheduledThreadPool(threads);
 	}
 
 	private void start() {
-		log.debug("Starting...");
-		executor.scheduleWithFixedDelay(() -> {
-			ThreadContext.put("trace_id", UUID.randomUUID().toString());
-			log.info("Current date: {}", LocalDateTime.now());
-			ThreadContext.clearMap();
-		}, 1_000L, 6000L, TimeUnit.MILLISECONDS);
+		log.debug("Starting {} generator(s)...", threads);
+		for (int i = 0; i < threads; i++) {
+			executor.scheduleAtFixedRate(() -> {
+				ThreadContext.put("trace_id", UUID.randomUUID().toString());
+				log.info("Current date: {}", LocalDateTime.now());
+				ThreadContext.clearMap();
+			}, TimeUnit.SECONDS.toMicros(1L), periodMicros, TimeUnit.MICROSECONDS);
+		}
 	}
 
 	private void stop() {
@@ -35,7 +48,12 @@ public final class SimpleLogsGeneratorApp {
 	}
 
 	public static void main(String[] args) {
-		final SimpleLogsGeneratorApp simpleQuotesGeneratorApp = new SimpleLogsGeneratorApp();
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		final long periodMicros = args.length > 1
+				? Math.max(1L, TimeUnit.SECONDS.toMicros(1L) / Long.parseLong(args[1]))
+				: DEFAULT_PERIOD_MICROS;
+
+		final SimpleLogsGeneratorApp simpleQuotesGeneratorApp = new SimpleLogsGeneratorApp(threads, periodMicros);
 		simpleQuotesGeneratorApp.start();
 		Runtime.getRuntime().addShutdownHook(new Thread(simpleQuotesGeneratorApp::stop));
 	}
@@ -0,0 +1,212 @@
+package io.github.michaljonko.log4j;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.core.LoggerContext;
+
+/**
+ * Sustained load test of the appender against {@link FakeActiveGate}.
+ * <p>
+ * Every scenario (appender configuration) gets a fresh LoggerContext. Producer threads log as fast as they can for the
+ * configured duration, then the context is stopped, which drains the appender. Reported are delivered log events per
+ * second, caller-side latency percentiles of {@code Logger.info()}, lost log events and peak heap usage.
+ * <p>
+ * System properties: {@code loadtest.threads}, {@code loadtest.durationSeconds}, {@code loadtest.latencyMillis},
+ * {@code loadtest.scenarios} (comma separated names of {@link Scenario}).
+ */
+public final class LoadTestApp {
+
+	private static final String TOKEN = "load-test-token";
+	private static final int SAMPLES_PER_THREAD = 1 << 16;
+
+	private final int threads;
+	private final long durationNanos;
+	private final long latencyMillis;
+
+	private LoadTestApp(int threads,
+			long durationSeconds,
+			long latencyMillis) {
+		this.threads = threads;
+		this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+		this.latencyMillis = latencyMillis;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final var app = new LoadTestApp(
+				Integer.getInteger("loadtest.threads", 8),
+				Long.getLong("loadtest.durationSeconds", 30L),
+				Long.getLong("loadtest.latencyMillis", 5L));
+
+		final var scenarios = Arrays.stream(System.getProperty("loadtest.scenarios", "BLOCKING,NON_BLOCKING").split(","))
+				.map(String::trim)
+				.map(Scenario::valueOf)
+				.toArray(Scenario[]::new);
+
+		System.out.printf(Locale.ROOT, "threads=%d, duration=%ds, ingest latency=%dms%n",
+				app.threads, TimeUnit.NANOSECONDS.toSeconds(app.durationNanos), app.latencyMillis);
+		System.out.printf(Locale.ROOT, "%-16s %12s %12s %12s %10s %10s %10s %10s %10s %12s%n",
+				"scenario", "logged", "delivered", "events/s", "lost", "p50[us]", "p99[us]", "p99.9[us]", "max[us]", "heap[MB]");
+		for (var scenario : scenarios) {
+			System.out.println(app.run(scenario));
+		}
+	}
+
+	private Result run(Scenario scenario) throws Exception {
+		try (var activeGate = FakeActiveGate.start(TOKEN)
+				.withLatency(FakeActiveGate.Latency.exponential(latencyMillis))) {
+			System.setProperty("loadtest.activegateurl", activeGate.getUrl().toString());
+			System.setProperty("loadtest.activegatetoken", TOKEN);
+			scenario.properties.forEach(System::setProperty);
+
+			final var context = new LoggerContext("load-test-" + scenario, null, configLocation());
+			context.start();
+			final var logger = context.getLogger("io.github.michaljonko.load");
+
+			final var heapSampler = Executors.newSingleThreadScheduledExecutor();
+			final var peakHeap = new AtomicLong();
+			final var memory = ManagementFactory.getMemoryMXBean();
+			heapSampler.scheduleAtFixedRate(
+					() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+					0L, 50L, TimeUnit.MILLISECONDS);
+
+			final var producers = Executors.newFixedThreadPool(threads);
+			final var start = new CountDownLatch(1);
+			final var samples = new ArrayList<long[]>();
+			final var counts = new long[threads];
+			for (var i = 0; i < threads; i++) {
+				final var thread = i;
+				final var threadSamples = new long[SAMPLES_PER_THREAD];
+				samples.add(threadSamples);
+				producers.execute(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					final var random = ThreadLocalRandom.current();
+					final var deadline = System.nanoTime() + durationNanos;
+					var count = 0L;
+					long now;
+					while ((now = System.nanoTime()) < deadline) {
+						logger.info("Load test message {} with some payload {}", count, random.nextLong());
+						final var latency = System.nanoTime() - now;
+						if (count < SAMPLES_PER_THREAD) {
+							threadSamples[(int) count] = latency;
+						} else {
+							final var slot = random.nextLong(count + 1L);
+							if (slot < SAMPLES_PER_THREAD) {
+								threadSamples[(int) slot] = latency;
+							}
+						}
+						count++;
+					}
+					counts[thread] = count;
+				});
+			}
+
+			final var started = System.nanoTime();
+			start.countDown();
+			producers.shutdown();
+			producers.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(1L), TimeUnit.NANOSECONDS);
+			context.stop(30L, TimeUnit.SECONDS);
+			final var elapsedNanos = System.nanoTime() - started;
+			heapSampler.shutdownNow();
+
+			return new Result(scenario, Arrays.stream(counts).sum(), activeGate.getEvents(), elapsedNanos,
+					merge(samples, counts), peakHeap.get());
+		}
+	}
+
+	private static URI configLocation() throws URISyntaxException {
+		return requireNonNull(LoadTestApp.class.getClassLoader().getResource("log4j2-loadtest.xml"),
+				"log4j2-loadtest.xml is missing").toURI();
+	}
+
+	private static long[] merge(List<long[]> samples,
+			long[] counts) {
+		final var merged = new long[(int) Arrays.stream(counts).map(count -> Math.min(count, SAMPLES_PER_THREAD)).sum()];
+		var position = 0;
+		for (var i = 0; i < samples.size(); i++) {
+			final var length = (int) Math.min(counts[i], SAMPLES_PER_THREAD);
+			System.arraycopy(samples.get(i), 0, merged, position, length);
+			position += length;
+		}
+		Arrays.sort(merged);
+		return merged;
+	}
+
+	enum Scenario {
+		BLOCKING(Map.of("loadtest.blocking", "true", "loadtest.queueStripes", "1", "loadtest.sender", "JDK")),
+		NON_BLOCKING(Map.of("loadtest.blocking", "false", "loadtest.queueStripes", "1", "loadtest.sender", "JDK")),
+		STRIPED(Map.of("loadtest.blocking", "false", "loadtest.queueStripes", "0", "loadtest.sender", "JDK")),
+		NIO(Map.of("loadtest.blocking", "false", "loadtest.queueStripes", "1", "loadtest.sender", "NIO"));
+
+		private final Map<String, String> properties;
+
+		Scenario(Map<String, String> properties) {
+			this.properties = properties;
+		}
+	}
+
+	private static final class Result {
+
+		private final Scenario scenario;
+		private final long logged;
+		private final long delivered;
+		private final long elapsedNanos;
+		private final long[] sortedLatencies;
+		private final long peakHeapBytes;
+
+		private Result(Scenario scenario,
+				long logged,
+				long delivered,
+				long elapsedNanos,
+				long[] sortedLatencies,
+				long peakHeapBytes) {
+			this.scenario = scenario;
+			this.logged = logged;
+			this.delivered = delivered;
+			this.elapsedNanos = elapsedNanos;
+			this.sortedLatencies = sortedLatencies;
+			this.peakHeapBytes = peakHeapBytes;
+		}
+
+		private long percentileMicros(double percentile) {
+			if (sortedLatencies.length == 0) {
+				return 0L;
+			}
+			final var index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1);
+			return TimeUnit.NANOSECONDS.toMicros(sortedLatencies[Math.max(0, index)]);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-16s %12d %12d %12.0f %10d %10d %10d %10d %10d %12d",
+					scenario,
+					logged,
+					delivered,
+					delivered / (elapsedNanos / 1_000_000_000.0d),
+					logged - delivered,
+					percentileMicros(0.5d),
+					percentileMicros(0.99d),
+					percentileMicros(0.999d),
+					percentileMicros(1.0d),
+					peakHeapBytes / (1024L * 1024L));
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Enqueue throughput of the heap queues for 1 to 64 producer threads. Every producer counts its own successful offers, a
+ * single consumer drains the whole queue in bulk, so the queue stays far from full and the result is the cost of enqueuing,
+ * not the rate of the consumer. A producer whose offer is rejected yields to the consumer, share of rejected offers is
+ * reported to show the queue was not saturated.
+ * <p>
+ * System properties: {@code queuebenchmark.durationSeconds} (per queue and number of producers),
+ * {@code queuebenchmark.maxProducers}, {@code queuebenchmark.stripes} (0 - one per available processor).
+ */
+public final class QueueBenchmark {
+
+	private static final byte[] PAYLOAD =
+			"{\"content\":\"Queue benchmark message with some payload\",\"severity\":\"INFO\"}".getBytes(UTF_8);
+	private static final Lane[] LANES = {Lane.NORMAL, Lane.NORMAL, Lane.NORMAL, Lane.HIGH, Lane.LOW};
+
+	private final long durationNanos;
+
+	private QueueBenchmark(long durationSeconds) {
+		this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+	}
+
+	public static void main(String[] args) throws Exception {
+		final var benchmark = new QueueBenchmark(Long.getLong("queuebenchmark.durationSeconds", 3L));
+		final var maxProducers = Integer.getInteger("queuebenchmark.maxProducers", 64);
+		final var stripes = DynatraceGenericLogIngestStripedQueue.stripes(Integer.getInteger("queuebenchmark.stripes", 0));
+
+		System.out.printf(Locale.ROOT, "processors=%d, stripes=%d%n", Runtime.getRuntime().availableProcessors(), stripes);
+		System.out.printf(Locale.ROOT, "%10s %16s %16s %16s %16s %8s %9s%n", "producers", "single[ev/s]", "per thread",
+				"striped[ev/s]", "per thread", "ratio", "rejected");
+		for (var producers = 1; producers <= maxProducers; producers <<= 1) {
+			final var single = benchmark.run(producers, DynatraceGenericLogIngestPriorityQueue::new);
+			final var striped = benchmark.run(producers, () -> new DynatraceGenericLogIngestStripedQueue(stripes));
+			System.out.printf(Locale.ROOT, "%10d %16.0f %16.0f %16.0f %16.0f %8.2f %8.3f%%%n", producers, single.perSecond,
+					single.perSecond / producers, striped.perSecond, striped.perSecond / producers,
+					striped.perSecond / single.perSecond, 100.0d * Math.max(single.rejectedShare(), striped.rejectedShare()));
+		}
+	}
+
+	private Result run(int producers,
+			Supplier<DynatraceGenericLogIngestQueue> queueFactory) throws InterruptedException {
+		final var queue = queueFactory.get();
+		final var statistics = new DynatraceGenericLogIngestStatistics();
+		final var running = new AtomicBoolean(true);
+		final var start = new CountDownLatch(1);
+		final var offered = new long[producers];
+		final var rejected = new long[producers];
+		final var threads = new ArrayList<Thread>();
+		for (var i = 0; i < producers; i++) {
+			final var index = i;
+			final var thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				var accepted = 0L;
+				var dropped = 0L;
+				var count = 0;
+				while (running.get()) {
+					if (queue.offer(new DynatraceGenericLogIngestEvent(PAYLOAD, LANES[count++ % LANES.length], null, statistics))) {
+						accepted++;
+					} else {
+						dropped++;
+						Thread.yield();
+					}
+				}
+				offered[index] = accepted;
+				rejected[index] = dropped;
+			}, "queue-benchmark-producer-" + i);
+			threads.add(thread);
+			thread.start();
+		}
+
+		start.countDown();
+		final var started = System.nanoTime();
+		final var deadline = started + durationNanos;
+		while (System.nanoTime() < deadline) {
+			if (queue.completeAll(Status.SUCCESS) == 0) {
+				Thread.onSpinWait();
+			}
+		}
+		running.set(false);
+		final var elapsedNanos = System.nanoTime() - started;
+		for (var thread : threads) {
+			thread.join();
+		}
+		queue.completeAll(Status.SUCCESS);
+
+		var accepted = 0L;
+		var dropped = 0L;
+		for (var i = 0; i < producers; i++) {
+			accepted += offered[i];
+			dropped += rejected[i];
+		}
+		return new Result(accepted / (elapsedNanos / 1_000_000_000.0d), accepted, dropped);
+	}
+
+	private static final class Result {
+
+		private final double perSecond;
+		private final long accepted;
+		private final long rejected;
+
+		/**
+		 * @param perSecond successful offers per second of all producers
+		 */
+		private Result(double perSecond,
+				long accepted,
+				long rejected) {
+			this.perSecond = perSecond;
+			this.accepted = accepted;
+			this.rejected = rejected;
+		}
+
+		private double rejectedShare() {
+			return accepted + rejected == 0L ? 0.0d : (double) rejected / (accepted + rejected);
+		}
+	}
+}
@@ -1,9 +1,12 @@
 package io.github.michaljonko.log4j.appender;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.appender.AbstractManager;
+import org.apache.logging.log4j.util.Strings;
 
 abstract class AbstractDynatraceGenericLogIngestManager
 		extends AbstractManager {
@@ -14,12 +17,95 @@ abstract class AbstractDynatraceGenericLogIngestManager
 				requireNonNull(name, "name is null"));
 	}
 
-	protected abstract Status send(String message);
+	protected Status send(String message) {
+		return send(message, Level.INFO);
+	}
+
+	/**
+	 * @param level severity of the log event, log events of higher severity are sent first
+	 */
+	protected Status send(String message,
+			Level level) {
+		if (Strings.isBlank(message)) {
+			return Status.EMPTY_MESSAGE;
+		}
+		return send(message.getBytes(UTF_8), level);
+	}
+
+	/**
+	 * @param eventEpochNanos time of the log event in nanoseconds since the epoch, used for the end-to-end latency
+	 */
+	protected Status send(String message,
+			Level level,
+			long eventEpochNanos) {
+		if (Strings.isBlank(message)) {
+			return Status.EMPTY_MESSAGE;
+		}
+		return send(message.getBytes(UTF_8), level, eventEpochNanos);
+	}
+
+	/**
+	 * @param payload encoded log event (JSON object or OTLP log record)
+	 * @param level severity of the log event, log events of higher severity are sent first
+	 */
+	protected abstract Status send(byte[] payload,
+			Level level);
+
+	/**
+	 * @param eventEpochNanos time of the log event in nanoseconds since the epoch, used for the end-to-end latency
+	 */
+	protected Status send(byte[] payload,
+			Level level,
+			long eventEpochNanos) {
+		return send(payload, level);
+	}
+
+	/**
+	 * Enqueue the log event without waiting for its request, even if the manager is blocking.
+	 *
+	 * @return {@link Status#QUEUED}, {@link Status#DROPPED} if the queue is full
+	 */
+	protected Status offer(byte[] payload,
+			Level level) {
+		return send(payload, level);
+	}
+
+	/**
+	 * @return latency breakdown of the logging pipeline, {@link DynatraceGenericLogIngestLatencies#DISABLED} if not tracked
+	 */
+	DynatraceGenericLogIngestLatencies getLatencies() {
+		return DynatraceGenericLogIngestLatencies.DISABLED;
+	}
+
+	/**
+	 * @return part of the queue capacity taken by waiting log events, from 0 to 1
+	 */
+	double getQueueUtilization() {
+		return 0.0;
+	}
+
+	/**
+	 * @return number of answered requests carrying log events of this manager
+	 */
+	long getRequests() {
+		return 0L;
+	}
+
+	/**
+	 * @return total latency of the answered requests
+	 */
+	long getRequestNanos() {
+		return 0L;
+	}
 
 	enum Status {
 		SUCCESS,
 		FAILED,
 		EXCEPTION,
-		EMPTY_MESSAGE
+		EMPTY_MESSAGE,
+		QUEUED,
+		DROPPED,
+		ABANDONED,
+		CLOSED
 	}
 }
@@ -0,0 +1,476 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestAggregatorSender.HEADER_BYTES;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestAggregatorSender.LOGS;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestAggregatorSender.MAX_FRAME_BYTES;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestAggregatorSender.METRICS;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestAggregatorSender.PING;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestManager.ManagerConfig;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.logging.log4j.util.Strings;
+
+/**
+ * Host-local daemon merging log events of many JVMs on the node into large batches sent by a single transport, so every
+ * JVM does not keep its own connections and TLS sessions with the ActiveGate.
+ * <p>
+ * Appenders with {@code sender="AGGREGATOR"} ship their already encoded JSON batches as frames of
+ * {@link DynatraceGenericLogIngestAggregatorSender}. A batch is read straight into the array enqueued as a single payload,
+ * without its array brackets, so the transport of the aggregator joins batches of all JVMs into one JSON array without
+ * parsing them. Requests of the aggregator are compressed by default. Every frame is answered with 204 when enqueued, 429
+ * when the queue of the aggregator is full (the appender backs off as from the ActiveGate) and 400 when it is malformed.
+ * The queue is bounded by bytes, not only by the count of batches, as a batch can take up to a megabyte.
+ * <p>
+ * A batch is the unit of the aggregator's queue, a batch rejected by the ActiveGate is quarantined as a whole.
+ */
+public final class DynatraceGenericLogIngestAggregator
+		implements AutoCloseable {
+
+	static final String NAME = "dynatrace.aggregator";
+	static final String DEFAULT_LISTEN = DynatraceGenericLogIngestAggregatorSender.DEFAULT_ADDRESS;
+	static final long DEFAULT_MAX_QUEUE_BYTES = 256L << 20;
+	static final int STATUS_ACCEPTED = 204;
+	static final int STATUS_MALFORMED = 400;
+	static final int STATUS_FULL = 429;
+	static final int STATUS_UNAVAILABLE = 503;
+
+	private static final int EXIT_FAILED = 1;
+	private static final int EXIT_USAGE = 2;
+	private static final String USAGE = "Usage: java -cp <appender and log4j-core jars> "
+			+ DynatraceGenericLogIngestAggregator.class.getName() + " [options]\n"
+			+ "  --listen=<host:port|path>         loopback address or Unix domain socket (Java 16+), default " + DEFAULT_LISTEN + "\n"
+			+ "  --allowRemote=true|false          listen also on other than loopback address, default false\n"
+			+ "  --activeGateUrl=<url>             Generic Log Ingest endpoint, required\n"
+			+ "  --token=<token>                   API token, DT_API_TOKEN environment variable by default\n"
+			+ "  --sslValidation=true|false        default true\n"
+			+ "  --compression=true|false          gzip request bodies, default true\n"
+			+ "  --offHeapQueueBytes=<bytes>       default 0 - queue on the heap\n"
+			+ "  --maxQueueBytes=<bytes>           batches buffered before 429, default " + DEFAULT_MAX_QUEUE_BYTES
+			+ ", 0 - unlimited\n"
+			+ "  --metricsIntervalSeconds=<secs>   own metrics, default 0 - not pushed\n"
+			+ "  --requestTimeoutMillis=<millis>   default 30000";
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final Options options;
+	private final DynatraceGenericLogIngestManager manager;
+	private final ServerSocketChannel server;
+	private final SocketAddress localAddress;
+	private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+	private final CountDownLatch closed = new CountDownLatch(1);
+
+	private DynatraceGenericLogIngestAggregator(Options options) throws IOException {
+		this.options = options;
+		this.manager = new DynatraceGenericLogIngestManager(NAME, managerConfig(options));
+		this.manager.setMemoryBudget(new DynatraceGenericLogIngestMemoryBudget(options.maxQueueBytes));
+		try {
+			this.server = bind(options.listen);
+			this.localAddress = server.getLocalAddress();
+		} catch (IOException | RuntimeException e) {
+			manager.stop(options.requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+			throw e;
+		}
+		DynatraceGenericLogIngestHttpClient.newDaemonThread(this::accept, "aggregator").start();
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.getenv(), System.out, System.err));
+	}
+
+	/**
+	 * Serves until the JVM is shut down.
+	 *
+	 * @return exit code: 1 - cannot listen, 2 - invalid arguments
+	 */
+	static int run(String[] args,
+			Map<String, String> environment,
+			PrintStream out,
+			PrintStream err) {
+		final Options options;
+		try {
+			options = Options.parse(args, environment);
+		} catch (IllegalArgumentException e) {
+			err.println(e.getMessage());
+			err.println(USAGE);
+			return EXIT_USAGE;
+		}
+
+		try {
+			final var aggregator = start(options);
+			Runtime.getRuntime().addShutdownHook(new Thread(aggregator::close, NAME + "-shutdown"));
+			out.println("Aggregator listening on " + options.listen + ", sending to " + options.activeGateUrl);
+			aggregator.closed.await();
+			return 0;
+		} catch (IOException | RuntimeException e) {
+			err.println("Aggregator failed: " + e.getMessage());
+			return EXIT_FAILED;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return EXIT_FAILED;
+		}
+	}
+
+	static DynatraceGenericLogIngestAggregator start(Options options) throws IOException {
+		return new DynatraceGenericLogIngestAggregator(options);
+	}
+
+	private static ManagerConfig managerConfig(Options options) {
+		return ManagerConfig.builder(new LoggerContext(NAME), options.activeGateUrl, options.token)
+				.setSslValidation(options.sslValidation)
+				.setBlocking(false)
+				.setOffHeapQueueBytes(options.offHeapQueueBytes)
+				.setMetricsInterval(options.metricsInterval)
+				.setRequestTimeout(options.requestTimeout)
+				.setCompression(options.compression)
+				.build();
+	}
+
+	/**
+	 * Unix domain server socket is opened reflectively, the appender still runs on Java 11. Stale socket file of the
+	 * previous run is deleted.
+	 */
+	private static ServerSocketChannel bind(String listen) throws IOException {
+		final var address = DynatraceGenericLogIngestAggregatorSender.socketAddress(listen);
+		if (address instanceof InetSocketAddress) {
+			return ServerSocketChannel.open().bind(address);
+		}
+		Files.deleteIfExists(Path.of(listen));
+		try {
+			return ((ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+					.invoke(null, StandardProtocolFamily.valueOf("UNIX")))
+					.bind(address);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Unix domain socket " + listen + " needs Java 16 or newer", e);
+		}
+	}
+
+	private void accept() {
+		try {
+			while (true) {
+				final var client = server.accept();
+				clients.add(client);
+				DynatraceGenericLogIngestHttpClient.newDaemonThread(() -> serve(client), "aggregator-client").start();
+			}
+		} catch (ClosedChannelException e) {
+			LOGGER.debug("Aggregator stopped accepting connections.");
+		} catch (IOException e) {
+			LOGGER.error("Aggregator cannot accept connections.", e);
+		}
+	}
+
+	/**
+	 * Reads frames of one JVM and answers each of them in order.
+	 */
+	private void serve(SocketChannel client) {
+		final var header = ByteBuffer.allocate(HEADER_BYTES);
+		final var status = ByteBuffer.allocate(4);
+		try (client) {
+			while (true) {
+				header.clear();
+				if (!readFully(client, header, true)) {
+					return;
+				}
+				final var length = header.getInt(0);
+				if (length < 1 || length > MAX_FRAME_BYTES) {
+					LOGGER.warn("Aggregator got frame of {} bytes, connection closed.", length);
+					return;
+				}
+				final var code = handle(client, header.get(4), length - 1);
+				status.clear();
+				status.putInt(code).flip();
+				while (status.hasRemaining()) {
+					client.write(status);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Aggregator connection closed.", e);
+		} finally {
+			clients.remove(client);
+		}
+	}
+
+	private int handle(SocketChannel client,
+			byte type,
+			int bodyBytes) throws IOException {
+		switch (type) {
+			case LOGS:
+				return enqueue(client, bodyBytes);
+			case METRICS:
+				return forwardMetrics(readBody(client, bodyBytes));
+			case PING:
+				readBody(client, bodyBytes);
+				return STATUS_ACCEPTED;
+			default:
+				readBody(client, bodyBytes);
+				return STATUS_MALFORMED;
+		}
+	}
+
+	/**
+	 * A JSON array is read without its brackets straight into the enqueued payload, a single JSON object as it is.
+	 */
+	private int enqueue(SocketChannel client,
+			int bodyBytes) throws IOException {
+		if (bodyBytes == 0) {
+			return STATUS_MALFORMED;
+		}
+		final var first = ByteBuffer.allocate(1);
+		readFully(client, first, false);
+		if (first.get(0) != '[') {
+			final var payload = new byte[bodyBytes];
+			payload[0] = first.get(0);
+			readFully(client, ByteBuffer.wrap(payload, 1, bodyBytes - 1), false);
+			return first.get(0) == '{' ? send(payload) : STATUS_MALFORMED;
+		}
+		if (bodyBytes < 2) {
+			return STATUS_MALFORMED;
+		}
+		final var payload = new byte[bodyBytes - 2];
+		readFully(client, ByteBuffer.wrap(payload), false);
+		final var last = ByteBuffer.allocate(1);
+		readFully(client, last, false);
+		if (last.get(0) != ']') {
+			return STATUS_MALFORMED;
+		}
+		return payload.length == 0 ? STATUS_ACCEPTED : send(payload);
+	}
+
+	private int send(byte[] payload) {
+		final var sent = manager.send(payload, Level.INFO);
+		if (sent == Status.QUEUED || sent == Status.SUCCESS) {
+			return STATUS_ACCEPTED;
+		}
+		return sent == Status.DROPPED ? STATUS_FULL : STATUS_UNAVAILABLE;
+	}
+
+	private int forwardMetrics(byte[] body) {
+		try {
+			final var activeGateUrl = options.activeGateUrl.toURI();
+			return manager.getTransport()
+					.postAsync(DynatraceGenericLogIngestMetricsReporter.metricsEndpoint(activeGateUrl),
+							DynatraceGenericLogIngestMetricsReporter.CONTENT_TYPE, body)
+					.get(options.requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (URISyntaxException | ExecutionException | TimeoutException | RuntimeException e) {
+			LOGGER.debug("Aggregator cannot forward metrics.", e);
+			return STATUS_UNAVAILABLE;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return STATUS_UNAVAILABLE;
+		}
+	}
+
+	private static byte[] readBody(SocketChannel client,
+			int bodyBytes) throws IOException {
+		final var body = new byte[bodyBytes];
+		readFully(client, ByteBuffer.wrap(body), false);
+		return body;
+	}
+
+	/**
+	 * @param endAllowed connection closed before the first byte is the end of the stream, not an error
+	 * @return false at the end of the stream
+	 */
+	private static boolean readFully(SocketChannel client,
+			ByteBuffer buffer,
+			boolean endAllowed) throws IOException {
+		final var start = buffer.position();
+		while (buffer.hasRemaining()) {
+			if (client.read(buffer) < 0) {
+				if (endAllowed && buffer.position() == start) {
+					return false;
+				}
+				throw new EOFException("connection closed in the middle of a frame");
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return bound address, for the port chosen by the system
+	 */
+	SocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	DynatraceGenericLogIngestManager getManager() {
+		return manager;
+	}
+
+	/**
+	 * Stops accepting frames and sends log events enqueued so far within the request timeout.
+	 */
+	@Override
+	public void close() {
+		if (closed.getCount() == 0L) {
+			return;
+		}
+		try {
+			server.close();
+			for (var client : clients) {
+				client.close();
+			}
+			if (!(localAddress instanceof InetSocketAddress)) {
+				Files.deleteIfExists(Path.of(options.listen));
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Aggregator not closed cleanly.", e);
+		}
+		manager.stop(options.requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		closed.countDown();
+	}
+
+	static final class Options {
+
+		private final String listen;
+		private final URL activeGateUrl;
+		private final String token;
+		private final boolean sslValidation;
+		private final boolean compression;
+		private final long offHeapQueueBytes;
+		private final long maxQueueBytes;
+		private final Duration metricsInterval;
+		private final Duration requestTimeout;
+
+		private Options(String listen,
+				URL activeGateUrl,
+				String token,
+				boolean sslValidation,
+				boolean compression,
+				long offHeapQueueBytes,
+				long maxQueueBytes,
+				Duration metricsInterval,
+				Duration requestTimeout) {
+			this.listen = listen;
+			this.activeGateUrl = activeGateUrl;
+			this.token = token;
+			this.sslValidation = sslValidation;
+			this.compression = compression;
+			this.offHeapQueueBytes = offHeapQueueBytes;
+			this.maxQueueBytes = maxQueueBytes;
+			this.metricsInterval = metricsInterval;
+			this.requestTimeout = requestTimeout;
+		}
+
+		/**
+		 * @throws IllegalArgumentException when arguments are invalid, message describes the problem
+		 */
+		static Options parse(String[] args,
+				Map<String, String> environment) {
+			var listen = DEFAULT_LISTEN;
+			URL activeGateUrl = null;
+			var token = environment.get("DT_API_TOKEN");
+			var sslValidation = true;
+			var compression = true;
+			var offHeapQueueBytes = 0L;
+			var maxQueueBytes = DEFAULT_MAX_QUEUE_BYTES;
+			var metricsInterval = Duration.ZERO;
+			var requestTimeout = ManagerConfig.DEFAULT_TIMEOUT;
+			var allowRemote = false;
+
+			for (var arg : args) {
+				final var separator = arg.indexOf('=');
+				if (!arg.startsWith("--") || separator < 0) {
+					throw new IllegalArgumentException("option without value: " + arg);
+				}
+				final var value = arg.substring(separator + 1);
+				try {
+					switch (arg.substring(2, separator)) {
+						case "listen":
+							listen = value;
+							break;
+						case "allowRemote":
+							allowRemote = Boolean.parseBoolean(value);
+							break;
+						case "activeGateUrl":
+							activeGateUrl = new URL(value);
+							break;
+						case "token":
+							token = value;
+							break;
+						case "sslValidation":
+							sslValidation = Boolean.parseBoolean(value);
+							break;
+						case "compression":
+							compression = Boolean.parseBoolean(value);
+							break;
+						case "offHeapQueueBytes":
+							offHeapQueueBytes = Long.parseLong(value);
+							break;
+						case "maxQueueBytes":
+							maxQueueBytes = Long.parseLong(value);
+							break;
+						case "metricsIntervalSeconds":
+							metricsInterval = Duration.ofSeconds(Long.parseLong(value));
+							break;
+						case "requestTimeoutMillis":
+							requestTimeout = Duration.ofMillis(Long.parseLong(value));
+							break;
+						default:
+							throw new IllegalArgumentException("unknown option: " + arg);
+					}
+				} catch (MalformedURLException | NumberFormatException e) {
+					throw new IllegalArgumentException("invalid option " + arg + ": " + e.getMessage(), e);
+				}
+			}
+
+			if (isNull(activeGateUrl)) {
+				throw new IllegalArgumentException("--activeGateUrl is required");
+			}
+			if (Strings.isBlank(token)) {
+				throw new IllegalArgumentException("--token or DT_API_TOKEN environment variable is required");
+			}
+			if (maxQueueBytes < 0L) {
+				throw new IllegalArgumentException("--maxQueueBytes is negative");
+			}
+			final var address = DynatraceGenericLogIngestAggregatorSender.socketAddress(listen);
+			if (!allowRemote && !isLoopback(address)) {
+				throw new IllegalArgumentException("--listen=" + listen
+						+ " is not a loopback address, aggregator accepts log events without authentication, "
+						+ "add --allowRemote=true to listen on it anyway");
+			}
+			return new Options(listen, activeGateUrl, token, sslValidation, compression, offHeapQueueBytes, maxQueueBytes,
+					metricsInterval, requestTimeout);
+		}
+
+		/**
+		 * Unix domain socket is local, host name has to resolve to a loopback address.
+		 */
+		private static boolean isLoopback(SocketAddress address) {
+			if (!(address instanceof InetSocketAddress)) {
+				return true;
+			}
+			final var inetAddress = ((InetSocketAddress) address).getAddress();
+			return nonNull(inetAddress) && inetAddress.isLoopbackAddress();
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Sender shipping already encoded batches to the host-local {@link DynatraceGenericLogIngestAggregator} instead of the
+ * ActiveGate, over loopback TCP or a Unix domain socket (Java 16 or newer).
+ * <p>
+ * Every request is one frame: 4 bytes of length (big-endian) of the rest of the frame, 1 byte of the frame type and the
+ * request body. The header and the body buffers are written by a single gathering write, the body is not copied. The
+ * aggregator answers every frame, in the order of frames, with 4 bytes of an HTTP-like status code, so the transport keeps
+ * its congestion control and retries. Frames are pipelined over a single connection, which is opened again after a failure.
+ */
+final class DynatraceGenericLogIngestAggregatorSender
+		implements DynatraceGenericLogIngestSender {
+
+	static final String DEFAULT_ADDRESS = "127.0.0.1:7311";
+	static final int HEADER_BYTES = 5;
+	static final int MAX_FRAME_BYTES = 16 << 20;
+	static final byte LOGS = 1;
+	static final byte METRICS = 2;
+	static final byte PING = 3;
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final SocketAddress address;
+	private final Duration connectTimeout;
+	private final Object lock = new Object();
+	private Connection connection;
+	private volatile boolean closed;
+
+	DynatraceGenericLogIngestAggregatorSender(SocketAddress address,
+			SenderConfig senderConfig) {
+		this.address = requireNonNull(address, "address is null");
+		this.connectTimeout = requireNonNull(senderConfig, "senderConfig is null").getConnectTimeout();
+	}
+
+	/**
+	 * @param address {@code host:port} or path of the Unix domain socket
+	 */
+	static SocketAddress socketAddress(String address) {
+		requireNonNull(address, "address is null");
+		if (address.indexOf('/') >= 0 || address.indexOf('\\') >= 0) {
+			try {
+				return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+						.getMethod("of", String.class)
+						.invoke(null, address);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalArgumentException("Unix domain socket " + address + " needs Java 16 or newer", e);
+			}
+		}
+		final var separator = address.lastIndexOf(':');
+		if (separator < 1) {
+			throw new IllegalArgumentException("Aggregator address is not host:port nor path: " + address);
+		}
+		try {
+			return new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Aggregator address is not host:port nor path: " + address, e);
+		}
+	}
+
+	/**
+	 * Metrics and pings are told apart from log events, the aggregator forwards metrics to its own endpoint and answers
+	 * pings itself.
+	 */
+	static byte frameType(Request request) {
+		if ("HEAD".equals(request.getMethod())) {
+			return PING;
+		}
+		final var path = request.getUri().getPath();
+		return nonNull(path) && path.endsWith(DynatraceGenericLogIngestMetricsReporter.METRICS_INGEST_PATH) ? METRICS : LOGS;
+	}
+
+	@Override
+	public CompletableFuture<Integer> send(Request request) {
+		requireNonNull(request, "request is null");
+		if (closed) {
+			return CompletableFuture.failedFuture(new IllegalStateException("sender is closed"));
+		}
+		final var contentLength = request.getContentLength();
+		if (contentLength + 1L > MAX_FRAME_BYTES) {
+			return CompletableFuture.failedFuture(new IllegalArgumentException("request is bigger than a frame"));
+		}
+
+		final var body = request.getBody();
+		final var buffers = new ByteBuffer[body.length + 1];
+		buffers[0] = ByteBuffer.allocate(HEADER_BYTES).putInt((int) contentLength + 1).put(frameType(request)).flip();
+		for (var index = 0; index < body.length; index++) {
+			buffers[index + 1] = body[index].duplicate();
+		}
+
+		final var result = new CompletableFuture<Integer>();
+		final Connection current;
+		synchronized (lock) {
+			try {
+				current = connection();
+			} catch (IOException e) {
+				return CompletableFuture.failedFuture(e);
+			}
+			current.pending.add(result);
+			try {
+				current.write(buffers);
+			} catch (IOException e) {
+				current.close(e);
+				return result;
+			}
+		}
+		return result.orTimeout(request.getTimeout().toMillis(), TimeUnit.MILLISECONDS)
+				.whenComplete((status, throwable) -> {
+					if (throwable instanceof TimeoutException) {
+						current.close(throwable);
+					}
+				});
+	}
+
+	private Connection connection() throws IOException {
+		if (isNull(connection) || connection.closed) {
+			connection = new Connection(open());
+		}
+		return connection;
+	}
+
+	private SocketChannel open() throws IOException {
+		if (address instanceof InetSocketAddress) {
+			final var channel = SocketChannel.open();
+			try {
+				channel.socket().setTcpNoDelay(true);
+				channel.socket().connect(address, (int) Math.min(Integer.MAX_VALUE, connectTimeout.toMillis()));
+				return channel;
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+		}
+		return SocketChannel.open(address);
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		synchronized (lock) {
+			if (nonNull(connection)) {
+				connection.close(new IllegalStateException("sender is closed"));
+			}
+		}
+	}
+
+	boolean isConnected() {
+		synchronized (lock) {
+			return nonNull(connection) && !connection.closed;
+		}
+	}
+
+	/**
+	 * Socket with the futures of frames waiting for their status, completed by the reader thread in the order of frames.
+	 */
+	private static final class Connection {
+
+		private final SocketChannel channel;
+		private final Queue<CompletableFuture<Integer>> pending = new ConcurrentLinkedQueue<>();
+		private volatile boolean closed;
+
+		private Connection(SocketChannel channel) {
+			this.channel = channel;
+			DynatraceGenericLogIngestHttpClient.newDaemonThread(this::read, "aggregator-reader").start();
+		}
+
+		private void write(ByteBuffer[] buffers) throws IOException {
+			var remaining = 0L;
+			for (var buffer : buffers) {
+				remaining += buffer.remaining();
+			}
+			while (remaining > 0L) {
+				remaining -= channel.write(buffers);
+			}
+		}
+
+		private void read() {
+			final var status = ByteBuffer.allocate(4);
+			try {
+				while (!closed) {
+					status.clear();
+					while (status.hasRemaining()) {
+						if (channel.read(status) < 0) {
+							throw new EOFException("aggregator closed the connection");
+						}
+					}
+					final var result = pending.poll();
+					if (isNull(result)) {
+						throw new IOException("status of no frame");
+					}
+					result.complete(status.getInt(0));
+				}
+			} catch (IOException e) {
+				close(e);
+			}
+		}
+
+		private void close(Throwable cause) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.debug("Connection to aggregator not closed cleanly.", e);
+			}
+			CompletableFuture<Integer> result;
+			while (nonNull(result = pending.poll())) {
+				result.completeExceptionally(cause);
+			}
+		}
+	}
+}
@@ -1,64 +1,97 @@
 package io.github.michaljonko.log4j.appender;
 
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestLatencies.Stage;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestLoadShedder.SheddingConfig;
 import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestManager.ManagerConfig;
 import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestManager.getManager;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSampler.SamplingConfig;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.TransportConfig;
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.collectingAndThen;
-import static org.apache.logging.log4j.util.Strings.dquote;
 
 import java.io.Serializable;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.Core;
 import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.StringLayout;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
 import org.apache.logging.log4j.core.config.Property;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
+import org.apache.logging.log4j.core.impl.LocationAware;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.core.layout.SerializedLayout;
 import org.apache.logging.log4j.core.lookup.StrSubstitutor;
-import org.apache.logging.log4j.core.util.JsonUtils;
 import org.apache.logging.log4j.core.util.datetime.FixedDateFormat;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.Strings;
 
 /**
  * Log4J2 appender to make Java applications logging on Dynatrace easy.
  */
 @Plugin(name = "DynatraceGenericLogIngestAppender", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
 public final class DynatraceGenericLogIngestAppender
-		extends AbstractAppender {
+		extends AbstractAppender
+		implements LocationAware {
 
 	private static final FixedDateFormat DATE_FORMAT = FixedDateFormat.create(FixedDateFormat.FixedFormat.ISO8601_PERIOD);
 	private static final String PACKAGE = DynatraceGenericLogIngestAppender.class.getPackage().getName();
+	private static final String TRACE_ID = "trace_id";
+	private static final String SPAN_ID = "span_id";
+	private static final String TRACE_FLAGS = "trace_flags";
+	private static final byte[] TIMESTAMP_KEY = DynatraceGenericLogIngestJsonEscaper.fieldKey("timestamp");
+	private static final byte[] MESSAGE_KEY = DynatraceGenericLogIngestJsonEscaper.fieldKey("message");
 
-	private final AbstractDynatraceGenericLogIngestManager manager;
+	private final DynatraceGenericLogIngestRouter router;
 	private final StrSubstitutor strSubstitutor;
+	private final Protocol protocol;
+	private final DynatraceGenericLogIngestLatencies latencies;
+	private final DynatraceGenericLogIngestSemanticAttributes semanticAttributes;
 	private final Set<DynatraceGenericLogIngestAttribute> attributes;
+	private final DynatraceGenericLogIngestLoadShedder loadShedder;
+	private final DynatraceGenericLogIngestSampler sampler;
+	private final Charset messageCharset;
 
-	DynatraceGenericLogIngestAppender(String name,
-			Layout<? extends Serializable> layout,
-			Filter filter,
-			StrSubstitutor strSubstitutor,
-			boolean ignoreExceptions,
-			Property[] properties,
-			AbstractDynatraceGenericLogIngestManager manager) {
-		super(name, filter, requireNonNull(layout, "layout is null"), ignoreExceptions, properties);
+	DynatraceGenericLogIngestAppender(AppenderConfig config) {
+		super(config.getName(), config.getFilter(), config.getLayout(), config.isIgnoreExceptions(), config.getProperties());
 
-		this.manager = requireNonNull(manager, "manager is null");
-		this.strSubstitutor = requireNonNull(strSubstitutor, "strSubstitutor is null");
+		this.router = config.getRouter();
+		this.semanticAttributes = config.getSemanticAttributes();
+		this.strSubstitutor = config.getStrSubstitutor();
+		this.protocol = config.getProtocol();
+		this.latencies = config.getLatencies();
+		this.loadShedder = new DynatraceGenericLogIngestLoadShedder(config.getSheddingConfig(), router.getManagers(),
+				this::levelChanged);
+		this.sampler = new DynatraceGenericLogIngestSampler(config.getSamplingConfig());
+		final var layout = config.getLayout();
+		this.messageCharset = layout instanceof StringLayout ? ((StringLayout) layout).getCharset() : Charset.defaultCharset();
 
+		final var properties = config.getProperties();
 		if (nonNull(properties) && properties.length > 0) {
 			var distinctPropertyNames = Arrays.stream(properties)
 					.map(Property::getName)
@@ -88,7 +121,17 @@ public final class DynatraceGenericLogIngestAppender
 			getStatusLogger().warn("Recursive logging from [{}] for appender [{}].", event.getLoggerName(), getName());
 			return;
 		}
+		if (!loadShedder.shed(event.getLevel()) && sampler.sample(event)) {
+			appendEvent(event, true);
+		}
+	}
 
+	/**
+	 * @param wait blocking manager may wait for the request carrying the log event
+	 */
+	private void appendEvent(LogEvent event,
+			boolean wait) {
+		var stageStarted = latencies.start();
 		final var layout = getLayout();
 		byte[] message;
 		if (layout instanceof SerializedLayout) {
@@ -100,37 +143,188 @@ public final class DynatraceGenericLogIngestAppender
 		} else {
 			message = layout.toByteArray(event);
 		}
+		stageStarted = latencies.record(Stage.LAYOUT, stageStarted);
+
+		final var manager = router.route(event);
+		if (protocol == Protocol.OTLP) {
+			appendOtlp(event, message, manager, stageStarted, wait);
+			return;
+		}
 
-		final var jsonBuilder = new StringBuilder()
-				.append("{")
-				.append(dquote("timestamp")).append(":").append(dquote(DATE_FORMAT.formatInstant(event.getInstant())))
-				.append(",")
-				.append(dquote("level")).append(":").append(dquote(event.getLevel().name())).append(",");
+		final var json = new DynatraceGenericLogIngestJsonWriter(message.length + 128)
+				.append('{')
+				.append(TIMESTAMP_KEY).string(DATE_FORMAT.formatInstant(event.getInstant()))
+				.append(',')
+				.append(DynatraceGenericLogIngestJsonEscaper.levelField(event.getLevel()));
+		semanticAttributes.appendJson(event, json);
 
 		for (var attribute : attributes) {
-			var name = attribute.getName();
 			var value =
 					attribute.valueNeedsLookup() ? strSubstitutor.replace(event, attribute.getValue()) : attribute.getValue();
 
-			jsonBuilder.append(dquote(name)).append(":\"");
-			JsonUtils.quoteAsString(value, jsonBuilder);
-			jsonBuilder.append("\",");
+			json.append(attribute.getJsonKey()).string(value).append(',');
 		}
+		stageStarted = latencies.record(Stage.LOOKUPS, stageStarted);
 
-		jsonBuilder.append(dquote("message")).append(":\"");
-		JsonUtils.quoteAsString(new String(message), jsonBuilder);
-		jsonBuilder.append("\"}");
+		json.append(MESSAGE_KEY);
+		if (StandardCharsets.UTF_8.equals(messageCharset)) {
+			json.string(message);
+		} else {
+			json.string(new String(message, messageCharset));
+		}
+		json.append('}');
 
-		var jsonMessage = jsonBuilder.toString();
-		if (manager.send(jsonMessage) != AbstractDynatraceGenericLogIngestManager.Status.SUCCESS) {
-			getStatusLogger().warn("Cannot send log event {}", jsonMessage);
+		var payload = json.toByteArray();
+		stageStarted = latencies.record(Stage.ENCODING, stageStarted);
+		var accepted = send(manager, payload, event, wait);
+		latencies.record(Stage.SEND, stageStarted);
+		if (!accepted) {
+			getStatusLogger().warn("Cannot send log event {}", json);
 		}
 	}
 
+	private void appendOtlp(LogEvent event,
+			byte[] message,
+			AbstractDynatraceGenericLogIngestManager manager,
+			long stageStarted,
+			boolean wait) {
+		final var epochNanos = epochNanos(event);
+		final var body = utf8(message);
+		final var logRecord = DynatraceGenericLogIngestOtlpEncoder.logRecord()
+				.time(epochNanos)
+				.severity(event.getLevel())
+				.body(body);
+		semanticAttributes.appendOtlp(event, logRecord);
+		for (var attribute : attributes) {
+			if (attribute.valueNeedsLookup()) {
+				logRecord.attribute(attribute.getName(), strSubstitutor.replace(event, attribute.getValue()));
+			}
+		}
+		stageStarted = latencies.record(Stage.LOOKUPS, stageStarted);
+		final var contextData = event.getContextData();
+		if (nonNull(contextData)) {
+			logRecord.trace(contextData.getValue(TRACE_ID), contextData.getValue(SPAN_ID), contextData.getValue(TRACE_FLAGS));
+		}
+
+		final var payload = logRecord.toByteArray();
+		stageStarted = latencies.record(Stage.ENCODING, stageStarted);
+		var accepted = send(manager, payload, event, wait);
+		latencies.record(Stage.SEND, stageStarted);
+		if (!accepted) {
+			getStatusLogger().warn("Cannot send log event {}", new String(body, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Log event which is only enqueued (not waiting) and dropped by the full queue is not reported.
+	 *
+	 * @return true if the log event was sent or enqueued
+	 */
+	private boolean send(AbstractDynatraceGenericLogIngestManager manager,
+			byte[] payload,
+			LogEvent event,
+			boolean wait) {
+		final AbstractDynatraceGenericLogIngestManager.Status status;
+		if (!wait) {
+			status = manager.offer(payload, event.getLevel());
+		} else if (latencies.isEnabled()) {
+			status = manager.send(payload, event.getLevel(), epochNanos(event));
+		} else {
+			status = manager.send(payload, event.getLevel());
+		}
+		return status == AbstractDynatraceGenericLogIngestManager.Status.SUCCESS
+				|| status == AbstractDynatraceGenericLogIngestManager.Status.QUEUED
+				|| (!wait && status == AbstractDynatraceGenericLogIngestManager.Status.DROPPED);
+	}
+
+	/**
+	 * Protobuf strings must be UTF-8, the message is the same text as in JSON: decoded with the layout's charset, malformed
+	 * sequences replaced.
+	 */
+	private byte[] utf8(byte[] message) {
+		if (StandardCharsets.UTF_8.equals(messageCharset)
+				&& DynatraceGenericLogIngestJsonEscaper.isWellFormed(message, 0, message.length)) {
+			return message;
+		}
+		return new String(message, messageCharset).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Every change of the minimum level is sent as a log event of its own, it is never shed. It is only enqueued, the
+	 * evaluating thread must not wait for a request during the overload it reacts to.
+	 */
+	private void levelChanged(Level previous,
+			Level current,
+			String reason) {
+		final var raised = current.intLevel() < previous.intLevel();
+		appendEvent(Log4jLogEvent.newBuilder()
+				.setLoggerName(DynatraceGenericLogIngestLoadShedder.class.getName())
+				.setLevel(raised ? Level.WARN : Level.INFO)
+				.setMessage(new SimpleMessage("Load shedding of appender " + getName() + " changed minimum level from "
+						+ previous + " to " + current + " (" + reason + ")"))
+				.setTimeMillis(System.currentTimeMillis())
+				.setThreadName(Thread.currentThread().getName())
+				.build(), false);
+	}
+
+	DynatraceGenericLogIngestLoadShedder getLoadShedder() {
+		return loadShedder;
+	}
+
+	DynatraceGenericLogIngestSampler getSampler() {
+		return sampler;
+	}
+
+	/**
+	 * Log4j captures the caller location (stack walk) only if a location attribute is enabled or the layout needs it.
+	 */
+	@Override
+	public boolean requiresLocation() {
+		final var layout = getLayout();
+		return semanticAttributes.requiresLocation()
+				|| (layout instanceof LocationAware && ((LocationAware) layout).requiresLocation());
+	}
+
+	private static long epochNanos(LogEvent event) {
+		final var instant = event.getInstant();
+		return instant.getEpochSecond() * 1_000_000_000L + instant.getNanoOfSecond();
+	}
+
+	@Override
+	public void start() {
+		super.start();
+		loadShedder.start();
+	}
+
+	/**
+	 * Managers of routes are stopped in parallel with the default one, so the appender stops within the timeout no matter
+	 * how many routes it has.
+	 */
 	@Override
 	public boolean stop(long timeout,
 			TimeUnit timeUnit) {
-		return super.stop(timeout, timeUnit) && manager.stop(timeout, timeUnit);
+		loadShedder.stop();
+		if (loadShedder.getShed() > 0L) {
+			getStatusLogger().info("Appender {} shed {} log events.", getName(), loadShedder.getShed());
+		}
+		if (sampler.getSampledOut() > 0L) {
+			getStatusLogger().info("Appender {} sampled out {} log events.", getName(), sampler.getSampledOut());
+		}
+		final var managers = router.getManagers();
+		final var stoppedRoutes = new ArrayList<CompletableFuture<Boolean>>(managers.size() - 1);
+		for (var manager : managers.subList(1, managers.size())) {
+			stoppedRoutes.add(CompletableFuture.supplyAsync(() -> manager.stop(timeout, timeUnit),
+					runnable -> DynatraceGenericLogIngestHttpClient.newDaemonThread(runnable, "stop").start()));
+		}
+		var stopped = super.stop(timeout, timeUnit);
+		stopped &= managers.get(0).stop(timeout, timeUnit);
+		for (var stoppedRoute : stoppedRoutes) {
+			stopped &= stoppedRoute.exceptionally(e -> {
+				getStatusLogger().error("Manager of appender {} cannot be stopped.", getName(), e);
+				return false;
+			}).join();
+		}
+		return stopped;
 	}
 
 	/**
@@ -160,6 +354,52 @@ public final class DynatraceGenericLogIngestAppender
 		private String token;
 		@PluginAttribute(value = "sslValidation", defaultBoolean = true)
 		private boolean sslValidation;
+		@PluginAttribute(value = "blocking", defaultBoolean = true)
+		private boolean blocking = true;
+		@PluginAttribute("deadLetterFile")
+		private String deadLetterFile;
+		@PluginAttribute(value = "offHeapQueueBytes", defaultLong = 0L)
+		private long offHeapQueueBytes;
+		@PluginAttribute(value = "protocol", defaultString = "JSON")
+		private String protocol = "JSON";
+		@PluginAttribute(value = "metricsIntervalSeconds", defaultInt = 0)
+		private int metricsIntervalSeconds;
+		@PluginAttribute(value = "latencyTracking", defaultBoolean = false)
+		private boolean latencyTracking;
+		@PluginAttribute(value = "connectTimeoutMillis", defaultInt = 30_000)
+		private int connectTimeoutMillis = 30_000;
+		@PluginAttribute(value = "requestTimeoutMillis", defaultInt = 30_000)
+		private int requestTimeoutMillis = 30_000;
+		@PluginAttribute(value = "keepAliveSeconds", defaultInt = 0)
+		private int keepAliveSeconds;
+		@PluginAttribute(value = "bufferUntilConnected", defaultBoolean = false)
+		private boolean bufferUntilConnected;
+		@PluginElement("Routes")
+		private DynatraceGenericLogIngestRoute[] routes;
+		@PluginAttribute(value = "queueStripes", defaultInt = 1)
+		private int queueStripes = 1;
+		@PluginAttribute("semanticAttributes")
+		private String semanticAttributes;
+		@PluginAttribute("loggerAbbreviation")
+		private String loggerAbbreviation;
+		@PluginAttribute(value = "sender", defaultString = "JDK")
+		private String sender = "JDK";
+		@PluginAttribute(value = "compression", defaultBoolean = false)
+		private boolean compression;
+		@PluginAttribute(value = "loadSheddingHighWater", defaultInt = 0)
+		private int loadSheddingHighWater;
+		@PluginAttribute(value = "loadSheddingLowWater", defaultInt = 50)
+		private int loadSheddingLowWater = 50;
+		@PluginAttribute(value = "loadSheddingLatencyMillis", defaultInt = 0)
+		private int loadSheddingLatencyMillis;
+		@PluginAttribute(value = "loadSheddingHysteresisSeconds", defaultInt = 30)
+		private int loadSheddingHysteresisSeconds = 30;
+		@PluginAttribute(value = "samplingLevel", defaultString = "INFO")
+		private String samplingLevel = "INFO";
+		@PluginAttribute(value = "traceSamplingRatio", defaultDouble = 1.0)
+		private double traceSamplingRatio = 1.0;
+		@PluginAttribute(value = "untracedSamplingRatio", defaultDouble = 1.0)
+		private double untracedSamplingRatio = 1.0;
 
 		/**
 		 * Get Active Gate URL.
@@ -221,23 +461,737 @@ public final class DynatraceGenericLogIngestAppender
 			return asBuilder();
 		}
 
+		/**
+		 * Should wait until the ActiveGate acknowledges the log event.
+		 *
+		 * @return true if will wait
+		 */
+		public boolean isBlocking() {
+			return blocking;
+		}
+
+		/**
+		 * Set blocking flag.
+		 *
+		 * @param blocking true - wait for the request carrying the log event, false - only enqueue the log event
+		 * @return this
+		 */
+		public B setBlocking(boolean blocking) {
+			this.blocking = blocking;
+			return asBuilder();
+		}
+
+		/**
+		 * Get path of the file for log events rejected by the ActiveGate.
+		 *
+		 * @return path or null
+		 */
+		public String getDeadLetterFile() {
+			return deadLetterFile;
+		}
+
+		/**
+		 * Set path of the file for log events rejected by the ActiveGate (400, 413), one JSON object per line.
+		 *
+		 * @param deadLetterFile path, null - rejected log events are only counted
+		 * @return this
+		 */
+		public B setDeadLetterFile(String deadLetterFile) {
+			this.deadLetterFile = deadLetterFile;
+			return asBuilder();
+		}
+
+		/**
+		 * Get capacity of the off-heap queue.
+		 *
+		 * @return bytes, 0 if log events wait on the heap
+		 */
+		public long getOffHeapQueueBytes() {
+			return offHeapQueueBytes;
+		}
+
+		/**
+		 * Set capacity of the off-heap queue. Log events waiting for the request are kept in direct memory outside the heap.
+		 *
+		 * @param offHeapQueueBytes bytes (at least 1 MiB), 0 - log events wait on the heap
+		 * @return this
+		 */
+		public B setOffHeapQueueBytes(long offHeapQueueBytes) {
+			this.offHeapQueueBytes = offHeapQueueBytes;
+			return asBuilder();
+		}
+
+		/**
+		 * Get format of requests.
+		 *
+		 * @return JSON or OTLP
+		 */
+		public String getProtocol() {
+			return protocol;
+		}
+
+		/**
+		 * Set format of requests. OTLP sends protobuf to the OTLP logs endpoint, constant properties become resource
+		 * attributes.
+		 *
+		 * @param protocol JSON (default) or OTLP
+		 * @return this
+		 */
+		public B setProtocol(String protocol) {
+			this.protocol = protocol;
+			return asBuilder();
+		}
+
+		/**
+		 * Get period of pushing appender's own metrics.
+		 *
+		 * @return seconds, 0 if metrics are not pushed
+		 */
+		public int getMetricsIntervalSeconds() {
+			return metricsIntervalSeconds;
+		}
+
+		/**
+		 * Set period of pushing appender's own metrics (delivered, failed, dropped log events, bytes, request latency, queue
+		 * depth) to the metrics ingest API. The token needs also the metrics ingest permission.
+		 *
+		 * @param metricsIntervalSeconds seconds, 0 - metrics are not pushed
+		 * @return this
+		 */
+		public B setMetricsIntervalSeconds(int metricsIntervalSeconds) {
+			this.metricsIntervalSeconds = metricsIntervalSeconds;
+			return asBuilder();
+		}
+
+		/**
+		 * Should record latency breakdown of the logging pipeline.
+		 *
+		 * @return true if will record
+		 */
+		public boolean isLatencyTracking() {
+			return latencyTracking;
+		}
+
+		/**
+		 * Set latency tracking flag. Percentiles of every stage (layout, lookups, encoding, queue wait, request, end to end)
+		 * are exposed over JMX.
+		 *
+		 * @param latencyTracking true - record latencies, false - no instrumentation
+		 * @return this
+		 */
+		public B setLatencyTracking(boolean latencyTracking) {
+			this.latencyTracking = latencyTracking;
+			return asBuilder();
+		}
+
+		/**
+		 * Get timeout of establishing the connection with ActiveGate.
+		 *
+		 * @return milliseconds
+		 */
+		public int getConnectTimeoutMillis() {
+			return connectTimeoutMillis;
+		}
+
+		/**
+		 * Set timeout of establishing the connection with ActiveGate.
+		 *
+		 * @param connectTimeoutMillis milliseconds
+		 * @return this
+		 */
+		public B setConnectTimeoutMillis(int connectTimeoutMillis) {
+			this.connectTimeoutMillis = connectTimeoutMillis;
+			return asBuilder();
+		}
+
+		/**
+		 * Get timeout of a single request to ActiveGate.
+		 *
+		 * @return milliseconds
+		 */
+		public int getRequestTimeoutMillis() {
+			return requestTimeoutMillis;
+		}
+
+		/**
+		 * Set timeout of a single request to ActiveGate, it bounds also the wait of blocking appender.
+		 *
+		 * @param requestTimeoutMillis milliseconds
+		 * @return this
+		 */
+		public B setRequestTimeoutMillis(int requestTimeoutMillis) {
+			this.requestTimeoutMillis = requestTimeoutMillis;
+			return asBuilder();
+		}
+
+		/**
+		 * Get idle time after which the connection is pinged.
+		 *
+		 * @return seconds, 0 if the connection is not pinged
+		 */
+		public int getKeepAliveSeconds() {
+			return keepAliveSeconds;
+		}
+
+		/**
+		 * Set idle time after which the connection is pinged, so proxies and ActiveGate do not close it between bursts.
+		 *
+		 * @param keepAliveSeconds seconds, 0 - no pings
+		 * @return this
+		 */
+		public B setKeepAliveSeconds(int keepAliveSeconds) {
+			this.keepAliveSeconds = keepAliveSeconds;
+			return asBuilder();
+		}
+
+		/**
+		 * Should blocking appender only enqueue log events until the connection is warmed up.
+		 *
+		 * @return true if will only enqueue
+		 */
+		public boolean isBufferUntilConnected() {
+			return bufferUntilConnected;
+		}
+
+		/**
+		 * Set buffering flag. Blocking appender does not wait for requests while the connection with ActiveGate is being
+		 * established, so the startup of the application is not delayed by the network.
+		 *
+		 * @param bufferUntilConnected true - only enqueue during warm-up, false - wait for requests
+		 * @return this
+		 */
+		public B setBufferUntilConnected(boolean bufferUntilConnected) {
+			this.bufferUntilConnected = bufferUntilConnected;
+			return asBuilder();
+		}
+
+		/**
+		 * Get routing rules.
+		 *
+		 * @return routes, null if all log events go to {@code activeGateUrl}
+		 */
+		public DynatraceGenericLogIngestRoute[] getRoutes() {
+			return routes;
+		}
+
+		/**
+		 * Set routing rules. Every route has its own queue, batching and transport, so a slow tenant does not delay others.
+		 *
+		 * @param routes routes
+		 * @return this
+		 */
+		public B setRoutes(DynatraceGenericLogIngestRoute... routes) {
+			this.routes = routes;
+			return asBuilder();
+		}
+
+		/**
+		 * Get number of stripes of the heap queue.
+		 *
+		 * @return stripes, 0 if one per available processor
+		 */
+		public int getQueueStripes() {
+			return queueStripes;
+		}
+
+		/**
+		 * Set number of stripes of the heap queue. Every producer thread enqueues into its own stripe, so many threads
+		 * logging at once do not contend on a single lock. Rounded up to a power of two, at most 64.
+		 *
+		 * @param queueStripes stripes, 1 - single queue, 0 - one per available processor
+		 * @return this
+		 */
+		public B setQueueStripes(int queueStripes) {
+			this.queueStripes = queueStripes;
+			return asBuilder();
+		}
+
+		/**
+		 * Get sender of the requests.
+		 *
+		 * @return name of the built-in sender or class name of the sender factory
+		 */
+		public String getSender() {
+			return sender;
+		}
+
+		/**
+		 * Set sender of the requests: {@code JDK} (java.net.http.HttpClient), {@code NIO} (HTTP/1.1 keep-alive client with
+		 * pipelining, plain HTTP only), {@code MEMORY} (no network, for tests and benchmarks), {@code AGGREGATOR} or
+		 * {@code AGGREGATOR:<host:port or socket path>} (host-local {@link DynatraceGenericLogIngestAggregator}, JSON only) or
+		 * class name of a {@link DynatraceGenericLogIngestSender.Factory} with a public no-arg constructor.
+		 *
+		 * @param sender sender
+		 * @return this
+		 */
+		public B setSender(String sender) {
+			this.sender = sender;
+			return asBuilder();
+		}
+
+		/**
+		 * Should compress request bodies.
+		 *
+		 * @return true if bodies are compressed
+		 */
+		public boolean isCompression() {
+			return compression;
+		}
+
+		/**
+		 * Set compression flag. Request bodies are compressed with gzip, batches of similar log events shrink several times
+		 * at the cost of CPU time of the sender thread.
+		 *
+		 * @param compression true - gzip, false - plain bodies
+		 * @return this
+		 */
+		public B setCompression(boolean compression) {
+			this.compression = compression;
+			return asBuilder();
+		}
+
+		/**
+		 * Get queue utilization which starts load shedding.
+		 *
+		 * @return percent, 0 if log events are never shed
+		 */
+		public int getLoadSheddingHighWater() {
+			return loadSheddingHighWater;
+		}
+
+		/**
+		 * Set queue utilization which starts load shedding. Every second above it raises the minimum level of the appender
+		 * one step, so TRACE, DEBUG and INFO log events are dropped in turn before they are formatted. WARN and more severe
+		 * log events are never shed.
+		 *
+		 * @param loadSheddingHighWater percent, 0 - no load shedding
+		 * @return this
+		 */
+		public B setLoadSheddingHighWater(int loadSheddingHighWater) {
+			this.loadSheddingHighWater = loadSheddingHighWater;
+			return asBuilder();
+		}
+
+		/**
+		 * Get queue utilization below which the minimum level is lowered again.
+		 *
+		 * @return percent
+		 */
+		public int getLoadSheddingLowWater() {
+			return loadSheddingLowWater;
+		}
+
+		/**
+		 * Set queue utilization below which the minimum level is lowered one step after every hysteresis period.
+		 *
+		 * @param loadSheddingLowWater percent, less than the high-water mark
+		 * @return this
+		 */
+		public B setLoadSheddingLowWater(int loadSheddingLowWater) {
+			this.loadSheddingLowWater = loadSheddingLowWater;
+			return asBuilder();
+		}
+
+		/**
+		 * Get average request latency which starts load shedding.
+		 *
+		 * @return milliseconds, 0 if the latency is not watched
+		 */
+		public int getLoadSheddingLatencyMillis() {
+			return loadSheddingLatencyMillis;
+		}
+
+		/**
+		 * Set average request latency which starts load shedding like the high-water mark, below its half the latency lets
+		 * the minimum level go down.
+		 *
+		 * @param loadSheddingLatencyMillis milliseconds, 0 - only the queue utilization is watched
+		 * @return this
+		 */
+		public B setLoadSheddingLatencyMillis(int loadSheddingLatencyMillis) {
+			this.loadSheddingLatencyMillis = loadSheddingLatencyMillis;
+			return asBuilder();
+		}
+
+		/**
+		 * Get time the load must stay low before the minimum level goes one step down.
+		 *
+		 * @return seconds
+		 */
+		public int getLoadSheddingHysteresisSeconds() {
+			return loadSheddingHysteresisSeconds;
+		}
+
+		/**
+		 * Set time the queue utilization and the latency must stay below the low-water mark before the minimum level goes
+		 * one step down, so a level does not flap with every burst.
+		 *
+		 * @param loadSheddingHysteresisSeconds seconds
+		 * @return this
+		 */
+		public B setLoadSheddingHysteresisSeconds(int loadSheddingHysteresisSeconds) {
+			this.loadSheddingHysteresisSeconds = loadSheddingHysteresisSeconds;
+			return asBuilder();
+		}
+
+		/**
+		 * Get the most severe level of sampled log events.
+		 *
+		 * @return level name
+		 */
+		public String getSamplingLevel() {
+			return samplingLevel;
+		}
+
+		/**
+		 * Set the most severe level of sampled log events, more severe log events are always sent.
+		 *
+		 * @param samplingLevel level name
+		 * @return this
+		 */
+		public B setSamplingLevel(String samplingLevel) {
+			this.samplingLevel = samplingLevel;
+			return asBuilder();
+		}
+
+		/**
+		 * Get ratio of traces whose log events are sent when the trace itself is not sampled.
+		 *
+		 * @return ratio from 0 to 1
+		 */
+		public double getTraceSamplingRatio() {
+			return traceSamplingRatio;
+		}
+
+		/**
+		 * Set ratio of traces whose log events are sent when the trace itself is not sampled ({@code trace_flags} of the
+		 * context data). The decision depends only on {@code trace_id}, so all services and JVMs keep the same traces.
+		 * Log events of sampled traces are always sent.
+		 *
+		 * @param traceSamplingRatio ratio from 0 to 1, 1 - all log events with a trace are sent
+		 * @return this
+		 */
+		public B setTraceSamplingRatio(double traceSamplingRatio) {
+			this.traceSamplingRatio = traceSamplingRatio;
+			return asBuilder();
+		}
+
+		/**
+		 * Get ratio of log events without a trace which are sent.
+		 *
+		 * @return ratio from 0 to 1
+		 */
+		public double getUntracedSamplingRatio() {
+			return untracedSamplingRatio;
+		}
+
+		/**
+		 * Set ratio of log events without a trace which are sent, chosen at random.
+		 *
+		 * @param untracedSamplingRatio ratio from 0 to 1, 1 - all log events without a trace are sent
+		 * @return this
+		 */
+		public B setUntracedSamplingRatio(double untracedSamplingRatio) {
+			this.untracedSamplingRatio = untracedSamplingRatio;
+			return asBuilder();
+		}
+
+		/**
+		 * Get built-in attributes of the log event sent as separate fields.
+		 *
+		 * @return comma separated keys, null if none
+		 */
+		public String getSemanticAttributes() {
+			return semanticAttributes;
+		}
+
+		/**
+		 * Set built-in attributes of the log event sent as separate fields: {@code log.logger}, {@code thread.name},
+		 * {@code thread.id}, {@code code.namespace}, {@code code.function}, {@code code.lineno}, {@code log.marker}.
+		 * Source location ({@code code.*}) makes Log4j capture the caller of every log event.
+		 *
+		 * @param semanticAttributes comma separated keys
+		 * @return this
+		 */
+		public B setSemanticAttributes(String semanticAttributes) {
+			this.semanticAttributes = semanticAttributes;
+			return asBuilder();
+		}
+
+		/**
+		 * Get abbreviation of logger names sent as {@code log.logger}.
+		 *
+		 * @return pattern of {@code %logger} conversion, null if full names are sent
+		 */
+		public String getLoggerAbbreviation() {
+			return loggerAbbreviation;
+		}
+
+		/**
+		 * Set abbreviation of logger names sent as {@code log.logger}, the same as precision of {@code %logger} conversion
+		 * of {@code PatternLayout} (for example {@code 1.} or {@code 2}).
+		 *
+		 * @param loggerAbbreviation pattern, null - full names
+		 * @return this
+		 */
+		public B setLoggerAbbreviation(String loggerAbbreviation) {
+			this.loggerAbbreviation = loggerAbbreviation;
+			return asBuilder();
+		}
+
 		@Override
 		public DynatraceGenericLogIngestAppender build() {
-			final var managerConfig =
-					new ManagerConfig(requireNonNull(getConfiguration(), "configuration is null").getLoggerContext(),
+			final var requestProtocol = Strings.isBlank(getProtocol())
+					? Protocol.JSON
+					: Protocol.valueOf(getProtocol().trim().toUpperCase(Locale.ROOT));
+			final var resourceAttributes = new LinkedHashMap<String, String>();
+			if (requestProtocol == Protocol.OTLP && nonNull(getPropertyArray())) {
+				for (var property : getPropertyArray()) {
+					if (!property.isValueNeedsLookup()) {
+						resourceAttributes.put(property.getName(), property.getValue());
+					}
+				}
+			}
+			final var managerConfig = ManagerConfig.builder(
+							requireNonNull(getConfiguration(), "configuration is null").getLoggerContext(),
 							getActiveGateUrl(),
-							getToken(),
-							isSslValidation());
+							getToken())
+					.setSslValidation(isSslValidation())
+					.setBlocking(isBlocking())
+					.setDeadLetterFile(Strings.isBlank(getDeadLetterFile()) ? null : Path.of(getDeadLetterFile()))
+					.setOffHeapQueueBytes(getOffHeapQueueBytes())
+					.setProtocol(requestProtocol)
+					.setResourceAttributes(resourceAttributes)
+					.setMetricsInterval(Duration.ofSeconds(getMetricsIntervalSeconds()))
+					.setLatencyTracking(isLatencyTracking())
+					.setConnectTimeout(Duration.ofMillis(getConnectTimeoutMillis()))
+					.setRequestTimeout(Duration.ofMillis(getRequestTimeoutMillis()))
+					.setKeepAliveInterval(Duration.ofSeconds(getKeepAliveSeconds()))
+					.setBufferUntilConnected(isBufferUntilConnected())
+					.setQueueStripes(getQueueStripes())
+					.setSender(Strings.isBlank(getSender()) ? TransportConfig.JDK_SENDER : getSender())
+					.setCompression(isCompression())
+					.build();
 
 			final var manager = getManager(getName(), managerConfig);
+			final var routeManagers = new LinkedHashMap<DynatraceGenericLogIngestRoute, DynatraceGenericLogIngestManager>();
+			if (nonNull(getRoutes())) {
+				for (var route : getRoutes()) {
+					routeManagers.put(route, getManager(getName() + "#route" + (routeManagers.size() + 1),
+							managerConfig.withEndpoint(route.getActiveGateUrl(), route.getToken())));
+				}
+			}
+
+			return new DynatraceGenericLogIngestAppender(AppenderConfig.builder(getName(),
+							getOrCreateLayout(),
+							getConfiguration().getStrSubstitutor(),
+							new DynatraceGenericLogIngestRouter(manager, routeManagers))
+					.setFilter(getFilter())
+					.setIgnoreExceptions(isIgnoreExceptions())
+					.setProperties(getPropertyArray())
+					.setProtocol(requestProtocol)
+					.setLatencies(manager.getLatencies())
+					.setSemanticAttributes(
+							DynatraceGenericLogIngestSemanticAttributes.parse(getSemanticAttributes(), getLoggerAbbreviation()))
+					.setSheddingConfig(new SheddingConfig(getLoadSheddingHighWater() / 100.0,
+							getLoadSheddingLowWater() / 100.0,
+							Duration.ofMillis(getLoadSheddingLatencyMillis()),
+							Duration.ofSeconds(getLoadSheddingHysteresisSeconds())))
+					.setSamplingConfig(new SamplingConfig(Level.toLevel(getSamplingLevel(), Level.INFO),
+							getTraceSamplingRatio(),
+							getUntracedSamplingRatio()))
+					.build());
+		}
+	}
+
+	static final class AppenderConfig {
+
+		private final String name;
+		private final Layout<? extends Serializable> layout;
+		private final StrSubstitutor strSubstitutor;
+		private final DynatraceGenericLogIngestRouter router;
+		private final Filter filter;
+		private final boolean ignoreExceptions;
+		private final Property[] properties;
+		private final Protocol protocol;
+		private final DynatraceGenericLogIngestLatencies latencies;
+		private final DynatraceGenericLogIngestSemanticAttributes semanticAttributes;
+		private final SheddingConfig sheddingConfig;
+		private final SamplingConfig samplingConfig;
+
+		private AppenderConfig(Builder builder) {
+			this.name = builder.name;
+			this.layout = requireNonNull(builder.layout, "layout is null");
+			this.strSubstitutor = requireNonNull(builder.strSubstitutor, "strSubstitutor is null");
+			this.router = requireNonNull(builder.router, "router is null");
+			this.filter = builder.filter;
+			this.ignoreExceptions = builder.ignoreExceptions;
+			this.properties = builder.properties;
+			this.protocol = requireNonNull(builder.protocol, "protocol is null");
+			this.latencies = requireNonNull(builder.latencies, "latencies is null");
+			this.semanticAttributes = requireNonNull(builder.semanticAttributes, "semanticAttributes is null");
+			this.sheddingConfig = requireNonNull(builder.sheddingConfig, "sheddingConfig is null");
+			this.samplingConfig = requireNonNull(builder.samplingConfig, "samplingConfig is null");
+		}
+
+		/**
+		 * @param router chooses the manager of every log event, its managers are stopped with the appender
+		 * @return builder with defaults: no filter, exceptions not ignored, no properties, JSON, nothing else enabled
+		 */
+		static Builder builder(String name,
+				Layout<? extends Serializable> layout,
+				StrSubstitutor strSubstitutor,
+				DynatraceGenericLogIngestRouter router) {
+			return new Builder(name, layout, strSubstitutor, router);
+		}
 
-			return new DynatraceGenericLogIngestAppender(getName(),
-					getOrCreateLayout(),
-					getFilter(),
-					getConfiguration().getStrSubstitutor(),
-					isIgnoreExceptions(),
-					getPropertyArray(),
-					manager);
+		/**
+		 * @param manager the only manager, all log events are sent through it
+		 */
+		static Builder builder(String name,
+				Layout<? extends Serializable> layout,
+				StrSubstitutor strSubstitutor,
+				AbstractDynatraceGenericLogIngestManager manager) {
+			return builder(name, layout, strSubstitutor,
+					new DynatraceGenericLogIngestRouter(requireNonNull(manager, "manager is null")));
+		}
+
+		String getName() {
+			return name;
+		}
+
+		Layout<? extends Serializable> getLayout() {
+			return layout;
+		}
+
+		StrSubstitutor getStrSubstitutor() {
+			return strSubstitutor;
+		}
+
+		DynatraceGenericLogIngestRouter getRouter() {
+			return router;
+		}
+
+		Filter getFilter() {
+			return filter;
+		}
+
+		boolean isIgnoreExceptions() {
+			return ignoreExceptions;
+		}
+
+		Property[] getProperties() {
+			return properties;
+		}
+
+		Protocol getProtocol() {
+			return protocol;
+		}
+
+		DynatraceGenericLogIngestLatencies getLatencies() {
+			return latencies;
+		}
+
+		DynatraceGenericLogIngestSemanticAttributes getSemanticAttributes() {
+			return semanticAttributes;
+		}
+
+		SheddingConfig getSheddingConfig() {
+			return sheddingConfig;
+		}
+
+		SamplingConfig getSamplingConfig() {
+			return samplingConfig;
+		}
+
+		static final class Builder {
+
+			private final String name;
+			private final Layout<? extends Serializable> layout;
+			private final StrSubstitutor strSubstitutor;
+			private final DynatraceGenericLogIngestRouter router;
+			private Filter filter;
+			private boolean ignoreExceptions;
+			private Property[] properties;
+			private Protocol protocol = Protocol.JSON;
+			private DynatraceGenericLogIngestLatencies latencies = DynatraceGenericLogIngestLatencies.DISABLED;
+			private DynatraceGenericLogIngestSemanticAttributes semanticAttributes =
+					DynatraceGenericLogIngestSemanticAttributes.NONE;
+			private SheddingConfig sheddingConfig = SheddingConfig.DISABLED;
+			private SamplingConfig samplingConfig = SamplingConfig.DISABLED;
+
+			private Builder(String name,
+					Layout<? extends Serializable> layout,
+					StrSubstitutor strSubstitutor,
+					DynatraceGenericLogIngestRouter router) {
+				this.name = name;
+				this.layout = layout;
+				this.strSubstitutor = strSubstitutor;
+				this.router = router;
+			}
+
+			Builder setFilter(Filter filter) {
+				this.filter = filter;
+				return this;
+			}
+
+			Builder setIgnoreExceptions(boolean ignoreExceptions) {
+				this.ignoreExceptions = ignoreExceptions;
+				return this;
+			}
+
+			/**
+			 * @param properties attributes sent with every log event, names must be distinct
+			 */
+			Builder setProperties(Property[] properties) {
+				this.properties = properties;
+				return this;
+			}
+
+			/**
+			 * @param protocol in OTLP constant properties are sent once per request as resource attributes, only properties
+			 * 		with lookups are encoded with every log event
+			 */
+			Builder setProtocol(Protocol protocol) {
+				this.protocol = protocol;
+				return this;
+			}
+
+			/**
+			 * @param latencies latency breakdown the stages of appending are recorded into
+			 */
+			Builder setLatencies(DynatraceGenericLogIngestLatencies latencies) {
+				this.latencies = latencies;
+				return this;
+			}
+
+			/**
+			 * @param semanticAttributes built-in attributes of the log event sent as separate fields
+			 */
+			Builder setSemanticAttributes(DynatraceGenericLogIngestSemanticAttributes semanticAttributes) {
+				this.semanticAttributes = semanticAttributes;
+				return this;
+			}
+
+			/**
+			 * @param sheddingConfig load shedding watching queues and requests of the router's managers
+			 */
+			Builder setSheddingConfig(SheddingConfig sheddingConfig) {
+				this.sheddingConfig = sheddingConfig;
+				return this;
+			}
+
+			/**
+			 * @param samplingConfig trace-aware sampling of log events of low severity
+			 */
+			Builder setSamplingConfig(SamplingConfig samplingConfig) {
+				this.samplingConfig = samplingConfig;
+				return this;
+			}
+
+			AppenderConfig build() {
+				return new AppenderConfig(this);
+			}
 		}
 	}
 }
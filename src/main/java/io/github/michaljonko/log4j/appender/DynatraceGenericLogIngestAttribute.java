@@ -7,6 +7,7 @@ final class DynatraceGenericLogIngestAttribute {
 	private final String name;
 	private final String value;
 	private final boolean valueNeedsLookup;
+	private final byte[] jsonKey;
 	private final int hash;
 
 	DynatraceGenericLogIngestAttribute(String name,
@@ -15,6 +16,7 @@ final class DynatraceGenericLogIngestAttribute {
 		this.name = name;
 		this.value = value;
 		this.valueNeedsLookup = valueNeedsLookup;
+		this.jsonKey = DynatraceGenericLogIngestJsonEscaper.fieldKey(name);
 		this.hash = Objects.hash(name, value, valueNeedsLookup);
 	}
 
@@ -26,6 +28,13 @@ final class DynatraceGenericLogIngestAttribute {
 		return value;
 	}
 
+	/**
+	 * @return escaped name with quotes and colon, encoded once
+	 */
+	byte[] getJsonKey() {
+		return jsonKey;
+	}
+
 	boolean valueNeedsLookup() {
 		return valueNeedsLookup;
 	}
@@ -0,0 +1,408 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestAppender.AppenderConfig;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestManager.ManagerConfig;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.lookup.StrSubstitutor;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.Strings;
+
+/**
+ * Command line tool uploading existing log files, e.g. after an outage or when a legacy service is onboarded.
+ * <p>
+ * Files are read through memory-mapped windows by {@link DynatraceGenericLogIngestLogFileReader}, records are encoded by
+ * {@link DynatraceGenericLogIngestAppender} and sent by a non-blocking {@link DynatraceGenericLogIngestManager}, so the
+ * transport batches them and keeps as many requests in flight as its adaptive limit allows. The reader is paused while
+ * the lane of the record is half full. Every {@value #CHECKPOINT_RECORDS} records the tool waits until everything sent
+ * is acknowledged and saves the offset, a rerun resumes there (log events after the last checkpoint can be sent twice).
+ * <p>
+ * Severity is the first level name in the record, timestamp is the ISO-8601 date and time at its beginning, the
+ * timestamp of the previous record otherwise.
+ */
+public final class DynatraceGenericLogIngestBackfill {
+
+	static final int CHECKPOINT_RECORDS = 10_000;
+	static final String LOGGER_NAME = "dynatrace.backfill";
+	static final String SOURCE_ATTRIBUTE = "log.source";
+
+	private static final int EXIT_FAILED = 1;
+	private static final int EXIT_USAGE = 2;
+	private static final long THROTTLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+	private static final Duration CHECKPOINT_TIMEOUT = Duration.ofMinutes(5L);
+	private static final Pattern LEVEL = Pattern.compile("\\b(FATAL|ERROR|SEVERE|WARN|WARNING|INFO|DEBUG|FINE|TRACE)\\b");
+	private static final Pattern TIMESTAMP = Pattern.compile(
+			"^\\[?(\\d{4}-\\d{2}-\\d{2})[T ](\\d{2}:\\d{2}:\\d{2})(?:[.,](\\d{1,9}))?\\s?(Z|[+-]\\d{2}:?\\d{2})?");
+	private static final String USAGE = "Usage: java -cp <appender and log4j-core jars> "
+			+ DynatraceGenericLogIngestBackfill.class.getName() + " [options] <file>...\n"
+			+ "  --activeGateUrl=<url>           Generic Log Ingest (or OTLP logs) endpoint, required\n"
+			+ "  --token=<token>                 API token, DT_API_TOKEN environment variable by default\n"
+			+ "  --protocol=JSON|OTLP            default JSON\n"
+			+ "  --sslValidation=true|false      default true\n"
+			+ "  --continuation=<regex>          lines belonging to the previous record, empty - every line is a record,\n"
+			+ "                                  default " + DynatraceGenericLogIngestLogFileReader.DEFAULT_CONTINUATION + "\n"
+			+ "  --checkpoint=<file>             offsets of delivered log events, read on start\n"
+			+ "  --zone=<zone id>                zone of timestamps without offset, default system zone\n"
+			+ "  --attribute=<name>=<value>      attribute of every log event, repeatable\n"
+			+ "  --requestTimeoutMillis=<millis> default 30000";
+
+	private final Options options;
+	private final PrintStream out;
+	private final LoggerContext loggerContext;
+
+	private DynatraceGenericLogIngestBackfill(Options options,
+			PrintStream out) {
+		this.options = options;
+		this.out = out;
+		this.loggerContext = new LoggerContext(LOGGER_NAME);
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.getenv(), System.out, System.err));
+	}
+
+	/**
+	 * @return exit code: 0 - every file uploaded, 1 - upload failed, 2 - invalid arguments
+	 */
+	static int run(String[] args,
+			Map<String, String> environment,
+			PrintStream out,
+			PrintStream err) {
+		final Options options;
+		try {
+			options = Options.parse(args, environment);
+		} catch (IllegalArgumentException e) {
+			err.println(e.getMessage());
+			err.println(USAGE);
+			return EXIT_USAGE;
+		}
+
+		final var backfill = new DynatraceGenericLogIngestBackfill(options, out);
+		try {
+			final var checkpoints = new DynatraceGenericLogIngestCheckpoints(options.checkpoint);
+			for (var file : options.files) {
+				backfill.upload(file, checkpoints);
+			}
+			return 0;
+		} catch (IOException | RuntimeException e) {
+			err.println("Back-fill failed: " + e.getMessage());
+			return EXIT_FAILED;
+		}
+	}
+
+	private void upload(Path file,
+			DynatraceGenericLogIngestCheckpoints checkpoints) throws IOException {
+		final var attributes = new LinkedHashMap<>(options.attributes);
+		attributes.put(SOURCE_ATTRIBUTE, file.toAbsolutePath().normalize().toString());
+		final var manager = new DynatraceGenericLogIngestManager(LOGGER_NAME, managerConfig(attributes));
+		final var started = System.nanoTime();
+		var records = 0L;
+		try (var reader = newReader(file, checkpoints)) {
+			final var appender = new DynatraceGenericLogIngestAppender(AppenderConfig.builder(LOGGER_NAME,
+							PatternLayout.newBuilder().withPattern("%m").build(),
+							new StrSubstitutor(),
+							manager)
+					.setProperties(properties(attributes))
+					.setProtocol(options.protocol)
+					.build());
+			final var resumed = checkpoints.offset(file);
+			var timeMillis = System.currentTimeMillis();
+			var offset = resumed;
+			DynatraceGenericLogIngestLogFileReader.Record record;
+			while (nonNull(record = reader.next())) {
+				final var level = level(record.getContent());
+				timeMillis = timeMillis(record.getContent(), options.zone, timeMillis);
+				awaitQueue(manager, level);
+				appender.append(event(record.getContent(), level, timeMillis));
+				offset = record.getEndOffset();
+				if (++records % CHECKPOINT_RECORDS == 0L) {
+					checkpoint(manager, checkpoints, file, offset);
+				}
+			}
+			checkpoint(manager, checkpoints, file, offset);
+			final var seconds = Math.max(1L, System.nanoTime() - started) / 1_000_000_000.0d;
+			out.printf(Locale.ROOT, "%s: %d records, %d bytes from offset %d, %.0f records/s%n",
+					file, records, offset - resumed, resumed, records / seconds);
+		} finally {
+			manager.stop(CHECKPOINT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private DynatraceGenericLogIngestLogFileReader newReader(Path file,
+			DynatraceGenericLogIngestCheckpoints checkpoints) throws IOException {
+		final var offset = checkpoints.offset(file);
+		try {
+			return new DynatraceGenericLogIngestLogFileReader(file, offset, options.continuation);
+		} catch (IllegalArgumentException e) {
+			out.printf(Locale.ROOT, "%s: shorter than checkpoint offset %d, uploaded from the beginning%n", file, offset);
+			checkpoints.save(file, 0L);
+			return new DynatraceGenericLogIngestLogFileReader(file, 0L, options.continuation);
+		}
+	}
+
+	private ManagerConfig managerConfig(Map<String, String> attributes) {
+		return ManagerConfig.builder(loggerContext, options.activeGateUrl, options.token)
+				.setSslValidation(options.sslValidation)
+				.setBlocking(false)
+				.setProtocol(options.protocol)
+				.setResourceAttributes(options.protocol == Protocol.OTLP ? attributes : Map.of())
+				.setRequestTimeout(options.requestTimeout)
+				.build();
+	}
+
+	/**
+	 * In OTLP constant attributes are sent once per request as resource attributes.
+	 */
+	private Property[] properties(Map<String, String> attributes) {
+		if (options.protocol == Protocol.OTLP) {
+			return new Property[0];
+		}
+		return attributes.entrySet().stream()
+				.map(attribute -> Property.createProperty(attribute.getKey(), attribute.getValue()))
+				.toArray(Property[]::new);
+	}
+
+	/**
+	 * Non-blocking manager drops log events of a full lane, the reader waits while the lane is half full instead.
+	 */
+	private static void awaitQueue(DynatraceGenericLogIngestManager manager,
+			Level level) {
+		final var lane = Lane.of(level);
+		while (manager.getTransport().getQueueSize(lane) >= lane.getCapacity() / 2) {
+			LockSupport.parkNanos(THROTTLE_NANOS);
+		}
+	}
+
+	/**
+	 * Wait until every record sent so far is acknowledged and save the offset after the last one.
+	 *
+	 * @throws IOException when a log event has not been delivered, the checkpoint is not moved then
+	 */
+	private static void checkpoint(DynatraceGenericLogIngestManager manager,
+			DynatraceGenericLogIngestCheckpoints checkpoints,
+			Path file,
+			long offset) throws IOException {
+		final var statistics = manager.getStatistics();
+		if (!statistics.awaitCompletion(CHECKPOINT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+			throw new IOException(file + ": " + statistics.getPending() + " log events not acknowledged within "
+					+ CHECKPOINT_TIMEOUT + ", resume from offset " + checkpoints.offset(file));
+		}
+		final var undelivered = statistics.getFailed() + statistics.getDropped() + statistics.getAbandoned();
+		if (undelivered > 0L) {
+			throw new IOException(file + ": " + undelivered + " log events not delivered, resume from offset "
+					+ checkpoints.offset(file));
+		}
+		checkpoints.save(file, offset);
+	}
+
+	private static LogEvent event(String content,
+			Level level,
+			long timeMillis) {
+		return Log4jLogEvent.newBuilder()
+				.setLoggerName(LOGGER_NAME)
+				.setLevel(level)
+				.setMessage(new SimpleMessage(content))
+				.setTimeMillis(timeMillis)
+				.build();
+	}
+
+	/**
+	 * @return first level name in the record, INFO if there is none
+	 */
+	static Level level(String content) {
+		final var matcher = LEVEL.matcher(content);
+		if (!matcher.find()) {
+			return Level.INFO;
+		}
+		switch (matcher.group(1)) {
+			case "SEVERE":
+				return Level.ERROR;
+			case "WARNING":
+				return Level.WARN;
+			case "FINE":
+				return Level.DEBUG;
+			default:
+				return Level.valueOf(matcher.group(1));
+		}
+	}
+
+	/**
+	 * @param zone zone of the timestamp without offset
+	 * @param previousMillis time of the previous record, used when the record does not start with a timestamp
+	 */
+	static long timeMillis(String content,
+			ZoneId zone,
+			long previousMillis) {
+		final var matcher = TIMESTAMP.matcher(content);
+		if (!matcher.find()) {
+			return previousMillis;
+		}
+		final var fraction = isNull(matcher.group(3)) ? "" : "." + matcher.group(3);
+		final var dateTime = matcher.group(1) + "T" + matcher.group(2) + fraction;
+		try {
+			final var offset = matcher.group(4);
+			if (isNull(offset)) {
+				return LocalDateTime.parse(dateTime).atZone(zone).toInstant().toEpochMilli();
+			}
+			final var isoOffset = offset.length() == 5 ? offset.substring(0, 3) + ":" + offset.substring(3) : offset;
+			return OffsetDateTime.parse(dateTime + isoOffset).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return previousMillis;
+		}
+	}
+
+	static final class Options {
+
+		private final URL activeGateUrl;
+		private final String token;
+		private final Protocol protocol;
+		private final boolean sslValidation;
+		private final Pattern continuation;
+		private final Path checkpoint;
+		private final ZoneId zone;
+		private final Map<String, String> attributes;
+		private final Duration requestTimeout;
+		private final List<Path> files;
+
+		private Options(URL activeGateUrl,
+				String token,
+				Protocol protocol,
+				boolean sslValidation,
+				Pattern continuation,
+				Path checkpoint,
+				ZoneId zone,
+				Map<String, String> attributes,
+				Duration requestTimeout,
+				List<Path> files) {
+			this.activeGateUrl = activeGateUrl;
+			this.token = token;
+			this.protocol = protocol;
+			this.sslValidation = sslValidation;
+			this.continuation = continuation;
+			this.checkpoint = checkpoint;
+			this.zone = zone;
+			this.attributes = Map.copyOf(attributes);
+			this.requestTimeout = requestTimeout;
+			this.files = List.copyOf(files);
+		}
+
+		/**
+		 * @throws IllegalArgumentException when arguments are invalid, message describes the problem
+		 */
+		static Options parse(String[] args,
+				Map<String, String> environment) {
+			URL activeGateUrl = null;
+			var token = environment.get("DT_API_TOKEN");
+			var protocol = Protocol.JSON;
+			var sslValidation = true;
+			var continuation = DynatraceGenericLogIngestLogFileReader.DEFAULT_CONTINUATION;
+			Path checkpoint = null;
+			var zone = ZoneId.systemDefault();
+			final var attributes = new LinkedHashMap<String, String>();
+			var requestTimeout = ManagerConfig.DEFAULT_TIMEOUT;
+			final var files = new ArrayList<Path>();
+
+			for (var arg : args) {
+				if (!arg.startsWith("--")) {
+					files.add(Path.of(arg));
+					continue;
+				}
+				final var separator = arg.indexOf('=');
+				if (separator < 0) {
+					throw new IllegalArgumentException("option without value: " + arg);
+				}
+				final var value = arg.substring(separator + 1);
+				try {
+					switch (arg.substring(2, separator)) {
+						case "activeGateUrl":
+							activeGateUrl = new URL(value);
+							break;
+						case "token":
+							token = value;
+							break;
+						case "protocol":
+							protocol = protocol(value);
+							break;
+						case "sslValidation":
+							sslValidation = Boolean.parseBoolean(value);
+							break;
+						case "continuation":
+							continuation = value.isEmpty() ? null : Pattern.compile(value);
+							break;
+						case "checkpoint":
+							checkpoint = Path.of(value);
+							break;
+						case "zone":
+							zone = ZoneId.of(value);
+							break;
+						case "attribute":
+							final var nameEnd = value.indexOf('=');
+							if (nameEnd < 1) {
+								throw new IllegalArgumentException("attribute is not name=value: " + value);
+							}
+							attributes.put(value.substring(0, nameEnd), value.substring(nameEnd + 1));
+							break;
+						case "requestTimeoutMillis":
+							requestTimeout = Duration.ofMillis(Long.parseLong(value));
+							break;
+						default:
+							throw new IllegalArgumentException("unknown option: " + arg);
+					}
+				} catch (MalformedURLException | DateTimeException | PatternSyntaxException | NumberFormatException e) {
+					throw new IllegalArgumentException("invalid option " + arg + ": " + e.getMessage(), e);
+				}
+			}
+
+			if (isNull(activeGateUrl)) {
+				throw new IllegalArgumentException("--activeGateUrl is required");
+			}
+			if (Strings.isBlank(token)) {
+				throw new IllegalArgumentException("--token or DT_API_TOKEN environment variable is required");
+			}
+			if (files.isEmpty()) {
+				throw new IllegalArgumentException("no file to upload");
+			}
+			return new Options(activeGateUrl, token, protocol, sslValidation, continuation, checkpoint, zone, attributes,
+					requestTimeout, files);
+		}
+
+		private static Protocol protocol(String value) {
+			for (var protocol : Protocol.values()) {
+				if (protocol.name().equalsIgnoreCase(value.trim())) {
+					return protocol;
+				}
+			}
+			throw new IllegalArgumentException("unknown protocol: " + value);
+		}
+	}
+}
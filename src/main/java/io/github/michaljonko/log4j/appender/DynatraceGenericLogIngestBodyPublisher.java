@@ -0,0 +1,192 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request body streamed to the HTTP client in fixed-size chunks, so a large batch is never joined into one array.
+ * <p>
+ * Encoded log events are copied into pooled {@link #CHUNK_BYTES} chunks only when the client asks for more of the body,
+ * buffers of a chunk size or bigger are passed as they are. The client may still hold a chunk after it asked for the next
+ * one (HTTP/2 frames are queued), so chunks go back to the pool when the exchange is complete, see {@link #release()}.
+ * Every subscription streams the whole body again, the client subscribes once more when it retries the request.
+ */
+final class DynatraceGenericLogIngestBodyPublisher
+		implements Flow.Publisher<ByteBuffer> {
+
+	static final int CHUNK_BYTES = 16 * 1024;
+	static final int MAX_POOLED_CHUNKS = 256;
+
+	private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger POOLED = new AtomicInteger();
+
+	private final ByteBuffer[] body;
+	private final long contentLength;
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private boolean released;
+
+	DynatraceGenericLogIngestBodyPublisher(ByteBuffer[] body) {
+		this.body = requireNonNull(body, "body is null").clone();
+		var length = 0L;
+		for (var buffer : this.body) {
+			length += buffer.remaining();
+		}
+		this.contentLength = length;
+	}
+
+	long getContentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+		requireNonNull(subscriber, "subscriber is null");
+		subscriber.onSubscribe(new BodySubscription(subscriber));
+	}
+
+	/**
+	 * Return chunks to the pool, the body must not be read any more.
+	 */
+	void release() {
+		synchronized (chunks) {
+			released = true;
+			for (var chunk : chunks) {
+				if (POOLED.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+					POOL.offer(chunk.clear());
+				} else {
+					POOLED.decrementAndGet();
+				}
+			}
+			chunks.clear();
+		}
+	}
+
+	/**
+	 * @return chunk taken from the pool or a new one, not returned to the pool when the body is already released
+	 */
+	private ByteBuffer chunk() {
+		var chunk = POOL.poll();
+		if (chunk == null) {
+			chunk = ByteBuffer.allocate(CHUNK_BYTES);
+		} else {
+			POOLED.decrementAndGet();
+		}
+		synchronized (chunks) {
+			if (!released) {
+				chunks.add(chunk);
+			}
+		}
+		return chunk;
+	}
+
+	static int getPooledChunks() {
+		return POOLED.get();
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestBodyPublisher.class.getSimpleName() + "[", "]")
+				.add("buffers=" + body.length)
+				.add("contentLength=" + contentLength)
+				.toString();
+	}
+
+	/**
+	 * Items are emitted only on demand, by a single thread at a time.
+	 */
+	private final class BodySubscription
+			implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super ByteBuffer> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger drains = new AtomicInteger();
+		private volatile boolean done;
+		private int index;
+		private ByteBuffer current;
+
+		private BodySubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0L) {
+				cancel();
+				subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+				return;
+			}
+			demand.getAndAccumulate(n, (previous, added) -> previous + added < 0L ? Long.MAX_VALUE : previous + added);
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			done = true;
+		}
+
+		private void drain() {
+			if (drains.getAndIncrement() != 0) {
+				return;
+			}
+			do {
+				while (!done && demand.get() > 0L) {
+					final var item = next();
+					if (item == null) {
+						done = true;
+						subscriber.onComplete();
+						break;
+					}
+					demand.decrementAndGet();
+					subscriber.onNext(item);
+				}
+			} while (drains.decrementAndGet() != 0);
+		}
+
+		/**
+		 * @return next part of the body, null at the end
+		 */
+		private ByteBuffer next() {
+			if (!advance()) {
+				return null;
+			}
+			if (current.remaining() >= CHUNK_BYTES) {
+				final var item = current.asReadOnlyBuffer();
+				current = null;
+				return item;
+			}
+
+			final var chunk = chunk();
+			while (chunk.hasRemaining() && advance()) {
+				if (current.remaining() >= CHUNK_BYTES && chunk.position() > 0) {
+					break;
+				}
+				final var copied = Math.min(chunk.remaining(), current.remaining());
+				chunk.put(current.duplicate().limit(current.position() + copied));
+				current.position(current.position() + copied);
+			}
+			return chunk.flip().asReadOnlyBuffer();
+		}
+
+		/**
+		 * @return false if the whole body was emitted
+		 */
+		private boolean advance() {
+			while (current == null || !current.hasRemaining()) {
+				if (index == body.length) {
+					return false;
+				}
+				current = body[index++].duplicate();
+			}
+			return true;
+		}
+	}
+}
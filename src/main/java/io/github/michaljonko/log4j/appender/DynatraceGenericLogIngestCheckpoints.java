@@ -0,0 +1,64 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Offsets of log files already delivered by the back-fill, kept in a properties file (absolute path of the log file =
+ * offset). The file is replaced atomically, a crash leaves either the previous or the new offsets.
+ */
+final class DynatraceGenericLogIngestCheckpoints {
+
+	private final Path file;
+	private final Properties offsets = new Properties();
+
+	/**
+	 * @param file checkpoint file, null - offsets are not kept
+	 */
+	DynatraceGenericLogIngestCheckpoints(Path file) throws IOException {
+		this.file = file;
+		if (nonNull(file) && Files.exists(file)) {
+			try (var reader = Files.newBufferedReader(file, UTF_8)) {
+				offsets.load(reader);
+			}
+		}
+	}
+
+	/**
+	 * @return offset to resume the log file at, 0 if it was not read yet
+	 */
+	long offset(Path logFile) {
+		final var value = offsets.getProperty(key(logFile));
+		return isNull(value) ? 0L : Long.parseLong(value);
+	}
+
+	void save(Path logFile,
+			long offset) throws IOException {
+		offsets.setProperty(key(logFile), Long.toString(offset));
+		if (isNull(file)) {
+			return;
+		}
+		final var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (var writer = Files.newBufferedWriter(temporary, UTF_8)) {
+			offsets.store(writer, "Dynatrace back-fill offsets");
+		}
+		try {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static String key(Path logFile) {
+		return requireNonNull(logFile, "logFile is null").toAbsolutePath().normalize().toString();
+	}
+}
@@ -0,0 +1,188 @@
+package io.github.michaljonko.log4j.appender;
+
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit of in-flight requests and of the target batch size.
+ * <p>
+ * Healthy responses (latency close to the observed baseline) increase the limit additively, by one request per
+ * round-trip, and grow the batch. Latency growing above the baseline shrinks the limit gently (gradient), congestion
+ * signals (429, 5xx, timeouts and connection errors) cut both the limit and the batch size in half.
+ */
+final class DynatraceGenericLogIngestConcurrencyLimit {
+
+	static final int MIN_LIMIT = 1;
+	static final int MAX_LIMIT = 32;
+	static final int INITIAL_LIMIT = 2;
+	static final int MIN_BATCH_EVENTS = 10;
+	static final int INITIAL_BATCH_EVENTS = 100;
+	static final double LATENCY_TOLERANCE = 2.0d;
+	static final double BACKOFF_RATIO = 0.5d;
+	static final double GRADIENT_RATIO = 0.9d;
+	static final double BATCH_GROWTH_RATIO = 1.1d;
+	static final int BASELINE_WINDOW = 100;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private final int maxBatchEvents;
+	private double limit = INITIAL_LIMIT;
+	private double batchEvents;
+	private int inFlight;
+	private long baselineNanos = Long.MAX_VALUE;
+	private double smoothedNanos;
+	private int samples;
+
+	DynatraceGenericLogIngestConcurrencyLimit(int maxBatchEvents) {
+		this.maxBatchEvents = Math.max(MIN_BATCH_EVENTS, maxBatchEvents);
+		this.batchEvents = Math.min(INITIAL_BATCH_EVENTS, this.maxBatchEvents);
+	}
+
+	/**
+	 * Wait for a free in-flight slot.
+	 *
+	 * @return true if the slot is acquired, false when the timeout elapsed
+	 */
+	boolean acquire(long timeout,
+			TimeUnit timeUnit) throws InterruptedException {
+		var remaining = timeUnit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (inFlight >= (int) limit) {
+				if (remaining <= 0L) {
+					return false;
+				}
+				remaining = available.awaitNanos(remaining);
+			}
+			inFlight++;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Give back a slot acquired for a request which has not been sent at all.
+	 */
+	void release() {
+		lock.lock();
+		try {
+			inFlight--;
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Give back a slot and adapt the limit to the outcome of the request.
+	 */
+	void release(long latencyNanos,
+			Outcome outcome) {
+		lock.lock();
+		try {
+			inFlight--;
+			switch (outcome) {
+				case SUCCESS:
+					onSuccess(latencyNanos);
+					break;
+				case CONGESTION:
+					limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+					batchEvents = Math.max(MIN_BATCH_EVENTS, batchEvents * BACKOFF_RATIO);
+					break;
+				default:
+					break;
+			}
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void onSuccess(long latencyNanos) {
+		smoothedNanos = samples == 0 ? latencyNanos : smoothedNanos * 0.9d + latencyNanos * 0.1d;
+		baselineNanos = Math.min(baselineNanos, latencyNanos);
+		if (++samples % BASELINE_WINDOW == 0) {
+			// let the baseline follow lasting changes of the network, a single fast response must not pin it forever
+			baselineNanos = (long) (baselineNanos * 0.9d + smoothedNanos * 0.1d);
+		}
+
+		if (latencyNanos <= baselineNanos * LATENCY_TOLERANCE) {
+			limit = Math.min(MAX_LIMIT, limit + 1.0d / limit);
+			batchEvents = Math.min(maxBatchEvents, Math.max(batchEvents + 1.0d, batchEvents * BATCH_GROWTH_RATIO));
+		} else {
+			limit = Math.max(MIN_LIMIT, limit * GRADIENT_RATIO);
+		}
+	}
+
+	int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int getBatchEvents() {
+		lock.lock();
+		try {
+			return (int) batchEvents;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wait until no request is in flight.
+	 *
+	 * @return true if nothing is in flight anymore
+	 */
+	boolean awaitIdle(long timeout,
+			TimeUnit timeUnit) throws InterruptedException {
+		var remaining = timeUnit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (inFlight > 0) {
+				if (remaining <= 0L) {
+					return false;
+				}
+				remaining = available.awaitNanos(remaining);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		lock.lock();
+		try {
+			return new StringJoiner(", ", DynatraceGenericLogIngestConcurrencyLimit.class.getSimpleName() + "[", "]")
+					.add("limit=" + (int) limit)
+					.add("batchEvents=" + (int) batchEvents)
+					.add("inFlight=" + inFlight)
+					.toString();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	enum Outcome {
+		SUCCESS,
+		CONGESTION,
+		IGNORED
+	}
+}
@@ -0,0 +1,63 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Local file collecting log events rejected by the ActiveGate: one JSON object per line, or for OTLP length-delimited
+ * {@code LogRecord} messages (varint size before every message, the same as {@code writeDelimitedTo} of protobuf).
+ * <p>
+ * Rejected log events are rare, so the file is opened for every write and never kept open.
+ */
+final class DynatraceGenericLogIngestDeadLetterFile {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final byte[] LINE_SEPARATOR = {'\n'};
+	private static final int MAX_VARINT_BYTES = 5;
+
+	private final Path path;
+	private final Protocol protocol;
+
+	DynatraceGenericLogIngestDeadLetterFile(Path path,
+			Protocol protocol) {
+		this.path = requireNonNull(path, "path is null");
+		this.protocol = requireNonNull(protocol, "protocol is null");
+	}
+
+	synchronized void write(byte[] payload) {
+		try (var channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			final var buffers = protocol == Protocol.OTLP
+					? new ByteBuffer[] {sizePrefix(payload.length), ByteBuffer.wrap(payload)}
+					: new ByteBuffer[] {ByteBuffer.wrap(payload), ByteBuffer.wrap(LINE_SEPARATOR)};
+			while (buffers[1].hasRemaining()) {
+				channel.write(buffers);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Log event cannot be written to dead-letter file {}.", path, e);
+		}
+	}
+
+	private static ByteBuffer sizePrefix(int size) {
+		final var prefix = ByteBuffer.allocate(MAX_VARINT_BYTES);
+		var value = size;
+		while ((value & ~0x7F) != 0) {
+			prefix.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		return prefix.put((byte) value).flip();
+	}
+
+	Path getPath() {
+		return path;
+	}
+}
@@ -0,0 +1,87 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static java.util.Objects.nonNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serialized log event waiting in the transport.
+ */
+final class DynatraceGenericLogIngestEvent {
+
+	private final byte[] payload;
+	private final Lane lane;
+	private final CompletableFuture<Status> result;
+	private final DynatraceGenericLogIngestStatistics statistics;
+	private long enqueuedNanos;
+	private long eventEpochNanos;
+	private Runnable onDropped;
+
+	DynatraceGenericLogIngestEvent(byte[] payload,
+			Lane lane,
+			CompletableFuture<Status> result,
+			DynatraceGenericLogIngestStatistics statistics) {
+		this.payload = payload;
+		this.lane = lane;
+		this.result = result;
+		this.statistics = statistics;
+	}
+
+	byte[] getPayload() {
+		return payload;
+	}
+
+	Lane getLane() {
+		return lane;
+	}
+
+	/**
+	 * @return future completed with the status of the request, null when nobody waits for it
+	 */
+	CompletableFuture<Status> getResult() {
+		return result;
+	}
+
+	DynatraceGenericLogIngestStatistics getStatistics() {
+		return statistics;
+	}
+
+	long getEnqueuedNanos() {
+		return enqueuedNanos;
+	}
+
+	void setEnqueuedNanos(long enqueuedNanos) {
+		this.enqueuedNanos = enqueuedNanos;
+	}
+
+	/**
+	 * @return time of the log event in nanoseconds since the epoch, 0 if unknown
+	 */
+	long getEventEpochNanos() {
+		return eventEpochNanos;
+	}
+
+	void setEventEpochNanos(long eventEpochNanos) {
+		this.eventEpochNanos = eventEpochNanos;
+	}
+
+	/**
+	 * @param onDropped called when the log event is dropped instead of sent (not accepted, evicted or not transferred), null
+	 * 		if nothing is to be done, e.g. to give back the quota taken for it
+	 */
+	void setOnDropped(Runnable onDropped) {
+		this.onDropped = onDropped;
+	}
+
+	void complete(Status status) {
+		if (status == Status.DROPPED && nonNull(onDropped)) {
+			onDropped.run();
+		}
+		statistics.completed(status, payload.length);
+		if (nonNull(result)) {
+			result.complete(status);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free log-linear histogram of non-negative values (nanoseconds).
+ * <p>
+ * Values below {@link #SUB_BUCKETS} have their own buckets, every higher power of two is split into {@link #SUB_BUCKETS}
+ * linear buckets, so the relative error of a percentile is at most 1/{@value #SUB_BUCKETS}. Values above
+ * 2^{@value #MAX_EXPONENT} ns (about 4.9 hours) fall into the last bucket. Histograms have the same layout, so they are
+ * merged by adding bucket counts.
+ */
+final class DynatraceGenericLogIngestHistogram {
+
+	static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int MAX_EXPONENT = 44;
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+
+	void record(long value) {
+		if (value < 0L) {
+			return;
+		}
+		counts.incrementAndGet(index(value));
+		var current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Add counts of the other histogram to this one.
+	 */
+	void merge(DynatraceGenericLogIngestHistogram other) {
+		requireNonNull(other, "other is null");
+		for (var index = 0; index < BUCKETS; index++) {
+			final var count = other.counts.get(index);
+			if (count > 0L) {
+				counts.addAndGet(index, count);
+			}
+		}
+		final var otherMax = other.max.get();
+		var current = max.get();
+		while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+			current = max.get();
+		}
+	}
+
+	long getCount() {
+		var count = 0L;
+		for (var index = 0; index < BUCKETS; index++) {
+			count += counts.get(index);
+		}
+		return count;
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile 0 - 100
+	 * @return upper bound of the bucket holding the percentile (never above the maximum), 0 if nothing was recorded
+	 */
+	long getPercentile(double percentile) {
+		if (percentile < 0.0d || percentile > 100.0d) {
+			throw new IllegalArgumentException("percentile is out of range: " + percentile);
+		}
+		final var snapshot = new long[BUCKETS];
+		var count = 0L;
+		for (var index = 0; index < BUCKETS; index++) {
+			snapshot[index] = counts.get(index);
+			count += snapshot[index];
+		}
+		if (count == 0L) {
+			return 0L;
+		}
+
+		final var rank = Math.max(1L, (long) Math.ceil(percentile / 100.0d * count));
+		var cumulative = 0L;
+		for (var index = 0; index < BUCKETS; index++) {
+			cumulative += snapshot[index];
+			if (cumulative >= rank) {
+				return Math.min(upperBound(index), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final var exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		final var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long lowerBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final var exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		return (1L << exponent) | ((long) (index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS));
+	}
+
+	static long upperBound(int index) {
+		return index == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(index + 1) - 1L;
+	}
+}
@@ -0,0 +1,183 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.requireNonNull;
+
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Process-wide, reference-counted {@link HttpClient} with its executor, shared by transports with the same TLS settings and
+ * connect timeout. Transports replacing each other (e.g. after token rotation) keep the already established connections.
+ */
+final class DynatraceGenericLogIngestHttpClient {
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final Map<ClientConfig, DynatraceGenericLogIngestHttpClient> CLIENTS = new HashMap<>();
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	private final ClientConfig clientConfig;
+	private final ExecutorService executor;
+	private final HttpClient httpClient;
+	private int references;
+
+	private DynatraceGenericLogIngestHttpClient(ClientConfig clientConfig) {
+		this.clientConfig = requireNonNull(clientConfig, "clientConfig is null");
+		this.executor = Executors.newSingleThreadExecutor(runnable -> newDaemonThread(runnable, "http"));
+
+		final var httpClientBuilder = HttpClient.newBuilder()
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(clientConfig.getConnectionTimeout())
+				.executor(executor);
+
+		if (!clientConfig.isSslValidation()) {
+			try {
+				var sslContext = SSLContext.getInstance("TLS");
+				sslContext.init(null, new TrustManager[] { new TrustAllManager() }, new SecureRandom());
+				httpClientBuilder.sslContext(sslContext);
+			} catch (NoSuchAlgorithmException | KeyManagementException e) {
+				LOGGER.error("Error during appender initialization. SSL validation cannot be disabled.", e);
+			}
+		}
+
+		this.httpClient = httpClientBuilder.build();
+	}
+
+	/**
+	 * Get the client for given settings. Every call has to be paired with {@link #release()}.
+	 */
+	static DynatraceGenericLogIngestHttpClient acquire(ClientConfig clientConfig) {
+		requireNonNull(clientConfig, "clientConfig is null");
+		synchronized (CLIENTS) {
+			var client = CLIENTS.computeIfAbsent(clientConfig, DynatraceGenericLogIngestHttpClient::new);
+			client.references++;
+			return client;
+		}
+	}
+
+	/**
+	 * Drop one reference. The last reference shuts the executor down, which releases the connections.
+	 */
+	void release() {
+		synchronized (CLIENTS) {
+			if (--references > 0) {
+				return;
+			}
+			CLIENTS.remove(clientConfig, this);
+		}
+		executor.shutdownNow();
+	}
+
+	HttpClient get() {
+		return httpClient;
+	}
+
+	boolean isReleased() {
+		return executor.isShutdown();
+	}
+
+	static Thread newDaemonThread(Runnable runnable,
+			String role) {
+		var thread = new Thread(runnable,
+				"dynatrace-log-ingest-" + role + "-" + THREAD_COUNTER.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	static final class ClientConfig {
+
+		private final boolean sslValidation;
+		private final Duration connectionTimeout;
+
+		ClientConfig(boolean sslValidation,
+				Duration connectionTimeout) {
+			this.sslValidation = sslValidation;
+			this.connectionTimeout = requireNonNull(connectionTimeout, "connectionTimeout is null");
+		}
+
+		boolean isSslValidation() {
+			return sslValidation;
+		}
+
+		Duration getConnectionTimeout() {
+			return connectionTimeout;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			var that = (ClientConfig) o;
+			return sslValidation == that.sslValidation &&
+					Objects.equals(connectionTimeout, that.connectionTimeout);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sslValidation, connectionTimeout);
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", ClientConfig.class.getSimpleName() + "[", "]")
+					.add("sslValidation=" + sslValidation)
+					.add("connectionTimeout=" + connectionTimeout)
+					.toString();
+		}
+	}
+
+	private static final class TrustAllManager extends X509ExtendedTrustManager {
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestHttpClient.ClientConfig;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Default sender, requests are sent by the shared {@link java.net.http.HttpClient} (HTTP/2 when the ActiveGate supports it).
+ */
+final class DynatraceGenericLogIngestJdkSender
+		implements DynatraceGenericLogIngestSender {
+
+	static final Factory FACTORY = senderConfig -> new DynatraceGenericLogIngestJdkSender(
+			DynatraceGenericLogIngestHttpClient.acquire(
+					new ClientConfig(senderConfig.isSslValidation(), senderConfig.getConnectTimeout())));
+
+	private static final ByteBuffer EMPTY_BODY = ByteBuffer.allocate(0);
+
+	private final DynatraceGenericLogIngestHttpClient httpClient;
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	DynatraceGenericLogIngestJdkSender(DynatraceGenericLogIngestHttpClient httpClient) {
+		this.httpClient = requireNonNull(httpClient, "httpClient is null");
+	}
+
+	@Override
+	public CompletableFuture<Integer> send(Request request) {
+		return exchange(request).thenApply(Response::getStatusCode);
+	}
+
+	@Override
+	public CompletableFuture<Response> exchange(Request request) {
+		requireNonNull(request, "request is null");
+		final var body = request.getBody();
+		final var builder = HttpRequest.newBuilder()
+				.uri(request.getUri())
+				.timeout(request.getTimeout());
+		request.getHeaders().forEach(builder::header);
+		if (body.length == 0) {
+			builder.method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+		} else if (isWholeArray(body) || request.getContentLength() <= DynatraceGenericLogIngestBodyPublisher.CHUNK_BYTES) {
+			builder.method(request.getMethod(), HttpRequest.BodyPublishers.ofByteArray(toByteArray(body)));
+		} else {
+			final var publisher = new DynatraceGenericLogIngestBodyPublisher(body);
+			builder.method(request.getMethod(),
+					HttpRequest.BodyPublishers.fromPublisher(publisher, publisher.getContentLength()));
+			return httpClient.get().sendAsync(builder.build(), DynatraceGenericLogIngestJdkSender::partialSuccessBody)
+					.whenComplete((response, throwable) -> publisher.release())
+					.thenApply(response -> new Response(response.statusCode(), response.body()));
+		}
+		return httpClient.get().sendAsync(builder.build(), DynatraceGenericLogIngestJdkSender::partialSuccessBody)
+				.thenApply(response -> new Response(response.statusCode(), response.body()));
+	}
+
+	/**
+	 * Only a small body of a partial success response (status 200) is read, whatever its framing (chunked HTTP/1.1 or
+	 * HTTP/2 responses have no {@code Content-Length}), any other body is discarded.
+	 */
+	private static HttpResponse.BodySubscriber<ByteBuffer> partialSuccessBody(HttpResponse.ResponseInfo responseInfo) {
+		final var contentLength = responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1L);
+		if (responseInfo.statusCode() == 200 && contentLength != 0L && contentLength <= Response.MAX_BODY_BYTES) {
+			return new BoundedBodySubscriber();
+		}
+		return HttpResponse.BodySubscribers.replacing(EMPTY_BODY);
+	}
+
+	/**
+	 * Single buffer wrapping a whole array (e.g. one log event, a compressed or an OTLP request) is sent without copying,
+	 * small bodies are joined, the client would write every small buffer separately otherwise. Bigger bodies are streamed
+	 * in chunks by {@link DynatraceGenericLogIngestBodyPublisher}.
+	 */
+	static byte[] toByteArray(ByteBuffer[] body) {
+		if (isWholeArray(body)) {
+			return body[0].array();
+		}
+
+		var length = 0;
+		for (var buffer : body) {
+			length += buffer.remaining();
+		}
+		final var bytes = new byte[length];
+		var position = 0;
+		for (var buffer : body) {
+			final var remaining = buffer.remaining();
+			buffer.duplicate().get(bytes, position, remaining);
+			position += remaining;
+		}
+		return bytes;
+	}
+
+	private static boolean isWholeArray(ByteBuffer[] body) {
+		return body.length == 1 && body[0].hasArray() && body[0].arrayOffset() == 0 && body[0].position() == 0
+				&& body[0].limit() == body[0].array().length;
+	}
+
+	/**
+	 * Collects at most {@link Response#MAX_BODY_BYTES}, a longer body is cancelled and replaced with an empty one.
+	 */
+	private static final class BoundedBodySubscriber
+			implements HttpResponse.BodySubscriber<ByteBuffer> {
+
+		private final CompletableFuture<ByteBuffer> body = new CompletableFuture<>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private Flow.Subscription subscription;
+
+		@Override
+		public CompletionStage<ByteBuffer> getBody() {
+			return body;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> items) {
+			if (body.isDone()) {
+				return;
+			}
+			for (var item : items) {
+				if (bytes.size() + item.remaining() > Response.MAX_BODY_BYTES) {
+					subscription.cancel();
+					body.complete(EMPTY_BODY);
+					return;
+				}
+				final var chunk = new byte[item.remaining()];
+				item.get(chunk);
+				bytes.write(chunk, 0, chunk.length);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			body.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			body.complete(ByteBuffer.wrap(bytes.toByteArray()));
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			httpClient.release();
+		}
+	}
+
+	boolean isClosed() {
+		return closed.get();
+	}
+}
@@ -0,0 +1,222 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.nonNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.util.JsonUtils;
+
+/**
+ * Escaping of JSON string values into {@link DynatraceGenericLogIngestJsonWriter}, the same output as
+ * {@link JsonUtils#quoteAsString(CharSequence, StringBuilder)} encoded as UTF-8.
+ * <p>
+ * UTF-8 encoded messages are scanned 8 bytes at a time (SWAR - SIMD within a register) for quotes, backslashes and
+ * control characters; runs of bytes without them are copied as they are, only hits are escaped one by one. Non-ASCII
+ * bytes never need escaping, a run with them is only checked to be well-formed UTF-8 before it is copied. Field keys and
+ * level fields are escaped once and cached as encoded JSON fragments.
+ */
+final class DynatraceGenericLogIngestJsonEscaper {
+
+	private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long QUOTES = ONES * '"';
+	private static final long BACKSLASHES = ONES * '\\';
+	private static final long CONTROLS = ONES * 0x20;
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final Map<Level, byte[]> LEVEL_FIELDS = new ConcurrentHashMap<>();
+
+	private DynatraceGenericLogIngestJsonEscaper() {
+	}
+
+	/**
+	 * @return {@code "level":"<name>",} fragment, cached per level
+	 */
+	static byte[] levelField(Level level) {
+		final var field = LEVEL_FIELDS.get(level);
+		if (nonNull(field)) {
+			return field;
+		}
+		return LEVEL_FIELDS.computeIfAbsent(level, key -> new DynatraceGenericLogIngestJsonWriter(key.name().length() + 12)
+				.string("level")
+				.append(':')
+				.string(key.name())
+				.append(',')
+				.toByteArray());
+	}
+
+	/**
+	 * @return {@code "<key>":} fragment
+	 */
+	static byte[] fieldKey(String key) {
+		return new DynatraceGenericLogIngestJsonWriter(key.length() + 3)
+				.string(key)
+				.append(':')
+				.toByteArray();
+	}
+
+	/**
+	 * Value without characters to escape, almost every value, is encoded at once.
+	 */
+	static void escape(String value,
+			DynatraceGenericLogIngestJsonWriter json) {
+		var runStart = 0;
+		for (var index = 0; index < value.length(); index++) {
+			final var c = value.charAt(index);
+			if (c < 0x20 || c == '"' || c == '\\') {
+				json.utf8(value, runStart, index);
+				escape(c, json);
+				runStart = index + 1;
+			}
+		}
+		json.utf8(value, runStart, value.length());
+	}
+
+	/**
+	 * Append UTF-8 encoded text escaped, malformed sequences are replaced the same as by {@code new String(utf8, UTF_8)}.
+	 */
+	static void escape(byte[] utf8,
+			DynatraceGenericLogIngestJsonWriter json) {
+		var runStart = 0;
+		var ascii = true;
+		var index = 0;
+		final var words = utf8.length - Long.BYTES;
+		while (index <= words) {
+			final var word = (long) LONG_VIEW.get(utf8, index);
+			final var hits = hits(word);
+			if (hits == 0L) {
+				ascii &= (word & HIGH_BITS) == 0L;
+				index += Long.BYTES;
+				continue;
+			}
+			// the lowest hit is exact, borrows of the subtraction only reach higher bytes
+			final var clean = Long.numberOfTrailingZeros(hits) >>> 3;
+			ascii &= (word & HIGH_BITS & ((1L << (clean << 3)) - 1L)) == 0L;
+			index += clean;
+			appendRun(utf8, runStart, index, ascii, json);
+			escape((char) utf8[index], json);
+			index++;
+			runStart = index;
+			ascii = true;
+		}
+		for (; index < utf8.length; index++) {
+			final var b = utf8[index];
+			if (b >= 0 && (b < 0x20 || b == '"' || b == '\\')) {
+				appendRun(utf8, runStart, index, ascii, json);
+				escape((char) b, json);
+				runStart = index + 1;
+				ascii = true;
+			} else {
+				ascii &= b >= 0;
+			}
+		}
+		appendRun(utf8, runStart, utf8.length, ascii, json);
+	}
+
+	/**
+	 * @return high bit set in bytes which are quotes, backslashes or control characters
+	 */
+	static long hits(long word) {
+		return (zeroBytes(word ^ QUOTES) | zeroBytes(word ^ BACKSLASHES) | ((word - CONTROLS) & ~word)) & HIGH_BITS;
+	}
+
+	private static long zeroBytes(long word) {
+		return (word - ONES) & ~word;
+	}
+
+	/**
+	 * Bytes between multi-byte UTF-8 sequences are split only at ASCII hits, so every run is checked on its own. A
+	 * malformed run, which a layout hardly ever produces, is decoded and encoded again.
+	 */
+	private static void appendRun(byte[] utf8,
+			int from,
+			int to,
+			boolean ascii,
+			DynatraceGenericLogIngestJsonWriter json) {
+		if (ascii || isWellFormed(utf8, from, to)) {
+			json.append(utf8, from, to);
+		} else {
+			final var decoded = new String(utf8, from, to - from, UTF_8);
+			json.utf8(decoded, 0, decoded.length());
+		}
+	}
+
+	/**
+	 * Well-formed UTF-8 byte sequences of the Unicode standard (table 3-7), no overlong forms, surrogates or code points
+	 * above U+10FFFF.
+	 */
+	static boolean isWellFormed(byte[] utf8,
+			int from,
+			int to) {
+		var index = from;
+		while (index < to) {
+			final var lead = utf8[index++] & 0xFF;
+			if (lead < 0x80) {
+				continue;
+			}
+			final int continuations;
+			var min = 0x80;
+			var max = 0xBF;
+			if (lead >= 0xC2 && lead <= 0xDF) {
+				continuations = 1;
+			} else if (lead >= 0xE0 && lead <= 0xEF) {
+				continuations = 2;
+				min = lead == 0xE0 ? 0xA0 : min;
+				max = lead == 0xED ? 0x9F : max;
+			} else if (lead >= 0xF0 && lead <= 0xF4) {
+				continuations = 3;
+				min = lead == 0xF0 ? 0x90 : min;
+				max = lead == 0xF4 ? 0x8F : max;
+			} else {
+				return false;
+			}
+			if (to - index < continuations) {
+				return false;
+			}
+			final var second = utf8[index++] & 0xFF;
+			if (second < min || second > max) {
+				return false;
+			}
+			for (var i = 1; i < continuations; i++) {
+				if ((utf8[index++] & 0xC0) != 0x80) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static void escape(char c,
+			DynatraceGenericLogIngestJsonWriter json) {
+		json.append('\\');
+		switch (c) {
+			case '"':
+			case '\\':
+				json.append(c);
+				break;
+			case '\b':
+				json.append('b');
+				break;
+			case '\t':
+				json.append('t');
+				break;
+			case '\n':
+				json.append('n');
+				break;
+			case '\f':
+				json.append('f');
+				break;
+			case '\r':
+				json.append('r');
+				break;
+			default:
+				json.append('u').append('0').append('0').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+
+/**
+ * Growable UTF-8 buffer a JSON log event is built in, so the payload is encoded once without a {@link String} between.
+ * Constant fragments (keys, level fields) are copied as prepared bytes, string values are escaped by
+ * {@link DynatraceGenericLogIngestJsonEscaper}.
+ */
+final class DynatraceGenericLogIngestJsonWriter {
+
+	private byte[] buffer;
+	private int position;
+
+	DynatraceGenericLogIngestJsonWriter(int capacity) {
+		this.buffer = new byte[capacity];
+	}
+
+	/**
+	 * @param fragment encoded JSON fragment, copied as it is
+	 */
+	DynatraceGenericLogIngestJsonWriter append(byte[] fragment) {
+		return append(fragment, 0, fragment.length);
+	}
+
+	DynatraceGenericLogIngestJsonWriter append(byte[] bytes,
+			int from,
+			int to) {
+		ensure(to - from);
+		System.arraycopy(bytes, from, buffer, position, to - from);
+		position += to - from;
+		return this;
+	}
+
+	/**
+	 * @param c ASCII character
+	 */
+	DynatraceGenericLogIngestJsonWriter append(char c) {
+		ensure(1);
+		buffer[position++] = (byte) c;
+		return this;
+	}
+
+	DynatraceGenericLogIngestJsonWriter append(long number) {
+		if (number == Long.MIN_VALUE) {
+			return append(Long.toString(number).getBytes(UTF_8));
+		}
+		if (number < 0L) {
+			append('-');
+			number = -number;
+		}
+		var digits = 1;
+		for (var limit = 10L; digits < 19 && number >= limit; limit *= 10L) {
+			digits++;
+		}
+		ensure(digits);
+		for (var index = position + digits - 1; index >= position; index--) {
+			buffer[index] = (byte) ('0' + number % 10L);
+			number /= 10L;
+		}
+		position += digits;
+		return this;
+	}
+
+	/**
+	 * Value escaped and wrapped in quotes.
+	 */
+	DynatraceGenericLogIngestJsonWriter string(String value) {
+		append('"');
+		DynatraceGenericLogIngestJsonEscaper.escape(value, this);
+		return append('"');
+	}
+
+	/**
+	 * UTF-8 encoded value escaped and wrapped in quotes.
+	 */
+	DynatraceGenericLogIngestJsonWriter string(byte[] utf8) {
+		append('"');
+		DynatraceGenericLogIngestJsonEscaper.escape(utf8, this);
+		return append('"');
+	}
+
+	/**
+	 * Characters of the value encoded as UTF-8 without escaping, unpaired surrogates are replaced with {@code ?} the same
+	 * as by {@link String#getBytes(java.nio.charset.Charset)}.
+	 */
+	void utf8(CharSequence value,
+			int from,
+			int to) {
+		ensure((to - from) * 3);
+		for (var i = from; i < to; i++) {
+			final var c = value.charAt(i);
+			if (c < 0x80) {
+				buffer[position++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[position++] = (byte) (0xC0 | c >> 6);
+				buffer[position++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1))) {
+					final var codePoint = Character.toCodePoint(c, value.charAt(++i));
+					buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+					buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+					buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+					buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+				} else {
+					buffer[position++] = '?';
+				}
+			} else {
+				buffer[position++] = (byte) (0xE0 | c >> 12);
+				buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+				buffer[position++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	byte[] toByteArray() {
+		return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+	}
+
+	/**
+	 * Decoded JSON, for logging only.
+	 */
+	@Override
+	public String toString() {
+		return new String(buffer, 0, position, UTF_8);
+	}
+
+	private void ensure(int bytes) {
+		if (position + bytes > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+		}
+	}
+}
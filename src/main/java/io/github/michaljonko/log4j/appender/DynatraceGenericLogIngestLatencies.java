@@ -0,0 +1,227 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Optional latency breakdown of the logging pipeline of a single appender, one {@link DynatraceGenericLogIngestHistogram}
+ * per {@link Stage}.
+ * <p>
+ * Stages are measured as {@code System.nanoTime()} deltas chained by {@link #start()} and {@link #record(Stage, long)}.
+ * {@link #DISABLED} instance never reads the clock nor touches memory, so the instrumentation costs a branch on a final
+ * field when it is not enabled.
+ */
+final class DynatraceGenericLogIngestLatencies
+		implements DynatraceGenericLogIngestLatenciesMXBean {
+
+	static final DynatraceGenericLogIngestLatencies DISABLED = new DynatraceGenericLogIngestLatencies(false);
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final AtomicInteger MBEAN_COUNTER = new AtomicInteger();
+
+	private final boolean enabled;
+	private final DynatraceGenericLogIngestHistogram[] histograms;
+	private ObjectName objectName;
+
+	DynatraceGenericLogIngestLatencies() {
+		this(true);
+	}
+
+	private DynatraceGenericLogIngestLatencies(boolean enabled) {
+		this.enabled = enabled;
+		this.histograms = new DynatraceGenericLogIngestHistogram[enabled ? Stage.values().length : 0];
+		for (var index = 0; index < histograms.length; index++) {
+			histograms[index] = new DynatraceGenericLogIngestHistogram();
+		}
+	}
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return current time of the first stage, 0 when disabled
+	 */
+	long start() {
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Record the stage which started at given time.
+	 *
+	 * @return current time, the start of the next stage, 0 when disabled
+	 */
+	long record(Stage stage,
+			long startedNanos) {
+		if (!enabled) {
+			return 0L;
+		}
+		final var now = System.nanoTime();
+		histograms[stage.ordinal()].record(now - startedNanos);
+		return now;
+	}
+
+	/**
+	 * Record already measured duration of the stage.
+	 */
+	void recordNanos(Stage stage,
+			long nanos) {
+		if (enabled) {
+			histograms[stage.ordinal()].record(nanos);
+		}
+	}
+
+	/**
+	 * Record time from the log event to now.
+	 *
+	 * @param eventEpochNanos time of the log event, 0 if unknown
+	 * @param nowEpochNanos current time
+	 */
+	void recordEventAge(long eventEpochNanos,
+			long nowEpochNanos) {
+		if (enabled && eventEpochNanos != 0L) {
+			histograms[Stage.EVENT_AGE.ordinal()].record(nowEpochNanos - eventEpochNanos);
+		}
+	}
+
+	/**
+	 * @return histogram of the stage, null when disabled
+	 */
+	DynatraceGenericLogIngestHistogram getHistogram(Stage stage) {
+		return enabled ? histograms[stage.ordinal()] : null;
+	}
+
+	/**
+	 * @param percentile 0 - 100
+	 * @return nanoseconds, 0 when disabled or nothing was recorded
+	 */
+	long getPercentileNanos(Stage stage,
+			double percentile) {
+		return enabled ? histograms[stage.ordinal()].getPercentile(percentile) : 0L;
+	}
+
+	@Override
+	public Map<String, Long> getCount() {
+		return perStage(DynatraceGenericLogIngestHistogram::getCount);
+	}
+
+	@Override
+	public Map<String, Long> getP50Micros() {
+		return perStage(histogram -> TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(50.0d)));
+	}
+
+	@Override
+	public Map<String, Long> getP90Micros() {
+		return perStage(histogram -> TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(90.0d)));
+	}
+
+	@Override
+	public Map<String, Long> getP99Micros() {
+		return perStage(histogram -> TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(99.0d)));
+	}
+
+	@Override
+	public Map<String, Long> getP999Micros() {
+		return perStage(histogram -> TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(99.9d)));
+	}
+
+	@Override
+	public Map<String, Long> getMaxMicros() {
+		return perStage(histogram -> TimeUnit.NANOSECONDS.toMicros(histogram.getMax()));
+	}
+
+	private Map<String, Long> perStage(ToLongFunction<DynatraceGenericLogIngestHistogram> value) {
+		final var values = new LinkedHashMap<String, Long>();
+		if (enabled) {
+			for (var stage : Stage.values()) {
+				values.put(stage.name(), value.applyAsLong(histograms[stage.ordinal()]));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Expose percentiles over JMX under the name of the appender.
+	 */
+	synchronized void registerMBean(String name) {
+		requireNonNull(name, "name is null");
+		if (!enabled || nonNull(objectName)) {
+			return;
+		}
+		try {
+			final var mbeanName = new ObjectName(DynatraceGenericLogIngestTransport.MBEAN_DOMAIN + ":type="
+					+ DynatraceGenericLogIngestLatencies.class.getSimpleName()
+					+ ",name=" + ObjectName.quote(name + "#" + MBEAN_COUNTER.incrementAndGet()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, mbeanName);
+			objectName = mbeanName;
+		} catch (JMException | RuntimeException e) {
+			LOGGER.debug("Latencies of {} cannot be registered in JMX.", name, e);
+		}
+	}
+
+	synchronized void unregisterMBean() {
+		if (nonNull(objectName)) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException | RuntimeException e) {
+				LOGGER.debug("Latencies {} cannot be unregistered from JMX.", objectName, e);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * @return nanoseconds since the epoch, precision of the system clock
+	 */
+	static long epochNanos(Instant instant) {
+		return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+	}
+
+	/**
+	 * Stages of the logging pipeline.
+	 */
+	enum Stage {
+		/**
+		 * Formatting of the log event by the layout.
+		 */
+		LAYOUT,
+		/**
+		 * Resolving lookups of properties ({@code StrSubstitutor}) and escaping of their values.
+		 */
+		LOOKUPS,
+		/**
+		 * JSON escaping of the message or OTLP encoding of the log record.
+		 */
+		ENCODING,
+		/**
+		 * Handing the log event over to the transport, for blocking appenders including the wait for the request.
+		 */
+		SEND,
+		/**
+		 * Time the log event waited in the queue for the request.
+		 */
+		QUEUE_WAIT,
+		/**
+		 * HTTP round trip of the request carrying the log event.
+		 */
+		REQUEST,
+		/**
+		 * End to end, from the time of the log event to the acknowledgement by the ActiveGate (wall clock).
+		 */
+		EVENT_AGE
+	}
+}
@@ -0,0 +1,51 @@
+package io.github.michaljonko.log4j.appender;
+
+import java.util.Map;
+
+/**
+ * JMX view of the latency breakdown of a single appender, values per stage of the logging pipeline.
+ */
+public interface DynatraceGenericLogIngestLatenciesMXBean {
+
+	/**
+	 * Number of measurements.
+	 *
+	 * @return count per stage
+	 */
+	Map<String, Long> getCount();
+
+	/**
+	 * Median.
+	 *
+	 * @return microseconds per stage
+	 */
+	Map<String, Long> getP50Micros();
+
+	/**
+	 * 90th percentile.
+	 *
+	 * @return microseconds per stage
+	 */
+	Map<String, Long> getP90Micros();
+
+	/**
+	 * 99th percentile.
+	 *
+	 * @return microseconds per stage
+	 */
+	Map<String, Long> getP99Micros();
+
+	/**
+	 * 99.9th percentile.
+	 *
+	 * @return microseconds per stage
+	 */
+	Map<String, Long> getP999Micros();
+
+	/**
+	 * Maximum.
+	 *
+	 * @return microseconds per stage
+	 */
+	Map<String, Long> getMaxMicros();
+}
@@ -0,0 +1,272 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Sheds log events of low severity when the delivery falls behind, so the backlog keeps errors and warnings instead of
+ * random log events.
+ * <p>
+ * Every {@link #EVALUATION_INTERVAL} the utilization of the queues and the average request latency of the managers are
+ * compared with the high-water mark, each evaluation above it raises the minimum level one step: TRACE, DEBUG and INFO
+ * are shed in turn, WARN and more severe log events never. The level is lowered one step only after the signals stayed
+ * below the low-water mark for the whole hysteresis period. The appender checks the level with a single volatile read
+ * before any layout work.
+ */
+final class DynatraceGenericLogIngestLoadShedder {
+
+	static final Duration EVALUATION_INTERVAL = Duration.ofSeconds(1L);
+	static final Level[] LEVELS = { Level.ALL, Level.DEBUG, Level.INFO, Level.WARN };
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final SheddingConfig sheddingConfig;
+	private final List<? extends AbstractDynatraceGenericLogIngestManager> managers;
+	private final Listener listener;
+	private final LongAdder shed = new LongAdder();
+	private volatile int minimumIntLevel = Level.ALL.intLevel();
+	private ScheduledExecutorService executor;
+	private int step;
+	private long calmSinceNanos;
+	private boolean calm;
+	private long requests;
+	private long requestNanos;
+
+	/**
+	 * @param managers managers whose queues and requests are watched
+	 * @param listener notified about every change of the minimum level
+	 */
+	DynatraceGenericLogIngestLoadShedder(SheddingConfig sheddingConfig,
+			List<? extends AbstractDynatraceGenericLogIngestManager> managers,
+			Listener listener) {
+		this.sheddingConfig = requireNonNull(sheddingConfig, "sheddingConfig is null");
+		this.managers = List.copyOf(requireNonNull(managers, "managers is null"));
+		this.listener = requireNonNull(listener, "listener is null");
+	}
+
+	/**
+	 * Counts the shed log event.
+	 *
+	 * @return true if the log event is below the current minimum level
+	 */
+	boolean shed(Level level) {
+		if (level.intLevel() > minimumIntLevel) {
+			shed.increment();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Start periodic evaluation, nothing is shed when shedding is not enabled.
+	 */
+	synchronized void start() {
+		if (!sheddingConfig.isEnabled() || nonNull(executor)) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(
+				runnable -> DynatraceGenericLogIngestHttpClient.newDaemonThread(runnable, "load-shedding"));
+		executor.scheduleWithFixedDelay(this::evaluate, EVALUATION_INTERVAL.toMillis(), EVALUATION_INTERVAL.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void stop() {
+		if (nonNull(executor)) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private void evaluate() {
+		try {
+			var utilization = 0.0;
+			var currentRequests = 0L;
+			var currentRequestNanos = 0L;
+			for (var manager : managers) {
+				utilization = Math.max(utilization, manager.getQueueUtilization());
+				currentRequests += manager.getRequests();
+				currentRequestNanos += manager.getRequestNanos();
+			}
+			final var answered = currentRequests - requests;
+			final var latencyNanos = answered > 0L ? (currentRequestNanos - requestNanos) / answered : 0L;
+			requests = currentRequests;
+			requestNanos = currentRequestNanos;
+			evaluate(utilization, latencyNanos, System.nanoTime());
+		} catch (RuntimeException e) {
+			LOGGER.warn("Load shedding evaluation failed.", e);
+		}
+	}
+
+	/**
+	 * @param utilization the highest utilization of the queues, from 0 to 1
+	 * @param latencyNanos average latency of requests answered since the previous evaluation, 0 if none
+	 */
+	synchronized void evaluate(double utilization,
+			long latencyNanos,
+			long nowNanos) {
+		final var latencyThresholdNanos = sheddingConfig.getLatencyThreshold().toNanos();
+		final var reason = String.format("queue utilization %d%%, request latency %d ms", Math.round(utilization * 100.0),
+				TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+		if (utilization >= sheddingConfig.getHighWater()
+				|| (latencyThresholdNanos > 0L && latencyNanos >= latencyThresholdNanos)) {
+			calm = false;
+			if (step < LEVELS.length - 1) {
+				changeStep(step + 1, reason);
+			}
+			return;
+		}
+
+		if (utilization > sheddingConfig.getLowWater()
+				|| (latencyThresholdNanos > 0L && latencyNanos >= latencyThresholdNanos / 2L)) {
+			calm = false;
+			return;
+		}
+		if (!calm) {
+			calm = true;
+			calmSinceNanos = nowNanos;
+		} else if (step > 0 && nowNanos - calmSinceNanos >= sheddingConfig.getHysteresis().toNanos()) {
+			calmSinceNanos = nowNanos;
+			changeStep(step - 1, reason);
+		}
+	}
+
+	private void changeStep(int next,
+			String reason) {
+		final var previous = LEVELS[step];
+		step = next;
+		minimumIntLevel = LEVELS[next].intLevel();
+		LOGGER.info("Load shedding changed minimum level from {} to {} ({}).", previous, LEVELS[next], reason);
+		try {
+			listener.levelChanged(previous, LEVELS[next], reason);
+		} catch (RuntimeException e) {
+			LOGGER.warn("Change of the minimum level to {} not reported.", LEVELS[next], e);
+		}
+	}
+
+	/**
+	 * @return log events of lower severity are shed, {@link Level#ALL} if nothing is shed
+	 */
+	Level getMinimumLevel() {
+		return LEVELS[step];
+	}
+
+	long getShed() {
+		return shed.sum();
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestLoadShedder.class.getSimpleName() + "[", "]")
+				.add("sheddingConfig=" + sheddingConfig)
+				.add("minimumIntLevel=" + minimumIntLevel)
+				.add("shed=" + shed.sum())
+				.toString();
+	}
+
+	@FunctionalInterface
+	interface Listener {
+
+		void levelChanged(Level previous,
+				Level current,
+				String reason);
+	}
+
+	static final class SheddingConfig {
+
+		static final SheddingConfig DISABLED = new SheddingConfig(0.0, 0.0, Duration.ZERO, Duration.ZERO);
+
+		private final double highWater;
+		private final double lowWater;
+		private final Duration latencyThreshold;
+		private final Duration hysteresis;
+
+		/**
+		 * @param highWater queue utilization raising the minimum level, from 0 to 1, 0 - shedding disabled
+		 * @param lowWater queue utilization below which the minimum level is lowered after the hysteresis
+		 * @param latencyThreshold average request latency raising the minimum level, zero - latency is not watched, below
+		 * 		its half the latency counts as calm
+		 * @param hysteresis time the signals must stay below the low-water mark to lower the minimum level one step
+		 */
+		SheddingConfig(double highWater,
+				double lowWater,
+				Duration latencyThreshold,
+				Duration hysteresis) {
+			this.highWater = highWater;
+			this.lowWater = lowWater;
+			this.latencyThreshold = requireNonNull(latencyThreshold, "latencyThreshold is null");
+			this.hysteresis = requireNonNull(hysteresis, "hysteresis is null");
+			if (highWater < 0.0 || highWater > 1.0) {
+				throw new IllegalArgumentException("highWater is not between 0 and 1");
+			}
+			if (highWater > 0.0 && (lowWater < 0.0 || lowWater >= highWater)) {
+				throw new IllegalArgumentException("lowWater is not between 0 and highWater");
+			}
+			if (latencyThreshold.isNegative() || hysteresis.isNegative()) {
+				throw new IllegalArgumentException("latencyThreshold or hysteresis is negative");
+			}
+		}
+
+		boolean isEnabled() {
+			return highWater > 0.0;
+		}
+
+		double getHighWater() {
+			return highWater;
+		}
+
+		double getLowWater() {
+			return lowWater;
+		}
+
+		Duration getLatencyThreshold() {
+			return latencyThreshold;
+		}
+
+		Duration getHysteresis() {
+			return hysteresis;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			var data = (SheddingConfig) o;
+			return Double.compare(highWater, data.highWater) == 0 &&
+					Double.compare(lowWater, data.lowWater) == 0 &&
+					Objects.equals(latencyThreshold, data.latencyThreshold) &&
+					Objects.equals(hysteresis, data.hysteresis);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(highWater, lowWater, latencyThreshold, hysteresis);
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", SheddingConfig.class.getSimpleName() + "[", "]")
+					.add("highWater=" + highWater)
+					.add("lowWater=" + lowWater)
+					.add("latencyThreshold=" + latencyThreshold)
+					.add("hysteresis=" + hysteresis)
+					.toString();
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * Reads log records of a log file through memory-mapped windows, without copying the file to the heap.
+ * <p>
+ * A record is a line followed by its continuation lines (lines matching the continuation pattern, e.g. stack trace
+ * frames). Every record knows the offset of the byte after its last line, so reading can be resumed there. Line breaks
+ * ({@code \n} or {@code \r\n}) are not part of the lines, records longer than the maximum size are truncated.
+ */
+final class DynatraceGenericLogIngestLogFileReader
+		implements Closeable {
+
+	static final int DEFAULT_WINDOW_BYTES = 64 * 1024 * 1024;
+	static final Pattern DEFAULT_CONTINUATION = Pattern.compile("^(\\s|Caused by:|\\.\\.\\. \\d+ more)");
+
+	private final FileChannel channel;
+	private final long size;
+	private final Pattern continuation;
+	private final int windowBytes;
+	private final int maxRecordBytes;
+	private MappedByteBuffer window;
+	private long windowOffset;
+	private long offset;
+	private Line pending;
+
+	/**
+	 * @param offset offset to start reading at, beginning of a line
+	 * @param continuation lines matching it belong to the previous record, null - every line is a record
+	 */
+	DynatraceGenericLogIngestLogFileReader(Path file,
+			long offset,
+			Pattern continuation) throws IOException {
+		this(file, offset, continuation, DEFAULT_WINDOW_BYTES, DynatraceGenericLogIngestTransport.MAX_BATCH_BYTES / 2);
+	}
+
+	/**
+	 * @param windowBytes size of the mapped window, the longest line which is not cut
+	 * @param maxRecordBytes records are truncated to this size
+	 */
+	DynatraceGenericLogIngestLogFileReader(Path file,
+			long offset,
+			Pattern continuation,
+			int windowBytes,
+			int maxRecordBytes) throws IOException {
+		requireNonNull(file, "file is null");
+		if (windowBytes < 1 || maxRecordBytes < 1) {
+			throw new IllegalArgumentException("windowBytes or maxRecordBytes is not positive");
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.size = channel.size();
+		if (offset < 0L || offset > size) {
+			channel.close();
+			throw new IllegalArgumentException("offset " + offset + " is out of file of " + size + " bytes");
+		}
+		this.continuation = continuation;
+		this.windowBytes = windowBytes;
+		this.maxRecordBytes = maxRecordBytes;
+		this.offset = offset;
+	}
+
+	/**
+	 * @return next record, null at the end of the file
+	 */
+	Record next() throws IOException {
+		final var first = isNull(pending) ? readLine() : pending;
+		pending = null;
+		if (isNull(first)) {
+			return null;
+		}
+
+		final var content = new StringBuilder(first.text);
+		var end = first.end;
+		Line line;
+		while (nonNull(line = readLine())) {
+			if (isNull(continuation) || !continuation.matcher(line.text).find()) {
+				pending = line;
+				break;
+			}
+			if (content.length() < maxRecordBytes) {
+				content.append('\n').append(line.text);
+			}
+			end = line.end;
+		}
+		if (content.length() > maxRecordBytes) {
+			content.setLength(maxRecordBytes);
+		}
+		return new Record(content.toString(), first.start, end);
+	}
+
+	long getSize() {
+		return size;
+	}
+
+	private Line readLine() throws IOException {
+		if (offset >= size) {
+			return null;
+		}
+		if (isNull(window) || offset >= windowOffset + window.limit()) {
+			map(offset);
+		}
+
+		final var start = offset;
+		var position = (int) (offset - windowOffset);
+		while (position < window.limit() && window.get(position) != '\n') {
+			position++;
+		}
+		if (position == window.limit() && windowOffset + position < size && start > windowOffset) {
+			map(start);
+			return readLine();
+		}
+
+		final var lineEnd = windowOffset + position;
+		offset = position < window.limit() ? lineEnd + 1L : lineEnd;
+		var length = (int) (lineEnd - start);
+		if (length > 0 && window.get((int) (start - windowOffset) + length - 1) == '\r') {
+			length--;
+		}
+		final var bytes = new byte[Math.min(length, maxRecordBytes)];
+		window.position((int) (start - windowOffset));
+		window.get(bytes);
+		return new Line(new String(bytes, UTF_8), start, offset);
+	}
+
+	private void map(long position) throws IOException {
+		windowOffset = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowBytes, size - position));
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	private static final class Line {
+
+		private final String text;
+		private final long start;
+		private final long end;
+
+		private Line(String text,
+				long start,
+				long end) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Log record with its position in the file.
+	 */
+	static final class Record {
+
+		private final String content;
+		private final long offset;
+		private final long endOffset;
+
+		Record(String content,
+				long offset,
+				long endOffset) {
+			this.content = requireNonNull(content, "content is null");
+			this.offset = offset;
+			this.endOffset = endOffset;
+		}
+
+		String getContent() {
+			return content;
+		}
+
+		long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return offset of the next record
+		 */
+		long getEndOffset() {
+			return endOffset;
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", Record.class.getSimpleName() + "[", "]")
+					.add("offset=" + offset)
+					.add("endOffset=" + endOffset)
+					.add("content='" + content + "'")
+					.toString();
+		}
+	}
+}
@@ -1,157 +1,289 @@
 package io.github.michaljonko.log4j.appender;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestQuota.Reservation;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.TransportConfig;
+import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
-import java.io.IOException;
-import java.net.Socket;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Map;
 import java.util.Objects;
 import java.util.StringJoiner;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLEngine;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509ExtendedTrustManager;
-
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.appender.ManagerFactory;
-import org.apache.logging.log4j.util.Strings;
 
 final class DynatraceGenericLogIngestManager
 		extends AbstractDynatraceGenericLogIngestManager {
 
 	private static final ManagerFactory<DynatraceGenericLogIngestManager, ManagerConfig> MANAGER_FACTORY =
 			new DynatraceGenericLogIngestManagerFactory();
-	private static final String CONTENT_TYPE =
-			"application/json; charset=UTF-8";
-	private static final String USER_AGENT =
-			"Dynatrace Generic Log Ingest Appender";
 
-	private final URI activeGateUrl;
-	private final String authorizationToken;
-	private final HttpClient httpClient;
+	private final DynatraceGenericLogIngestStatistics statistics;
+	private volatile DynatraceGenericLogIngestTransport transport;
+	private volatile boolean blocking;
+	private volatile boolean bufferUntilConnected;
+	private volatile DynatraceGenericLogIngestMetricsReporter metricsReporter;
+	private volatile DynatraceGenericLogIngestQuota quota = DynatraceGenericLogIngestQuota.get();
 
+	/**
+	 * Creating the manager does not wait for the network, the transport warms the connection up asynchronously.
+	 */
 	DynatraceGenericLogIngestManager(String name,
-			ManagerConfig managerConfig,
-			Duration connectionTimeout) {
+			ManagerConfig managerConfig) {
 		super(requireNonNull(requireNonNull(managerConfig, "managerConfig is null").getLoggerContext(), "loggerContext is null"),
 				requireNonNull(name, "name is null"));
 
-		try {
-			this.activeGateUrl =
-					requireNonNull(managerConfig.getActiveGateUrl(), "activeGateUrl is null").toURI();
-			this.authorizationToken =
-					"Api-Token " + requireNonNull(managerConfig.getToken(), "token is null");
-
-			final var httpClientBuilder = HttpClient.newBuilder()
-					.followRedirects(HttpClient.Redirect.NORMAL)
-					.connectTimeout(connectionTimeout)
-					.executor(Executors.newSingleThreadExecutor());
-
-			if (!managerConfig.isSslValidation()) {
-				try {
-					var trustManager = new X509ExtendedTrustManager() {
-
-						@Override
-						public X509Certificate[] getAcceptedIssuers() {
-							return new X509Certificate[0];
-						}
-
-						@Override
-						public void checkClientTrusted(X509Certificate[] chain, String authType) {
-						}
-
-						@Override
-						public void checkServerTrusted(X509Certificate[] chain, String authType) {
-						}
-
-						@Override
-						public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
-						}
-
-						@Override
-						public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
-						}
-
-						@Override
-						public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
-						}
-
-						@Override
-						public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
-						}
-					};
-					var sslContext = SSLContext.getInstance("TLS");
-					sslContext.init(null, new TrustManager[] { trustManager }, new SecureRandom());
-					httpClientBuilder.sslContext(sslContext);
-				} catch (NoSuchAlgorithmException | KeyManagementException e) {
-					logError("Error during appender initialization. SSL validation cannot be disabled.", e);
-				}
-			}
-
-			this.httpClient = httpClientBuilder.build();
-		} catch (URISyntaxException e) {
-			throw new IllegalArgumentException("ActiveGate URL cannot be converted to URI", e);
-		}
+		this.transport = DynatraceGenericLogIngestTransport.acquire(toTransportConfig(managerConfig));
+		this.statistics = new DynatraceGenericLogIngestStatistics();
+		this.statistics.setMemoryAccount(DynatraceGenericLogIngestMemoryBudget.get().register(name));
+		this.blocking = managerConfig.isBlocking();
+		this.bufferUntilConnected = managerConfig.isBufferUntilConnected();
+		this.metricsReporter = newMetricsReporter(managerConfig.getMetricsInterval());
+		updateLatencies(managerConfig.isLatencyTracking());
 	}
 
+	/**
+	 * @param requestTimeout replaces the request timeout of the configuration
+	 */
 	DynatraceGenericLogIngestManager(String name,
-			ManagerConfig managerConfig) {
+			ManagerConfig managerConfig,
+			Duration requestTimeout) {
 		this(name,
-				managerConfig,
-				Duration.ofSeconds(30L));
+				requireNonNull(managerConfig, "managerConfig is null").withRequestTimeout(requestTimeout));
 	}
 
+	/**
+	 * Waits for log events enqueued by this manager and releases the transport. Non-positive timeout means a single request
+	 * timeout.
+	 */
 	@Override
 	protected boolean releaseSub(long timeout,
 			TimeUnit timeUnit) {
 		super.releaseSub(timeout, timeUnit);
 
-		return nonNull(httpClient);
+		final var timeoutNanos = timeout > 0L
+				? timeUnit.toNanos(timeout)
+				: transport.getTransportConfig().getRequestTimeout().toNanos();
+		final var deadline = System.nanoTime() + timeoutNanos;
+
+		statistics.awaitCompletion(timeoutNanos, TimeUnit.NANOSECONDS);
+		closeMetricsReporter(Math.max(1L, deadline - System.nanoTime()));
+		var drained = transport.release(Math.max(1L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		drained &= statistics.getPending() == 0L;
+		statistics.getLatencies().unregisterMBean();
+		statistics.getMemoryAccount().close();
+
+		LOGGER.info("Manager {} released. {}", getName(), statistics);
+		return drained;
+	}
+
+	/**
+	 * Called by Log4j when a new configuration reuses this manager (appender with the same name). Unchanged endpoint keeps
+	 * the transport as it is. Otherwise the new transport is acquired first, not yet sent log events of this manager are
+	 * moved to it and only then the previous transport is released, so nothing is lost and the HTTP client with its
+	 * connections stays warm when TLS settings did not change.
+	 */
+	@Override
+	public void updateData(Object data) {
+		final var managerConfig = (ManagerConfig) requireNonNull(data, "data is null");
+		final var transportConfig = toTransportConfig(managerConfig);
+		final var requestTimeout = transportConfig.getRequestTimeout();
+		this.blocking = managerConfig.isBlocking();
+		this.bufferUntilConnected = managerConfig.isBufferUntilConnected();
+		updateLatencies(managerConfig.isLatencyTracking());
+
+		final DynatraceGenericLogIngestTransport previous;
+		synchronized (this) {
+			final var metricsInterval = isNull(metricsReporter) ? Duration.ZERO : metricsReporter.getInterval();
+			if (!metricsInterval.equals(managerConfig.getMetricsInterval())) {
+				closeMetricsReporter(requestTimeout.toNanos());
+				metricsReporter = newMetricsReporter(managerConfig.getMetricsInterval());
+			}
+			previous = transport;
+			if (previous.getTransportConfig().equals(transportConfig)) {
+				return;
+			}
+			transport = DynatraceGenericLogIngestTransport.acquire(transportConfig);
+		}
+
+		var moved = previous.transferTo(transport, statistics);
+		LOGGER.debug("Manager {} switched to {}, {} pending log events moved.", getName(), transportConfig, moved);
+		previous.release(requestTimeout.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	protected Status send(byte[] payload,
+			Level level) {
+		return send(payload, level, 0L);
+	}
+
+	@Override
+	protected Status send(byte[] payload,
+			Level level,
+			long eventEpochNanos) {
+		return send(payload, level, eventEpochNanos, true);
 	}
 
 	@Override
-	protected Status send(String message) {
-		if (Strings.isBlank(message)) {
+	protected Status offer(byte[] payload,
+			Level level) {
+		return send(payload, level, 0L, false);
+	}
+
+	/**
+	 * @param wait blocking manager waits for the request, otherwise the log event is only enqueued
+	 */
+	private Status send(byte[] payload,
+			Level level,
+			long eventEpochNanos,
+			boolean wait) {
+		if (payload.length == 0) {
 			return Status.EMPTY_MESSAGE;
 		}
 
-		final var request = HttpRequest.newBuilder()
-				.uri(activeGateUrl)
-				.POST(HttpRequest.BodyPublishers.ofString(message, UTF_8))
-				.header("Authorization", authorizationToken)
-				.header("Content-Type", CONTENT_TYPE)
-				.header("User-Agent", USER_AGENT)
-				.build();
+		final var reservation = quota.reserve(payload.length, level.isMoreSpecificThan(Level.WARN));
+		if (isNull(reservation)) {
+			statistics.dropped();
+			return Status.DROPPED;
+		}
+		if (!statistics.reserve(payload.length)) {
+			quota.cancel(reservation);
+			statistics.dropped();
+			return Status.DROPPED;
+		}
 
-		try {
-			var response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
-			var statusCode = response.statusCode();
-			var success = statusCode == 200 || statusCode == 204;
-			if (!success) {
-				logWarn("ActiveGate rejected request.",
-						new RejectedRequestException(statusCode));
-				return Status.FAILED;
-			}
+		final var lane = Lane.of(level);
+		final Runnable onDropped = reservation == Reservation.NONE ? null : () -> quota.cancel(reservation);
+		var current = transport;
+		var status = current.send(payload, lane, wait && waitsForRequest(current), statistics, eventEpochNanos, onDropped);
+		while (status == Status.CLOSED && current != transport) {
+			current = transport;
+			status = current.send(payload, lane, wait && waitsForRequest(current), statistics, eventEpochNanos, onDropped);
+		}
+
+		if (status == Status.CLOSED) {
+			quota.cancel(reservation);
+			statistics.release(payload.length);
+			statistics.dropped();
+			return Status.DROPPED;
+		}
+		return status;
+	}
+
+	/**
+	 * @return reporter pushing statistics of this manager to the metrics ingest API, null if the interval is zero
+	 */
+	private DynatraceGenericLogIngestMetricsReporter newMetricsReporter(Duration metricsInterval) {
+		return metricsInterval.isZero()
+				? null
+				: new DynatraceGenericLogIngestMetricsReporter(getName(), statistics, this::getTransport, metricsInterval);
+	}
+
+	private synchronized void closeMetricsReporter(long timeoutNanos) {
+		if (nonNull(metricsReporter)) {
+			metricsReporter.close(timeoutNanos, TimeUnit.NANOSECONDS);
+			metricsReporter = null;
+		}
+	}
+
+	/**
+	 * @param quota ingest quota of the host log events are reserved from, WARN and more severe log events are never dropped
+	 */
+	void setQuota(DynatraceGenericLogIngestQuota quota) {
+		this.quota = requireNonNull(quota, "quota is null");
+	}
+
+	/**
+	 * @param memoryBudget budget log events are reserved from instead of the budget of the JVM, set before the first log
+	 * 		event
+	 */
+	void setMemoryBudget(DynatraceGenericLogIngestMemoryBudget memoryBudget) {
+		final var previous = statistics.getMemoryAccount();
+		statistics.setMemoryAccount(requireNonNull(memoryBudget, "memoryBudget is null").register(getName()));
+		previous.close();
+	}
+
+	DynatraceGenericLogIngestMetricsReporter getMetricsReporter() {
+		return metricsReporter;
+	}
+
+	/**
+	 * Blocking appender buffering until connected only enqueues log events while the transport warms up.
+	 */
+	private boolean waitsForRequest(DynatraceGenericLogIngestTransport current) {
+		return blocking && !(bufferUntilConnected && current.isWarmingUp());
+	}
+
+	@Override
+	DynatraceGenericLogIngestLatencies getLatencies() {
+		return statistics.getLatencies();
+	}
+
+	/**
+	 * Enabled tracking keeps the histograms collected so far, also over reconfigurations.
+	 */
+	private synchronized void updateLatencies(boolean latencyTracking) {
+		final var latencies = statistics.getLatencies();
+		if (latencyTracking == latencies.isEnabled()) {
+			return;
+		}
+		latencies.unregisterMBean();
+		final var updated = latencyTracking ? new DynatraceGenericLogIngestLatencies() : DynatraceGenericLogIngestLatencies.DISABLED;
+		updated.registerMBean(getName());
+		statistics.setLatencies(updated);
+	}
+
+	@Override
+	double getQueueUtilization() {
+		return transport.getQueueUtilization();
+	}
+
+	@Override
+	long getRequests() {
+		return statistics.getRequests();
+	}
+
+	@Override
+	long getRequestNanos() {
+		return statistics.getRequestNanos();
+	}
 
-			return Status.SUCCESS;
-		} catch (IOException | InterruptedException e) {
-			logError("Cannot send log event", e);
-			return Status.EXCEPTION;
+	DynatraceGenericLogIngestStatistics getStatistics() {
+		return statistics;
+	}
+
+	DynatraceGenericLogIngestTransport getTransport() {
+		return transport;
+	}
+
+	private static TransportConfig toTransportConfig(ManagerConfig managerConfig) {
+		try {
+			return TransportConfig.builder(
+							requireNonNull(managerConfig.getActiveGateUrl(), "activeGateUrl is null").toURI(),
+							requireNonNull(managerConfig.getToken(), "token is null"))
+					.setSslValidation(managerConfig.isSslValidation())
+					.setConnectionTimeout(managerConfig.getConnectTimeout())
+					.setDeadLetterFile(managerConfig.getDeadLetterFile())
+					.setOffHeapQueueBytes(managerConfig.getOffHeapQueueBytes())
+					.setProtocol(managerConfig.getProtocol())
+					.setResourceAttributes(managerConfig.getResourceAttributes())
+					.setRequestTimeout(managerConfig.getRequestTimeout())
+					.setKeepAliveInterval(managerConfig.getKeepAliveInterval())
+					.setQueueStripes(managerConfig.getQueueStripes())
+					.setSender(managerConfig.getSender())
+					.setCompression(managerConfig.isCompression())
+					.build();
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("ActiveGate URL cannot be converted to URI", e);
 		}
 	}
 
@@ -165,19 +297,117 @@ final class DynatraceGenericLogIngestManager
 
 	static final class ManagerConfig {
 
+		static final Duration DEFAULT_TIMEOUT = TransportConfig.DEFAULT_TIMEOUT;
+
 		private final LoggerContext loggerContext;
 		private final URL activeGateUrl;
 		private final String token;
 		private final boolean sslValidation;
+		private final boolean blocking;
+		private final Path deadLetterFile;
+		private final long offHeapQueueBytes;
+		private final Protocol protocol;
+		private final Map<String, String> resourceAttributes;
+		private final Duration metricsInterval;
+		private final boolean latencyTracking;
+		private final Duration connectTimeout;
+		private final Duration requestTimeout;
+		private final Duration keepAliveInterval;
+		private final boolean bufferUntilConnected;
+		private final int queueStripes;
+		private final String sender;
+		private final boolean compression;
+
+		private ManagerConfig(Builder builder) {
+			this.loggerContext = requireNonNull(builder.loggerContext, "loggerContext is null");
+			this.activeGateUrl = requireNonNull(builder.activeGateUrl, "activeGateUrl is null");
+			this.token = requireNonNull(builder.token, "token is null");
+			this.sslValidation = builder.sslValidation;
+			this.blocking = builder.blocking;
+			this.deadLetterFile = builder.deadLetterFile;
+			this.offHeapQueueBytes = builder.offHeapQueueBytes;
+			this.protocol = requireNonNull(builder.protocol, "protocol is null");
+			this.resourceAttributes = Map.copyOf(requireNonNull(builder.resourceAttributes, "resourceAttributes is null"));
+			this.metricsInterval = requireNonNull(builder.metricsInterval, "metricsInterval is null");
+			if (metricsInterval.isNegative()) {
+				throw new IllegalArgumentException("metricsInterval is negative");
+			}
+			this.latencyTracking = builder.latencyTracking;
+			this.connectTimeout = requireNonNull(builder.connectTimeout, "connectTimeout is null");
+			this.requestTimeout = requireNonNull(builder.requestTimeout, "requestTimeout is null");
+			this.keepAliveInterval = requireNonNull(builder.keepAliveInterval, "keepAliveInterval is null");
+			this.bufferUntilConnected = builder.bufferUntilConnected;
+			this.queueStripes = builder.queueStripes;
+			this.sender = requireNonNull(builder.sender, "sender is null");
+			this.compression = builder.compression;
+		}
 
-		ManagerConfig(LoggerContext loggerContext,
+		/**
+		 * @return builder with defaults: SSL validation, blocking, JSON, timeouts of {@link #DEFAULT_TIMEOUT}, JDK sender,
+		 * 		nothing else enabled
+		 */
+		static Builder builder(LoggerContext loggerContext,
 				URL activeGateUrl,
-				String token,
-				boolean sslValidation) {
-			this.loggerContext = requireNonNull(loggerContext, "loggerContext is null");
-			this.activeGateUrl = requireNonNull(activeGateUrl, "activeGateUrl is null");
-			this.token = requireNonNull(token, "token is null");
-			this.sslValidation = sslValidation;
+				String token) {
+			return new Builder(loggerContext, activeGateUrl, token);
+		}
+
+		/**
+		 * @return builder with all values of this configuration
+		 */
+		Builder toBuilder() {
+			return toBuilder(activeGateUrl, token);
+		}
+
+		/**
+		 * @return copy of the configuration sending to other Dynatrace environment, with its own dead-letter file
+		 */
+		ManagerConfig withEndpoint(URL activeGateUrl,
+				String token) {
+			return toBuilder(activeGateUrl, token)
+					.setDeadLetterFile(isNull(deadLetterFile) ? null : deadLetterFileOf(deadLetterFile, activeGateUrl))
+					.build();
+		}
+
+		private Builder toBuilder(URL activeGateUrl,
+				String token) {
+			return new Builder(loggerContext, activeGateUrl, token)
+					.setSslValidation(sslValidation)
+					.setBlocking(blocking)
+					.setDeadLetterFile(deadLetterFile)
+					.setOffHeapQueueBytes(offHeapQueueBytes)
+					.setProtocol(protocol)
+					.setResourceAttributes(resourceAttributes)
+					.setMetricsInterval(metricsInterval)
+					.setLatencyTracking(latencyTracking)
+					.setConnectTimeout(connectTimeout)
+					.setRequestTimeout(requestTimeout)
+					.setKeepAliveInterval(keepAliveInterval)
+					.setBufferUntilConnected(bufferUntilConnected)
+					.setQueueStripes(queueStripes)
+					.setSender(sender)
+					.setCompression(compression);
+		}
+
+		/**
+		 * @return file next to the given one, with the host (and port) of the environment before the extension
+		 */
+		static Path deadLetterFileOf(Path deadLetterFile,
+				URL activeGateUrl) {
+			final var environment = (activeGateUrl.getPort() < 0
+					? activeGateUrl.getHost()
+					: activeGateUrl.getHost() + "-" + activeGateUrl.getPort()).replaceAll("[^A-Za-z0-9.-]", "_");
+			final var fileName = deadLetterFile.getFileName().toString();
+			final var extension = fileName.lastIndexOf('.');
+			return deadLetterFile.resolveSibling(extension > 0
+					? fileName.substring(0, extension) + "." + environment + fileName.substring(extension)
+					: fileName + "." + environment);
+		}
+
+		ManagerConfig withRequestTimeout(Duration requestTimeout) {
+			return toBuilder()
+					.setRequestTimeout(requestTimeout)
+					.build();
 		}
 
 		LoggerContext getLoggerContext() {
@@ -196,6 +426,62 @@ final class DynatraceGenericLogIngestManager
 			return sslValidation;
 		}
 
+		boolean isBlocking() {
+			return blocking;
+		}
+
+		Path getDeadLetterFile() {
+			return deadLetterFile;
+		}
+
+		long getOffHeapQueueBytes() {
+			return offHeapQueueBytes;
+		}
+
+		Protocol getProtocol() {
+			return protocol;
+		}
+
+		Map<String, String> getResourceAttributes() {
+			return resourceAttributes;
+		}
+
+		Duration getMetricsInterval() {
+			return metricsInterval;
+		}
+
+		boolean isLatencyTracking() {
+			return latencyTracking;
+		}
+
+		Duration getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		Duration getRequestTimeout() {
+			return requestTimeout;
+		}
+
+		Duration getKeepAliveInterval() {
+			return keepAliveInterval;
+		}
+
+		boolean isBufferUntilConnected() {
+			return bufferUntilConnected;
+		}
+
+		int getQueueStripes() {
+			return queueStripes;
+		}
+
+		String getSender() {
+			return sender;
+		}
+
+		boolean isCompression() {
+			return compression;
+		}
+
 		@Override
 		public boolean equals(Object o) {
 			if (this == o) {
@@ -206,14 +492,30 @@ final class DynatraceGenericLogIngestManager
 			}
 			var data = (ManagerConfig) o;
 			return sslValidation == data.sslValidation &&
+					blocking == data.blocking &&
+					latencyTracking == data.latencyTracking &&
+					bufferUntilConnected == data.bufferUntilConnected &&
+					compression == data.compression &&
+					queueStripes == data.queueStripes &&
+					offHeapQueueBytes == data.offHeapQueueBytes &&
 					Objects.equals(loggerContext, data.loggerContext) &&
 					Objects.equals(activeGateUrl, data.activeGateUrl) &&
-					Objects.equals(token, data.token);
+					Objects.equals(token, data.token) &&
+					Objects.equals(deadLetterFile, data.deadLetterFile) &&
+					protocol == data.protocol &&
+					Objects.equals(resourceAttributes, data.resourceAttributes) &&
+					Objects.equals(metricsInterval, data.metricsInterval) &&
+					Objects.equals(connectTimeout, data.connectTimeout) &&
+					Objects.equals(requestTimeout, data.requestTimeout) &&
+					Objects.equals(keepAliveInterval, data.keepAliveInterval) &&
+					Objects.equals(sender, data.sender);
 		}
 
 		@Override
 		public int hashCode() {
-			return Objects.hash(loggerContext, activeGateUrl, token, sslValidation);
+			return Objects.hash(loggerContext, activeGateUrl, token, sslValidation, blocking, latencyTracking, bufferUntilConnected,
+					deadLetterFile, offHeapQueueBytes, protocol, resourceAttributes, metricsInterval, connectTimeout, requestTimeout,
+					keepAliveInterval, queueStripes, sender, compression);
 		}
 
 		@Override
@@ -223,8 +525,170 @@ final class DynatraceGenericLogIngestManager
 					.add("activeGateUrl='" + activeGateUrl + "'")
 					.add("token='########'")
 					.add("sslValidation=" + sslValidation)
+					.add("blocking=" + blocking)
+					.add("deadLetterFile=" + deadLetterFile)
+					.add("offHeapQueueBytes=" + offHeapQueueBytes)
+					.add("protocol=" + protocol)
+					.add("resourceAttributes=" + resourceAttributes)
+					.add("metricsInterval=" + metricsInterval)
+					.add("latencyTracking=" + latencyTracking)
+					.add("connectTimeout=" + connectTimeout)
+					.add("requestTimeout=" + requestTimeout)
+					.add("keepAliveInterval=" + keepAliveInterval)
+					.add("bufferUntilConnected=" + bufferUntilConnected)
+					.add("queueStripes=" + queueStripes)
+					.add("sender='" + sender + "'")
+					.add("compression=" + compression)
 					.toString();
 		}
+
+		static final class Builder {
+
+			private final LoggerContext loggerContext;
+			private final URL activeGateUrl;
+			private final String token;
+			private boolean sslValidation = true;
+			private boolean blocking = true;
+			private Path deadLetterFile;
+			private long offHeapQueueBytes;
+			private Protocol protocol = Protocol.JSON;
+			private Map<String, String> resourceAttributes = Map.of();
+			private Duration metricsInterval = Duration.ZERO;
+			private boolean latencyTracking;
+			private Duration connectTimeout = DEFAULT_TIMEOUT;
+			private Duration requestTimeout = DEFAULT_TIMEOUT;
+			private Duration keepAliveInterval = Duration.ZERO;
+			private boolean bufferUntilConnected;
+			private int queueStripes = 1;
+			private String sender = TransportConfig.JDK_SENDER;
+			private boolean compression;
+
+			private Builder(LoggerContext loggerContext,
+					URL activeGateUrl,
+					String token) {
+				this.loggerContext = loggerContext;
+				this.activeGateUrl = activeGateUrl;
+				this.token = token;
+			}
+
+			Builder setSslValidation(boolean sslValidation) {
+				this.sslValidation = sslValidation;
+				return this;
+			}
+
+			/**
+			 * @param blocking wait for the request carrying the log event
+			 */
+			Builder setBlocking(boolean blocking) {
+				this.blocking = blocking;
+				return this;
+			}
+
+			/**
+			 * @param deadLetterFile file for log events rejected by the ActiveGate, null - rejected log events are only counted
+			 */
+			Builder setDeadLetterFile(Path deadLetterFile) {
+				this.deadLetterFile = deadLetterFile;
+				return this;
+			}
+
+			/**
+			 * @param offHeapQueueBytes capacity of the off-heap queue, 0 - log events wait on the heap
+			 */
+			Builder setOffHeapQueueBytes(long offHeapQueueBytes) {
+				this.offHeapQueueBytes = offHeapQueueBytes;
+				return this;
+			}
+
+			Builder setProtocol(Protocol protocol) {
+				this.protocol = protocol;
+				return this;
+			}
+
+			/**
+			 * @param resourceAttributes attributes of the OTLP resource
+			 */
+			Builder setResourceAttributes(Map<String, String> resourceAttributes) {
+				this.resourceAttributes = resourceAttributes;
+				return this;
+			}
+
+			/**
+			 * @param metricsInterval period of pushing statistics to the metrics ingest API, zero - not pushed
+			 */
+			Builder setMetricsInterval(Duration metricsInterval) {
+				this.metricsInterval = metricsInterval;
+				return this;
+			}
+
+			/**
+			 * @param latencyTracking record latency breakdown of the logging pipeline
+			 */
+			Builder setLatencyTracking(boolean latencyTracking) {
+				this.latencyTracking = latencyTracking;
+				return this;
+			}
+
+			/**
+			 * @param connectTimeout timeout of establishing the connection
+			 */
+			Builder setConnectTimeout(Duration connectTimeout) {
+				this.connectTimeout = connectTimeout;
+				return this;
+			}
+
+			/**
+			 * @param requestTimeout timeout of a single request
+			 */
+			Builder setRequestTimeout(Duration requestTimeout) {
+				this.requestTimeout = requestTimeout;
+				return this;
+			}
+
+			/**
+			 * @param keepAliveInterval idle time after which the connection is pinged, zero - no pings
+			 */
+			Builder setKeepAliveInterval(Duration keepAliveInterval) {
+				this.keepAliveInterval = keepAliveInterval;
+				return this;
+			}
+
+			/**
+			 * @param bufferUntilConnected blocking appender does not wait for requests until the connection is warmed up
+			 */
+			Builder setBufferUntilConnected(boolean bufferUntilConnected) {
+				this.bufferUntilConnected = bufferUntilConnected;
+				return this;
+			}
+
+			/**
+			 * @param queueStripes number of stripes of the heap queue, 1 - single queue, 0 - one per available processor
+			 */
+			Builder setQueueStripes(int queueStripes) {
+				this.queueStripes = queueStripes;
+				return this;
+			}
+
+			/**
+			 * @param sender name of the built-in sender or class name of a {@link DynatraceGenericLogIngestSender.Factory}
+			 */
+			Builder setSender(String sender) {
+				this.sender = sender;
+				return this;
+			}
+
+			/**
+			 * @param compression request bodies are compressed with gzip
+			 */
+			Builder setCompression(boolean compression) {
+				this.compression = compression;
+				return this;
+			}
+
+			ManagerConfig build() {
+				return new ManagerConfig(this);
+			}
+		}
 	}
 
 	private static final class DynatraceGenericLogIngestManagerFactory implements
@@ -236,16 +700,4 @@ final class DynatraceGenericLogIngestManager
 			return new DynatraceGenericLogIngestManager(name, config);
 		}
 	}
-
-	private static final class RejectedRequestException extends RuntimeException {
-
-		private RejectedRequestException(int statusCode) {
-			super("statusCode=" + statusCode, null, false, false);
-		}
-
-		private RejectedRequestException(int statusCode,
-				String reason) {
-			super("statusCode=" + statusCode + " reason=" + reason, null, false, false);
-		}
-	}
 }
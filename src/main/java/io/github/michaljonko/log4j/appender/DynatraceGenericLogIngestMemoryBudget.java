@@ -0,0 +1,280 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.requireNonNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Byte-accounted budget of log events buffered by all appenders of the JVM, configured by the
+ * {@value #BUDGET_PROPERTY} system property (0 or missing - unlimited).
+ * <p>
+ * Every manager has an {@link Account} and reserves the payload of a log event plus {@value #EVENT_OVERHEAD_BYTES} bytes of
+ * bookkeeping before the log event is enqueued, the reservation is released when the log event is completed. A half of the
+ * budget is split into equal guaranteed shares of the accounts, the other half is a pool which any account borrows from
+ * when its share is used up. A flooding appender can exhaust the pool, but never the shares of the others. Log event
+ * which fits neither into the share nor into the pool is dropped, blocking callers do not wait for memory.
+ * <p>
+ * Shares shrink when managers are added, an account over its new share only borrows until it drains below it.
+ */
+final class DynatraceGenericLogIngestMemoryBudget
+		implements DynatraceGenericLogIngestMemoryBudgetMXBean {
+
+	static final String BUDGET_PROPERTY = "dynatrace.log4j.memoryBudgetBytes";
+	static final int EVENT_OVERHEAD_BYTES = 64;
+	static final DynatraceGenericLogIngestMemoryBudget UNLIMITED = new DynatraceGenericLogIngestMemoryBudget(0L);
+	static final Account UNLIMITED_ACCOUNT = UNLIMITED.register("unlimited");
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final long budgetBytes;
+	private final long guaranteedBytes;
+	private final long poolBytes;
+	private final AtomicLong borrowed = new AtomicLong();
+	private final LongAdder shed = new LongAdder();
+	private final List<Account> accounts = new CopyOnWriteArrayList<>();
+	private volatile long shareBytes;
+
+	/**
+	 * @param budgetBytes bytes of log events buffered by all accounts, 0 - unlimited
+	 */
+	DynatraceGenericLogIngestMemoryBudget(long budgetBytes) {
+		if (budgetBytes < 0L) {
+			throw new IllegalArgumentException("budgetBytes is negative");
+		}
+		this.budgetBytes = budgetBytes;
+		this.guaranteedBytes = budgetBytes / 2L;
+		this.poolBytes = budgetBytes - guaranteedBytes;
+		this.shareBytes = guaranteedBytes;
+	}
+
+	/**
+	 * @return budget of the JVM, registered in JMX when limited
+	 */
+	static DynatraceGenericLogIngestMemoryBudget get() {
+		return Holder.BUDGET;
+	}
+
+	boolean isLimited() {
+		return budgetBytes > 0L;
+	}
+
+	/**
+	 * @param name name of the manager, used in JMX
+	 * @return account of the manager, it has to be closed when the manager is released
+	 */
+	Account register(String name) {
+		final var account = new Account(this, requireNonNull(name, "name is null"));
+		if (isLimited()) {
+			synchronized (accounts) {
+				accounts.add(account);
+				shareBytes = guaranteedBytes / accounts.size();
+			}
+		}
+		return account;
+	}
+
+	private void unregister(Account account) {
+		synchronized (accounts) {
+			if (accounts.remove(account)) {
+				shareBytes = guaranteedBytes / Math.max(1, accounts.size());
+			}
+		}
+	}
+
+	@Override
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	@Override
+	public long getReservedBytes() {
+		var reserved = 0L;
+		for (var account : accounts) {
+			reserved += account.getReservedBytes();
+		}
+		return reserved;
+	}
+
+	@Override
+	public long getFreeBytes() {
+		return isLimited() ? Math.max(0L, budgetBytes - getReservedBytes()) : Long.MAX_VALUE;
+	}
+
+	@Override
+	public long getBorrowedBytes() {
+		return borrowed.get();
+	}
+
+	@Override
+	public long getShareBytes() {
+		return shareBytes;
+	}
+
+	@Override
+	public long getShedEvents() {
+		return shed.sum();
+	}
+
+	@Override
+	public Map<String, Long> getReservedBytesPerAppender() {
+		final var reserved = new LinkedHashMap<String, Long>();
+		for (var account : accounts) {
+			reserved.merge(account.name, account.getReservedBytes(), Long::sum);
+		}
+		return reserved;
+	}
+
+	private static DynatraceGenericLogIngestMemoryBudget fromSystemProperty() {
+		final var property = System.getProperty(BUDGET_PROPERTY);
+		if (isNull(property) || property.isBlank()) {
+			return UNLIMITED;
+		}
+		try {
+			final var budget = new DynatraceGenericLogIngestMemoryBudget(Long.parseLong(property.trim()));
+			budget.registerMBean();
+			return budget;
+		} catch (IllegalArgumentException e) {
+			LOGGER.error("Invalid {} value {}, memory of appenders is not limited.", BUDGET_PROPERTY, property, e);
+			return UNLIMITED;
+		}
+	}
+
+	private void registerMBean() {
+		if (!isLimited()) {
+			return;
+		}
+		try {
+			final var name = new ObjectName(DynatraceGenericLogIngestTransport.MBEAN_DOMAIN + ":type="
+					+ DynatraceGenericLogIngestMemoryBudget.class.getSimpleName());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		} catch (JMException | RuntimeException e) {
+			LOGGER.debug("Memory budget cannot be registered in JMX.", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestMemoryBudget.class.getSimpleName() + "[", "]")
+				.add("budgetBytes=" + budgetBytes)
+				.add("shareBytes=" + shareBytes)
+				.add("borrowedBytes=" + borrowed.get())
+				.add("accounts=" + accounts.size())
+				.toString();
+	}
+
+	private static final class Holder {
+
+		private static final DynatraceGenericLogIngestMemoryBudget BUDGET = fromSystemProperty();
+	}
+
+	/**
+	 * Reservations of a single manager. Lock-free, a reservation costs one CAS on the account when it fits into the share
+	 * and another one on the pool when it is borrowed.
+	 */
+	static final class Account {
+
+		private final DynatraceGenericLogIngestMemoryBudget budget;
+		private final String name;
+		private final AtomicLong guaranteed = new AtomicLong();
+		private final AtomicLong borrowed = new AtomicLong();
+		private volatile boolean closed;
+
+		private Account(DynatraceGenericLogIngestMemoryBudget budget,
+				String name) {
+			this.budget = budget;
+			this.name = name;
+		}
+
+		/**
+		 * @param payloadBytes size of the serialized log event
+		 * @return false if the log event has to be dropped
+		 */
+		boolean reserve(int payloadBytes) {
+			if (!budget.isLimited()) {
+				return true;
+			}
+			final var bytes = (long) payloadBytes + EVENT_OVERHEAD_BYTES;
+			final var share = closed ? 0L : budget.shareBytes;
+			for (var current = guaranteed.get(); current + bytes <= share; current = guaranteed.get()) {
+				if (guaranteed.compareAndSet(current, current + bytes)) {
+					return true;
+				}
+			}
+			final var pool = budget.borrowed;
+			for (var current = pool.get(); current + bytes <= budget.poolBytes; current = pool.get()) {
+				if (pool.compareAndSet(current, current + bytes)) {
+					borrowed.addAndGet(bytes);
+					return true;
+				}
+			}
+			budget.shed.increment();
+			return false;
+		}
+
+		/**
+		 * Borrowed bytes are returned to the pool first.
+		 *
+		 * @param payloadBytes size of the serialized log event passed to {@link #reserve(int)}
+		 */
+		void release(int payloadBytes) {
+			if (!budget.isLimited()) {
+				return;
+			}
+			final var bytes = (long) payloadBytes + EVENT_OVERHEAD_BYTES;
+			var returned = 0L;
+			for (var current = borrowed.get(); current > 0L; current = borrowed.get()) {
+				returned = Math.min(current, bytes);
+				if (borrowed.compareAndSet(current, current - returned)) {
+					break;
+				}
+				returned = 0L;
+			}
+			if (returned > 0L) {
+				budget.borrowed.addAndGet(-returned);
+			}
+			if (returned < bytes) {
+				guaranteed.addAndGet(returned - bytes);
+			}
+		}
+
+		long getReservedBytes() {
+			return guaranteed.get() + borrowed.get();
+		}
+
+		DynatraceGenericLogIngestMemoryBudget getBudget() {
+			return budget;
+		}
+
+		/**
+		 * Give the share back to the other accounts. Log events still pending release their reservations as they complete.
+		 */
+		void close() {
+			if (budget.isLimited() && !closed) {
+				closed = true;
+				budget.unregister(this);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", Account.class.getSimpleName() + "[", "]")
+					.add("name='" + name + "'")
+					.add("reservedBytes=" + getReservedBytes())
+					.toString();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package io.github.michaljonko.log4j.appender;
+
+import java.util.Map;
+
+/**
+ * JMX view of the memory budget shared by all appenders of the JVM.
+ */
+public interface DynatraceGenericLogIngestMemoryBudgetMXBean {
+
+	/**
+	 * Configured budget.
+	 *
+	 * @return bytes
+	 */
+	long getBudgetBytes();
+
+	/**
+	 * Bytes of log events waiting for the request or in-flight.
+	 *
+	 * @return bytes
+	 */
+	long getReservedBytes();
+
+	/**
+	 * Bytes which can be still reserved.
+	 *
+	 * @return bytes
+	 */
+	long getFreeBytes();
+
+	/**
+	 * Bytes reserved from the shared pool, above the guaranteed shares.
+	 *
+	 * @return bytes
+	 */
+	long getBorrowedBytes();
+
+	/**
+	 * Guaranteed share of every appender.
+	 *
+	 * @return bytes
+	 */
+	long getShareBytes();
+
+	/**
+	 * Number of log events not accepted because the budget was exhausted.
+	 *
+	 * @return log events
+	 */
+	long getShedEvents();
+
+	/**
+	 * Reserved bytes of every appender.
+	 *
+	 * @return bytes per appender
+	 */
+	Map<String, Long> getReservedBytesPerAppender();
+}
@@ -0,0 +1,136 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.requireNonNull;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sender without any network for tests and benchmarks. Every request is answered immediately with the configured status
+ * code, the last {@link #MAX_RECORDED_REQUESTS} requests are kept with their bodies.
+ */
+final class DynatraceGenericLogIngestMemorySender
+		implements DynatraceGenericLogIngestSender {
+
+	static final Factory FACTORY = senderConfig -> new DynatraceGenericLogIngestMemorySender();
+	static final int MAX_RECORDED_REQUESTS = 1_000;
+
+	private final Deque<RecordedRequest> recorded = new ArrayDeque<>();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bodyBytes = new LongAdder();
+	private volatile int statusCode = 200;
+	private volatile ByteBuffer responseBody = ByteBuffer.allocate(0);
+	private volatile boolean closed;
+
+	@Override
+	public CompletableFuture<Integer> send(Request request) {
+		return exchange(request).thenApply(Response::getStatusCode);
+	}
+
+	@Override
+	public CompletableFuture<Response> exchange(Request request) {
+		requireNonNull(request, "request is null");
+		if (closed) {
+			return CompletableFuture.failedFuture(new IllegalStateException("sender is closed"));
+		}
+
+		final var body = DynatraceGenericLogIngestJdkSender.toByteArray(request.getBody());
+		requests.increment();
+		bodyBytes.add(body.length);
+		synchronized (recorded) {
+			if (recorded.size() == MAX_RECORDED_REQUESTS) {
+				recorded.removeFirst();
+			}
+			recorded.addLast(new RecordedRequest(request.getMethod(), request.getUri(), request.getHeaders(), body));
+		}
+		return CompletableFuture.completedFuture(new Response(statusCode, responseBody));
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * @param statusCode status code of the following responses
+	 */
+	void setStatusCode(int statusCode) {
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * @param responseBody body of the following responses, e.g. partial success
+	 */
+	void setResponseBody(byte[] responseBody) {
+		this.responseBody = ByteBuffer.wrap(responseBody.clone());
+	}
+
+	long getRequests() {
+		return requests.sum();
+	}
+
+	long getBodyBytes() {
+		return bodyBytes.sum();
+	}
+
+	List<RecordedRequest> getRecordedRequests() {
+		synchronized (recorded) {
+			return new ArrayList<>(recorded);
+		}
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	static final class RecordedRequest {
+
+		private final String method;
+		private final URI uri;
+		private final Map<String, String> headers;
+		private final byte[] body;
+
+		private RecordedRequest(String method,
+				URI uri,
+				Map<String, String> headers,
+				byte[] body) {
+			this.method = method;
+			this.uri = uri;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		String getMethod() {
+			return method;
+		}
+
+		URI getUri() {
+			return uri;
+		}
+
+		Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		byte[] getBody() {
+			return body;
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", RecordedRequest.class.getSimpleName() + "[", "]")
+					.add("method='" + method + "'")
+					.add("uri=" + uri)
+					.add("bodyBytes=" + body.length)
+					.toString();
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Periodically pushes delivery counters of a single manager to the Dynatrace metrics ingest API
+ * ({@code /api/v2/metrics/ingest}) in the line protocol, through the HTTP client and token of the manager's transport.
+ * <p>
+ * Counters are aggregated in place by {@link DynatraceGenericLogIngestStatistics}, the reporter keeps only the values of
+ * the previous report to send deltas. Every line has the appender name and the ActiveGate URL as dimensions.
+ */
+final class DynatraceGenericLogIngestMetricsReporter {
+
+	static final String METRICS_INGEST_PATH = "/api/v2/metrics/ingest";
+	static final String METRIC_PREFIX = "log4j.appender.dynatrace.";
+	static final String CONTENT_TYPE = "text/plain; charset=utf-8";
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final String appenderName;
+	private final DynatraceGenericLogIngestStatistics statistics;
+	private final Supplier<DynatraceGenericLogIngestTransport> transport;
+	private final Duration interval;
+	private final ScheduledExecutorService executor;
+	private long delivered;
+	private long failed;
+	private long dropped;
+	private long abandoned;
+	private long deliveredBytes;
+	private long retried;
+	private long requests;
+	private long requestNanos;
+
+	/**
+	 * @param transport current transport of the manager, it changes on reconfiguration
+	 */
+	DynatraceGenericLogIngestMetricsReporter(String appenderName,
+			DynatraceGenericLogIngestStatistics statistics,
+			Supplier<DynatraceGenericLogIngestTransport> transport,
+			Duration interval) {
+		this.appenderName = requireNonNull(appenderName, "appenderName is null");
+		this.statistics = requireNonNull(statistics, "statistics is null");
+		this.transport = requireNonNull(transport, "transport is null");
+		this.interval = requireNonNull(interval, "interval is null");
+		if (interval.isNegative() || interval.isZero()) {
+			throw new IllegalArgumentException("interval is not positive");
+		}
+		this.executor = Executors.newSingleThreadScheduledExecutor(
+				runnable -> DynatraceGenericLogIngestHttpClient.newDaemonThread(runnable, "metrics"));
+		this.executor.scheduleWithFixedDelay(this::report, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	Duration getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Push metrics collected since the previous report.
+	 *
+	 * @return future completed when the ActiveGate answered, never completed exceptionally
+	 */
+	synchronized CompletableFuture<Void> report() {
+		final var current = transport.get();
+		final var activeGateUrl = current.getTransportConfig().getActiveGateUrl();
+		final var body = lines(activeGateUrl).getBytes(UTF_8);
+		try {
+			return current.postAsync(metricsEndpoint(activeGateUrl), CONTENT_TYPE, body)
+					.handle((statusCode, throwable) -> {
+						if (nonNull(throwable)) {
+							LOGGER.debug("Cannot push metrics of appender {}.", appenderName, throwable);
+						} else if (statusCode != 202 && statusCode != 200) {
+							LOGGER.debug("ActiveGate rejected metrics of appender {} with {}.", appenderName, statusCode);
+						}
+						return null;
+					});
+		} catch (RuntimeException e) {
+			LOGGER.debug("Cannot push metrics of appender {}.", appenderName, e);
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	/**
+	 * Stop reporting and push the last metrics, waiting at most given time for the ActiveGate.
+	 */
+	void close(long timeout,
+			TimeUnit timeUnit) {
+		executor.shutdownNow();
+		try {
+			report().get(timeout, timeUnit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			LOGGER.debug("Last metrics of appender {} not pushed.", appenderName, e);
+		}
+	}
+
+	/**
+	 * Metric lines since the previous call: counters as deltas, request latency as a gauge summary in milliseconds, the
+	 * number of log events waiting for the request and, when the memory budget is limited, reserved and free bytes.
+	 */
+	synchronized String lines(URI activeGateUrl) {
+		final var dimensions = "," + dimension("appender", appenderName) + "," + dimension("endpoint", activeGateUrl.toString());
+		final var lines = new StringBuilder(1_024);
+
+		delivered = counter(lines, "events.delivered", dimensions, statistics.getDelivered(), delivered);
+		failed = counter(lines, "events.failed", dimensions, statistics.getFailed(), failed);
+		dropped = counter(lines, "events.dropped", dimensions, statistics.getDropped(), dropped);
+		abandoned = counter(lines, "events.abandoned", dimensions, statistics.getAbandoned(), abandoned);
+		deliveredBytes = counter(lines, "bytes.delivered", dimensions, statistics.getDeliveredBytes(), deliveredBytes);
+		retried = counter(lines, "events.retried", dimensions, statistics.getRetried(), retried);
+
+		final var currentRequests = statistics.getRequests();
+		final var currentRequestNanos = statistics.getRequestNanos();
+		final var minRequestNanos = statistics.getThenResetMinRequestNanos();
+		final var maxRequestNanos = statistics.getThenResetMaxRequestNanos();
+		if (currentRequests > requests) {
+			lines.append(METRIC_PREFIX).append("request.latency").append(dimensions)
+					.append(" gauge,min=").append(millis(Math.min(minRequestNanos, maxRequestNanos)))
+					.append(",max=").append(millis(maxRequestNanos))
+					.append(",sum=").append(millis(currentRequestNanos - requestNanos))
+					.append(",count=").append(currentRequests - requests)
+					.append('\n');
+		}
+		requests = currentRequests;
+		requestNanos = currentRequestNanos;
+
+		lines.append(METRIC_PREFIX).append("queue.depth").append(dimensions)
+				.append(" gauge,").append(statistics.getPending())
+				.append('\n');
+
+		final var memoryAccount = statistics.getMemoryAccount();
+		if (memoryAccount.getBudget().isLimited()) {
+			lines.append(METRIC_PREFIX).append("memory.reserved").append(dimensions)
+					.append(" gauge,").append(memoryAccount.getReservedBytes())
+					.append('\n');
+			lines.append(METRIC_PREFIX).append("memory.free").append(dimensions)
+					.append(" gauge,").append(memoryAccount.getBudget().getFreeBytes())
+					.append('\n');
+		}
+		return lines.toString();
+	}
+
+	/**
+	 * ActiveGate URL pointing to a log ingest endpoint is switched to the metrics ingest endpoint of the same environment,
+	 * any other URL is replaced by the metrics ingest path on the same host.
+	 */
+	static URI metricsEndpoint(URI activeGateUrl) {
+		final var path = activeGateUrl.getPath();
+		if (nonNull(path)) {
+			for (var logsPath : new String[] { Protocol.LOG_INGEST_PATH, Protocol.OTLP_LOGS_PATH }) {
+				if (path.endsWith(logsPath)) {
+					return activeGateUrl.resolve(path.substring(0, path.length() - logsPath.length()) + METRICS_INGEST_PATH);
+				}
+			}
+		}
+		return activeGateUrl.resolve(METRICS_INGEST_PATH);
+	}
+
+	private static long counter(StringBuilder lines,
+			String key,
+			String dimensions,
+			long current,
+			long previous) {
+		lines.append(METRIC_PREFIX).append(key).append(dimensions)
+				.append(" count,delta=").append(Math.max(0L, current - previous))
+				.append('\n');
+		return current;
+	}
+
+	/**
+	 * Quoted dimension value, quotes and backslashes escaped, line breaks replaced.
+	 */
+	private static String dimension(String key,
+			String value) {
+		return key + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace('\n', ' ').replace('\r', ' ') + "\"";
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0d);
+	}
+}
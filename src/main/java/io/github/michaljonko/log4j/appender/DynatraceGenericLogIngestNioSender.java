@@ -0,0 +1,535 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Lean HTTP/1.1 client on socket channels. Connections are kept alive and requests are pipelined: written one after another
+ * without waiting for the previous responses, which come in the same order. Request heads and bodies are streamed through
+ * pooled direct buffers, so heap buffers of log events are not copied to the temporary direct buffers the JDK caches per
+ * thread. Plain HTTP only (e.g. ActiveGate behind a TLS-terminating proxy or a local collector).
+ * <p>
+ * Every connection has a writer and a reader thread. A request goes to the connection with the fewest outstanding requests,
+ * another connection is opened when all of them have the pipeline depth of requests outstanding. Request without response
+ * within its timeout closes the connection, responses of the requests pipelined behind it could not be matched anymore.
+ */
+final class DynatraceGenericLogIngestNioSender
+		implements DynatraceGenericLogIngestSender {
+
+	static final Factory FACTORY = DynatraceGenericLogIngestNioSender::new;
+	static final int MAX_CONNECTIONS = 4;
+	static final int PIPELINE_DEPTH = 8;
+	static final int BUFFER_BYTES = 64 * 1024;
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final int MAX_LINE_LENGTH = 8 * 1024;
+	private static final ByteBuffer EMPTY_BODY = ByteBuffer.allocate(0);
+
+	private final SenderConfig senderConfig;
+	private final int maxConnections;
+	private final int pipelineDepth;
+	private final List<Connection> connections = new ArrayList<>();
+	private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+	private boolean closed;
+
+	DynatraceGenericLogIngestNioSender(SenderConfig senderConfig) {
+		this(senderConfig, MAX_CONNECTIONS, PIPELINE_DEPTH);
+	}
+
+	/**
+	 * @param maxConnections connections per host and port
+	 * @param pipelineDepth outstanding requests per connection before another connection is opened
+	 */
+	DynatraceGenericLogIngestNioSender(SenderConfig senderConfig,
+			int maxConnections,
+			int pipelineDepth) {
+		if (maxConnections < 1 || pipelineDepth < 1) {
+			throw new IllegalArgumentException("maxConnections or pipelineDepth is not positive");
+		}
+		this.senderConfig = requireNonNull(senderConfig, "senderConfig is null");
+		this.maxConnections = maxConnections;
+		this.pipelineDepth = pipelineDepth;
+	}
+
+	@Override
+	public CompletableFuture<Integer> send(Request request) {
+		return exchange(request).thenApply(Response::getStatusCode);
+	}
+
+	@Override
+	public CompletableFuture<Response> exchange(Request request) {
+		requireNonNull(request, "request is null");
+		final var uri = request.getUri();
+		if (!"http".equalsIgnoreCase(uri.getScheme()) || isNull(uri.getHost())) {
+			return CompletableFuture.failedFuture(new IllegalArgumentException("Only http URLs are supported, not " + uri));
+		}
+		for (var header : request.getHeaders().entrySet()) {
+			if (!isToken(header.getKey()) || !isHeaderValue(header.getValue())) {
+				return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid header " + header.getKey()));
+			}
+		}
+
+		final var exchange = new Exchange(request);
+		final Connection connection;
+		synchronized (connections) {
+			if (closed) {
+				return CompletableFuture.failedFuture(new IOException("Sender is closed"));
+			}
+			connection = connection(uri.getHost(), uri.getPort() < 0 ? 80 : uri.getPort());
+			connection.outstanding++;
+			connection.writes.add(exchange);
+		}
+		return exchange.result
+				.orTimeout(request.getTimeout().toNanos(), TimeUnit.NANOSECONDS)
+				.whenComplete((response, throwable) -> {
+					if (throwable instanceof TimeoutException) {
+						connection.fail(new IOException("Request timed out, connection closed"));
+					}
+				});
+	}
+
+	/**
+	 * Least loaded connection to the host, new one if every connection is at the pipeline depth.
+	 */
+	private Connection connection(String host,
+			int port) {
+		Connection leastLoaded = null;
+		var open = 0;
+		for (var connection : connections) {
+			if (connection.port == port && connection.host.equalsIgnoreCase(host)) {
+				open++;
+				if (isNull(leastLoaded) || connection.outstanding < leastLoaded.outstanding) {
+					leastLoaded = connection;
+				}
+			}
+		}
+		if (nonNull(leastLoaded) && (leastLoaded.outstanding < pipelineDepth || open >= maxConnections)) {
+			return leastLoaded;
+		}
+
+		final var connection = new Connection(host, port);
+		connections.add(connection);
+		connection.writer.start();
+		return connection;
+	}
+
+	@Override
+	public void close() {
+		final List<Connection> open;
+		synchronized (connections) {
+			closed = true;
+			open = new ArrayList<>(connections);
+		}
+		for (var connection : open) {
+			connection.fail(new IOException("Sender is closed"));
+		}
+		buffers.clear();
+	}
+
+	int getConnections() {
+		synchronized (connections) {
+			return connections.size();
+		}
+	}
+
+	private ByteBuffer acquireBuffer() {
+		final var buffer = buffers.poll();
+		return nonNull(buffer) ? buffer : ByteBuffer.allocateDirect(BUFFER_BYTES);
+	}
+
+	private void releaseBuffer(ByteBuffer buffer) {
+		if (buffers.size() < 2 * maxConnections) {
+			buffers.offer(buffer.clear());
+		}
+	}
+
+	private static boolean isToken(String name) {
+		if (name.isEmpty()) {
+			return false;
+		}
+		for (var i = 0; i < name.length(); i++) {
+			final var c = name.charAt(i);
+			if (c <= ' ' || c >= 0x7F || c == ':') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isHeaderValue(String value) {
+		for (var i = 0; i < value.length(); i++) {
+			final var c = value.charAt(i);
+			if ((c < ' ' && c != '\t') || c >= 0x7F) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Exchange {
+
+		private final Request request;
+		private final CompletableFuture<Response> result = new CompletableFuture<>();
+
+		private Exchange(Request request) {
+			this.request = request;
+		}
+
+		private boolean isHead() {
+			return "HEAD".equalsIgnoreCase(request.getMethod());
+		}
+	}
+
+	private final class Connection {
+
+		private final String host;
+		private final int port;
+		private final BlockingQueue<Exchange> writes = new LinkedBlockingQueue<>();
+		private final BlockingQueue<Exchange> responses = new LinkedBlockingQueue<>();
+		private final SocketChannel channel;
+		private final Thread writer;
+		private final Thread reader;
+		private int outstanding;
+		private volatile boolean open = true;
+		private ByteBuffer input;
+		private int statusCode;
+		private ByteBuffer body;
+
+		private Connection(String host,
+				int port) {
+			this.host = host;
+			this.port = port;
+			try {
+				this.channel = SocketChannel.open();
+			} catch (IOException e) {
+				throw new IllegalStateException("Socket channel cannot be opened", e);
+			}
+			this.writer = DynatraceGenericLogIngestHttpClient.newDaemonThread(this::writeLoop, "nio-writer");
+			this.reader = DynatraceGenericLogIngestHttpClient.newDaemonThread(this::readLoop, "nio-reader");
+		}
+
+		/**
+		 * Connects, then writes requests as they come. A request is expected by the reader before it is written.
+		 */
+		private void writeLoop() {
+			final var output = acquireBuffer();
+			try {
+				channel.socket().connect(new InetSocketAddress(host, port),
+						(int) Math.min(Integer.MAX_VALUE, senderConfig.getConnectTimeout().toMillis()));
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				reader.start();
+				while (open) {
+					final var exchange = writes.take();
+					responses.add(exchange);
+					write(exchange.request, output);
+				}
+			} catch (IOException | RuntimeException e) {
+				fail(e);
+			} catch (InterruptedException e) {
+				fail(new IOException("Connection closed"));
+			} finally {
+				releaseBuffer(output);
+			}
+		}
+
+		private void write(Request request,
+				ByteBuffer output) throws IOException {
+			final var uri = request.getUri();
+			final var contentLength = request.getContentLength();
+			output.clear();
+			ascii(output, request.getMethod());
+			ascii(output, " ");
+			ascii(output, isNull(uri.getRawPath()) || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+			if (nonNull(uri.getRawQuery())) {
+				ascii(output, "?");
+				ascii(output, uri.getRawQuery());
+			}
+			ascii(output, " HTTP/1.1\r\nHost: ");
+			ascii(output, uri.getPort() < 0 ? host : host + ":" + port);
+			if (contentLength > 0L || !request.getMethod().equalsIgnoreCase("HEAD")) {
+				ascii(output, "\r\nContent-Length: ");
+				ascii(output, Long.toString(contentLength));
+			}
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				ascii(output, "\r\n");
+				ascii(output, header.getKey());
+				ascii(output, ": ");
+				ascii(output, header.getValue());
+			}
+			ascii(output, "\r\n\r\n");
+
+			for (var buffer : request.getBody()) {
+				final var body = buffer.duplicate();
+				if (body.isDirect()) {
+					flush(output);
+					while (body.hasRemaining()) {
+						channel.write(body);
+					}
+					continue;
+				}
+				while (body.hasRemaining()) {
+					if (!output.hasRemaining()) {
+						flush(output);
+					}
+					final var chunk = body.duplicate();
+					chunk.limit(chunk.position() + Math.min(chunk.remaining(), output.remaining()));
+					output.put(chunk);
+					body.position(chunk.position());
+				}
+			}
+			flush(output);
+		}
+
+		private void ascii(ByteBuffer output,
+				String text) throws IOException {
+			for (var i = 0; i < text.length(); i++) {
+				if (!output.hasRemaining()) {
+					flush(output);
+				}
+				output.put((byte) text.charAt(i));
+			}
+		}
+
+		private void flush(ByteBuffer output) throws IOException {
+			output.flip();
+			while (output.hasRemaining()) {
+				channel.write(output);
+			}
+			output.clear();
+		}
+
+		/**
+		 * Reads responses in the order of requests. Reads also while no request is outstanding, so a connection closed by the
+		 * server is noticed and not used for the next request.
+		 */
+		private void readLoop() {
+			input = acquireBuffer().flip();
+			try {
+				while (open) {
+					if (!input.hasRemaining()) {
+						fill();
+					}
+					final var exchange = responses.poll();
+					if (isNull(exchange)) {
+						throw new IOException("Response without request");
+					}
+					final var keepAlive = readResponse(exchange);
+					synchronized (connections) {
+						outstanding--;
+					}
+					exchange.result.complete(new Response(statusCode, body));
+					if (!keepAlive) {
+						fail(new IOException("Connection closed by the server"));
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				fail(e);
+			} finally {
+				releaseBuffer(input);
+			}
+		}
+
+		/**
+		 * @return false if the connection cannot be used for next requests
+		 */
+		private boolean readResponse(Exchange exchange) throws IOException {
+			body = EMPTY_BODY;
+			while (true) {
+				final var statusLine = readLine();
+				if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+					throw new IOException("Invalid status line " + statusLine);
+				}
+				try {
+					statusCode = Integer.parseInt(statusLine.substring(9, 12));
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid status line " + statusLine, e);
+				}
+
+				var contentLength = -1L;
+				var chunked = false;
+				var keepAlive = !statusLine.startsWith("HTTP/1.0");
+				String line;
+				while (!(line = readLine()).isEmpty()) {
+					final var colon = line.indexOf(':');
+					if (colon <= 0) {
+						continue;
+					}
+					final var name = line.substring(0, colon).trim();
+					final var value = line.substring(colon + 1).trim().toLowerCase(Locale.ROOT);
+					if (name.equalsIgnoreCase("Content-Length")) {
+						contentLength = parseLength(value, 10);
+					} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+						chunked = value.contains("chunked");
+					} else if (name.equalsIgnoreCase("Connection")) {
+						keepAlive = value.contains("keep-alive") || (keepAlive && !value.contains("close"));
+					}
+				}
+
+				if (statusCode / 100 == 1) {
+					continue;
+				}
+				if (exchange.isHead() || statusCode == 204 || statusCode == 304) {
+					return keepAlive;
+				}
+				if (chunked) {
+					skipChunks();
+				} else if (statusCode == 200 && contentLength > 0L && contentLength <= Response.MAX_BODY_BYTES) {
+					body = read((int) contentLength);
+				} else if (contentLength >= 0L) {
+					skip(contentLength);
+				} else {
+					skipToEnd();
+					return false;
+				}
+				return keepAlive;
+			}
+		}
+
+		private void skipChunks() throws IOException {
+			long size;
+			do {
+				final var line = readLine();
+				final var extension = line.indexOf(';');
+				size = parseLength((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+				skip(size);
+				if (size > 0L) {
+					readLine();
+				}
+			} while (size > 0L);
+			while (!readLine().isEmpty()) {
+				// trailer
+			}
+		}
+
+		private void skip(long bytes) throws IOException {
+			var remaining = bytes;
+			while (remaining > 0L) {
+				if (!input.hasRemaining()) {
+					fill();
+				}
+				final var skipped = (int) Math.min(remaining, input.remaining());
+				input.position(input.position() + skipped);
+				remaining -= skipped;
+			}
+		}
+
+		/**
+		 * @return copy of the next bytes, a body of a partial success response
+		 */
+		private ByteBuffer read(int bytes) throws IOException {
+			final var copy = ByteBuffer.allocate(bytes);
+			while (copy.hasRemaining()) {
+				if (!input.hasRemaining()) {
+					fill();
+				}
+				final var chunk = input.duplicate();
+				chunk.limit(chunk.position() + Math.min(chunk.remaining(), copy.remaining()));
+				copy.put(chunk);
+				input.position(chunk.position());
+			}
+			return copy.flip();
+		}
+
+		private void skipToEnd() throws IOException {
+			try {
+				while (true) {
+					fill();
+				}
+			} catch (EOFException e) {
+				input.clear().flip();
+			}
+		}
+
+		private String readLine() throws IOException {
+			final var line = new StringBuilder();
+			while (true) {
+				if (!input.hasRemaining()) {
+					fill();
+				}
+				final var c = (char) (input.get() & 0xFF);
+				if (c == '\n') {
+					break;
+				}
+				if (line.length() == MAX_LINE_LENGTH) {
+					throw new IOException("Response line is too long");
+				}
+				line.append(c);
+			}
+			final var length = line.length();
+			if (length > 0 && line.charAt(length - 1) == '\r') {
+				line.setLength(length - 1);
+			}
+			return line.toString();
+		}
+
+		private void fill() throws IOException {
+			input.clear();
+			int read;
+			do {
+				read = channel.read(input);
+			} while (read == 0);
+			input.flip();
+			if (read < 0) {
+				throw new EOFException("Connection closed by the server");
+			}
+		}
+
+		/**
+		 * Close the connection, fail requests without response. Safe to call more times, also from its own threads.
+		 */
+		private void fail(Exception cause) {
+			synchronized (connections) {
+				open = false;
+				connections.remove(this);
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.debug("Connection to {}:{} cannot be closed.", host, port, e);
+			}
+			if (Thread.currentThread() != writer) {
+				writer.interrupt();
+			}
+			final var failure = cause instanceof IOException ? cause : new IOException(cause);
+			Exchange exchange;
+			while ((exchange = responses.poll()) != null || (exchange = writes.poll()) != null) {
+				exchange.result.completeExceptionally(failure);
+			}
+		}
+
+		private long parseLength(String value,
+				int radix) throws IOException {
+			try {
+				final var length = Long.parseLong(value, radix);
+				if (length < 0L) {
+					throw new IOException("Negative length " + value);
+				}
+				return length;
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid length " + value, e);
+			}
+		}
+	}
+}
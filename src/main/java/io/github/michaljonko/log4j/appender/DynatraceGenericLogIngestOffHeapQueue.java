@@ -0,0 +1,299 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * Queue keeping serialized log events outside of the Java heap, in one {@link DynatraceGenericLogIngestOffHeapRing} per
+ * severity lane. Lanes share the byte capacity in the ratio of their on-heap capacities and are taken in the same weighted
+ * rounds as in {@link DynatraceGenericLogIngestPriorityQueue}.
+ * <p>
+ * Producers never lock: they copy the payload into the ring and wake the sender up only when it is parked. Log events are
+ * materialized on the heap when the sender takes them for a request, so only in-flight log events occupy the heap, no
+ * matter how big the backlog is. Waiting callers of blocking appenders are tracked by a ticket stored in the record.
+ */
+final class DynatraceGenericLogIngestOffHeapQueue
+		implements DynatraceGenericLogIngestQueue {
+
+	static final long MIN_CAPACITY_BYTES = 1L << 20;
+	static final long PUT_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(100L);
+
+	private final LaneRing[] lanes;
+	private final List<DynatraceGenericLogIngestStatistics> owners = new CopyOnWriteArrayList<>();
+	private final Map<DynatraceGenericLogIngestStatistics, Integer> ownerIds = new ConcurrentHashMap<>();
+	private final Map<Long, CompletableFuture<Status>> waiters = new ConcurrentHashMap<>();
+	private final AtomicLong tickets = new AtomicLong();
+	private volatile Thread parkedConsumer;
+
+	DynatraceGenericLogIngestOffHeapQueue(long capacityBytes) {
+		if (capacityBytes < MIN_CAPACITY_BYTES) {
+			throw new IllegalArgumentException("off-heap queue needs at least " + MIN_CAPACITY_BYTES + " bytes");
+		}
+		final var values = Lane.values();
+		var totalCapacity = 0;
+		for (var lane : values) {
+			totalCapacity += lane.getCapacity();
+		}
+		this.lanes = new LaneRing[values.length];
+		for (var lane : values) {
+			final var laneBytes = Math.min(Integer.MAX_VALUE, capacityBytes * lane.getCapacity() / totalCapacity);
+			lanes[lane.ordinal()] = new LaneRing(lane, new DynatraceGenericLogIngestOffHeapRing((int) laneBytes));
+		}
+	}
+
+	@Override
+	public boolean offer(DynatraceGenericLogIngestEvent event) {
+		final var lane = lanes[requireNonNull(event, "event is null").getLane().ordinal()];
+		if (!tryOffer(lane, event)) {
+			lane.dropped.increment();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void put(DynatraceGenericLogIngestEvent event) throws InterruptedException {
+		final var lane = lanes[requireNonNull(event, "event is null").getLane().ordinal()];
+		while (!tryOffer(lane, event)) {
+			LockSupport.parkNanos(this, PUT_RETRY_NANOS);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	@Override
+	public DynatraceGenericLogIngestEvent poll(long timeout,
+			TimeUnit timeUnit) throws InterruptedException {
+		final var deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+		while (true) {
+			var event = poll(Integer.MAX_VALUE);
+			if (nonNull(event)) {
+				return event;
+			}
+			final var remaining = deadline - System.nanoTime();
+			if (remaining <= 0L) {
+				return null;
+			}
+
+			parkedConsumer = Thread.currentThread();
+			try {
+				// a producer publishing between the first poll and the park would not see the consumer parked
+				event = poll(Integer.MAX_VALUE);
+				if (nonNull(event)) {
+					return event;
+				}
+				LockSupport.parkNanos(this, remaining);
+			} finally {
+				parkedConsumer = null;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	@Override
+	public DynatraceGenericLogIngestEvent poll(int maxBytes) {
+		for (var round = 0; round < 2; round++) {
+			for (var lane : lanes) {
+				if (lane.credits <= 0) {
+					continue;
+				}
+				final var length = lane.ring.peek();
+				if (length == 0) {
+					continue;
+				}
+				return length > maxBytes ? null : take(lane);
+			}
+			for (var lane : lanes) {
+				lane.credits = lane.lane.getWeight();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Completes log events without copying their payloads to the heap. Called only when the sender does not run anymore.
+	 */
+	@Override
+	public synchronized int completeAll(Status status) {
+		var completed = 0;
+		for (var lane : lanes) {
+			while (lane.ring.peek() > 0) {
+				final var statistics = owners.get(lane.ring.owner());
+				final var result = removeWaiter(lane.ring.ticket());
+				final var length = lane.ring.peek();
+				lane.ring.skip();
+				lane.discarded.increment();
+
+				statistics.completed(status, length);
+				if (nonNull(result)) {
+					result.complete(status);
+				}
+				completed++;
+			}
+		}
+		return completed;
+	}
+
+	/**
+	 * Records cannot be removed from the middle of the ring, the log events stay and are sent by this queue's transport.
+	 */
+	@Override
+	public List<DynatraceGenericLogIngestEvent> removeIf(Predicate<DynatraceGenericLogIngestEvent> predicate) {
+		return List.of();
+	}
+
+	@Override
+	public int size() {
+		var size = 0;
+		for (var lane : Lane.values()) {
+			size += size(lane);
+		}
+		return size;
+	}
+
+	@Override
+	public int size(Lane lane) {
+		final var laneRing = lanes[lane.ordinal()];
+		return (int) Math.max(0L, laneRing.enqueued.sum() - laneRing.dequeued.sum() - laneRing.discarded.sum());
+	}
+
+	/**
+	 * Measured in bytes of the rings, not in log events.
+	 */
+	@Override
+	public double getUtilization() {
+		var usedBytes = 0L;
+		var capacityBytes = 0L;
+		for (var laneRing : lanes) {
+			usedBytes += laneRing.ring.getUsedBytes();
+			capacityBytes += laneRing.ring.getCapacity();
+		}
+		return Math.min(1.0, (double) usedBytes / capacityBytes);
+	}
+
+	@Override
+	public long getDropped(Lane lane) {
+		return lanes[lane.ordinal()].dropped.sum();
+	}
+
+	@Override
+	public long getDequeued(Lane lane) {
+		return lanes[lane.ordinal()].dequeued.sum();
+	}
+
+	@Override
+	public long getAverageWaitNanos(Lane lane) {
+		final var laneRing = lanes[lane.ordinal()];
+		final var dequeued = laneRing.dequeued.sum();
+		return dequeued == 0L ? 0L : laneRing.waitNanos.sum() / dequeued;
+	}
+
+	@Override
+	public long getMaxWaitNanos(Lane lane) {
+		return lanes[lane.ordinal()].maxWaitNanos;
+	}
+
+	/**
+	 * @return bytes of log events waiting in the lane
+	 */
+	long getUsedBytes(Lane lane) {
+		return lanes[lane.ordinal()].ring.getUsedBytes();
+	}
+
+	private boolean tryOffer(LaneRing lane,
+			DynatraceGenericLogIngestEvent event) {
+		final var result = event.getResult();
+		final var ticket = isNull(result) ? 0L : tickets.incrementAndGet();
+		if (ticket != 0L) {
+			waiters.put(ticket, result);
+		}
+
+		if (!lane.ring.offer(event.getPayload(), ownerId(event.getStatistics()), ticket, System.nanoTime())) {
+			if (ticket != 0L) {
+				waiters.remove(ticket);
+			}
+			return false;
+		}
+
+		lane.enqueued.increment();
+		final var consumer = parkedConsumer;
+		if (nonNull(consumer)) {
+			LockSupport.unpark(consumer);
+		}
+		return true;
+	}
+
+	private DynatraceGenericLogIngestEvent take(LaneRing lane) {
+		final var statistics = owners.get(lane.ring.owner());
+		final var result = removeWaiter(lane.ring.ticket());
+		final var enqueuedNanos = lane.ring.enqueuedNanos();
+		final var event = new DynatraceGenericLogIngestEvent(lane.ring.take(), lane.lane, result, statistics);
+		event.setEnqueuedNanos(enqueuedNanos);
+		lane.credits--;
+
+		final var waitNanos = System.nanoTime() - enqueuedNanos;
+		lane.dequeued.increment();
+		lane.waitNanos.add(waitNanos);
+		if (waitNanos > lane.maxWaitNanos) {
+			lane.maxWaitNanos = waitNanos;
+		}
+		return event;
+	}
+
+	private CompletableFuture<Status> removeWaiter(long ticket) {
+		return ticket == 0L ? null : waiters.remove(ticket);
+	}
+
+	/**
+	 * Records refer to the statistics of their manager by index, managers of a transport are few and live as long as it.
+	 */
+	private int ownerId(DynatraceGenericLogIngestStatistics statistics) {
+		final var ownerId = ownerIds.get(statistics);
+		if (nonNull(ownerId)) {
+			return ownerId;
+		}
+		synchronized (owners) {
+			return ownerIds.computeIfAbsent(statistics, key -> {
+				owners.add(key);
+				return owners.size() - 1;
+			});
+		}
+	}
+
+	private static final class LaneRing {
+
+		private final Lane lane;
+		private final DynatraceGenericLogIngestOffHeapRing ring;
+		private final LongAdder enqueued = new LongAdder();
+		private final LongAdder dequeued = new LongAdder();
+		private final LongAdder discarded = new LongAdder();
+		private final LongAdder dropped = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private volatile long maxWaitNanos;
+		private int credits;
+
+		private LaneRing(Lane lane,
+				DynatraceGenericLogIngestOffHeapRing ring) {
+			this.lane = lane;
+			this.ring = ring;
+			this.credits = lane.getWeight();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package io.github.michaljonko.log4j.appender;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free multi-producer/single-consumer ring of variable-length records in a preallocated direct buffer.
+ * <p>
+ * Record: {@code [int length][int owner][long ticket][long enqueuedNanos][payload]}, aligned to 8 bytes. Producers claim
+ * space by CAS on the tail, write the record and publish it by writing the length last (release). The consumer reads the
+ * length with acquire semantics, 0 means nothing is published at the head yet. Record which does not fit before the end of
+ * the buffer is preceded by a padding marker (negative length) and starts at offset 0. Consumed space is zeroed before the
+ * head moves, so free space always reads as 0.
+ */
+final class DynatraceGenericLogIngestOffHeapRing {
+
+	static final int HEADER_BYTES = 24;
+	static final int ALIGNMENT = 8;
+
+	private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+	private final ByteBuffer buffer;
+	private final int capacity;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+
+	/**
+	 * @param capacity bytes of the direct buffer, rounded down to the alignment
+	 */
+	DynatraceGenericLogIngestOffHeapRing(int capacity) {
+		this.capacity = capacity - capacity % ALIGNMENT;
+		if (this.capacity < HEADER_BYTES + ALIGNMENT) {
+			throw new IllegalArgumentException("capacity is too small: " + capacity);
+		}
+		this.buffer = ByteBuffer.allocateDirect(this.capacity).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Copy the payload into the ring. Never blocks.
+	 *
+	 * @return false if there is not enough free space
+	 */
+	boolean offer(byte[] payload,
+			int owner,
+			long ticket,
+			long enqueuedNanos) {
+		final var recordBytes = align(HEADER_BYTES + payload.length);
+		if (recordBytes > capacity) {
+			return false;
+		}
+
+		long claimed;
+		int offset;
+		int padding;
+		do {
+			claimed = tail.get();
+			offset = (int) (claimed % capacity);
+			padding = capacity - offset < recordBytes ? capacity - offset : 0;
+			if (claimed + padding + recordBytes - head > capacity) {
+				return false;
+			}
+		} while (!tail.compareAndSet(claimed, claimed + padding + recordBytes));
+
+		if (padding > 0) {
+			INT.setRelease(buffer, offset, -padding);
+			offset = 0;
+		}
+		final var record = buffer.duplicate().order(ByteOrder.nativeOrder());
+		record.putInt(offset + 4, owner);
+		record.putLong(offset + 8, ticket);
+		record.putLong(offset + 16, enqueuedNanos);
+		record.position(offset + HEADER_BYTES);
+		record.put(payload);
+		INT.setRelease(buffer, offset, payload.length);
+		return true;
+	}
+
+	/**
+	 * Consumer only. Skips padding at the head.
+	 *
+	 * @return payload length of the record at the head, 0 if no record is published there yet
+	 */
+	int peek() {
+		while (true) {
+			final var offset = (int) (head % capacity);
+			final var length = (int) INT.getAcquire(buffer, offset);
+			if (length >= 0) {
+				return length;
+			}
+			buffer.putInt(offset, 0);
+			head = head - length;
+		}
+	}
+
+	/**
+	 * Consumer only, after {@link #peek()} returned a positive value.
+	 */
+	int owner() {
+		return buffer.getInt((int) (head % capacity) + 4);
+	}
+
+	/**
+	 * Consumer only, after {@link #peek()} returned a positive value.
+	 */
+	long ticket() {
+		return buffer.getLong((int) (head % capacity) + 8);
+	}
+
+	/**
+	 * Consumer only, after {@link #peek()} returned a positive value.
+	 */
+	long enqueuedNanos() {
+		return buffer.getLong((int) (head % capacity) + 16);
+	}
+
+	/**
+	 * Consumer only, after {@link #peek()} returned a positive value. Copies the payload out of the ring and frees the record.
+	 */
+	byte[] take() {
+		final var offset = (int) (head % capacity);
+		final var payload = new byte[buffer.getInt(offset)];
+		final var record = buffer.duplicate();
+		record.position(offset + HEADER_BYTES);
+		record.get(payload);
+		skip();
+		return payload;
+	}
+
+	/**
+	 * Consumer only, after {@link #peek()} returned a positive value. Frees the record without reading the payload.
+	 */
+	void skip() {
+		final var offset = (int) (head % capacity);
+		final var recordBytes = align(HEADER_BYTES + buffer.getInt(offset));
+		for (var position = offset + recordBytes - Long.BYTES; position > offset; position -= Long.BYTES) {
+			buffer.putLong(position, 0L);
+		}
+		INT.setRelease(buffer, offset, 0);
+		buffer.putInt(offset + 4, 0);
+		head = head + recordBytes;
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return bytes claimed by producers and not freed by the consumer yet
+	 */
+	long getUsedBytes() {
+		return Math.max(0L, tail.get() - head);
+	}
+
+	private static int align(int bytes) {
+		return (bytes + ALIGNMENT - 1) & -ALIGNMENT;
+	}
+}
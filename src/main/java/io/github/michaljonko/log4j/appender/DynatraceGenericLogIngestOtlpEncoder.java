@@ -0,0 +1,352 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * Hand-rolled protobuf encoding of OTLP logs ({@code opentelemetry/proto/logs/v1/logs.proto}), no protobuf runtime needed.
+ * <p>
+ * Every log event is encoded once into a {@code LogRecord} on the logging thread, using a reusable per-thread buffer. The
+ * transport frames the already encoded records of a batch into {@code ExportLogsServiceRequest} with a single resource and
+ * scope, computing all lengths upfront, so the request body is written once into an array of the exact size.
+ */
+final class DynatraceGenericLogIngestOtlpEncoder {
+
+	static final String SCOPE_NAME = "io.github.michaljonko.log4j";
+
+	private static final int VARINT = 0;
+	private static final int FIXED64 = 1;
+	private static final int LENGTH_DELIMITED = 2;
+	private static final int FIXED32 = 5;
+	private static final int TRACE_ID_BYTES = 16;
+	private static final int SPAN_ID_BYTES = 8;
+	private static final byte[] SCOPE = scope();
+	private static final ThreadLocal<LogRecord> LOG_RECORDS = ThreadLocal.withInitial(LogRecord::new);
+
+	private DynatraceGenericLogIngestOtlpEncoder() {
+	}
+
+	/**
+	 * @return thread-local, reset {@code LogRecord} encoder
+	 */
+	static LogRecord logRecord() {
+		final var logRecord = LOG_RECORDS.get();
+		logRecord.writer.reset();
+		return logRecord;
+	}
+
+	/**
+	 * @return encoded {@code Resource} message with given string attributes
+	 */
+	static byte[] resource(Map<String, String> attributes) {
+		final var writer = new Writer(64);
+		attributes.forEach((key, value) -> writer.keyValue(1, key, value));
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Frame encoded {@code LogRecord}s into {@code ExportLogsServiceRequest}.
+	 */
+	static byte[] request(byte[] resource,
+			List<DynatraceGenericLogIngestEvent> logRecords) {
+		var logRecordsBytes = 0;
+		for (var logRecord : logRecords) {
+			logRecordsBytes += fieldSize(logRecord.getPayload().length);
+		}
+		final var scopeLogsBytes = fieldSize(SCOPE.length) + logRecordsBytes;
+		final var resourceLogsBytes = fieldSize(resource.length) + fieldSize(scopeLogsBytes);
+
+		final var writer = new Writer(fieldSize(resourceLogsBytes));
+		writer.tag(1, LENGTH_DELIMITED).varint(resourceLogsBytes);
+		writer.bytes(1, resource);
+		writer.tag(2, LENGTH_DELIMITED).varint(scopeLogsBytes);
+		writer.bytes(1, SCOPE);
+		for (var logRecord : logRecords) {
+			writer.bytes(2, logRecord.getPayload());
+		}
+		return writer.buffer;
+	}
+
+	/**
+	 * @return OTLP {@code SeverityNumber} of the Log4j level
+	 */
+	static int severityNumber(Level level) {
+		if (level.isMoreSpecificThan(Level.FATAL)) {
+			return 21;
+		}
+		if (level.isMoreSpecificThan(Level.ERROR)) {
+			return 17;
+		}
+		if (level.isMoreSpecificThan(Level.WARN)) {
+			return 13;
+		}
+		if (level.isMoreSpecificThan(Level.INFO)) {
+			return 9;
+		}
+		if (level.isMoreSpecificThan(Level.DEBUG)) {
+			return 5;
+		}
+		return 1;
+	}
+
+	private static byte[] scope() {
+		final var writer = new Writer(64);
+		writer.string(1, SCOPE_NAME);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @return size of a length-delimited field with given payload size (single byte tag)
+	 */
+	private static int fieldSize(int bytes) {
+		return 1 + varintSize(bytes) + bytes;
+	}
+
+	private static int varintSize(long value) {
+		var size = 1;
+		while ((value & ~0x7FL) != 0L) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static int utf8Length(String value) {
+		var length = 0;
+		for (var i = 0; i < value.length(); i++) {
+			final var c = value.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Encoder of a single {@code LogRecord}.
+	 */
+	static final class LogRecord {
+
+		private final Writer writer = new Writer(1_024);
+
+		private LogRecord() {
+		}
+
+		LogRecord time(long epochNanos) {
+			writer.tag(1, FIXED64).fixed64(epochNanos);
+			writer.tag(11, FIXED64).fixed64(epochNanos);
+			return this;
+		}
+
+		LogRecord severity(Level level) {
+			writer.tag(2, VARINT).varint(severityNumber(level));
+			writer.string(3, level.name());
+			return this;
+		}
+
+		/**
+		 * @param body UTF-8 encoded message, sent as string {@code AnyValue}
+		 */
+		LogRecord body(byte[] body) {
+			writer.tag(5, LENGTH_DELIMITED).varint(fieldSize(body.length));
+			writer.bytes(1, body);
+			return this;
+		}
+
+		LogRecord attribute(String key,
+				String value) {
+			if (nonNull(key) && nonNull(value)) {
+				writer.keyValue(6, key, value);
+			}
+			return this;
+		}
+
+		/**
+		 * Attribute with integer {@code AnyValue}.
+		 */
+		LogRecord attribute(String key,
+				long value) {
+			if (nonNull(key)) {
+				writer.keyValue(6, key, value);
+			}
+			return this;
+		}
+
+		/**
+		 * Hex encoded ids as propagated in the context data, invalid ones are skipped.
+		 */
+		LogRecord trace(String traceId,
+				String spanId,
+				String traceFlags) {
+			if (writer.hex(9, traceId, TRACE_ID_BYTES) && writer.hex(10, spanId, SPAN_ID_BYTES) && nonNull(traceFlags)) {
+				try {
+					writer.tag(8, FIXED32).fixed32(Integer.parseInt(traceFlags, 16) & 0xFF);
+				} catch (NumberFormatException e) {
+					// flags are optional
+				}
+			}
+			return this;
+		}
+
+		byte[] toByteArray() {
+			return writer.toByteArray();
+		}
+	}
+
+	private static final class Writer {
+
+		private byte[] buffer;
+		private int position;
+
+		private Writer(int capacity) {
+			this.buffer = new byte[capacity];
+		}
+
+		private void reset() {
+			position = 0;
+		}
+
+		private Writer tag(int field,
+				int wireType) {
+			return varint((long) field << 3 | wireType);
+		}
+
+		private Writer varint(long value) {
+			ensure(varintSize(value));
+			while ((value & ~0x7FL) != 0L) {
+				buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[position++] = (byte) value;
+			return this;
+		}
+
+		private void fixed64(long value) {
+			ensure(Long.BYTES);
+			for (var i = 0; i < Long.BYTES; i++) {
+				buffer[position++] = (byte) (value >>> (8 * i));
+			}
+		}
+
+		private void fixed32(int value) {
+			ensure(Integer.BYTES);
+			for (var i = 0; i < Integer.BYTES; i++) {
+				buffer[position++] = (byte) (value >>> (8 * i));
+			}
+		}
+
+		private void bytes(int field,
+				byte[] value) {
+			tag(field, LENGTH_DELIMITED).varint(value.length);
+			ensure(value.length);
+			System.arraycopy(value, 0, buffer, position, value.length);
+			position += value.length;
+		}
+
+		private void string(int field,
+				String value) {
+			tag(field, LENGTH_DELIMITED).varint(utf8Length(value));
+			utf8(value);
+		}
+
+		/**
+		 * {@code KeyValue} with string {@code AnyValue}.
+		 */
+		private void keyValue(int field,
+				String key,
+				String value) {
+			final var keyBytes = utf8Length(key);
+			final var anyValueBytes = fieldSize(utf8Length(value));
+			tag(field, LENGTH_DELIMITED).varint(fieldSize(keyBytes) + fieldSize(anyValueBytes));
+			tag(1, LENGTH_DELIMITED).varint(keyBytes);
+			utf8(key);
+			tag(2, LENGTH_DELIMITED).varint(anyValueBytes);
+			string(1, value);
+		}
+
+		/**
+		 * {@code KeyValue} with integer {@code AnyValue}.
+		 */
+		private void keyValue(int field,
+				String key,
+				long value) {
+			final var keyBytes = utf8Length(key);
+			final var anyValueBytes = 1 + varintSize(value);
+			tag(field, LENGTH_DELIMITED).varint(fieldSize(keyBytes) + fieldSize(anyValueBytes));
+			tag(1, LENGTH_DELIMITED).varint(keyBytes);
+			utf8(key);
+			tag(2, LENGTH_DELIMITED).varint(anyValueBytes);
+			tag(3, VARINT).varint(value);
+		}
+
+		/**
+		 * @return false if the value is not a valid hex string of expected size
+		 */
+		private boolean hex(int field,
+				String value,
+				int bytes) {
+			if (isNull(value) || value.length() != bytes * 2) {
+				return false;
+			}
+			final var start = position;
+			tag(field, LENGTH_DELIMITED).varint(bytes);
+			ensure(bytes);
+			for (var i = 0; i < bytes; i++) {
+				final var high = Character.digit(value.charAt(2 * i), 16);
+				final var low = Character.digit(value.charAt(2 * i + 1), 16);
+				if (high < 0 || low < 0) {
+					position = start;
+					return false;
+				}
+				buffer[position++] = (byte) (high << 4 | low);
+			}
+			return true;
+		}
+
+		private void utf8(String value) {
+			ensure(value.length() * 3);
+			for (var i = 0; i < value.length(); i++) {
+				final var c = value.charAt(i);
+				if (c < 0x80) {
+					buffer[position++] = (byte) c;
+				} else if (c < 0x800) {
+					buffer[position++] = (byte) (0xC0 | c >> 6);
+					buffer[position++] = (byte) (0x80 | c & 0x3F);
+				} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+					final var codePoint = Character.toCodePoint(c, value.charAt(++i));
+					buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+					buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+					buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+					buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+				} else {
+					buffer[position++] = (byte) (0xE0 | c >> 12);
+					buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+					buffer[position++] = (byte) (0x80 | c & 0x3F);
+				}
+			}
+		}
+
+		private void ensure(int bytes) {
+			if (position + bytes > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+			}
+		}
+
+		private byte[] toByteArray() {
+			return Arrays.copyOf(buffer, position);
+		}
+	}
+}
@@ -0,0 +1,448 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Log events dropped or adjusted (e.g. truncated) by the ActiveGate in a request it accepted, per reason.
+ * <p>
+ * Generic Log Ingest answers with 200 instead of 204 when only a part of log events was ingested, the body describes the
+ * problems in {@code details.message} or in {@code constraintViolations[].message}, one per log event. OTLP answers with
+ * {@code ExportLogsServiceResponse}, its {@code partial_success} holds the number of rejected log records and a message,
+ * a message without rejected log records is a warning. Bodies are scanned in place, only the messages are decoded.
+ * Numbers in messages are replaced by {@code #}, so messages about different log events share the reason.
+ */
+final class DynatraceGenericLogIngestPartialSuccess {
+
+	static final DynatraceGenericLogIngestPartialSuccess NONE = new DynatraceGenericLogIngestPartialSuccess(Map.of(), Map.of());
+	static final int MAX_REASON_LENGTH = 120;
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+
+	private final Map<String, Long> dropped;
+	private final Map<String, Long> adjusted;
+
+	private DynatraceGenericLogIngestPartialSuccess(Map<String, Long> dropped,
+			Map<String, Long> adjusted) {
+		this.dropped = Map.copyOf(dropped);
+		this.adjusted = Map.copyOf(adjusted);
+	}
+
+	/**
+	 * @param body body of the response with status 200
+	 * @return {@link #NONE} when the body is empty or does not report any problem
+	 */
+	static DynatraceGenericLogIngestPartialSuccess parse(Protocol protocol,
+			ByteBuffer body) {
+		if (!body.hasRemaining()) {
+			return NONE;
+		}
+		try {
+			return protocol == Protocol.OTLP ? parseOtlp(body.duplicate()) : parseJson(body.duplicate());
+		} catch (RuntimeException e) {
+			LOGGER.debug("Response of the ActiveGate is not parsed.", e);
+			return NONE;
+		}
+	}
+
+	private static DynatraceGenericLogIngestPartialSuccess parseJson(ByteBuffer body) {
+		final var scanner = new JsonScanner(body);
+		scanner.scan();
+		final var dropped = new HashMap<String, Long>();
+		final var adjusted = new HashMap<String, Long>();
+		if (!scanner.violations.isEmpty()) {
+			for (var violation : scanner.violations) {
+				(isAdjustment(violation) ? adjusted : dropped).merge(reason(violation), 1L, Long::sum);
+			}
+		} else if (nonNull(scanner.message)) {
+			(isAdjustment(scanner.message) ? adjusted : dropped)
+					.merge(reason(scanner.message), leadingCount(scanner.message), Long::sum);
+		}
+		return of(dropped, adjusted);
+	}
+
+	/**
+	 * {@code ExportLogsServiceResponse { ExportLogsPartialSuccess partial_success = 1; }},
+	 * {@code ExportLogsPartialSuccess { int64 rejected_log_records = 1; string error_message = 2; }}.
+	 */
+	private static DynatraceGenericLogIngestPartialSuccess parseOtlp(ByteBuffer body) {
+		var rejected = 0L;
+		String message = null;
+		while (body.hasRemaining()) {
+			final var tag = (int) varint(body);
+			if (tag >>> 3 != 1 || (tag & 7) != 2) {
+				skip(body, tag & 7);
+				continue;
+			}
+			final var partialSuccess = slice(body, (int) varint(body));
+			while (partialSuccess.hasRemaining()) {
+				final var field = (int) varint(partialSuccess);
+				if (field == (1 << 3)) {
+					rejected = varint(partialSuccess);
+				} else if (field == (2 << 3 | 2)) {
+					message = UTF_8.decode(slice(partialSuccess, (int) varint(partialSuccess))).toString();
+				} else {
+					skip(partialSuccess, field & 7);
+				}
+			}
+		}
+
+		final var dropped = new HashMap<String, Long>();
+		final var adjusted = new HashMap<String, Long>();
+		if (rejected > 0L) {
+			dropped.put(isNull(message) || message.isEmpty() ? "rejected" : reason(message), rejected);
+		} else if (nonNull(message) && !message.isEmpty()) {
+			adjusted.put(reason(message), 1L);
+		}
+		return of(dropped, adjusted);
+	}
+
+	private static DynatraceGenericLogIngestPartialSuccess of(Map<String, Long> dropped,
+			Map<String, Long> adjusted) {
+		return dropped.isEmpty() && adjusted.isEmpty() ? NONE : new DynatraceGenericLogIngestPartialSuccess(dropped, adjusted);
+	}
+
+	private static boolean isAdjustment(String message) {
+		final var lowerCase = message.toLowerCase(Locale.ROOT);
+		return lowerCase.contains("truncat") || lowerCase.contains("adjust");
+	}
+
+	/**
+	 * @return message with numbers replaced by {@code #}, at most {@value #MAX_REASON_LENGTH} characters
+	 */
+	static String reason(String message) {
+		final var reason = new StringBuilder(Math.min(message.length(), MAX_REASON_LENGTH));
+		for (var index = 0; index < message.length() && reason.length() < MAX_REASON_LENGTH; index++) {
+			final var c = message.charAt(index);
+			if (c >= '0' && c <= '9') {
+				if (reason.length() == 0 || reason.charAt(reason.length() - 1) != '#') {
+					reason.append('#');
+				}
+			} else {
+				reason.append(Character.isISOControl(c) ? ' ' : c);
+			}
+		}
+		return reason.toString().trim();
+	}
+
+	/**
+	 * @return number at the start of the message (e.g. {@code 3 events were not ingested}), 1 otherwise
+	 */
+	private static long leadingCount(String message) {
+		var count = 0L;
+		var index = 0;
+		while (index < message.length() && index < 9 && Character.isDigit(message.charAt(index))) {
+			count = count * 10L + (message.charAt(index++) - '0');
+		}
+		return count > 0L ? count : 1L;
+	}
+
+	private static long varint(ByteBuffer buffer) {
+		var value = 0L;
+		for (var shift = 0; shift < 64; shift += 7) {
+			final var b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("varint too long");
+	}
+
+	private static void skip(ByteBuffer buffer,
+			int wireType) {
+		switch (wireType) {
+			case 0:
+				varint(buffer);
+				break;
+			case 1:
+				buffer.position(buffer.position() + Long.BYTES);
+				break;
+			case 2:
+				buffer.position(buffer.position() + (int) varint(buffer));
+				break;
+			case 5:
+				buffer.position(buffer.position() + Integer.BYTES);
+				break;
+			default:
+				throw new IllegalArgumentException("unsupported wire type " + wireType);
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer,
+			int length) {
+		final var slice = buffer.slice().limit(length);
+		buffer.position(buffer.position() + length);
+		return slice;
+	}
+
+	boolean isEmpty() {
+		return dropped.isEmpty() && adjusted.isEmpty();
+	}
+
+	/**
+	 * @return dropped log events per reason
+	 */
+	Map<String, Long> getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return log events ingested with changes (e.g. truncated) per reason
+	 */
+	Map<String, Long> getAdjusted() {
+		return adjusted;
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestPartialSuccess.class.getSimpleName() + "[", "]")
+				.add("dropped=" + dropped)
+				.add("adjusted=" + adjusted)
+				.toString();
+	}
+
+	/**
+	 * Walks JSON without building it, keys are compared in place and only messages are decoded.
+	 */
+	private static final class JsonScanner {
+
+		private static final int MAX_DEPTH = 16;
+
+		private final ByteBuffer json;
+		private final List<String> violations = new ArrayList<>();
+		private int index;
+		private String message;
+
+		private JsonScanner(ByteBuffer json) {
+			this.json = json;
+			this.index = json.position();
+		}
+
+		private void scan() {
+			value(Key.OTHER, Key.OTHER, 0);
+		}
+
+		/**
+		 * @param key key of the value, key of the array for its elements
+		 * @param parent key of the object or array containing the value
+		 */
+		private void value(Key key,
+				Key parent,
+				int depth) {
+			if (depth > MAX_DEPTH) {
+				throw new IllegalArgumentException("JSON nested too deep");
+			}
+			skipWhitespace();
+			switch (json.get(index)) {
+				case '{':
+					object(key, depth);
+					break;
+				case '[':
+					array(key, depth);
+					break;
+				case '"':
+					if (key != Key.MESSAGE) {
+						skipString();
+					} else if (parent == Key.CONSTRAINT_VIOLATIONS) {
+						violations.add(string());
+					} else if (parent == Key.DETAILS || parent == Key.ERROR) {
+						message = string();
+					} else {
+						skipString();
+					}
+					break;
+				default:
+					skipScalar();
+			}
+		}
+
+		private void object(Key name,
+				int depth) {
+			index++;
+			skipWhitespace();
+			if (json.get(index) == '}') {
+				index++;
+				return;
+			}
+			while (true) {
+				skipWhitespace();
+				final var key = key();
+				skipWhitespace();
+				expect(':');
+				value(key, name, depth + 1);
+				skipWhitespace();
+				if (json.get(index++) == '}') {
+					return;
+				}
+			}
+		}
+
+		private void array(Key name,
+				int depth) {
+			index++;
+			skipWhitespace();
+			if (json.get(index) == ']') {
+				index++;
+				return;
+			}
+			while (true) {
+				value(name, name, depth + 1);
+				skipWhitespace();
+				if (json.get(index++) == ']') {
+					return;
+				}
+			}
+		}
+
+		private Key key() {
+			final var start = index + 1;
+			skipString();
+			final var length = index - 1 - start;
+			for (var key : Key.values()) {
+				if (key.matches(json, start, length)) {
+					return key;
+				}
+			}
+			return Key.OTHER;
+		}
+
+		private String string() {
+			expect('"');
+			final var value = new StringBuilder();
+			var runStart = index;
+			while (true) {
+				final var b = json.get(index);
+				if (b == '"') {
+					appendRun(value, runStart, index);
+					index++;
+					return value.toString();
+				}
+				if (b != '\\') {
+					index++;
+					continue;
+				}
+				appendRun(value, runStart, index);
+				final var escaped = json.get(index + 1);
+				index += 2;
+				switch (escaped) {
+					case 'b':
+						value.append('\b');
+						break;
+					case 't':
+						value.append('\t');
+						break;
+					case 'n':
+						value.append('\n');
+						break;
+					case 'f':
+						value.append('\f');
+						break;
+					case 'r':
+						value.append('\r');
+						break;
+					case 'u':
+						value.append((char) Integer.parseInt(ascii(index, 4), 16));
+						index += 4;
+						break;
+					default:
+						value.append((char) escaped);
+				}
+				runStart = index;
+			}
+		}
+
+		private void appendRun(StringBuilder value,
+				int from,
+				int to) {
+			if (from < to) {
+				value.append(UTF_8.decode(json.duplicate().limit(to).position(from)));
+			}
+		}
+
+		private String ascii(int from,
+				int length) {
+			return US_ASCII.decode(json.duplicate().limit(from + length).position(from)).toString();
+		}
+
+		private void skipString() {
+			expect('"');
+			while (true) {
+				final var b = json.get(index++);
+				if (b == '\\') {
+					index++;
+				} else if (b == '"') {
+					return;
+				}
+			}
+		}
+
+		private void skipScalar() {
+			while (index < json.limit()) {
+				final var b = json.get(index);
+				if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+					return;
+				}
+				index++;
+			}
+		}
+
+		private void skipWhitespace() {
+			while (index < json.limit()) {
+				final var b = json.get(index);
+				if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+					return;
+				}
+				index++;
+			}
+		}
+
+		private void expect(char expected) {
+			if (json.get(index++) != expected) {
+				throw new IllegalArgumentException("expected " + expected + " at " + (index - 1));
+			}
+		}
+	}
+
+	private enum Key {
+		MESSAGE("message"),
+		DETAILS("details"),
+		ERROR("error"),
+		CONSTRAINT_VIOLATIONS("constraintViolations"),
+		OTHER("");
+
+		private final byte[] name;
+
+		Key(String name) {
+			this.name = name.getBytes(US_ASCII);
+		}
+
+		private boolean matches(ByteBuffer json,
+				int start,
+				int length) {
+			if (this == OTHER || length != name.length) {
+				return false;
+			}
+			for (var index = 0; index < length; index++) {
+				if (json.get(start + index) != name[index]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
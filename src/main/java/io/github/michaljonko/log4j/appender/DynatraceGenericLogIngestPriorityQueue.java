@@ -0,0 +1,344 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.Level;
+
+/**
+ * Bounded queue of log events split into lanes by severity.
+ * <p>
+ * Every lane has its own capacity, so a flood of DEBUG log events can neither block nor push out ERROR ones. A log event
+ * which finds its lane or the whole queue full evicts the oldest log event of the least severe non-empty lane below its
+ * own, the evicted log event is dropped. High severity is evicted last and the queue never holds more than its capacity.
+ * The sender takes log events in weighted rounds: up to {@link Lane#getWeight()} log events from every non-empty lane,
+ * the most severe lane first. High severity is sent first while low severity still drains.
+ */
+final class DynatraceGenericLogIngestPriorityQueue
+		implements DynatraceGenericLogIngestQueue {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final LaneQueue[] lanes;
+	private final int capacity;
+	private volatile int size;
+
+	DynatraceGenericLogIngestPriorityQueue() {
+		final var values = Lane.values();
+		this.lanes = new LaneQueue[values.length];
+		var capacity = 0;
+		for (var lane : values) {
+			lanes[lane.ordinal()] = new LaneQueue(lane, lane.getCapacity(), lock.newCondition());
+			capacity += lanes[lane.ordinal()].capacity;
+		}
+		this.capacity = capacity;
+	}
+
+	@Override
+	public boolean offer(DynatraceGenericLogIngestEvent event) {
+		final var lane = lanes[requireNonNull(event, "event is null").getLane().ordinal()];
+		DynatraceGenericLogIngestEvent evicted = null;
+		lock.lock();
+		try {
+			if (isFull(lane) && isNull(evicted = evictBelow(lane))) {
+				lane.dropped.increment();
+				return false;
+			}
+			enqueue(lane, event);
+		} finally {
+			lock.unlock();
+		}
+		completeEvicted(evicted);
+		return true;
+	}
+
+	@Override
+	public void put(DynatraceGenericLogIngestEvent event) throws InterruptedException {
+		final var lane = lanes[requireNonNull(event, "event is null").getLane().ordinal()];
+		DynatraceGenericLogIngestEvent evicted = null;
+		lock.lockInterruptibly();
+		try {
+			while (isFull(lane) && isNull(evicted = evictBelow(lane))) {
+				lane.notFull.await();
+			}
+			enqueue(lane, event);
+		} finally {
+			lock.unlock();
+		}
+		completeEvicted(evicted);
+	}
+
+	@Override
+	public DynatraceGenericLogIngestEvent poll(long timeout,
+			TimeUnit timeUnit) throws InterruptedException {
+		var remaining = timeUnit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (size == 0) {
+				if (remaining <= 0L) {
+					return null;
+				}
+				remaining = notEmpty.awaitNanos(remaining);
+			}
+			return dequeue(Integer.MAX_VALUE);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public DynatraceGenericLogIngestEvent poll(int maxBytes) {
+		lock.lock();
+		try {
+			return size == 0 ? null : dequeue(maxBytes);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int completeAll(Status status) {
+		final var drained = new ArrayList<DynatraceGenericLogIngestEvent>();
+		lock.lock();
+		try {
+			for (var lane : lanes) {
+				drained.addAll(lane.events);
+				lane.events.clear();
+				lane.notFull.signalAll();
+			}
+			size = 0;
+		} finally {
+			lock.unlock();
+		}
+		for (var event : drained) {
+			event.complete(status);
+		}
+		return drained.size();
+	}
+
+	@Override
+	public List<DynatraceGenericLogIngestEvent> removeIf(Predicate<DynatraceGenericLogIngestEvent> predicate) {
+		final var removed = new ArrayList<DynatraceGenericLogIngestEvent>();
+		lock.lock();
+		try {
+			for (var lane : lanes) {
+				lane.events.removeIf(event -> predicate.test(event) && removed.add(event));
+			}
+			if (!removed.isEmpty()) {
+				size -= removed.size();
+				for (var lane : lanes) {
+					lane.notFull.signalAll();
+				}
+			}
+			return removed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size(Lane lane) {
+		lock.lock();
+		try {
+			return lanes[lane.ordinal()].events.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public double getUtilization() {
+		return Math.min(1.0, (double) size / capacity);
+	}
+
+	@Override
+	public long getDropped(Lane lane) {
+		return lanes[lane.ordinal()].dropped.sum();
+	}
+
+	@Override
+	public long getDequeued(Lane lane) {
+		return lanes[lane.ordinal()].dequeued.sum();
+	}
+
+	@Override
+	public long getAverageWaitNanos(Lane lane) {
+		final var laneQueue = lanes[lane.ordinal()];
+		final var dequeued = laneQueue.dequeued.sum();
+		return dequeued == 0L ? 0L : laneQueue.waitNanos.sum() / dequeued;
+	}
+
+	@Override
+	public long getMaxWaitNanos(Lane lane) {
+		lock.lock();
+		try {
+			return lanes[lane.ordinal()].maxWaitNanos;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean isFull(LaneQueue lane) {
+		return lane.events.size() >= lane.capacity || size >= capacity;
+	}
+
+	/**
+	 * Oldest log event of the least severe non-empty lane less severe than the given one.
+	 *
+	 * @return evicted log event or null if there is nothing to evict
+	 */
+	private DynatraceGenericLogIngestEvent evictBelow(LaneQueue lane) {
+		for (var index = lanes.length - 1; index > lane.lane.ordinal(); index--) {
+			final var victim = lanes[index];
+			if (!victim.events.isEmpty()) {
+				size--;
+				victim.dropped.increment();
+				return victim.events.pollFirst();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Outside of the lock, completion runs callbacks of the waiting caller.
+	 */
+	private static void completeEvicted(DynatraceGenericLogIngestEvent evicted) {
+		if (nonNull(evicted)) {
+			evicted.complete(Status.DROPPED);
+		}
+	}
+
+	private void enqueue(LaneQueue lane,
+			DynatraceGenericLogIngestEvent event) {
+		event.setEnqueuedNanos(System.nanoTime());
+		lane.events.addLast(event);
+		size++;
+		notEmpty.signal();
+	}
+
+	private DynatraceGenericLogIngestEvent dequeue(int maxBytes) {
+		final var lane = nextLane();
+		if (isNull(lane) || lane.events.peekFirst().getPayload().length > maxBytes) {
+			return null;
+		}
+
+		final var event = lane.events.pollFirst();
+		size--;
+		lane.credits--;
+		// a full queue blocks producers of every lane, not only of this one
+		for (var other : lanes) {
+			other.notFull.signal();
+		}
+
+		final var waitNanos = System.nanoTime() - event.getEnqueuedNanos();
+		lane.dequeued.increment();
+		lane.waitNanos.add(waitNanos);
+		lane.maxWaitNanos = Math.max(lane.maxWaitNanos, waitNanos);
+		return event;
+	}
+
+	/**
+	 * Most severe non-empty lane with credits left in the current round. New round starts when no such lane exists.
+	 */
+	private LaneQueue nextLane() {
+		for (var round = 0; round < 2; round++) {
+			for (var lane : lanes) {
+				if (lane.credits > 0 && !lane.events.isEmpty()) {
+					return lane;
+				}
+			}
+			for (var lane : lanes) {
+				lane.credits = lane.lane.getWeight();
+			}
+		}
+		return null;
+	}
+
+	enum Lane {
+		/**
+		 * FATAL, ERROR and more severe custom levels.
+		 */
+		HIGH(2_000, 8),
+		/**
+		 * WARN, INFO.
+		 */
+		NORMAL(5_000, 4),
+		/**
+		 * DEBUG, TRACE and less severe custom levels.
+		 */
+		LOW(3_000, 1);
+
+		private final int capacity;
+		private final int weight;
+
+		Lane(int capacity,
+				int weight) {
+			this.capacity = capacity;
+			this.weight = weight;
+		}
+
+		static Lane of(Level level) {
+			if (isNull(level)) {
+				return NORMAL;
+			}
+			if (level.isMoreSpecificThan(Level.ERROR)) {
+				return HIGH;
+			}
+			if (level.isMoreSpecificThan(Level.INFO)) {
+				return NORMAL;
+			}
+			return LOW;
+		}
+
+		int getCapacity() {
+			return capacity;
+		}
+
+		int getWeight() {
+			return weight;
+		}
+	}
+
+	private static final class LaneQueue {
+
+		private final Lane lane;
+		private final int capacity;
+		private final Condition notFull;
+		private final ArrayDeque<DynatraceGenericLogIngestEvent> events = new ArrayDeque<>();
+		private final LongAdder dropped = new LongAdder();
+		private final LongAdder dequeued = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private long maxWaitNanos;
+		private int credits;
+
+		private LaneQueue(Lane lane,
+				int capacity,
+				Condition notFull) {
+			this.lane = lane;
+			this.capacity = capacity;
+			this.notFull = notFull;
+			this.credits = lane.getWeight();
+		}
+	}
+}
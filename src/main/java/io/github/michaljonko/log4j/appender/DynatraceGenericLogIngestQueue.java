@@ -0,0 +1,80 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Log events waiting in the transport for the request, split into severity lanes. Many producers, the sender thread is
+ * the only consumer.
+ */
+interface DynatraceGenericLogIngestQueue {
+
+	/**
+	 * Enqueue without waiting.
+	 *
+	 * @return false if the lane of the log event is full
+	 */
+	boolean offer(DynatraceGenericLogIngestEvent event);
+
+	/**
+	 * Enqueue, waiting for free space in the lane of the log event.
+	 */
+	void put(DynatraceGenericLogIngestEvent event) throws InterruptedException;
+
+	/**
+	 * Take the next log event according to lane weights, waiting if the queue is empty.
+	 *
+	 * @return log event or null when the timeout elapsed
+	 */
+	DynatraceGenericLogIngestEvent poll(long timeout,
+			TimeUnit timeUnit) throws InterruptedException;
+
+	/**
+	 * Take the next log event according to lane weights without waiting.
+	 *
+	 * @param maxBytes maximum size of the payload
+	 * @return log event or null when the queue is empty or the next log event is bigger than maxBytes
+	 */
+	DynatraceGenericLogIngestEvent poll(int maxBytes);
+
+	/**
+	 * Complete every pending log event with given status.
+	 *
+	 * @return number of completed log events
+	 */
+	int completeAll(Status status);
+
+	/**
+	 * Remove matching log events, keeping their order within every lane. Implementation which cannot remove log events
+	 * keeps them and sends them itself.
+	 *
+	 * @return removed log events
+	 */
+	List<DynatraceGenericLogIngestEvent> removeIf(Predicate<DynatraceGenericLogIngestEvent> predicate);
+
+	int size();
+
+	int size(Lane lane);
+
+	/**
+	 * Without locking, for the load shedding.
+	 *
+	 * @return part of the capacity taken by waiting log events, from 0 to 1
+	 */
+	double getUtilization();
+
+	long getDropped(Lane lane);
+
+	long getDequeued(Lane lane);
+
+	/**
+	 * @return average time log events of the lane waited for the request
+	 */
+	long getAverageWaitNanos(Lane lane);
+
+	long getMaxWaitNanos(Lane lane);
+}
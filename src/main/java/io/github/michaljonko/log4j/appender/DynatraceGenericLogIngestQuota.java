@@ -0,0 +1,403 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Ingest quota of bytes and log events shared by all JVMs of the host through a small memory-mapped file, configured by the
+ * {@value #FILE_PROPERTY}, {@value #BYTES_PROPERTY}, {@value #EVENTS_PROPERTY} and {@value #BURST_PROPERTY} system
+ * properties (no file - unlimited).
+ * <p>
+ * Every resource is a token bucket refilled by wall-clock time, kept as a single mapped long: the epoch nanos when the
+ * bucket is full again (GCRA - generic cell rate algorithm). Reservation moves the time forward by the cost of the log
+ * event with one CAS, denied when it would get more than the burst ahead of now. A process crashing at any point leaves
+ * a valid state, there is nothing half-written. A time too far ahead (clock stepped back, damaged file) is reset to an
+ * empty bucket, a damaged header is written again by the next process opening the file.
+ * <p>
+ * Rates and burst are written by the process creating the file, the others use them and warn when their own differ.
+ */
+final class DynatraceGenericLogIngestQuota
+		implements DynatraceGenericLogIngestQuotaMXBean {
+
+	static final String FILE_PROPERTY = "dynatrace.log4j.quotaFile";
+	static final String BYTES_PROPERTY = "dynatrace.log4j.quotaBytesPerSecond";
+	static final String EVENTS_PROPERTY = "dynatrace.log4j.quotaEventsPerSecond";
+	static final String BURST_PROPERTY = "dynatrace.log4j.quotaBurstSeconds";
+	static final Duration DEFAULT_BURST = Duration.ofSeconds(10L);
+	static final DynatraceGenericLogIngestQuota UNLIMITED = new DynatraceGenericLogIngestQuota();
+
+	static final long MAGIC = 0x44544C3451554F54L;
+	static final long VERSION = 1L;
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 8;
+	static final int BYTES_RATE_OFFSET = 16;
+	static final int EVENTS_RATE_OFFSET = 24;
+	static final int BURST_OFFSET = 32;
+	static final int CHECKSUM_OFFSET = 40;
+	static final int BYTES_OFFSET = 64;
+	static final int EVENTS_OFFSET = 128;
+	static final int FILE_BYTES = 192;
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+	private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	private final Path file;
+	private final ByteBuffer mapped;
+	private final long bytesPerSecond;
+	private final long eventsPerSecond;
+	private final long burstNanos;
+	private final LongAdder denied = new LongAdder();
+	private final LongAdder resets = new LongAdder();
+
+	private DynatraceGenericLogIngestQuota() {
+		this.file = null;
+		this.mapped = null;
+		this.bytesPerSecond = 0L;
+		this.eventsPerSecond = 0L;
+		this.burstNanos = 0L;
+	}
+
+	private DynatraceGenericLogIngestQuota(Path file,
+			MappedByteBuffer mapped) {
+		this.file = file;
+		this.mapped = mapped;
+		this.bytesPerSecond = (long) LONGS.getVolatile(mapped, BYTES_RATE_OFFSET);
+		this.eventsPerSecond = (long) LONGS.getVolatile(mapped, EVENTS_RATE_OFFSET);
+		this.burstNanos = (long) LONGS.getVolatile(mapped, BURST_OFFSET);
+	}
+
+	/**
+	 * Map the quota file, it is created or repaired with the given rates when missing or damaged.
+	 *
+	 * @param bytesPerSecond bytes of payloads per second, 0 - not limited
+	 * @param eventsPerSecond log events per second, 0 - not limited
+	 * @param burst time of the rates which can be used at once
+	 */
+	static DynatraceGenericLogIngestQuota open(Path file,
+			long bytesPerSecond,
+			long eventsPerSecond,
+			Duration burst) {
+		requireNonNull(file, "file is null");
+		requireNonNull(burst, "burst is null");
+		if (bytesPerSecond < 0L || eventsPerSecond < 0L) {
+			throw new IllegalArgumentException("bytesPerSecond or eventsPerSecond is negative");
+		}
+		if (burst.isNegative() || burst.isZero()) {
+			throw new IllegalArgumentException("burst is not positive");
+		}
+
+		try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			final var lock = channel.lock();
+			try {
+				return open(file, channel.map(FileChannel.MapMode.READ_WRITE, 0L, FILE_BYTES), bytesPerSecond, eventsPerSecond,
+						burst.toNanos());
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Quota file " + file + " cannot be opened", e);
+		}
+	}
+
+	/**
+	 * Called with the file locked, so only one process initializes a missing or damaged header.
+	 */
+	private static DynatraceGenericLogIngestQuota open(Path file,
+			MappedByteBuffer mapped,
+			long bytesPerSecond,
+			long eventsPerSecond,
+			long burstNanos) {
+		if (!isValidHeader(mapped)) {
+			LOGGER.debug("Quota file {} initialized.", file);
+			LONGS.setVolatile(mapped, BYTES_RATE_OFFSET, bytesPerSecond);
+			LONGS.setVolatile(mapped, EVENTS_RATE_OFFSET, eventsPerSecond);
+			LONGS.setVolatile(mapped, BURST_OFFSET, burstNanos);
+			LONGS.setVolatile(mapped, VERSION_OFFSET, VERSION);
+			LONGS.setVolatile(mapped, MAGIC_OFFSET, MAGIC);
+			LONGS.setVolatile(mapped, CHECKSUM_OFFSET, checksum(mapped));
+			LONGS.setVolatile(mapped, BYTES_OFFSET, 0L);
+			LONGS.setVolatile(mapped, EVENTS_OFFSET, 0L);
+			mapped.force();
+		}
+		final var quota = new DynatraceGenericLogIngestQuota(file, mapped);
+		if (quota.bytesPerSecond != bytesPerSecond || quota.eventsPerSecond != eventsPerSecond
+				|| quota.burstNanos != burstNanos) {
+			LOGGER.warn("Quota file {} has other limits than configured, using {}.", file, quota);
+		}
+		return quota;
+	}
+
+	/**
+	 * @return quota of the host, registered in JMX when limited
+	 */
+	static DynatraceGenericLogIngestQuota get() {
+		return Holder.QUOTA;
+	}
+
+	private static boolean isValidHeader(ByteBuffer mapped) {
+		return (long) LONGS.getVolatile(mapped, MAGIC_OFFSET) == MAGIC
+				&& (long) LONGS.getVolatile(mapped, VERSION_OFFSET) == VERSION
+				&& (long) LONGS.getVolatile(mapped, CHECKSUM_OFFSET) == checksum(mapped)
+				&& (long) LONGS.getVolatile(mapped, BYTES_RATE_OFFSET) >= 0L
+				&& (long) LONGS.getVolatile(mapped, EVENTS_RATE_OFFSET) >= 0L
+				&& (long) LONGS.getVolatile(mapped, BURST_OFFSET) > 0L;
+	}
+
+	private static long checksum(ByteBuffer mapped) {
+		var checksum = 0x9E3779B97F4A7C15L;
+		for (var offset = MAGIC_OFFSET; offset < CHECKSUM_OFFSET; offset += Long.BYTES) {
+			checksum = (checksum ^ (long) LONGS.getVolatile(mapped, offset)) * 0x100000001B3L;
+		}
+		return checksum;
+	}
+
+	boolean isLimited() {
+		return bytesPerSecond > 0L || eventsPerSecond > 0L;
+	}
+
+	/**
+	 * @param payloadBytes size of the serialized log event
+	 * @param force take the credits even when they are used up, e.g. for errors (never more than the whole burst)
+	 * @return credits taken, null if the log event has to be dropped
+	 */
+	Reservation reserve(int payloadBytes,
+			boolean force) {
+		return isLimited() ? reserve(payloadBytes, force, epochNanos()) : Reservation.NONE;
+	}
+
+	Reservation reserve(int payloadBytes,
+			boolean force,
+			long nowNanos) {
+		if (!isLimited()) {
+			return Reservation.NONE;
+		}
+		final var bytesTaken = take(BYTES_OFFSET, cost(payloadBytes, bytesPerSecond), force, nowNanos);
+		if (bytesTaken < 0L) {
+			denied.increment();
+			return null;
+		}
+		final var eventsTaken = take(EVENTS_OFFSET, cost(1L, eventsPerSecond), force, nowNanos);
+		if (eventsTaken < 0L) {
+			give(BYTES_OFFSET, bytesTaken);
+			denied.increment();
+			return null;
+		}
+		return bytesTaken == 0L && eventsTaken == 0L ? Reservation.NONE : new Reservation(bytesTaken, eventsTaken);
+	}
+
+	/**
+	 * Return credits of a log event which was not sent after all, only as much as was taken.
+	 *
+	 * @param reservation credits returned by {@link #reserve(int, boolean)}
+	 */
+	void cancel(Reservation reservation) {
+		if (isLimited()) {
+			give(BYTES_OFFSET, reservation.bytesTaken);
+			give(EVENTS_OFFSET, reservation.eventsTaken);
+		}
+	}
+
+	/**
+	 * @return nanos of the rate the units take, 0 if the resource is not limited
+	 */
+	private static long cost(long units,
+			long perSecond) {
+		return perSecond == 0L ? 0L : (long) Math.ceil(units * NANOS_PER_SECOND / perSecond);
+	}
+
+	/**
+	 * Bucket is full when its time is now or in the past, empty when it is the burst ahead. Forced take never moves the
+	 * time past the empty bucket, so it may take less than the cost.
+	 *
+	 * @return nanos the time moved forward, -1 if denied
+	 */
+	private long take(int offset,
+			long cost,
+			boolean force,
+			long nowNanos) {
+		if (cost == 0L) {
+			return 0L;
+		}
+		final var emptyAt = nowNanos + burstNanos;
+		while (true) {
+			final var stored = (long) LONGS.getVolatile(mapped, offset);
+			var current = stored;
+			if (current - emptyAt > burstNanos) {
+				current = emptyAt;
+				resets.increment();
+				LOGGER.debug("Quota of {} is ahead of the clock, reset.", file);
+			}
+			final var start = Math.max(current, nowNanos);
+			final var next = start + cost;
+			if (next - emptyAt > 0L && !force) {
+				if (current != stored) {
+					LONGS.compareAndSet(mapped, offset, stored, current);
+				}
+				return -1L;
+			}
+			final var end = Math.min(next, Math.max(emptyAt, start));
+			if (LONGS.compareAndSet(mapped, offset, stored, end)) {
+				return end - start;
+			}
+		}
+	}
+
+	private void give(int offset,
+			long cost) {
+		if (cost > 0L) {
+			LONGS.getAndAdd(mapped, offset, -cost);
+		}
+	}
+
+	private static long epochNanos() {
+		final var now = Instant.now();
+		return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+	}
+
+	private long available(int offset,
+			long perSecond) {
+		if (perSecond == 0L) {
+			return Long.MAX_VALUE;
+		}
+		final var now = epochNanos();
+		final var ahead = Math.max(0L, Math.min(burstNanos, (long) LONGS.getVolatile(mapped, offset) - now));
+		return (long) ((burstNanos - ahead) / NANOS_PER_SECOND * perSecond);
+	}
+
+	@Override
+	public String getQuotaFile() {
+		return isNull(file) ? null : file.toString();
+	}
+
+	@Override
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	@Override
+	public long getEventsPerSecond() {
+		return eventsPerSecond;
+	}
+
+	@Override
+	public long getBurstMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(burstNanos);
+	}
+
+	@Override
+	public long getAvailableBytes() {
+		return isLimited() ? available(BYTES_OFFSET, bytesPerSecond) : Long.MAX_VALUE;
+	}
+
+	@Override
+	public long getAvailableEvents() {
+		return isLimited() ? available(EVENTS_OFFSET, eventsPerSecond) : Long.MAX_VALUE;
+	}
+
+	@Override
+	public long getDeniedEvents() {
+		return denied.sum();
+	}
+
+	@Override
+	public long getResets() {
+		return resets.sum();
+	}
+
+	private static DynatraceGenericLogIngestQuota fromSystemProperties() {
+		final var file = System.getProperty(FILE_PROPERTY);
+		if (isNull(file) || file.isBlank()) {
+			return UNLIMITED;
+		}
+		try {
+			final var quota = open(Path.of(file.trim()),
+					Long.parseLong(System.getProperty(BYTES_PROPERTY, "0").trim()),
+					Long.parseLong(System.getProperty(EVENTS_PROPERTY, "0").trim()),
+					Duration.ofSeconds(Long.parseLong(System.getProperty(BURST_PROPERTY,
+							Long.toString(DEFAULT_BURST.getSeconds())).trim())));
+			quota.registerMBean();
+			return quota;
+		} catch (IllegalArgumentException | UncheckedIOException e) {
+			LOGGER.error("Invalid quota {} {}, ingest of log events is not limited.", FILE_PROPERTY, file, e);
+			return UNLIMITED;
+		}
+	}
+
+	private void registerMBean() {
+		if (!isLimited()) {
+			return;
+		}
+		try {
+			final var name = new ObjectName(DynatraceGenericLogIngestTransport.MBEAN_DOMAIN + ":type="
+					+ DynatraceGenericLogIngestQuota.class.getSimpleName());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		} catch (JMException | RuntimeException e) {
+			LOGGER.debug("Quota cannot be registered in JMX.", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestQuota.class.getSimpleName() + "[", "]")
+				.add("file=" + file)
+				.add("bytesPerSecond=" + bytesPerSecond)
+				.add("eventsPerSecond=" + eventsPerSecond)
+				.add("burstNanos=" + burstNanos)
+				.toString();
+	}
+
+	/**
+	 * Credits taken for a log event.
+	 */
+	static final class Reservation {
+
+		static final Reservation NONE = new Reservation(0L, 0L);
+
+		private final long bytesTaken;
+		private final long eventsTaken;
+
+		private Reservation(long bytesTaken,
+				long eventsTaken) {
+			this.bytesTaken = bytesTaken;
+			this.eventsTaken = eventsTaken;
+		}
+
+		long getBytesTaken() {
+			return bytesTaken;
+		}
+
+		long getEventsTaken() {
+			return eventsTaken;
+		}
+	}
+
+	private static final class Holder {
+
+		private static final DynatraceGenericLogIngestQuota QUOTA = fromSystemProperties();
+	}
+}
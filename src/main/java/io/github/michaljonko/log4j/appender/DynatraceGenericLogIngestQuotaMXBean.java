@@ -0,0 +1,63 @@
+package io.github.michaljonko.log4j.appender;
+
+/**
+ * JMX view of the ingest quota shared by all JVMs of the host.
+ */
+public interface DynatraceGenericLogIngestQuotaMXBean {
+
+	/**
+	 * Memory-mapped file holding the quota.
+	 *
+	 * @return path
+	 */
+	String getQuotaFile();
+
+	/**
+	 * Bytes of log events per second of the host, 0 if not limited.
+	 *
+	 * @return bytes per second
+	 */
+	long getBytesPerSecond();
+
+	/**
+	 * Log events per second of the host, 0 if not limited.
+	 *
+	 * @return log events per second
+	 */
+	long getEventsPerSecond();
+
+	/**
+	 * Time of the rates which can be used at once.
+	 *
+	 * @return milliseconds
+	 */
+	long getBurstMillis();
+
+	/**
+	 * Bytes which can be reserved now by any JVM of the host.
+	 *
+	 * @return bytes
+	 */
+	long getAvailableBytes();
+
+	/**
+	 * Log events which can be reserved now by any JVM of the host.
+	 *
+	 * @return log events
+	 */
+	long getAvailableEvents();
+
+	/**
+	 * Number of log events of this JVM dropped because the quota was used up.
+	 *
+	 * @return log events
+	 */
+	long getDeniedEvents();
+
+	/**
+	 * Number of times the shared state was found too far ahead of the clock (clock stepped back, damaged file) and reset.
+	 *
+	 * @return resets
+	 */
+	long getResets();
+}
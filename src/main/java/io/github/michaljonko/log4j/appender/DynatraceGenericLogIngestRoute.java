@@ -0,0 +1,110 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.requireNonNull;
+
+import java.net.URL;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
+import org.apache.logging.log4j.util.Strings;
+
+/**
+ * Routing rule of {@link DynatraceGenericLogIngestAppender}, log events of matching loggers or with matching marker are
+ * sent to other Dynatrace environment (ActiveGate URL and token).
+ */
+@Plugin(name = "DynatraceRoute", category = Core.CATEGORY_NAME, printObject = true)
+public final class DynatraceGenericLogIngestRoute {
+
+	private final String loggerPrefix;
+	private final String marker;
+	private final URL activeGateUrl;
+	private final String token;
+
+	DynatraceGenericLogIngestRoute(String loggerPrefix,
+			String marker,
+			URL activeGateUrl,
+			String token) {
+		if (Strings.isBlank(loggerPrefix) && Strings.isBlank(marker)) {
+			throw new IllegalArgumentException("loggerPrefix or marker is required");
+		}
+		this.loggerPrefix = Strings.isBlank(loggerPrefix) ? null : loggerPrefix.trim();
+		this.marker = Strings.isBlank(marker) ? null : marker.trim();
+		this.activeGateUrl = requireNonNull(activeGateUrl, "activeGateUrl is null");
+		this.token = requireNonNull(token, "token is null");
+	}
+
+	/**
+	 * Route factory method.
+	 *
+	 * @param loggerPrefix name of the logger, matches also its descendants ({@code com.acme} matches {@code com.acme.Foo})
+	 * @param marker name of the marker, matches also markers having it as a parent
+	 * @param activeGateUrl URL of the ActiveGate of the environment
+	 * @param token token of the environment
+	 * @return new instance of the route
+	 */
+	@PluginFactory
+	public static DynatraceGenericLogIngestRoute createRoute(
+			@PluginAttribute("loggerPrefix") String loggerPrefix,
+			@PluginAttribute("marker") String marker,
+			@PluginAttribute("activeGateUrl") @Required(message = "No URL provided for ActiveGate") URL activeGateUrl,
+			@PluginAttribute(value = "token", sensitive = true) @Required(message = "No token provided for route") String token) {
+		return new DynatraceGenericLogIngestRoute(loggerPrefix, marker, activeGateUrl, token);
+	}
+
+	/**
+	 * @return name of the logger, null if the route matches only the marker
+	 */
+	String getLoggerPrefix() {
+		return loggerPrefix;
+	}
+
+	/**
+	 * @return name of the marker, null if the route matches only the logger
+	 */
+	String getMarker() {
+		return marker;
+	}
+
+	URL getActiveGateUrl() {
+		return activeGateUrl;
+	}
+
+	String getToken() {
+		return token;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		var route = (DynatraceGenericLogIngestRoute) o;
+		return Objects.equals(loggerPrefix, route.loggerPrefix) &&
+				Objects.equals(marker, route.marker) &&
+				Objects.equals(activeGateUrl, route.activeGateUrl) &&
+				Objects.equals(token, route.token);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(loggerPrefix, marker, activeGateUrl, token);
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestRoute.class.getSimpleName() + "[", "]")
+				.add("loggerPrefix='" + loggerPrefix + "'")
+				.add("marker='" + marker + "'")
+				.add("activeGateUrl='" + activeGateUrl + "'")
+				.add("token='########'")
+				.toString();
+	}
+}
@@ -0,0 +1,123 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+
+/**
+ * Chooses the manager of the log event by {@link DynatraceGenericLogIngestRoute} rules.
+ * <p>
+ * Routes with marker are checked first, in the order of the configuration. Otherwise the route with the longest matching
+ * logger prefix wins. Decisions of logger prefixes are cached per logger name, so routing by logger costs one map lookup.
+ * Log events not matching any route go to the default manager.
+ */
+final class DynatraceGenericLogIngestRouter {
+
+	static final int MAX_CACHED_LOGGERS = 10_000;
+
+	private final AbstractDynatraceGenericLogIngestManager defaultManager;
+	private final List<Rule> markerRules;
+	private final List<Rule> loggerRules;
+	private final List<AbstractDynatraceGenericLogIngestManager> managers;
+	private final Map<String, AbstractDynatraceGenericLogIngestManager> loggerCache = new ConcurrentHashMap<>();
+
+	DynatraceGenericLogIngestRouter(AbstractDynatraceGenericLogIngestManager defaultManager) {
+		this(defaultManager, Map.of());
+	}
+
+	/**
+	 * @param routes managers of the routes, in the order of the configuration
+	 */
+	DynatraceGenericLogIngestRouter(AbstractDynatraceGenericLogIngestManager defaultManager,
+			Map<DynatraceGenericLogIngestRoute, ? extends AbstractDynatraceGenericLogIngestManager> routes) {
+		this.defaultManager = requireNonNull(defaultManager, "defaultManager is null");
+		final var markerRules = new ArrayList<Rule>();
+		final var loggerRules = new ArrayList<Rule>();
+		final var managers = new LinkedHashSet<AbstractDynatraceGenericLogIngestManager>();
+		managers.add(defaultManager);
+		for (var route : new LinkedHashMap<>(requireNonNull(routes, "routes is null")).entrySet()) {
+			final var rule = new Rule(route.getKey(), requireNonNull(route.getValue(), "manager is null"));
+			(nonNull(rule.marker) ? markerRules : loggerRules).add(rule);
+			managers.add(rule.manager);
+		}
+		loggerRules.sort(Comparator.comparingInt((Rule rule) -> rule.loggerPrefix.length()).reversed());
+		this.markerRules = List.copyOf(markerRules);
+		this.loggerRules = List.copyOf(loggerRules);
+		this.managers = List.copyOf(managers);
+	}
+
+	AbstractDynatraceGenericLogIngestManager route(LogEvent event) {
+		final var loggerName = isNull(event.getLoggerName()) ? "" : event.getLoggerName();
+		final var marker = event.getMarker();
+		if (nonNull(marker)) {
+			for (var rule : markerRules) {
+				if (rule.matches(marker, loggerName)) {
+					return rule.manager;
+				}
+			}
+		}
+		final var cached = loggerCache.get(loggerName);
+		if (nonNull(cached)) {
+			return cached;
+		}
+		final var manager = routeLogger(loggerName);
+		if (loggerCache.size() < MAX_CACHED_LOGGERS) {
+			loggerCache.put(loggerName, manager);
+		}
+		return manager;
+	}
+
+	private AbstractDynatraceGenericLogIngestManager routeLogger(String loggerName) {
+		for (var rule : loggerRules) {
+			if (rule.matchesLogger(loggerName)) {
+				return rule.manager;
+			}
+		}
+		return defaultManager;
+	}
+
+	/**
+	 * @return default manager followed by distinct managers of the routes
+	 */
+	List<AbstractDynatraceGenericLogIngestManager> getManagers() {
+		return managers;
+	}
+
+	private static final class Rule {
+
+		private final String loggerPrefix;
+		private final String marker;
+		private final AbstractDynatraceGenericLogIngestManager manager;
+
+		private Rule(DynatraceGenericLogIngestRoute route,
+				AbstractDynatraceGenericLogIngestManager manager) {
+			this.loggerPrefix = route.getLoggerPrefix();
+			this.marker = route.getMarker();
+			this.manager = manager;
+		}
+
+		private boolean matches(Marker eventMarker,
+				String loggerName) {
+			return eventMarker.isInstanceOf(marker) && (isNull(loggerPrefix) || matchesLogger(loggerName));
+		}
+
+		/**
+		 * Logger prefix matches the logger and its descendants, {@code com.acme} does not match {@code com.acmex}.
+		 */
+		private boolean matchesLogger(String loggerName) {
+			return loggerName.startsWith(loggerPrefix)
+					&& (loggerName.length() == loggerPrefix.length() || loggerName.charAt(loggerPrefix.length()) == '.');
+		}
+	}
+}
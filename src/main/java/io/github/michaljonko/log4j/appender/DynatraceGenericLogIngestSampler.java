@@ -0,0 +1,197 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+
+/**
+ * Samples log events of low severity without breaking their correlation with traces.
+ * <p>
+ * Trace context is read from the context data under the keys of the OpenTelemetry instrumentation ({@code trace_id},
+ * {@code trace_flags}, the same as {@code ${otel:...}} lookups). Log events of sampled traces are always kept. Log events of
+ * other traces are kept by the trace id the same way as {@code TraceIdRatioBased} sampler of OpenTelemetry: the lower
+ * 64 bits of the id are compared with the bound of the ratio, so every service and JVM keeps or drops the whole trace.
+ * Log events without a valid trace id are kept at random with their own ratio. Sampling is decided before any layout work.
+ */
+final class DynatraceGenericLogIngestSampler {
+
+	static final String TRACE_ID = "trace_id";
+	static final String TRACE_FLAGS = "trace_flags";
+
+	private static final int TRACE_ID_LENGTH = 32;
+	private static final int SAMPLED_FLAG = 0x01;
+
+	private final SamplingConfig samplingConfig;
+	private final boolean enabled;
+	private final int maxIntLevel;
+	private final long traceIdUpperBound;
+	private final LongAdder sampledOut = new LongAdder();
+
+	DynatraceGenericLogIngestSampler(SamplingConfig samplingConfig) {
+		this.samplingConfig = requireNonNull(samplingConfig, "samplingConfig is null");
+		this.enabled = samplingConfig.isEnabled();
+		this.maxIntLevel = samplingConfig.getLevel().intLevel();
+		this.traceIdUpperBound = upperBound(samplingConfig.getTraceRatio());
+	}
+
+	/**
+	 * Counts the log event sampled out.
+	 *
+	 * @return true if the log event is kept
+	 */
+	boolean sample(LogEvent event) {
+		if (!enabled || event.getLevel().intLevel() < maxIntLevel || keep(event.getContextData())) {
+			return true;
+		}
+		sampledOut.increment();
+		return false;
+	}
+
+	private boolean keep(ReadOnlyStringMap contextData) {
+		final Object traceId = isNull(contextData) ? null : contextData.getValue(TRACE_ID);
+		if (!isValid(traceId)) {
+			return ThreadLocalRandom.current().nextDouble() < samplingConfig.getUntracedRatio();
+		}
+		return isSampled(contextData.getValue(TRACE_FLAGS)) || Math.abs(randomPart((CharSequence) traceId)) < traceIdUpperBound;
+	}
+
+	/**
+	 * @return true for 32 hexadecimal digits, not all zeros
+	 */
+	static boolean isValid(Object traceId) {
+		if (!(traceId instanceof CharSequence) || ((CharSequence) traceId).length() != TRACE_ID_LENGTH) {
+			return false;
+		}
+		final var chars = (CharSequence) traceId;
+		var zeros = true;
+		for (var index = 0; index < TRACE_ID_LENGTH; index++) {
+			final var digit = Character.digit(chars.charAt(index), 16);
+			if (digit < 0) {
+				return false;
+			}
+			zeros &= digit == 0;
+		}
+		return !zeros;
+	}
+
+	/**
+	 * @return lower 64 bits of the valid trace id
+	 */
+	static long randomPart(CharSequence traceId) {
+		var randomPart = 0L;
+		for (var index = TRACE_ID_LENGTH / 2; index < TRACE_ID_LENGTH; index++) {
+			randomPart = randomPart << 4 | Character.digit(traceId.charAt(index), 16);
+		}
+		return randomPart;
+	}
+
+	private static boolean isSampled(Object traceFlags) {
+		if (!(traceFlags instanceof CharSequence)) {
+			return false;
+		}
+		final var flags = (CharSequence) traceFlags;
+		return flags.length() > 0 && (Character.digit(flags.charAt(flags.length() - 1), 16) & SAMPLED_FLAG) != 0;
+	}
+
+	/**
+	 * The same bound as {@code TraceIdRatioBased} sampler of OpenTelemetry, so log events follow sampled spans.
+	 */
+	static long upperBound(double ratio) {
+		if (ratio == 0.0) {
+			return Long.MIN_VALUE;
+		}
+		if (ratio == 1.0) {
+			return Long.MAX_VALUE;
+		}
+		return (long) (ratio * Long.MAX_VALUE);
+	}
+
+	long getSampledOut() {
+		return sampledOut.sum();
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestSampler.class.getSimpleName() + "[", "]")
+				.add("samplingConfig=" + samplingConfig)
+				.add("sampledOut=" + sampledOut.sum())
+				.toString();
+	}
+
+	static final class SamplingConfig {
+
+		static final SamplingConfig DISABLED = new SamplingConfig(Level.INFO, 1.0, 1.0);
+
+		private final Level level;
+		private final double traceRatio;
+		private final double untracedRatio;
+
+		/**
+		 * @param level log events of this and lower severity are sampled, more severe are always kept
+		 * @param traceRatio ratio of traces kept when the trace is not sampled, from 0 to 1
+		 * @param untracedRatio ratio of log events without a trace kept, from 0 to 1
+		 */
+		SamplingConfig(Level level,
+				double traceRatio,
+				double untracedRatio) {
+			this.level = requireNonNull(level, "level is null");
+			this.traceRatio = traceRatio;
+			this.untracedRatio = untracedRatio;
+			if (traceRatio < 0.0 || traceRatio > 1.0 || untracedRatio < 0.0 || untracedRatio > 1.0) {
+				throw new IllegalArgumentException("traceRatio or untracedRatio is not between 0 and 1");
+			}
+		}
+
+		boolean isEnabled() {
+			return traceRatio < 1.0 || untracedRatio < 1.0;
+		}
+
+		Level getLevel() {
+			return level;
+		}
+
+		double getTraceRatio() {
+			return traceRatio;
+		}
+
+		double getUntracedRatio() {
+			return untracedRatio;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			var data = (SamplingConfig) o;
+			return Double.compare(traceRatio, data.traceRatio) == 0 &&
+					Double.compare(untracedRatio, data.untracedRatio) == 0 &&
+					Objects.equals(level, data.level);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(level, traceRatio, untracedRatio);
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", SamplingConfig.class.getSimpleName() + "[", "]")
+					.add("level=" + level)
+					.add("traceRatio=" + traceRatio)
+					.add("untracedRatio=" + untracedRatio)
+					.toString();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.pattern.NameAbbreviator;
+import org.apache.logging.log4j.util.Strings;
+
+/**
+ * Built-in attributes of the log event (logger, thread, source location, marker) sent as separate fields instead of
+ * being formatted into the message by the layout.
+ * <p>
+ * Logger names are abbreviated and JSON encoded once per logger and cached. Source location is captured by Log4j only
+ * when a location attribute is enabled, see {@link #requiresLocation()}.
+ */
+final class DynatraceGenericLogIngestSemanticAttributes {
+
+	static final DynatraceGenericLogIngestSemanticAttributes NONE =
+			new DynatraceGenericLogIngestSemanticAttributes(Set.of(), null);
+	static final int MAX_CACHED_LOGGERS = 10_000;
+
+	private final Set<Attribute> enabled;
+	private final boolean logger;
+	private final boolean threadName;
+	private final boolean threadId;
+	private final boolean marker;
+	private final boolean location;
+	private final NameAbbreviator abbreviator;
+	private final Map<String, String> loggerNames = new ConcurrentHashMap<>();
+	private final Map<String, byte[]> loggerFields = new ConcurrentHashMap<>();
+
+	/**
+	 * @param attributes enabled attributes
+	 * @param loggerAbbreviation pattern of {@code %logger} conversion (for example {@code 1.} or {@code 36}), null - full name
+	 */
+	DynatraceGenericLogIngestSemanticAttributes(Set<Attribute> attributes,
+			String loggerAbbreviation) {
+		this.enabled = Set.copyOf(requireNonNull(attributes, "attributes is null"));
+		this.logger = enabled.contains(Attribute.LOGGER);
+		this.threadName = enabled.contains(Attribute.THREAD_NAME);
+		this.threadId = enabled.contains(Attribute.THREAD_ID);
+		this.marker = enabled.contains(Attribute.MARKER);
+		this.location = enabled.stream().anyMatch(Attribute::requiresLocation);
+		this.abbreviator = Strings.isBlank(loggerAbbreviation) ? null : NameAbbreviator.getAbbreviator(loggerAbbreviation.trim());
+	}
+
+	/**
+	 * @param attributes comma separated keys of attributes, for example {@code log.logger,thread.name}
+	 * @param loggerAbbreviation pattern of {@code %logger} conversion, null - full name
+	 */
+	static DynatraceGenericLogIngestSemanticAttributes parse(String attributes,
+			String loggerAbbreviation) {
+		if (Strings.isBlank(attributes)) {
+			return NONE;
+		}
+		final var enabled = Arrays.stream(attributes.split(","))
+				.map(String::trim)
+				.filter(Strings::isNotBlank)
+				.map(Attribute::of)
+				.collect(Collectors.toCollection(() -> EnumSet.noneOf(Attribute.class)));
+		return enabled.isEmpty() ? NONE : new DynatraceGenericLogIngestSemanticAttributes(enabled, loggerAbbreviation);
+	}
+
+	boolean isEmpty() {
+		return enabled.isEmpty();
+	}
+
+	/**
+	 * @return true if any source location attribute is enabled
+	 */
+	boolean requiresLocation() {
+		return location;
+	}
+
+	Set<Attribute> getEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Append enabled attributes as JSON fields, every one followed by a comma.
+	 */
+	void appendJson(LogEvent event,
+			DynatraceGenericLogIngestJsonWriter json) {
+		if (logger && nonNull(event.getLoggerName())) {
+			json.append(cached(loggerFields, event.getLoggerName(), this::loggerField));
+		}
+		if (threadName && nonNull(event.getThreadName())) {
+			appendJsonString(json, Attribute.THREAD_NAME, event.getThreadName());
+		}
+		if (threadId) {
+			json.append(Attribute.THREAD_ID.getJsonKey()).append(event.getThreadId()).append(',');
+		}
+		if (marker && nonNull(event.getMarker())) {
+			appendJsonString(json, Attribute.MARKER, event.getMarker().getName());
+		}
+		if (location) {
+			final var source = event.getSource();
+			if (nonNull(source)) {
+				if (enabled.contains(Attribute.CODE_NAMESPACE)) {
+					appendJsonString(json, Attribute.CODE_NAMESPACE, source.getClassName());
+				}
+				if (enabled.contains(Attribute.CODE_FUNCTION)) {
+					appendJsonString(json, Attribute.CODE_FUNCTION, source.getMethodName());
+				}
+				if (enabled.contains(Attribute.CODE_LINENO) && source.getLineNumber() >= 0) {
+					json.append(Attribute.CODE_LINENO.getJsonKey()).append(source.getLineNumber()).append(',');
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add enabled attributes to the OTLP log record, numbers as integer values.
+	 */
+	void appendOtlp(LogEvent event,
+			DynatraceGenericLogIngestOtlpEncoder.LogRecord logRecord) {
+		if (logger && nonNull(event.getLoggerName())) {
+			logRecord.attribute(Attribute.LOGGER.getKey(), loggerName(event.getLoggerName()));
+		}
+		if (threadName) {
+			logRecord.attribute(Attribute.THREAD_NAME.getKey(), event.getThreadName());
+		}
+		if (threadId) {
+			logRecord.attribute(Attribute.THREAD_ID.getKey(), event.getThreadId());
+		}
+		if (marker && nonNull(event.getMarker())) {
+			logRecord.attribute(Attribute.MARKER.getKey(), event.getMarker().getName());
+		}
+		if (location) {
+			final var source = event.getSource();
+			if (nonNull(source)) {
+				if (enabled.contains(Attribute.CODE_NAMESPACE)) {
+					logRecord.attribute(Attribute.CODE_NAMESPACE.getKey(), source.getClassName());
+				}
+				if (enabled.contains(Attribute.CODE_FUNCTION)) {
+					logRecord.attribute(Attribute.CODE_FUNCTION.getKey(), source.getMethodName());
+				}
+				if (enabled.contains(Attribute.CODE_LINENO) && source.getLineNumber() >= 0) {
+					logRecord.attribute(Attribute.CODE_LINENO.getKey(), source.getLineNumber());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return abbreviated logger name, cached for the first {@value #MAX_CACHED_LOGGERS} loggers
+	 */
+	String loggerName(String name) {
+		return cached(loggerNames, name, this::abbreviate);
+	}
+
+	private byte[] loggerField(String name) {
+		final var field = new DynatraceGenericLogIngestJsonWriter(name.length() + 16);
+		appendJsonString(field, Attribute.LOGGER, loggerName(name));
+		return field.toByteArray();
+	}
+
+	private String abbreviate(String name) {
+		if (isNull(abbreviator)) {
+			return name;
+		}
+		final var abbreviated = new StringBuilder(name.length());
+		abbreviator.abbreviate(name, abbreviated);
+		return abbreviated.toString();
+	}
+
+	/**
+	 * Number of loggers is bounded in practice, the cache stops growing when generated names are used as loggers.
+	 */
+	private static <T> T cached(Map<String, T> cache,
+			String key,
+			Function<String, T> function) {
+		final var value = cache.get(key);
+		if (nonNull(value)) {
+			return value;
+		}
+		return cache.size() < MAX_CACHED_LOGGERS ? cache.computeIfAbsent(key, function) : function.apply(key);
+	}
+
+	private static void appendJsonString(DynatraceGenericLogIngestJsonWriter json,
+			Attribute attribute,
+			String value) {
+		json.append(attribute.getJsonKey()).string(value).append(',');
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestSemanticAttributes.class.getSimpleName() + "[", "]")
+				.add("enabled=" + enabled)
+				.add("abbreviator=" + abbreviator)
+				.toString();
+	}
+
+	/**
+	 * Supported attributes, keys follow the semantic conventions of Dynatrace and OpenTelemetry.
+	 */
+	enum Attribute {
+		LOGGER("log.logger", false),
+		THREAD_NAME("thread.name", false),
+		THREAD_ID("thread.id", false),
+		CODE_NAMESPACE("code.namespace", true),
+		CODE_FUNCTION("code.function", true),
+		CODE_LINENO("code.lineno", true),
+		MARKER("log.marker", false);
+
+		private final String key;
+		private final byte[] jsonKey;
+		private final boolean requiresLocation;
+
+		Attribute(String key,
+				boolean requiresLocation) {
+			this.key = key;
+			this.jsonKey = DynatraceGenericLogIngestJsonEscaper.fieldKey(key);
+			this.requiresLocation = requiresLocation;
+		}
+
+		String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return key with quotes and colon, encoded once
+		 */
+		byte[] getJsonKey() {
+			return jsonKey;
+		}
+
+		boolean requiresLocation() {
+			return requiresLocation;
+		}
+
+		/**
+		 * @param key key of the attribute or name of the constant, case insensitive
+		 */
+		static Attribute of(String key) {
+			for (var attribute : values()) {
+				if (attribute.key.equalsIgnoreCase(key) || attribute.name().equalsIgnoreCase(key)) {
+					return attribute;
+				}
+			}
+			throw new IllegalArgumentException("unknown semantic attribute: " + key.toLowerCase(Locale.ROOT));
+		}
+	}
+}
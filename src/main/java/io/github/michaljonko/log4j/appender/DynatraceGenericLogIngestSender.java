@@ -0,0 +1,228 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.requireNonNull;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport SPI: sends already encoded request bodies to the ActiveGate and completes asynchronously.
+ * <p>
+ * The appender batches, encodes, limits and retries requests itself, an implementation only moves bytes. Built-in
+ * implementations are selected by the {@code sender} attribute of the appender: {@code JDK} (default,
+ * {@link java.net.http.HttpClient}), {@code NIO} (HTTP/1.1 keep-alive client with pipelining, plain HTTP only) and
+ * {@code MEMORY} (answers every request with 200 without any network, for tests and benchmarks). Any other value is the
+ * class name of a {@link Factory} with a public no-arg constructor.
+ */
+public interface DynatraceGenericLogIngestSender {
+
+	/**
+	 * Send the request. Must not block the caller on the network.
+	 *
+	 * @return future completed with the HTTP status code of the response, completed exceptionally when no response has been
+	 * 		received (e.g. connection failure or timeout)
+	 */
+	CompletableFuture<Integer> send(Request request);
+
+	/**
+	 * Send the request and keep the body of a partial success response (status 200), the transport counts log events
+	 * dropped or adjusted by the ActiveGate from it. Senders not reading bodies answer with the status code only.
+	 *
+	 * @return future completed with the response, completed exceptionally when no response has been received
+	 */
+	default CompletableFuture<Response> exchange(Request request) {
+		return send(request).thenApply(Response::new);
+	}
+
+	/**
+	 * Release connections and threads. Requests without response are completed exceptionally.
+	 */
+	void close();
+
+	/**
+	 * Creates senders, one for every transport (ActiveGate endpoint, token and TLS settings).
+	 */
+	interface Factory {
+
+		DynatraceGenericLogIngestSender create(SenderConfig senderConfig);
+	}
+
+	final class SenderConfig {
+
+		private final boolean sslValidation;
+		private final Duration connectTimeout;
+
+		/**
+		 * @param sslValidation false - certificates of the ActiveGate are not validated
+		 * @param connectTimeout timeout of establishing a connection
+		 */
+		public SenderConfig(boolean sslValidation,
+				Duration connectTimeout) {
+			this.sslValidation = sslValidation;
+			this.connectTimeout = requireNonNull(connectTimeout, "connectTimeout is null");
+		}
+
+		public boolean isSslValidation() {
+			return sslValidation;
+		}
+
+		public Duration getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			var that = (SenderConfig) o;
+			return sslValidation == that.sslValidation &&
+					Objects.equals(connectTimeout, that.connectTimeout);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sslValidation, connectTimeout);
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", SenderConfig.class.getSimpleName() + "[", "]")
+					.add("sslValidation=" + sslValidation)
+					.add("connectTimeout=" + connectTimeout)
+					.toString();
+		}
+	}
+
+	/**
+	 * HTTP request with the body as a sequence of buffers (e.g. {@code [}, log event, {@code ,}, log event, {@code ]}), so
+	 * encoded log events are not copied into one array. The body is the content of every buffer between its position and
+	 * limit. A sender may consume the buffers (move their positions) but must not change their content.
+	 */
+	final class Request {
+
+		private static final ByteBuffer[] NO_BODY = new ByteBuffer[0];
+
+		private final String method;
+		private final URI uri;
+		private final Map<String, String> headers;
+		private final ByteBuffer[] body;
+		private final Duration timeout;
+
+		/**
+		 * @param headers request headers, without {@code Host} and {@code Content-Length}
+		 * @param timeout time to wait for the response
+		 */
+		public Request(String method,
+				URI uri,
+				Map<String, String> headers,
+				ByteBuffer[] body,
+				Duration timeout) {
+			this.method = requireNonNull(method, "method is null");
+			this.uri = requireNonNull(uri, "uri is null");
+			this.headers = requireNonNull(headers, "headers is null");
+			this.body = requireNonNull(body, "body is null");
+			this.timeout = requireNonNull(timeout, "timeout is null");
+		}
+
+		/**
+		 * @return {@code HEAD} request without body
+		 */
+		public static Request head(URI uri,
+				Map<String, String> headers,
+				Duration timeout) {
+			return new Request("HEAD", uri, headers, NO_BODY, timeout);
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public URI getUri() {
+			return uri;
+		}
+
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		public ByteBuffer[] getBody() {
+			return body;
+		}
+
+		public Duration getTimeout() {
+			return timeout;
+		}
+
+		/**
+		 * @return remaining bytes of the body
+		 */
+		public long getContentLength() {
+			var length = 0L;
+			for (var buffer : body) {
+				length += buffer.remaining();
+			}
+			return length;
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", Request.class.getSimpleName() + "[", "]")
+					.add("method='" + method + "'")
+					.add("uri=" + uri)
+					.add("contentLength=" + getContentLength())
+					.add("timeout=" + timeout)
+					.toString();
+		}
+	}
+
+	/**
+	 * HTTP response, the body only when it is needed (partial success) and small.
+	 */
+	final class Response {
+
+		static final int MAX_BODY_BYTES = 8 * 1024;
+
+		private static final ByteBuffer NO_BODY = ByteBuffer.allocate(0);
+
+		private final int statusCode;
+		private final ByteBuffer body;
+
+		public Response(int statusCode) {
+			this(statusCode, NO_BODY);
+		}
+
+		public Response(int statusCode,
+				ByteBuffer body) {
+			this.statusCode = statusCode;
+			this.body = requireNonNull(body, "body is null").asReadOnlyBuffer();
+		}
+
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		/**
+		 * @return read-only body, empty when not read
+		 */
+		public ByteBuffer getBody() {
+			return body.duplicate();
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", Response.class.getSimpleName() + "[", "]")
+					.add("statusCode=" + statusCode)
+					.add("bodyBytes=" + body.remaining())
+					.toString();
+		}
+	}
+}
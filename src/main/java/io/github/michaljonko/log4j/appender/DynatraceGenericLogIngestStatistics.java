@@ -0,0 +1,210 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestMemoryBudget.Account;
+import static java.util.Objects.requireNonNull;
+
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivery counters of log events enqueued by a single manager. Everything is aggregated in place, memory does not grow
+ * with the number of log events or requests.
+ */
+final class DynatraceGenericLogIngestStatistics {
+
+	private final AtomicLong pending = new AtomicLong();
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder abandoned = new LongAdder();
+	private final LongAdder deliveredBytes = new LongAdder();
+	private final LongAdder retried = new LongAdder();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder requestNanos = new LongAdder();
+	private final LongAccumulator minRequestNanos = new LongAccumulator(Math::min, Long.MAX_VALUE);
+	private final LongAccumulator maxRequestNanos = new LongAccumulator(Math::max, 0L);
+	private volatile DynatraceGenericLogIngestLatencies latencies = DynatraceGenericLogIngestLatencies.DISABLED;
+	private volatile Account memoryAccount = DynatraceGenericLogIngestMemoryBudget.UNLIMITED_ACCOUNT;
+
+	void enqueued() {
+		pending.incrementAndGet();
+	}
+
+	void dropped() {
+		dropped.increment();
+	}
+
+	/**
+	 * Reserve memory for the log event before it is enqueued.
+	 *
+	 * @param bytes size of the log event
+	 * @return false if the memory budget is exhausted
+	 */
+	boolean reserve(int bytes) {
+		return memoryAccount.reserve(bytes);
+	}
+
+	/**
+	 * Release memory of the log event which has not been enqueued.
+	 */
+	void release(int bytes) {
+		memoryAccount.release(bytes);
+	}
+
+	/**
+	 * @param bytes size of the log event, counted when delivered, its memory is released
+	 */
+	void completed(Status status,
+			int bytes) {
+		memoryAccount.release(bytes);
+		switch (status) {
+			case SUCCESS:
+				delivered.increment();
+				deliveredBytes.add(bytes);
+				break;
+			case DROPPED:
+				dropped.increment();
+				break;
+			case ABANDONED:
+				abandoned.increment();
+				break;
+			default:
+				failed.increment();
+				break;
+		}
+
+		if (pending.decrementAndGet() == 0L) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Request carrying log events of the manager has been answered (or failed).
+	 */
+	void requested(long latencyNanos) {
+		requests.increment();
+		requestNanos.add(latencyNanos);
+		minRequestNanos.accumulate(latencyNanos);
+		maxRequestNanos.accumulate(latencyNanos);
+	}
+
+	/**
+	 * Log event is sent again in a half of a rejected batch.
+	 */
+	void retried() {
+		retried.increment();
+	}
+
+	/**
+	 * Wait until every enqueued log event is completed.
+	 *
+	 * @return true if nothing is pending anymore
+	 */
+	boolean awaitCompletion(long timeout,
+			TimeUnit timeUnit) {
+		final var deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+		synchronized (this) {
+			var remaining = deadline - System.nanoTime();
+			while (pending.get() > 0L && remaining > 0L) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = deadline - System.nanoTime();
+			}
+		}
+		return pending.get() == 0L;
+	}
+
+	/**
+	 * @return latency breakdown of the manager, {@link DynatraceGenericLogIngestLatencies#DISABLED} if not tracked
+	 */
+	DynatraceGenericLogIngestLatencies getLatencies() {
+		return latencies;
+	}
+
+	void setLatencies(DynatraceGenericLogIngestLatencies latencies) {
+		this.latencies = requireNonNull(latencies, "latencies is null");
+	}
+
+	/**
+	 * @return account of the manager in the memory budget, {@link DynatraceGenericLogIngestMemoryBudget#UNLIMITED_ACCOUNT}
+	 * 		if not set
+	 */
+	Account getMemoryAccount() {
+		return memoryAccount;
+	}
+
+	void setMemoryAccount(Account memoryAccount) {
+		this.memoryAccount = requireNonNull(memoryAccount, "memoryAccount is null");
+	}
+
+	long getPending() {
+		return pending.get();
+	}
+
+	long getDelivered() {
+		return delivered.sum();
+	}
+
+	long getFailed() {
+		return failed.sum();
+	}
+
+	long getDropped() {
+		return dropped.sum();
+	}
+
+	long getAbandoned() {
+		return abandoned.sum();
+	}
+
+	long getDeliveredBytes() {
+		return deliveredBytes.sum();
+	}
+
+	long getRetried() {
+		return retried.sum();
+	}
+
+	long getRequests() {
+		return requests.sum();
+	}
+
+	long getRequestNanos() {
+		return requestNanos.sum();
+	}
+
+	/**
+	 * @return minimum request latency since the previous call, {@link Long#MAX_VALUE} if there was no request
+	 */
+	long getThenResetMinRequestNanos() {
+		return minRequestNanos.getThenReset();
+	}
+
+	/**
+	 * @return maximum request latency since the previous call
+	 */
+	long getThenResetMaxRequestNanos() {
+		return maxRequestNanos.getThenReset();
+	}
+
+	@Override
+	public String toString() {
+		return new StringJoiner(", ", DynatraceGenericLogIngestStatistics.class.getSimpleName() + "[", "]")
+				.add("delivered=" + getDelivered())
+				.add("failed=" + getFailed())
+				.add("dropped=" + getDropped())
+				.add("abandoned=" + getAbandoned())
+				.add("pending=" + getPending())
+				.toString();
+	}
+}
@@ -0,0 +1,403 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Heap queue split into stripes, so producers on many cores do not contend on a single lock.
+ * <p>
+ * Every producer thread enqueues always into the same stripe (hash of the thread id), so log events of a thread keep their
+ * order. A half of the capacity of every lane is split into equal guaranteed shares of the stripes, the other half is a
+ * pool which a stripe borrows from when its share is used up, as in {@link DynatraceGenericLogIngestMemoryBudget}.
+ * Enqueuing within the share touches only the own stripe, other stripes are only read when borrowing, there is no counter
+ * shared by producers. A log event which finds its lane full evicts a less severe one of the own stripe, the same way as in
+ * {@link DynatraceGenericLogIngestPriorityQueue}. The sender picks the lane by weighted rounds over the whole queue, the
+ * most severe first, and takes log events of that lane from stripes in turn (round robin), so a busy producer cannot
+ * starve others. The sender parks when the queue is empty, producers unpark it only when it waits, a busy sender costs
+ * them a single volatile read.
+ */
+final class DynatraceGenericLogIngestStripedQueue
+		implements DynatraceGenericLogIngestQueue {
+
+	static final int MAX_STRIPES = 64;
+	static final long PUT_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(100L);
+
+	private final Stripe[] stripes;
+	private final SharedLane[] lanes;
+	private final int capacity;
+	private final int mask;
+	private volatile Thread waiter;
+
+	/**
+	 * @param stripes number of stripes rounded up to a power of two, at most {@value #MAX_STRIPES}
+	 */
+	DynatraceGenericLogIngestStripedQueue(int stripes) {
+		if (stripes < 1) {
+			throw new IllegalArgumentException("stripes is not positive");
+		}
+		final var count = stripes(stripes);
+		this.stripes = new Stripe[count];
+		for (var index = 0; index < count; index++) {
+			this.stripes[index] = new Stripe();
+		}
+		final var values = Lane.values();
+		this.lanes = new SharedLane[values.length];
+		var capacity = 0;
+		for (var lane : values) {
+			lanes[lane.ordinal()] = new SharedLane(lane, count);
+			capacity += lane.getCapacity();
+		}
+		this.capacity = capacity;
+		this.mask = count - 1;
+	}
+
+	/**
+	 * @param stripes requested number of stripes, 0 - one per available processor
+	 * @return number of stripes, 1 if the queue is not striped
+	 */
+	static int stripes(int stripes) {
+		if (stripes < 0) {
+			throw new IllegalArgumentException("stripes is negative");
+		}
+		final var requested = Math.min(MAX_STRIPES, stripes == 0 ? Runtime.getRuntime().availableProcessors() : stripes);
+		return requested == 1 ? 1 : Integer.highestOneBit(requested - 1) << 1;
+	}
+
+	@Override
+	public boolean offer(DynatraceGenericLogIngestEvent event) {
+		final var lane = lanes[requireNonNull(event, "event is null").getLane().ordinal()];
+		if (!tryOffer(lane, event)) {
+			lane.dropped.increment();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void put(DynatraceGenericLogIngestEvent event) throws InterruptedException {
+		final var lane = lanes[requireNonNull(event, "event is null").getLane().ordinal()];
+		while (!tryOffer(lane, event)) {
+			LockSupport.parkNanos(this, PUT_RETRY_NANOS);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	@Override
+	public DynatraceGenericLogIngestEvent poll(long timeout,
+			TimeUnit timeUnit) throws InterruptedException {
+		final var deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+		while (true) {
+			var event = poll(Integer.MAX_VALUE);
+			if (nonNull(event)) {
+				return event;
+			}
+			final var remaining = deadline - System.nanoTime();
+			if (remaining <= 0L) {
+				return null;
+			}
+			waiter = Thread.currentThread();
+			event = poll(Integer.MAX_VALUE);
+			if (nonNull(event)) {
+				waiter = null;
+				return event;
+			}
+			LockSupport.parkNanos(this, remaining);
+			waiter = null;
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * Only the sender thread takes log events, credits and cursors of lanes are not shared.
+	 */
+	@Override
+	public DynatraceGenericLogIngestEvent poll(int maxBytes) {
+		for (var round = 0; round < 2; round++) {
+			for (var lane : lanes) {
+				if (lane.credits > 0 && size(lane) > 0) {
+					return take(lane, maxBytes);
+				}
+			}
+			for (var lane : lanes) {
+				lane.credits = lane.lane.getWeight();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int completeAll(Status status) {
+		final var drained = new ArrayList<DynatraceGenericLogIngestEvent>();
+		for (var stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				for (var lane : lanes) {
+					final var events = stripe.events(lane);
+					drained.addAll(events);
+					events.clear();
+					stripe.updateSize(lane);
+				}
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		for (var event : drained) {
+			event.complete(status);
+		}
+		return drained.size();
+	}
+
+	@Override
+	public List<DynatraceGenericLogIngestEvent> removeIf(Predicate<DynatraceGenericLogIngestEvent> predicate) {
+		final var removed = new ArrayList<DynatraceGenericLogIngestEvent>();
+		for (var stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				for (var lane : lanes) {
+					stripe.events(lane).removeIf(event -> predicate.test(event) && removed.add(event));
+					stripe.updateSize(lane);
+				}
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public int size() {
+		var size = 0;
+		for (var lane : lanes) {
+			size += size(lane);
+		}
+		return size;
+	}
+
+	@Override
+	public int size(Lane lane) {
+		return size(lanes[lane.ordinal()]);
+	}
+
+	@Override
+	public double getUtilization() {
+		return Math.min(1.0, (double) size() / capacity);
+	}
+
+	@Override
+	public long getDropped(Lane lane) {
+		return lanes[lane.ordinal()].dropped.sum();
+	}
+
+	@Override
+	public long getDequeued(Lane lane) {
+		return lanes[lane.ordinal()].dequeued.sum();
+	}
+
+	@Override
+	public long getAverageWaitNanos(Lane lane) {
+		final var sharedLane = lanes[lane.ordinal()];
+		final var dequeued = sharedLane.dequeued.sum();
+		return dequeued == 0L ? 0L : sharedLane.waitNanos.sum() / dequeued;
+	}
+
+	@Override
+	public long getMaxWaitNanos(Lane lane) {
+		return lanes[lane.ordinal()].maxWaitNanos.get();
+	}
+
+	int getStripes() {
+		return stripes.length;
+	}
+
+	/**
+	 * Fibonacci hash spreads consecutive thread ids over stripes.
+	 */
+	int stripeOf(long threadId) {
+		return ((int) (threadId ^ threadId >>> 32) * 0x9E3779B9 >>> 16) & mask;
+	}
+
+	/**
+	 * Enqueues into the own stripe if it has room in the lane, or takes the place of an evicted less severe log event of the
+	 * own stripe.
+	 */
+	private boolean tryOffer(SharedLane lane,
+			DynatraceGenericLogIngestEvent event) {
+		final var stripe = stripes[stripeOf(Thread.currentThread().getId())];
+		DynatraceGenericLogIngestEvent evicted = null;
+		event.setEnqueuedNanos(System.nanoTime());
+		stripe.lock.lock();
+		try {
+			if (!hasRoom(stripe, lane) && isNull(evicted = evictBelow(stripe, lane))) {
+				return false;
+			}
+			stripe.events(lane).addLast(event);
+			stripe.updateSize(lane);
+		} finally {
+			stripe.lock.unlock();
+		}
+		signal();
+		if (nonNull(evicted)) {
+			evicted.complete(Status.DROPPED);
+		}
+		return true;
+	}
+
+	/**
+	 * Within its share the stripe looks only at itself, above the share it borrows while log events of all stripes over
+	 * their shares fit into the pool of the lane. Producers borrowing at the same time can overshoot the pool slightly.
+	 */
+	private boolean hasRoom(Stripe stripe,
+			SharedLane lane) {
+		if (stripe.size(lane) < lane.share) {
+			return true;
+		}
+		var borrowed = 1;
+		for (var other : stripes) {
+			borrowed += Math.max(0, other.size(lane) - lane.share);
+		}
+		return borrowed <= lane.pool;
+	}
+
+	/**
+	 * Oldest log event of the least severe non-empty lane of the stripe less severe than the given one. Called under the lock
+	 * of the stripe.
+	 *
+	 * @return evicted log event or null if there is nothing to evict
+	 */
+	private DynatraceGenericLogIngestEvent evictBelow(Stripe stripe,
+			SharedLane lane) {
+		for (var index = lanes.length - 1; index > lane.lane.ordinal(); index--) {
+			final var victim = lanes[index];
+			final var evicted = stripe.events(victim).pollFirst();
+			if (nonNull(evicted)) {
+				stripe.updateSize(victim);
+				victim.dropped.increment();
+				return evicted;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Next log event of the lane from stripes in turn, a stripe whose oldest log event does not fit is skipped.
+	 *
+	 * @return log event or null if no stripe has a fitting one
+	 */
+	private DynatraceGenericLogIngestEvent take(SharedLane lane,
+			int maxBytes) {
+		for (var i = 0; i < stripes.length; i++) {
+			final var index = (lane.cursor + i) & mask;
+			final var stripe = stripes[index];
+			if (stripe.size(lane) == 0) {
+				continue;
+			}
+			final DynatraceGenericLogIngestEvent event;
+			stripe.lock.lock();
+			try {
+				final var events = stripe.events(lane);
+				final var head = events.peekFirst();
+				if (isNull(head) || head.getPayload().length > maxBytes) {
+					continue;
+				}
+				event = events.pollFirst();
+				stripe.updateSize(lane);
+			} finally {
+				stripe.lock.unlock();
+			}
+			lane.cursor = (index + 1) & mask;
+			lane.credits--;
+
+			final var waitNanos = System.nanoTime() - event.getEnqueuedNanos();
+			lane.dequeued.increment();
+			lane.waitNanos.add(waitNanos);
+			lane.maxWaitNanos.accumulate(waitNanos);
+			return event;
+		}
+		return null;
+	}
+
+	private int size(SharedLane lane) {
+		var size = 0;
+		for (var stripe : stripes) {
+			size += stripe.size(lane);
+		}
+		return size;
+	}
+
+	private void signal() {
+		final var thread = waiter;
+		if (nonNull(thread)) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private static final class SharedLane {
+
+		private final Lane lane;
+		private final int share;
+		private final int pool;
+		private final LongAdder dropped = new LongAdder();
+		private final LongAdder dequeued = new LongAdder();
+		private final LongAdder waitNanos = new LongAdder();
+		private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0L);
+		private int credits;
+		private int cursor;
+
+		/**
+		 * @param stripes number of stripes sharing the capacity of the lane
+		 */
+		private SharedLane(Lane lane,
+				int stripes) {
+			this.lane = lane;
+			this.share = lane.getCapacity() / 2 / stripes;
+			this.pool = lane.getCapacity() - share * stripes;
+			this.credits = lane.getWeight();
+		}
+	}
+
+	private static final class Stripe {
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final List<ArrayDeque<DynatraceGenericLogIngestEvent>> events = new ArrayList<>();
+		private final AtomicIntegerArray sizes = new AtomicIntegerArray(Lane.values().length);
+
+		private Stripe() {
+			for (var lane : Lane.values()) {
+				events.add(new ArrayDeque<>());
+			}
+		}
+
+		private ArrayDeque<DynatraceGenericLogIngestEvent> events(SharedLane lane) {
+			return events.get(lane.lane.ordinal());
+		}
+
+		private int size(SharedLane lane) {
+			return sizes.get(lane.lane.ordinal());
+		}
+
+		/**
+		 * Publishes the size of the lane to readers not holding the lock, called under the lock after every change.
+		 */
+		private void updateSize(SharedLane lane) {
+			sizes.set(lane.lane.ordinal(), events(lane).size());
+		}
+	}
+}
@@ -0,0 +1,1189 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestConcurrencyLimit.Outcome;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestLatencies.Stage;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.Request;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.SenderConfig;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.zip.GZIPOutputStream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.logging.log4j.util.LoaderUtil;
+
+/**
+ * Process-wide, reference-counted connection to a single ActiveGate endpoint.
+ * <p>
+ * Managers pointing to the same endpoint, token and TLS settings (also from different LoggerContexts) share one instance,
+ * so they share one {@link DynatraceGenericLogIngestSender} and one sender thread. Events enqueued by all of them are coalesced
+ * into the same outbound requests. Number of concurrent requests and size of batches adapt to the observed latency and
+ * congestion signals, see {@link DynatraceGenericLogIngestConcurrencyLimit}. Log events wait in severity lanes, see
+ * {@link DynatraceGenericLogIngestPriorityQueue}, or outside of the heap in {@link DynatraceGenericLogIngestOffHeapQueue}.
+ * Current values are exposed over JMX.
+ * <p>
+ * Batch rejected with 400 or 413 is split in halves and the halves are sent again, until the offending log events are
+ * isolated. Good log events are delivered, a rejected single log event is quarantined (counted and optionally written to
+ * the dead-letter file). Every bad log event costs at most 2 * log2(batch size) extra requests.
+ * <p>
+ * The connection is warmed up asynchronously when the transport is created (DNS, TCP, TLS and HTTP/2 upgrade by a
+ * {@code HEAD} request), log events wait in the queue until the warm-up answers or the connect timeout elapses, so the first
+ * requests reuse the warm connection. Optional keep-alive pings keep it open through idle periods.
+ */
+final class DynatraceGenericLogIngestTransport
+		implements DynatraceGenericLogIngestTransportMXBean {
+
+	static final int MAX_BATCH_EVENTS = 1_000;
+	static final int MAX_BATCH_BYTES = 1_000_000;
+	static final long IDLE_POLL_MILLIS = 100L;
+	static final String MBEAN_DOMAIN = "io.github.michaljonko.log4j";
+
+	private static final Logger LOGGER = StatusLogger.getLogger();
+	private static final Map<TransportConfig, DynatraceGenericLogIngestTransport> TRANSPORTS = new HashMap<>();
+	private static final AtomicInteger MBEAN_COUNTER = new AtomicInteger();
+	private static final String USER_AGENT =
+			"Dynatrace Generic Log Ingest Appender";
+	private static final byte[] ARRAY_START = { '[' };
+	private static final byte[] ARRAY_SEPARATOR = { ',' };
+	private static final byte[] ARRAY_END = { ']' };
+	private static final int GZIP_BUFFER_BYTES = 8_192;
+	private static final int MAX_REASONS = 64;
+	private static final String OTHER_REASON = "other";
+
+	private final TransportConfig transportConfig;
+	private final URI endpoint;
+	private final byte[] resource;
+	private final String authorizationToken;
+	private final Map<String, String> headers;
+	private final Map<String, String> headHeaders;
+	private final DynatraceGenericLogIngestSender requestSender;
+	private final DynatraceGenericLogIngestQueue queue;
+	private final Thread sender;
+	private final DynatraceGenericLogIngestConcurrencyLimit concurrencyLimit;
+	private final Set<Batch> inFlight = ConcurrentHashMap.newKeySet();
+	private final Queue<Batch> splits = new ConcurrentLinkedQueue<>();
+	private final DynatraceGenericLogIngestDeadLetterFile deadLetterFile;
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder quarantined = new LongAdder();
+	private final LongAdder splitRequests = new LongAdder();
+	private final Map<String, LongAdder> droppedByReason = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> adjustedByReason = new ConcurrentHashMap<>();
+	private final ObjectName objectName;
+	private final CompletableFuture<Void> warmUp;
+	private long lastRequestNanos;
+	private int references;
+	private volatile boolean closed;
+	private volatile boolean terminated;
+	private volatile boolean connected;
+
+	private DynatraceGenericLogIngestTransport(TransportConfig transportConfig) {
+		this.transportConfig = requireNonNull(transportConfig, "transportConfig is null");
+		this.endpoint = transportConfig.getProtocol().endpoint(transportConfig.getActiveGateUrl());
+		this.resource = DynatraceGenericLogIngestOtlpEncoder.resource(transportConfig.getResourceAttributes());
+		this.authorizationToken = "Api-Token " + transportConfig.getToken();
+		this.headers = transportConfig.isCompression()
+				? Map.of("Authorization", authorizationToken,
+						"Content-Type", transportConfig.getProtocol().getContentType(),
+						"Content-Encoding", "gzip",
+						"User-Agent", USER_AGENT)
+				: Map.of("Authorization", authorizationToken,
+						"Content-Type", transportConfig.getProtocol().getContentType(),
+						"User-Agent", USER_AGENT);
+		this.headHeaders = Map.of("Authorization", authorizationToken, "User-Agent", USER_AGENT);
+		this.requestSender = newSender(transportConfig);
+		this.queue = newQueue(transportConfig);
+		this.concurrencyLimit = new DynatraceGenericLogIngestConcurrencyLimit(MAX_BATCH_EVENTS);
+		this.deadLetterFile = nonNull(transportConfig.getDeadLetterFile())
+				? new DynatraceGenericLogIngestDeadLetterFile(transportConfig.getDeadLetterFile(),
+						transportConfig.getProtocol())
+				: null;
+		this.objectName = registerMBean();
+		this.warmUp = ping();
+		this.sender = DynatraceGenericLogIngestHttpClient.newDaemonThread(this::sendLoop, "sender");
+		this.sender.start();
+	}
+
+	/**
+	 * Get the transport for given configuration, creating it when no manager uses it yet.
+	 * Every call has to be paired with {@link #release(long, TimeUnit)}.
+	 */
+	static DynatraceGenericLogIngestTransport acquire(TransportConfig transportConfig) {
+		requireNonNull(transportConfig, "transportConfig is null");
+		synchronized (TRANSPORTS) {
+			var transport = TRANSPORTS.computeIfAbsent(transportConfig, DynatraceGenericLogIngestTransport::new);
+			transport.references++;
+			return transport;
+		}
+	}
+
+	/**
+	 * Drop one reference. The last reference closes the transport: new log events are not accepted anymore, pending and
+	 * in-flight log events are sent within given timeout, remaining ones are abandoned.
+	 *
+	 * @param timeout maximum time to drain the transport, non-positive value means a single request timeout
+	 * @param timeUnit unit of the timeout
+	 * @return true if every pending log event has been completed before the timeout
+	 */
+	boolean release(long timeout,
+			TimeUnit timeUnit) {
+		synchronized (TRANSPORTS) {
+			if (--references > 0) {
+				return true;
+			}
+			TRANSPORTS.remove(transportConfig, this);
+		}
+		return close(timeout > 0L ? timeUnit.toNanos(timeout) : transportConfig.getRequestTimeout().toNanos());
+	}
+
+	/**
+	 * Enqueue serialized JSON object to be sent with the next batch.
+	 *
+	 * @param payload UTF-8 encoded JSON object
+	 * @param lane severity lane of the log event
+	 * @param blocking wait until the batch carrying the payload is acknowledged
+	 * @param statistics counters of the manager enqueuing the payload
+	 * @return status of the request when blocking, {@link Status#QUEUED} otherwise, {@link Status#CLOSED} (not accounted in
+	 * 		statistics) when the transport does not accept log events anymore
+	 */
+	Status send(byte[] payload,
+			Lane lane,
+			boolean blocking,
+			DynatraceGenericLogIngestStatistics statistics) {
+		return send(payload, lane, blocking, statistics, 0L, null);
+	}
+
+	/**
+	 * @param eventEpochNanos time of the log event for the end-to-end latency, 0 if unknown (not kept by the off-heap queue)
+	 * @param onDropped called when the log event is dropped after all, also when it is evicted from the heap queue later,
+	 * 		null if nothing is to be done
+	 */
+	Status send(byte[] payload,
+			Lane lane,
+			boolean blocking,
+			DynatraceGenericLogIngestStatistics statistics,
+			long eventEpochNanos,
+			Runnable onDropped) {
+		requireNonNull(payload, "payload is null");
+		requireNonNull(lane, "lane is null");
+		requireNonNull(statistics, "statistics is null");
+		if (closed) {
+			return Status.CLOSED;
+		}
+
+		final var event = new DynatraceGenericLogIngestEvent(payload, lane, blocking ? new CompletableFuture<>() : null, statistics);
+		event.setEventEpochNanos(eventEpochNanos);
+		event.setOnDropped(onDropped);
+		statistics.enqueued();
+		if (!blocking) {
+			if (!queue.offer(event)) {
+				event.complete(Status.DROPPED);
+				return Status.DROPPED;
+			}
+			abandonIfTerminated();
+			return Status.QUEUED;
+		}
+
+		try {
+			queue.put(event);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			event.complete(Status.ABANDONED);
+			return Status.ABANDONED;
+		}
+		abandonIfTerminated();
+		return event.getResult().join();
+	}
+
+	/**
+	 * Move log events of given manager, which are not in-flight yet, to the other transport. The order within every lane is
+	 * preserved and blocking callers are completed by the other transport.
+	 *
+	 * @return number of moved log events
+	 */
+	int transferTo(DynatraceGenericLogIngestTransport target,
+			DynatraceGenericLogIngestStatistics statistics) {
+		requireNonNull(target, "target is null");
+		requireNonNull(statistics, "statistics is null");
+
+		final var moved = queue.removeIf(event -> event.getStatistics() == statistics);
+		for (var event : moved) {
+			if (target.closed || !target.queue.offer(event)) {
+				event.complete(Status.DROPPED);
+			}
+		}
+		target.abandonIfTerminated();
+		return moved.size();
+	}
+
+	/**
+	 * Send a request other than log events (e.g. self-monitoring metrics) through the sender and token of this transport. It
+	 * is not limited nor accounted as log ingest requests are.
+	 *
+	 * @return future completed with the status code of the response
+	 */
+	CompletableFuture<Integer> postAsync(URI uri,
+			String contentType,
+			byte[] body) {
+		return requestSender.send(new Request("POST",
+				requireNonNull(uri, "uri is null"),
+				Map.of("Authorization", authorizationToken,
+						"Content-Type", requireNonNull(contentType, "contentType is null"),
+						"User-Agent", USER_AGENT),
+				new ByteBuffer[] { ByteBuffer.wrap(requireNonNull(body, "body is null")) },
+				transportConfig.getRequestTimeout()));
+	}
+
+	TransportConfig getTransportConfig() {
+		return transportConfig;
+	}
+
+	DynatraceGenericLogIngestSender getRequestSender() {
+		return requestSender;
+	}
+
+	/**
+	 * Built-in sender by its name, otherwise instance of the {@link DynatraceGenericLogIngestSender.Factory} class.
+	 */
+	private static DynatraceGenericLogIngestSender newSender(TransportConfig transportConfig) {
+		final var senderConfig = new SenderConfig(transportConfig.isSslValidation(), transportConfig.getConnectionTimeout());
+		final var sender = transportConfig.getSender();
+		if (TransportConfig.JDK_SENDER.equalsIgnoreCase(sender)) {
+			return DynatraceGenericLogIngestJdkSender.FACTORY.create(senderConfig);
+		}
+		if (TransportConfig.NIO_SENDER.equalsIgnoreCase(sender)) {
+			return DynatraceGenericLogIngestNioSender.FACTORY.create(senderConfig);
+		}
+		if (TransportConfig.MEMORY_SENDER.equalsIgnoreCase(sender)) {
+			return DynatraceGenericLogIngestMemorySender.FACTORY.create(senderConfig);
+		}
+		if (transportConfig.isAggregatorSender()) {
+			final var address = sender.length() > TransportConfig.AGGREGATOR_SENDER.length()
+					? sender.substring(TransportConfig.AGGREGATOR_SENDER.length() + 1)
+					: DynatraceGenericLogIngestAggregatorSender.DEFAULT_ADDRESS;
+			return new DynatraceGenericLogIngestAggregatorSender(DynatraceGenericLogIngestAggregatorSender.socketAddress(address),
+					senderConfig);
+		}
+		try {
+			return requireNonNull(
+					LoaderUtil.newCheckedInstanceOf(sender, DynatraceGenericLogIngestSender.Factory.class).create(senderConfig),
+					"sender is null");
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException("Sender factory " + sender + " cannot be instantiated", e);
+		}
+	}
+
+	private static DynatraceGenericLogIngestQueue newQueue(TransportConfig transportConfig) {
+		if (transportConfig.getOffHeapQueueBytes() > 0L) {
+			return new DynatraceGenericLogIngestOffHeapQueue(transportConfig.getOffHeapQueueBytes());
+		}
+		final var stripes = DynatraceGenericLogIngestStripedQueue.stripes(transportConfig.getQueueStripes());
+		return stripes > 1
+				? new DynatraceGenericLogIngestStripedQueue(stripes)
+				: new DynatraceGenericLogIngestPriorityQueue();
+	}
+
+	/**
+	 * @return true until the warm-up request is answered or fails
+	 */
+	boolean isWarmingUp() {
+		return !warmUp.isDone();
+	}
+
+	/**
+	 * @return true once the ActiveGate answered any request
+	 */
+	boolean isConnected() {
+		return connected;
+	}
+
+	DynatraceGenericLogIngestConcurrencyLimit getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	@Override
+	public String getActiveGateUrl() {
+		return transportConfig.getActiveGateUrl().toString();
+	}
+
+	@Override
+	public int getConcurrencyLimitValue() {
+		return concurrencyLimit.getLimit();
+	}
+
+	@Override
+	public int getBatchEvents() {
+		return concurrencyLimit.getBatchEvents();
+	}
+
+	@Override
+	public int getInFlightRequests() {
+		return concurrencyLimit.getInFlight();
+	}
+
+	@Override
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	int getQueueSize(Lane lane) {
+		return queue.size(lane);
+	}
+
+	double getQueueUtilization() {
+		return queue.getUtilization();
+	}
+
+	@Override
+	public Map<String, Long> getLaneSizes() {
+		return perLane(lane -> (long) queue.size(lane));
+	}
+
+	@Override
+	public Map<String, Long> getLaneDropped() {
+		return perLane(queue::getDropped);
+	}
+
+	@Override
+	public Map<String, Long> getLaneAverageWaitMillis() {
+		return perLane(lane -> TimeUnit.NANOSECONDS.toMillis(queue.getAverageWaitNanos(lane)));
+	}
+
+	@Override
+	public Map<String, Long> getLaneMaxWaitMillis() {
+		return perLane(lane -> TimeUnit.NANOSECONDS.toMillis(queue.getMaxWaitNanos(lane)));
+	}
+
+	private static Map<String, Long> perLane(ToLongFunction<Lane> value) {
+		final var values = new LinkedHashMap<String, Long>();
+		for (var lane : Lane.values()) {
+			values.put(lane.name(), value.applyAsLong(lane));
+		}
+		return values;
+	}
+
+	@Override
+	public long getDelivered() {
+		return delivered.sum();
+	}
+
+	@Override
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	@Override
+	public long getQuarantined() {
+		return quarantined.sum();
+	}
+
+	@Override
+	public long getSplitRequests() {
+		return splitRequests.sum();
+	}
+
+	@Override
+	public Map<String, Long> getDroppedByReason() {
+		return perReason(droppedByReason);
+	}
+
+	@Override
+	public Map<String, Long> getAdjustedByReason() {
+		return perReason(adjustedByReason);
+	}
+
+	private static Map<String, Long> perReason(Map<String, LongAdder> counters) {
+		final var values = new TreeMap<String, Long>();
+		counters.forEach((reason, counter) -> values.put(reason, counter.sum()));
+		return values;
+	}
+
+	private ObjectName registerMBean() {
+		try {
+			final var name = new ObjectName(MBEAN_DOMAIN + ":type=" + DynatraceGenericLogIngestTransport.class.getSimpleName()
+					+ ",name=" + ObjectName.quote(transportConfig.getActiveGateUrl() + "#" + MBEAN_COUNTER.incrementAndGet()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			return name;
+		} catch (JMException | RuntimeException e) {
+			LOGGER.debug("Transport {} cannot be registered in JMX.", transportConfig, e);
+			return null;
+		}
+	}
+
+	private void unregisterMBean() {
+		if (nonNull(objectName)) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException | RuntimeException e) {
+				LOGGER.debug("Transport {} cannot be unregistered from JMX.", transportConfig, e);
+			}
+		}
+	}
+
+	int getReferences() {
+		synchronized (TRANSPORTS) {
+			return references;
+		}
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	private boolean close(long timeoutNanos) {
+		final var deadline = System.nanoTime() + timeoutNanos;
+		closed = true;
+		try {
+			sender.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+			if (sender.isAlive()) {
+				sender.interrupt();
+				sender.join();
+			}
+			concurrencyLimit.awaitIdle(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		terminated = true;
+		var abandonedInFlight = 0;
+		for (var batch : inFlight) {
+			if (batch.complete(Status.ABANDONED)) {
+				abandonedInFlight += batch.events.size();
+			}
+		}
+		abandonedInFlight += abandonSplits();
+		final var abandoned = queue.completeAll(Status.ABANDONED);
+		unregisterMBean();
+		requestSender.close();
+
+		LOGGER.debug("Transport {} closed. delivered={}, failed={}, abandoned={}",
+				transportConfig, delivered.sum(), failed.sum(), abandonedInFlight + abandoned);
+		return abandoned == 0 && abandonedInFlight == 0;
+	}
+
+	/**
+	 * Log event enqueued after the transport had terminated would never be picked up by the sender.
+	 */
+	private void abandonIfTerminated() {
+		if (terminated) {
+			queue.completeAll(Status.ABANDONED);
+		}
+	}
+
+	/**
+	 * Halves of rejected batches which arrive after the transport had terminated would never be sent.
+	 *
+	 * @return number of abandoned log events
+	 */
+	private int abandonSplits() {
+		var abandoned = 0;
+		Batch batch;
+		while ((batch = splits.poll()) != null) {
+			if (batch.complete(Status.ABANDONED)) {
+				abandoned += batch.events.size();
+			}
+		}
+		return abandoned;
+	}
+
+	/**
+	 * Takes a free in-flight slot, sends halves of a rejected batch first, otherwise collects a batch of the current target
+	 * size and sends it asynchronously. Ends when the transport is closed, the queue is empty and no request is in flight
+	 * (its halves could still come back) or when interrupted because the drain timeout elapsed.
+	 */
+	private void sendLoop() {
+		try {
+			awaitWarmUp();
+			while (true) {
+				if (!concurrencyLimit.acquire(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					continue;
+				}
+
+				final var split = splits.poll();
+				if (nonNull(split)) {
+					post(split);
+					continue;
+				}
+
+				final var idle = closed && inFlight.isEmpty();
+				final var first = queue.poll(idle ? 0L : IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					concurrencyLimit.release();
+					if (idle && splits.isEmpty()) {
+						break;
+					}
+					keepAlive();
+					continue;
+				}
+
+				final var maxEvents = concurrencyLimit.getBatchEvents();
+				final var events = new ArrayList<DynatraceGenericLogIngestEvent>(Math.min(maxEvents, queue.size() + 1));
+				events.add(first);
+				var batchBytes = first.getPayload().length;
+				DynatraceGenericLogIngestEvent next;
+				while (events.size() < maxEvents
+						&& (next = queue.poll(MAX_BATCH_BYTES - batchBytes - 1)) != null) {
+					events.add(next);
+					batchBytes += next.getPayload().length + 1;
+				}
+				recordQueueWait(events);
+
+				post(new Batch(events));
+			}
+		} catch (InterruptedException e) {
+			LOGGER.debug("Transport {} sender interrupted, drain timeout elapsed.", transportConfig);
+		}
+	}
+
+	/**
+	 * Log events wait for the warm connection at most the connect timeout, then requests open their own connections.
+	 */
+	private void awaitWarmUp() throws InterruptedException {
+		try {
+			warmUp.get(transportConfig.getConnectionTimeout().toNanos(), TimeUnit.NANOSECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			LOGGER.debug("Transport {} not warmed up, sending anyway.", transportConfig);
+		}
+	}
+
+	/**
+	 * Ping the idle connection, so it is not closed by the ActiveGate or a proxy in between.
+	 */
+	private void keepAlive() {
+		final var keepAliveInterval = transportConfig.getKeepAliveInterval();
+		if (!closed && !keepAliveInterval.isZero() && System.nanoTime() - lastRequestNanos >= keepAliveInterval.toNanos()) {
+			ping();
+		}
+	}
+
+	/**
+	 * {@code HEAD} request establishing the connection, any answer means the ActiveGate is reachable.
+	 *
+	 * @return future completed when answered or failed, never completed exceptionally
+	 */
+	private CompletableFuture<Void> ping() {
+		lastRequestNanos = System.nanoTime();
+		try {
+			return requestSender.send(Request.head(endpoint, headHeaders, transportConfig.getConnectionTimeout()))
+					.handle((statusCode, throwable) -> {
+						if (nonNull(throwable)) {
+							LOGGER.debug("Transport {} cannot connect.", transportConfig, throwable);
+						} else {
+							connected = true;
+						}
+						return null;
+					});
+		} catch (RuntimeException e) {
+			LOGGER.debug("Transport {} cannot connect.", transportConfig, e);
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	private static void recordQueueWait(List<DynatraceGenericLogIngestEvent> events) {
+		final var now = System.nanoTime();
+		for (var event : events) {
+			event.getStatistics().getLatencies().recordNanos(Stage.QUEUE_WAIT, now - event.getEnqueuedNanos());
+		}
+	}
+
+	private void post(Batch batch) {
+		inFlight.add(batch);
+		final var started = System.nanoTime();
+		lastRequestNanos = started;
+		try {
+			final var body = transportConfig.isCompression() ? gzip(toRequestBody(batch)) : toRequestBody(batch);
+			requestSender.exchange(new Request("POST", endpoint, headers, body, transportConfig.getRequestTimeout()))
+					.whenComplete((response, throwable) -> {
+						if (nonNull(throwable)) {
+							LOGGER.error("Cannot send {} log events", batch.events.size(), throwable);
+							completed(batch, Status.EXCEPTION, System.nanoTime() - started, Outcome.CONGESTION);
+							return;
+						}
+
+						connected = true;
+						final var statusCode = response.getStatusCode();
+						if ((statusCode == 400 || statusCode == 413) && batch.events.size() > 1) {
+							LOGGER.debug("ActiveGate rejected request with {} log events with {}, splitting.",
+									batch.events.size(), statusCode);
+							bisect(batch);
+							concurrencyLimit.release(System.nanoTime() - started, Outcome.IGNORED);
+							return;
+						}
+						if (statusCode == 400 || statusCode == 413) {
+							quarantine(batch.events.get(0), statusCode);
+						}
+						if (statusCode != 200 && statusCode != 204) {
+							LOGGER.warn("ActiveGate rejected request with {} log events.", batch.events.size(),
+									new RejectedRequestException(statusCode));
+							completed(batch, Status.FAILED, System.nanoTime() - started,
+									statusCode == 429 || statusCode >= 500 ? Outcome.CONGESTION : Outcome.IGNORED);
+							return;
+						}
+
+						if (statusCode == 200) {
+							partialSuccess(response.getBody());
+						}
+						completed(batch, Status.SUCCESS, System.nanoTime() - started, Outcome.SUCCESS);
+					});
+		} catch (RuntimeException e) {
+			LOGGER.error("Cannot send {} log events", batch.events.size(), e);
+			completed(batch, Status.EXCEPTION, System.nanoTime() - started, Outcome.IGNORED);
+		}
+	}
+
+	private void completed(Batch batch,
+			Status status,
+			long latencyNanos,
+			Outcome outcome) {
+		inFlight.remove(batch);
+		batch.forEachOwner(statistics -> {
+			statistics.requested(latencyNanos);
+			statistics.getLatencies().recordNanos(Stage.REQUEST, latencyNanos);
+		});
+		if (status == Status.SUCCESS) {
+			final var now = DynatraceGenericLogIngestLatencies.epochNanos(Instant.now());
+			for (var event : batch.events) {
+				event.getStatistics().getLatencies().recordEventAge(event.getEventEpochNanos(), now);
+			}
+		}
+		if (batch.complete(status)) {
+			(status == Status.SUCCESS ? delivered : failed).add(batch.events.size());
+		}
+		concurrencyLimit.release(latencyNanos, outcome);
+	}
+
+	/**
+	 * Replace rejected batch by its halves, sent before any new log events. The halves are abandoned if the transport
+	 * terminated in the meantime.
+	 */
+	private void bisect(Batch batch) {
+		if (batch.retire()) {
+			splits.addAll(batch.split());
+			splitRequests.add(2L);
+			for (var event : batch.events) {
+				event.getStatistics().retried();
+			}
+		}
+		inFlight.remove(batch);
+		if (terminated) {
+			abandonSplits();
+		}
+	}
+
+	/**
+	 * Count log events the ActiveGate dropped or adjusted from the accepted request, a new reason is logged once as a warning.
+	 */
+	private void partialSuccess(ByteBuffer body) {
+		final var partialSuccess = DynatraceGenericLogIngestPartialSuccess.parse(transportConfig.getProtocol(), body);
+		if (partialSuccess.isEmpty()) {
+			return;
+		}
+		partialSuccess.getDropped().forEach((reason, events) -> count(droppedByReason, "dropped", reason, events));
+		partialSuccess.getAdjusted().forEach((reason, events) -> count(adjustedByReason, "adjusted", reason, events));
+	}
+
+	private static void count(Map<String, LongAdder> counters,
+			String outcome,
+			String reason,
+			long events) {
+		final var counter = counters.get(reason);
+		if (nonNull(counter)) {
+			LOGGER.debug("ActiveGate {} {} log events: {}", outcome, events, reason);
+			counter.add(events);
+		} else if (counters.size() >= MAX_REASONS) {
+			LOGGER.debug("ActiveGate {} {} log events: {}", outcome, events, reason);
+			counters.computeIfAbsent(OTHER_REASON, key -> new LongAdder()).add(events);
+		} else {
+			LOGGER.warn("ActiveGate {} {} log events: {}", outcome, events, reason);
+			counters.computeIfAbsent(reason, key -> new LongAdder()).add(events);
+		}
+	}
+
+	private void quarantine(DynatraceGenericLogIngestEvent event,
+			int statusCode) {
+		quarantined.increment();
+		LOGGER.debug("ActiveGate rejected log event with {}, log event quarantined.", statusCode);
+		if (nonNull(deadLetterFile)) {
+			deadLetterFile.write(event.getPayload());
+		}
+	}
+
+	private ByteBuffer[] toRequestBody(Batch batch) {
+		return transportConfig.getProtocol() == Protocol.OTLP
+				? new ByteBuffer[] { ByteBuffer.wrap(DynatraceGenericLogIngestOtlpEncoder.request(resource, batch.events)) }
+				: toJsonRequestBody(batch.events);
+	}
+
+	/**
+	 * Single event is sent as it is, more events are wrapped into JSON array. Payloads are wrapped, not copied.
+	 */
+	static ByteBuffer[] toJsonRequestBody(List<DynatraceGenericLogIngestEvent> batch) {
+		if (batch.size() == 1) {
+			return new ByteBuffer[] { ByteBuffer.wrap(batch.get(0).getPayload()) };
+		}
+
+		final var body = new ByteBuffer[2 * batch.size() + 1];
+		body[0] = ByteBuffer.wrap(ARRAY_START);
+		for (var i = 0; i < batch.size(); i++) {
+			body[2 * i + 1] = ByteBuffer.wrap(batch.get(i).getPayload());
+			body[2 * i + 2] = ByteBuffer.wrap(i < batch.size() - 1 ? ARRAY_SEPARATOR : ARRAY_END);
+		}
+		return body;
+	}
+
+	/**
+	 * Compressed on the sender thread, JSON batches of similar log events shrink several times.
+	 */
+	static ByteBuffer[] gzip(ByteBuffer[] body) {
+		var length = 0;
+		for (var buffer : body) {
+			length += buffer.remaining();
+		}
+		final var bytes = new ByteArrayOutputStream(Math.max(64, length / 4));
+		try (var gzip = new GZIPOutputStream(bytes, GZIP_BUFFER_BYTES)) {
+			for (var buffer : body) {
+				if (buffer.hasArray()) {
+					gzip.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+				} else {
+					final var copy = new byte[buffer.remaining()];
+					buffer.duplicate().get(copy);
+					gzip.write(copy);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Request body cannot be compressed", e);
+		}
+		return new ByteBuffer[] { ByteBuffer.wrap(bytes.toByteArray()) };
+	}
+
+	private static void completeAll(List<DynatraceGenericLogIngestEvent> events,
+			Status status) {
+		for (var event : events) {
+			event.complete(status);
+		}
+	}
+
+	static final class TransportConfig {
+
+		static final String JDK_SENDER = "JDK";
+		static final String NIO_SENDER = "NIO";
+		static final String MEMORY_SENDER = "MEMORY";
+		static final String AGGREGATOR_SENDER = "AGGREGATOR";
+		static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30L);
+
+		private final URI activeGateUrl;
+		private final String token;
+		private final boolean sslValidation;
+		private final Duration connectionTimeout;
+		private final Path deadLetterFile;
+		private final long offHeapQueueBytes;
+		private final Protocol protocol;
+		private final Map<String, String> resourceAttributes;
+		private final Duration requestTimeout;
+		private final Duration keepAliveInterval;
+		private final int queueStripes;
+		private final String sender;
+		private final boolean compression;
+
+		private TransportConfig(Builder builder) {
+			if (builder.offHeapQueueBytes < 0L) {
+				throw new IllegalArgumentException("offHeapQueueBytes is negative");
+			}
+			this.activeGateUrl = requireNonNull(builder.activeGateUrl, "activeGateUrl is null");
+			this.token = requireNonNull(builder.token, "token is null");
+			this.sslValidation = builder.sslValidation;
+			this.connectionTimeout = requireNonNull(builder.connectionTimeout, "connectionTimeout is null");
+			this.deadLetterFile = builder.deadLetterFile;
+			this.offHeapQueueBytes = builder.offHeapQueueBytes;
+			this.protocol = requireNonNull(builder.protocol, "protocol is null");
+			this.resourceAttributes = Map.copyOf(requireNonNull(builder.resourceAttributes, "resourceAttributes is null"));
+			this.requestTimeout = isNull(builder.requestTimeout) ? connectionTimeout : builder.requestTimeout;
+			this.keepAliveInterval = requireNonNull(builder.keepAliveInterval, "keepAliveInterval is null");
+			if (keepAliveInterval.isNegative()) {
+				throw new IllegalArgumentException("keepAliveInterval is negative");
+			}
+			if (builder.queueStripes < 0) {
+				throw new IllegalArgumentException("queueStripes is negative");
+			}
+			this.queueStripes = builder.queueStripes;
+			this.sender = requireNonNull(builder.sender, "sender is null").trim();
+			if (this.sender.isEmpty()) {
+				throw new IllegalArgumentException("sender is blank");
+			}
+			if (NIO_SENDER.equalsIgnoreCase(this.sender) && !"http".equalsIgnoreCase(activeGateUrl.getScheme())) {
+				throw new IllegalArgumentException("NIO sender supports only http ActiveGate URLs");
+			}
+			if (isAggregatorSender() && protocol != Protocol.JSON) {
+				throw new IllegalArgumentException("Aggregator sender supports only JSON protocol");
+			}
+			if (isAggregatorSender() && builder.compression) {
+				throw new IllegalArgumentException("Aggregator sender does not support compression");
+			}
+			this.compression = builder.compression;
+		}
+
+		/**
+		 * @return builder with defaults: SSL validation, JSON, timeouts of {@link #DEFAULT_TIMEOUT}, single heap queue, JDK
+		 * 		sender, nothing else enabled
+		 */
+		static Builder builder(URI activeGateUrl,
+				String token) {
+			return new Builder(activeGateUrl, token);
+		}
+
+		URI getActiveGateUrl() {
+			return activeGateUrl;
+		}
+
+		String getToken() {
+			return token;
+		}
+
+		boolean isSslValidation() {
+			return sslValidation;
+		}
+
+		Duration getConnectionTimeout() {
+			return connectionTimeout;
+		}
+
+		Path getDeadLetterFile() {
+			return deadLetterFile;
+		}
+
+		long getOffHeapQueueBytes() {
+			return offHeapQueueBytes;
+		}
+
+		Protocol getProtocol() {
+			return protocol;
+		}
+
+		Map<String, String> getResourceAttributes() {
+			return resourceAttributes;
+		}
+
+		Duration getRequestTimeout() {
+			return requestTimeout;
+		}
+
+		Duration getKeepAliveInterval() {
+			return keepAliveInterval;
+		}
+
+		int getQueueStripes() {
+			return queueStripes;
+		}
+
+		String getSender() {
+			return sender;
+		}
+
+		/**
+		 * @return true if log events are shipped to the host-local aggregator, see {@link DynatraceGenericLogIngestAggregator}
+		 */
+		boolean isAggregatorSender() {
+			return sender.regionMatches(true, 0, AGGREGATOR_SENDER, 0, AGGREGATOR_SENDER.length())
+					&& (sender.length() == AGGREGATOR_SENDER.length() || sender.charAt(AGGREGATOR_SENDER.length()) == ':');
+		}
+
+		boolean isCompression() {
+			return compression;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			var that = (TransportConfig) o;
+			return sslValidation == that.sslValidation &&
+					offHeapQueueBytes == that.offHeapQueueBytes &&
+					queueStripes == that.queueStripes &&
+					Objects.equals(activeGateUrl, that.activeGateUrl) &&
+					Objects.equals(token, that.token) &&
+					Objects.equals(connectionTimeout, that.connectionTimeout) &&
+					Objects.equals(deadLetterFile, that.deadLetterFile) &&
+					protocol == that.protocol &&
+					Objects.equals(resourceAttributes, that.resourceAttributes) &&
+					Objects.equals(requestTimeout, that.requestTimeout) &&
+					Objects.equals(keepAliveInterval, that.keepAliveInterval) &&
+					Objects.equals(sender, that.sender) &&
+					compression == that.compression;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(activeGateUrl, token, sslValidation, connectionTimeout, deadLetterFile, offHeapQueueBytes, protocol,
+					resourceAttributes, requestTimeout, keepAliveInterval, queueStripes, sender, compression);
+		}
+
+		@Override
+		public String toString() {
+			return new StringJoiner(", ", TransportConfig.class.getSimpleName() + "[", "]")
+					.add("activeGateUrl='" + activeGateUrl + "'")
+					.add("token='########'")
+					.add("sslValidation=" + sslValidation)
+					.add("connectionTimeout=" + connectionTimeout)
+					.add("deadLetterFile=" + deadLetterFile)
+					.add("offHeapQueueBytes=" + offHeapQueueBytes)
+					.add("protocol=" + protocol)
+					.add("resourceAttributes=" + resourceAttributes)
+					.add("requestTimeout=" + requestTimeout)
+					.add("keepAliveInterval=" + keepAliveInterval)
+					.add("queueStripes=" + queueStripes)
+					.add("sender='" + sender + "'")
+					.add("compression=" + compression)
+					.toString();
+		}
+
+		static final class Builder {
+
+			private final URI activeGateUrl;
+			private final String token;
+			private boolean sslValidation = true;
+			private Duration connectionTimeout = DEFAULT_TIMEOUT;
+			private Path deadLetterFile;
+			private long offHeapQueueBytes;
+			private Protocol protocol = Protocol.JSON;
+			private Map<String, String> resourceAttributes = Map.of();
+			private Duration requestTimeout;
+			private Duration keepAliveInterval = Duration.ZERO;
+			private int queueStripes = 1;
+			private String sender = JDK_SENDER;
+			private boolean compression;
+
+			private Builder(URI activeGateUrl,
+					String token) {
+				this.activeGateUrl = activeGateUrl;
+				this.token = token;
+			}
+
+			Builder setSslValidation(boolean sslValidation) {
+				this.sslValidation = sslValidation;
+				return this;
+			}
+
+			/**
+			 * @param connectionTimeout timeout of establishing the connection
+			 */
+			Builder setConnectionTimeout(Duration connectionTimeout) {
+				this.connectionTimeout = connectionTimeout;
+				return this;
+			}
+
+			/**
+			 * @param deadLetterFile file for log events rejected by the ActiveGate, null - rejected log events are only counted
+			 */
+			Builder setDeadLetterFile(Path deadLetterFile) {
+				this.deadLetterFile = deadLetterFile;
+				return this;
+			}
+
+			/**
+			 * @param offHeapQueueBytes capacity of the off-heap queue, 0 - log events wait on the heap
+			 */
+			Builder setOffHeapQueueBytes(long offHeapQueueBytes) {
+				this.offHeapQueueBytes = offHeapQueueBytes;
+				return this;
+			}
+
+			/**
+			 * @param protocol format of requests
+			 */
+			Builder setProtocol(Protocol protocol) {
+				this.protocol = protocol;
+				return this;
+			}
+
+			/**
+			 * @param resourceAttributes attributes of the OTLP resource
+			 */
+			Builder setResourceAttributes(Map<String, String> resourceAttributes) {
+				this.resourceAttributes = resourceAttributes;
+				return this;
+			}
+
+			/**
+			 * @param requestTimeout timeout of a single request, null - the same as the connection timeout
+			 */
+			Builder setRequestTimeout(Duration requestTimeout) {
+				this.requestTimeout = requestTimeout;
+				return this;
+			}
+
+			/**
+			 * @param keepAliveInterval idle time after which the connection is pinged, zero - no pings
+			 */
+			Builder setKeepAliveInterval(Duration keepAliveInterval) {
+				this.keepAliveInterval = keepAliveInterval;
+				return this;
+			}
+
+			/**
+			 * @param queueStripes number of stripes of the heap queue, 1 - single queue, 0 - one per available processor
+			 */
+			Builder setQueueStripes(int queueStripes) {
+				this.queueStripes = queueStripes;
+				return this;
+			}
+
+			/**
+			 * @param sender {@link #JDK_SENDER}, {@link #NIO_SENDER}, {@link #MEMORY_SENDER}, {@link #AGGREGATOR_SENDER} with
+			 * 		optional {@code :address} or class name of a {@link DynatraceGenericLogIngestSender.Factory}
+			 */
+			Builder setSender(String sender) {
+				this.sender = sender;
+				return this;
+			}
+
+			/**
+			 * @param compression request bodies are compressed with gzip
+			 */
+			Builder setCompression(boolean compression) {
+				this.compression = compression;
+				return this;
+			}
+
+			TransportConfig build() {
+				return new TransportConfig(this);
+			}
+		}
+	}
+
+	/**
+	 * Format of requests.
+	 */
+	enum Protocol {
+		/**
+		 * JSON objects sent to the Generic Log Ingest endpoint ({@code /api/v2/logs/ingest}).
+		 */
+		JSON("application/json; charset=UTF-8"),
+		/**
+		 * OTLP/HTTP protobuf sent to the OTLP logs endpoint ({@code /api/v2/otlp/v1/logs}).
+		 */
+		OTLP("application/x-protobuf");
+
+		static final String LOG_INGEST_PATH = "/api/v2/logs/ingest";
+		static final String OTLP_LOGS_PATH = "/api/v2/otlp/v1/logs";
+
+		private final String contentType;
+
+		Protocol(String contentType) {
+			this.contentType = contentType;
+		}
+
+		String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * ActiveGate URL pointing to the Generic Log Ingest endpoint is switched to the OTLP logs endpoint for OTLP, any other
+		 * URL is used as it is.
+		 */
+		URI endpoint(URI activeGateUrl) {
+			final var path = activeGateUrl.getPath();
+			if (this != OTLP || isNull(path) || !path.endsWith(LOG_INGEST_PATH)) {
+				return activeGateUrl;
+			}
+			return activeGateUrl.resolve(path.substring(0, path.length() - LOG_INGEST_PATH.length()) + OTLP_LOGS_PATH);
+		}
+	}
+
+	private static final class Batch {
+
+		private final List<DynatraceGenericLogIngestEvent> events;
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		private Batch(List<DynatraceGenericLogIngestEvent> events) {
+			this.events = events;
+		}
+
+		/**
+		 * Mark the batch as completed without completing its log events, they are sent again in {@link #split()} batches.
+		 *
+		 * @return false if the batch has been completed already (e.g. abandoned before the response came)
+		 */
+		private boolean retire() {
+			return completed.compareAndSet(false, true);
+		}
+
+		private List<Batch> split() {
+			final var half = events.size() / 2;
+			return List.of(new Batch(new ArrayList<>(events.subList(0, half))),
+					new Batch(new ArrayList<>(events.subList(half, events.size()))));
+		}
+
+		/**
+		 * Call the action once for statistics of every manager having log events in the batch.
+		 */
+		private void forEachOwner(Consumer<DynatraceGenericLogIngestStatistics> action) {
+			final var owners = new ArrayList<DynatraceGenericLogIngestStatistics>(2);
+			for (var event : events) {
+				final var owner = event.getStatistics();
+				if (!owners.contains(owner)) {
+					owners.add(owner);
+					action.accept(owner);
+				}
+			}
+		}
+
+		/**
+		 * @return false if the batch has been completed already (e.g. abandoned before the response came)
+		 */
+		private boolean complete(Status status) {
+			if (!completed.compareAndSet(false, true)) {
+				return false;
+			}
+			completeAll(events, status);
+			return true;
+		}
+	}
+
+	private static final class RejectedRequestException extends RuntimeException {
+
+		private RejectedRequestException(int statusCode) {
+			super("statusCode=" + statusCode, null, false, false);
+		}
+	}
+}
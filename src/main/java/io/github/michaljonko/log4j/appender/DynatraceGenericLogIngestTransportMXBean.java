@@ -0,0 +1,114 @@
+package io.github.michaljonko.log4j.appender;
+
+import java.util.Map;
+
+/**
+ * JMX view of the transport shared by appenders sending to the same ActiveGate.
+ */
+public interface DynatraceGenericLogIngestTransportMXBean {
+
+	/**
+	 * ActiveGate URL.
+	 *
+	 * @return url
+	 */
+	String getActiveGateUrl();
+
+	/**
+	 * Current adaptive limit of concurrent requests.
+	 *
+	 * @return limit
+	 */
+	int getConcurrencyLimitValue();
+
+	/**
+	 * Current adaptive target number of log events in a single request.
+	 *
+	 * @return batch size
+	 */
+	int getBatchEvents();
+
+	/**
+	 * Number of requests waiting for the response.
+	 *
+	 * @return requests in flight
+	 */
+	int getInFlightRequests();
+
+	/**
+	 * Number of log events waiting for the request.
+	 *
+	 * @return queue size
+	 */
+	int getQueueSize();
+
+	/**
+	 * Number of log events waiting for the request, per severity lane.
+	 *
+	 * @return lane sizes
+	 */
+	Map<String, Long> getLaneSizes();
+
+	/**
+	 * Number of log events dropped because their severity lane was full.
+	 *
+	 * @return dropped log events per lane
+	 */
+	Map<String, Long> getLaneDropped();
+
+	/**
+	 * Average time log events waited in their severity lane for the request.
+	 *
+	 * @return average wait per lane in milliseconds
+	 */
+	Map<String, Long> getLaneAverageWaitMillis();
+
+	/**
+	 * Longest time a log event waited in its severity lane for the request.
+	 *
+	 * @return maximum wait per lane in milliseconds
+	 */
+	Map<String, Long> getLaneMaxWaitMillis();
+
+	/**
+	 * Number of log events accepted by the ActiveGate.
+	 *
+	 * @return delivered log events
+	 */
+	long getDelivered();
+
+	/**
+	 * Number of log events rejected by the ActiveGate or not sent because of an error.
+	 *
+	 * @return failed log events
+	 */
+	long getFailed();
+
+	/**
+	 * Number of log events rejected by the ActiveGate with 400 or 413 after being isolated from their batch.
+	 *
+	 * @return quarantined log events
+	 */
+	long getQuarantined();
+
+	/**
+	 * Number of additional requests sent to isolate rejected log events.
+	 *
+	 * @return split requests
+	 */
+	long getSplitRequests();
+
+	/**
+	 * Number of log events dropped by the ActiveGate from accepted requests (partial success), per reason.
+	 *
+	 * @return dropped log events per reason
+	 */
+	Map<String, Long> getDroppedByReason();
+
+	/**
+	 * Number of log events ingested with changes (e.g. truncated) by the ActiveGate, per reason.
+	 *
+	 * @return adjusted log events per reason
+	 */
+	Map<String, Long> getAdjustedByReason();
+}
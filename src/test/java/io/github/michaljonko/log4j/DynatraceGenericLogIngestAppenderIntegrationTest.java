@@ -11,7 +11,9 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.AfterAll;
@@ -22,8 +24,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
 import com.github.tomakehurst.wiremock.matching.ContainsPattern;
 import com.github.tomakehurst.wiremock.matching.EqualToPattern;
+import com.github.tomakehurst.wiremock.stub.requests.ServeEvent;
 import com.google.common.collect.Lists;
 
 class DynatraceGenericLogIngestAppenderIntegrationTest {
@@ -81,9 +85,9 @@ class DynatraceGenericLogIngestAppenderIntegrationTest {
 			Awaitility.await()
 					.pollDelay(Duration.ofSeconds(1L))
 					.timeout(Duration.ofSeconds(5L))
-					.until(() -> !SERVER.getServeEvents().getRequests().isEmpty());
+					.until(() -> !postRequests().isEmpty());
 
-			var requests = SERVER.getServeEvents().getRequests();
+			var requests = postRequests();
 
 			assertThat(requests)
 					.hasSize(5)
@@ -99,4 +103,10 @@ class DynatraceGenericLogIngestAppenderIntegrationTest {
 							.containsOnly("timestamp", "level", "service.name", "dt.os.type", "message", "dt.trace_id"));
 		}
 	}
-}
\ No newline at end of file
+
+	private static List<ServeEvent> postRequests() {
+		return SERVER.getServeEvents().getRequests().stream()
+				.filter(event -> event.getRequest().getMethod() == RequestMethod.POST)
+				.collect(Collectors.toList());
+	}
+}
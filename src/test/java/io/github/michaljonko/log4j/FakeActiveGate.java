@@ -0,0 +1,301 @@
+package io.github.michaljonko.log4j;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process fake of the ActiveGate Generic Log Ingest endpoint.
+ * <p>
+ * Validates headers and payloads, plain or gzip encoded, counts accepted requests, log events and bytes and injects
+ * faults: latency drawn from a distribution, 429/503 responses, connection resets and slow reading of request bodies.
+ */
+public final class FakeActiveGate implements AutoCloseable {
+
+	public static final String INGEST_PATH = "/api/v2/logs/ingest";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final String token;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder events = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder invalid = new LongAdder();
+	private final LongAdder throttled = new LongAdder();
+	private final LongAdder unavailable = new LongAdder();
+	private final LongAdder resets = new LongAdder();
+
+	private volatile LongSupplier latencyMillis = Latency.none();
+	private volatile double tooManyRequestsRatio;
+	private volatile double serviceUnavailableRatio;
+	private volatile double resetRatio;
+	private volatile int slowReadChunkBytes;
+	private volatile long slowReadDelayMillis;
+
+	private FakeActiveGate(String token) throws IOException {
+		this.token = requireNonNull(token, "token is null");
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			var thread = new Thread(runnable, "fake-active-gate");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server.setExecutor(executor);
+		this.server.createContext(INGEST_PATH, this::handle);
+		this.server.start();
+	}
+
+	/**
+	 * Start the server on a random loopback port.
+	 *
+	 * @param token token expected in the Authorization header
+	 * @return running server
+	 */
+	public static FakeActiveGate start(String token) throws IOException {
+		return new FakeActiveGate(token);
+	}
+
+	public URL getUrl() {
+		try {
+			return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), INGEST_PATH);
+		} catch (MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public FakeActiveGate withLatency(LongSupplier latencyMillis) {
+		this.latencyMillis = requireNonNull(latencyMillis, "latencyMillis is null");
+		return this;
+	}
+
+	public FakeActiveGate withTooManyRequests(double ratio) {
+		this.tooManyRequestsRatio = ratio;
+		return this;
+	}
+
+	public FakeActiveGate withServiceUnavailable(double ratio) {
+		this.serviceUnavailableRatio = ratio;
+		return this;
+	}
+
+	public FakeActiveGate withResets(double ratio) {
+		this.resetRatio = ratio;
+		return this;
+	}
+
+	public FakeActiveGate withSlowRead(int chunkBytes,
+			long delayMillis) {
+		this.slowReadChunkBytes = chunkBytes;
+		this.slowReadDelayMillis = delayMillis;
+		return this;
+	}
+
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	public long getEvents() {
+		return events.sum();
+	}
+
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	public long getInvalid() {
+		return invalid.sum();
+	}
+
+	public long getThrottled() {
+		return throttled.sum();
+	}
+
+	public long getUnavailable() {
+		return unavailable.sum();
+	}
+
+	public long getResets() {
+		return resets.sum();
+	}
+
+	public void resetCounters() {
+		requests.reset();
+		events.reset();
+		bytes.reset();
+		invalid.reset();
+		throttled.reset();
+		unavailable.reset();
+		resets.reset();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(204, -1);
+				return;
+			}
+			final var body = read("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+					? new GZIPInputStream(exchange.getRequestBody())
+					: exchange.getRequestBody());
+			sleep(latencyMillis.getAsLong());
+
+			final var random = ThreadLocalRandom.current().nextDouble();
+			if (random < resetRatio) {
+				resets.increment();
+				return;
+			}
+			if (random < resetRatio + tooManyRequestsRatio) {
+				throttled.increment();
+				exchange.sendResponseHeaders(429, -1);
+				return;
+			}
+			if (random < resetRatio + tooManyRequestsRatio + serviceUnavailableRatio) {
+				unavailable.increment();
+				exchange.sendResponseHeaders(503, -1);
+				return;
+			}
+
+			final var headers = exchange.getRequestHeaders();
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				invalid.increment();
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			if (!("Api-Token " + token).equals(headers.getFirst("Authorization"))) {
+				invalid.increment();
+				exchange.sendResponseHeaders(401, -1);
+				return;
+			}
+			if (isNull(headers.getFirst("Content-Type"))) {
+				invalid.increment();
+				exchange.sendResponseHeaders(415, -1);
+				return;
+			}
+
+			final var count = countEvents(body);
+			if (count < 0) {
+				invalid.increment();
+				exchange.sendResponseHeaders(400, -1);
+				return;
+			}
+
+			requests.increment();
+			events.add(count);
+			bytes.add(body.length);
+			exchange.sendResponseHeaders(204, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private byte[] read(InputStream inputStream) throws IOException {
+		final var chunkBytes = slowReadChunkBytes;
+		if (chunkBytes <= 0) {
+			return inputStream.readAllBytes();
+		}
+
+		final var output = new ByteArrayOutputStream();
+		final var buffer = new byte[chunkBytes];
+		int read;
+		while ((read = inputStream.read(buffer)) > 0) {
+			output.write(buffer, 0, read);
+			sleep(slowReadDelayMillis);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * @return number of log events or -1 when the payload is not a JSON object or array of JSON objects
+	 */
+	private int countEvents(byte[] body) {
+		try {
+			JsonNode root = objectMapper.readTree(body);
+			if (root.isObject()) {
+				return root.hasNonNull("content") || root.hasNonNull("message") ? 1 : -1;
+			}
+			if (!root.isArray()) {
+				return -1;
+			}
+			for (var node : root) {
+				if (!node.isObject()) {
+					return -1;
+				}
+			}
+			return root.size();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static void sleep(long millis) {
+		if (millis <= 0L) {
+			return;
+		}
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Latency distributions in milliseconds.
+	 */
+	public static final class Latency {
+
+		private Latency() {
+		}
+
+		public static LongSupplier none() {
+			return () -> 0L;
+		}
+
+		public static LongSupplier fixed(long millis) {
+			return () -> millis;
+		}
+
+		public static LongSupplier uniform(long minMillis,
+				long maxMillis) {
+			return () -> ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1L);
+		}
+
+		public static LongSupplier exponential(double meanMillis) {
+			return () -> Math.round(-meanMillis * Math.log(1.0d - ThreadLocalRandom.current().nextDouble()));
+		}
+
+		/**
+		 * Mostly fast responses with a long tail.
+		 */
+		public static LongSupplier bimodal(long fastMillis,
+				long slowMillis,
+				double slowRatio) {
+			return () -> ThreadLocalRandom.current().nextDouble() < slowRatio ? slowMillis : fastMillis;
+		}
+	}
+}
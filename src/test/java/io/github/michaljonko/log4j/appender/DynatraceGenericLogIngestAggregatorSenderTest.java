@@ -0,0 +1,65 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.Request;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.SenderConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class DynatraceGenericLogIngestAggregatorSenderTest {
+
+	private static final URI INGEST = URI.create("http://localhost:9999/e/abc/api/v2/logs/ingest");
+
+	@Test
+	void parseHostAndPort() {
+		assertThat(DynatraceGenericLogIngestAggregatorSender.socketAddress("127.0.0.1:7311"))
+				.isEqualTo(new InetSocketAddress("127.0.0.1", 7311));
+	}
+
+	@Test
+	void rejectAddressWithoutPort() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> DynatraceGenericLogIngestAggregatorSender.socketAddress("localhost"));
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> DynatraceGenericLogIngestAggregatorSender.socketAddress("localhost:port"));
+	}
+
+	@Test
+	void tellLogsMetricsAndPingsApart() {
+		assertThat(DynatraceGenericLogIngestAggregatorSender.frameType(request("POST", INGEST)))
+				.isEqualTo(DynatraceGenericLogIngestAggregatorSender.LOGS);
+		assertThat(DynatraceGenericLogIngestAggregatorSender.frameType(request("HEAD", INGEST)))
+				.isEqualTo(DynatraceGenericLogIngestAggregatorSender.PING);
+		assertThat(DynatraceGenericLogIngestAggregatorSender.frameType(
+				request("POST", DynatraceGenericLogIngestMetricsReporter.metricsEndpoint(INGEST))))
+				.isEqualTo(DynatraceGenericLogIngestAggregatorSender.METRICS);
+	}
+
+	@Test
+	void failRequestWhenAggregatorIsNotRunning() {
+		var sender = new DynatraceGenericLogIngestAggregatorSender(new InetSocketAddress("127.0.0.1", 1),
+				new SenderConfig(true, Duration.ofSeconds(1L)));
+		try {
+			assertThatExceptionOfType(ExecutionException.class)
+					.isThrownBy(() -> sender.send(request("POST", INGEST)).get(5L, TimeUnit.SECONDS));
+			assertThat(sender.isConnected())
+					.isFalse();
+		} finally {
+			sender.close();
+		}
+	}
+
+	private static Request request(String method,
+			URI uri) {
+		return new Request(method, uri, Map.of(), new ByteBuffer[0], Duration.ofSeconds(1L));
+	}
+}
@@ -0,0 +1,168 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.Request;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.SenderConfig;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.TransportConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.michaljonko.log4j.FakeActiveGate;
+
+class DynatraceGenericLogIngestAggregatorTest {
+
+	private static final String TOKEN = "aggregator-token";
+	private static final Duration TIMEOUT = Duration.ofSeconds(2L);
+
+	private FakeActiveGate activeGate;
+	private DynatraceGenericLogIngestAggregator aggregator;
+	private final DynatraceGenericLogIngestStatistics statistics = new DynatraceGenericLogIngestStatistics();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		activeGate = FakeActiveGate.start(TOKEN);
+		aggregator = DynatraceGenericLogIngestAggregator.start(DynatraceGenericLogIngestAggregator.Options.parse(
+				new String[] { "--listen=127.0.0.1:0", "--activeGateUrl=" + activeGate.getUrl() },
+				Map.of("DT_API_TOKEN", TOKEN)));
+	}
+
+	@AfterEach
+	void tearDown() {
+		aggregator.close();
+		activeGate.close();
+	}
+
+	@Test
+	void mergeBatchesOfManyTransportsIntoCompressedRequests() {
+		var first = DynatraceGenericLogIngestTransport.acquire(transportConfig("first"));
+		var second = DynatraceGenericLogIngestTransport.acquire(transportConfig("second"));
+		try {
+			for (var i = 0; i < 20; i++) {
+				var transport = i % 2 == 0 ? first : second;
+				assertThat(transport.send(("{\"content\":\"" + i + "\"}").getBytes(UTF_8), Lane.NORMAL, false, statistics))
+						.isEqualTo(Status.QUEUED);
+			}
+
+			assertThat(statistics.awaitCompletion(5L, TimeUnit.SECONDS))
+					.isTrue();
+			Awaitility.await()
+					.timeout(Duration.ofSeconds(5L))
+					.until(() -> activeGate.getEvents() == 20L);
+
+			assertThat(activeGate.getRequests())
+					.isLessThan(20L);
+			assertThat(activeGate.getInvalid())
+					.isZero();
+			assertThat(first.getRequestSender())
+					.isInstanceOf(DynatraceGenericLogIngestAggregatorSender.class);
+		} finally {
+			first.release(1L, TimeUnit.SECONDS);
+			second.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void answerEveryFrameWithStatus() throws Exception {
+		var sender = new DynatraceGenericLogIngestAggregatorSender(aggregator.getLocalAddress(),
+				new SenderConfig(true, TIMEOUT));
+		try {
+			var ingest = URI.create(activeGate.getUrl().toString());
+
+			assertThat(sender.send(request("POST", ingest, "[{\"content\":\"a\"},{\"content\":\"b\"}]")).get())
+					.isEqualTo(DynatraceGenericLogIngestAggregator.STATUS_ACCEPTED);
+			assertThat(sender.send(request("POST", ingest, "{\"content\":\"c\"}")).get())
+					.isEqualTo(DynatraceGenericLogIngestAggregator.STATUS_ACCEPTED);
+			assertThat(sender.send(request("POST", ingest, "[]")).get())
+					.isEqualTo(DynatraceGenericLogIngestAggregator.STATUS_ACCEPTED);
+			assertThat(sender.send(request("POST", ingest, "content")).get())
+					.isEqualTo(DynatraceGenericLogIngestAggregator.STATUS_MALFORMED);
+			assertThat(sender.send(request("HEAD", ingest, "")).get())
+					.isEqualTo(DynatraceGenericLogIngestAggregator.STATUS_ACCEPTED);
+
+			Awaitility.await()
+					.timeout(Duration.ofSeconds(5L))
+					.until(() -> activeGate.getEvents() == 3L);
+			assertThat(sender.isConnected())
+					.isTrue();
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	void answerBatchOverMaxQueueBytesWithTooManyRequests() throws Exception {
+		assertThat(aggregator.getManager().getStatistics().getMemoryAccount().getBudget().getBudgetBytes())
+				.isEqualTo(DynatraceGenericLogIngestAggregator.DEFAULT_MAX_QUEUE_BYTES);
+
+		var small = DynatraceGenericLogIngestAggregator.start(DynatraceGenericLogIngestAggregator.Options.parse(
+				new String[] { "--listen=127.0.0.1:0", "--activeGateUrl=" + activeGate.getUrl(), "--maxQueueBytes=256" },
+				Map.of("DT_API_TOKEN", TOKEN)));
+		var sender = new DynatraceGenericLogIngestAggregatorSender(small.getLocalAddress(), new SenderConfig(true, TIMEOUT));
+		try {
+			var ingest = URI.create(activeGate.getUrl().toString());
+
+			assertThat(sender.send(request("POST", ingest, "[{\"content\":\"a\"}]")).get())
+					.isEqualTo(DynatraceGenericLogIngestAggregator.STATUS_ACCEPTED);
+			assertThat(sender.send(request("POST", ingest, "[{\"content\":\"" + "b".repeat(256) + "\"}]")).get())
+					.isEqualTo(DynatraceGenericLogIngestAggregator.STATUS_FULL);
+		} finally {
+			sender.close();
+			small.close();
+		}
+	}
+
+	@Test
+	void rejectMissingActiveGateUrl() {
+		var err = new ByteArrayOutputStream();
+
+		assertThat(DynatraceGenericLogIngestAggregator.run(new String[] { "--listen=127.0.0.1:0" }, Map.of(), System.out,
+				new PrintStream(err, true, UTF_8)))
+				.isEqualTo(2);
+		assertThat(err.toString(UTF_8))
+				.contains("--activeGateUrl is required");
+	}
+
+	@Test
+	void rejectListeningOnNonLoopbackAddressUnlessAllowed() {
+		var err = new ByteArrayOutputStream();
+
+		assertThat(DynatraceGenericLogIngestAggregator.run(new String[] { "--listen=0.0.0.0:0",
+				"--activeGateUrl=" + activeGate.getUrl() }, Map.of("DT_API_TOKEN", TOKEN), System.out,
+				new PrintStream(err, true, UTF_8)))
+				.isEqualTo(2);
+		assertThat(err.toString(UTF_8))
+				.contains("--listen=0.0.0.0:0 is not a loopback address", "--allowRemote=true");
+		assertThat(DynatraceGenericLogIngestAggregator.Options.parse(new String[] { "--listen=0.0.0.0:0",
+				"--allowRemote=true", "--activeGateUrl=" + activeGate.getUrl() }, Map.of("DT_API_TOKEN", TOKEN)))
+				.isNotNull();
+	}
+
+	private TransportConfig transportConfig(String token) {
+		var address = (InetSocketAddress) aggregator.getLocalAddress();
+		return TransportConfig.builder(URI.create(activeGate.getUrl().toString()), token)
+				.setConnectionTimeout(TIMEOUT)
+				.setSender(TransportConfig.AGGREGATOR_SENDER + ":" + address.getHostString() + ":" + address.getPort())
+				.build();
+	}
+
+	private static Request request(String method,
+			URI uri,
+			String body) {
+		return new Request(method, uri, Map.of(), new ByteBuffer[] { ByteBuffer.wrap(body.getBytes(UTF_8)) }, TIMEOUT);
+	}
+}
@@ -1,15 +1,26 @@
 package io.github.michaljonko.log4j.appender;
 
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestAppender.AppenderConfig;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestLatencies.Stage;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestLoadShedder.SheddingConfig;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSampler.SamplingConfig;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
 import static org.apache.logging.log4j.core.config.Property.createProperty;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
@@ -18,16 +29,20 @@ import org.apache.logging.log4j.core.AbstractLogEvent;
 import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.StringLayout;
 import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.core.layout.SerializedLayout;
 import org.apache.logging.log4j.core.lookup.StrSubstitutor;
 import org.apache.logging.log4j.core.time.Instant;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -55,7 +70,10 @@ class DynatraceGenericLogIngestAppenderTest {
 			final String expectedMessage) {
 		assertThatExceptionOfType(expectedExceptionType)
 				.isThrownBy(() ->
-						new DynatraceGenericLogIngestAppender(name, layout, filter, substitutor, false, properties, manager))
+						new DynatraceGenericLogIngestAppender(AppenderConfig.builder(name, layout, substitutor, manager)
+								.setFilter(filter)
+								.setProperties(properties)
+								.build()))
 				.withMessage(expectedMessage);
 	}
 
@@ -73,8 +91,8 @@ class DynatraceGenericLogIngestAppenderTest {
 
 	@Test
 	void doNotCallManagerWhenMessageIsNull() {
-		var appender =
-				new DynatraceGenericLogIngestAppender("name", layout, filter, substitutor, false, null, manager);
+		var appender = new DynatraceGenericLogIngestAppender(config()
+				.build());
 
 		appender.append(null);
 
@@ -92,8 +110,8 @@ class DynatraceGenericLogIngestAppenderTest {
 			}
 		};
 
-		var appender =
-				new DynatraceGenericLogIngestAppender("name", layout, filter, substitutor, false, null, manager);
+		var appender = new DynatraceGenericLogIngestAppender(config()
+				.build());
 
 		appender.append(logEvent);
 
@@ -129,15 +147,19 @@ class DynatraceGenericLogIngestAppenderTest {
 		given(substitutor.replace(eq(logEvent), anyString()))
 				.willAnswer(AdditionalAnswers.<String, LogEvent, String> answer(
 						(event, value) -> value.replace("${", "").replace("}", "")));
+		final var payload = ArgumentCaptor.forClass(byte[].class);
 
-		var appender =
-				new DynatraceGenericLogIngestAppender("name", layout, filter, substitutor, false, properties, manager);
+		var appender = new DynatraceGenericLogIngestAppender(config()
+				.setProperties(properties)
+				.build());
 
 		appender.append(logEvent);
 
 		then(manager)
 				.should()
-				.send(expectedJson);
+				.send(payload.capture(), eq(Level.DEBUG));
+		assertThat(new String(payload.getValue(), StandardCharsets.UTF_8))
+				.isEqualTo(expectedJson);
 	}
 
 	private static Stream<Arguments> sourceForSendMessage() {
@@ -187,14 +209,211 @@ class DynatraceGenericLogIngestAppenderTest {
 			}
 		};
 
-		var appender =
-				new DynatraceGenericLogIngestAppender("name", serializedLayout, filter, substitutor, false, null, manager);
+		var appender = new DynatraceGenericLogIngestAppender(AppenderConfig.builder("name", serializedLayout, substitutor, manager)
+				.setFilter(filter)
+				.build());
 
 		appender.append(logEvent);
 
 		then(manager)
 				.should()
-				.send(anyString());
+				.send(any(byte[].class), eq(Level.DEBUG));
+	}
+
+	@Test
+	void sendOtlpLogRecordWithoutConstantProperties() {
+		final var instant = mock(Instant.class);
+		given(instant.getEpochSecond())
+				.willReturn(NOW.getEpochSecond());
+		final var logEvent = new AbstractLogEvent() {
+
+			@Override
+			public Instant getInstant() {
+				return instant;
+			}
+
+			@Override
+			public Level getLevel() {
+				return Level.DEBUG;
+			}
+		};
+		given(layout.toByteArray(logEvent))
+				.willReturn("simple message".getBytes(StandardCharsets.UTF_8));
+		given(substitutor.replace(eq(logEvent), anyString()))
+				.willReturn("evaluated");
+		final var properties = new Property[] { createProperty("p1", "constant"), createProperty("p2", "${eval}") };
+		final var logRecord = ArgumentCaptor.forClass(byte[].class);
+
+		var appender = new DynatraceGenericLogIngestAppender(config()
+				.setProperties(properties)
+				.setProtocol(Protocol.OTLP)
+				.build());
+
+		appender.append(logEvent);
+
+		then(manager)
+				.should()
+				.send(logRecord.capture(), eq(Level.DEBUG));
+		assertThat(new String(logRecord.getValue(), StandardCharsets.ISO_8859_1))
+				.contains("simple message", "p2", "evaluated")
+				.doesNotContain("constant");
+	}
+
+	@Test
+	void sendOtlpBodyTranscodedToUtf8() {
+		final var instant = mock(Instant.class);
+		given(instant.getEpochSecond())
+				.willReturn(NOW.getEpochSecond());
+		final var logEvent = new AbstractLogEvent() {
+
+			@Override
+			public Instant getInstant() {
+				return instant;
+			}
+
+			@Override
+			public Level getLevel() {
+				return Level.DEBUG;
+			}
+		};
+		final var latinLayout = mock(StringLayout.class);
+		given(latinLayout.getCharset())
+				.willReturn(StandardCharsets.ISO_8859_1);
+		given(latinLayout.toByteArray(logEvent))
+				.willReturn("caf\u00E9".getBytes(StandardCharsets.ISO_8859_1));
+		final var logRecord = ArgumentCaptor.forClass(byte[].class);
+
+		var appender = new DynatraceGenericLogIngestAppender(AppenderConfig.builder("name", latinLayout, substitutor, manager)
+				.setProtocol(Protocol.OTLP)
+				.build());
+
+		appender.append(logEvent);
+
+		then(manager)
+				.should()
+				.send(logRecord.capture(), eq(Level.DEBUG));
+		assertThat(new String(logRecord.getValue(), StandardCharsets.ISO_8859_1))
+				.contains(new String("caf\u00E9".getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	void recordStagesOfAppendingWhenLatencyTrackingEnabled() {
+		final var instant = mock(Instant.class);
+		given(instant.getEpochMillisecond())
+				.willReturn(NOW.toEpochMilli());
+		given(instant.getEpochSecond())
+				.willReturn(NOW.getEpochSecond());
+		final var logEvent = new AbstractLogEvent() {
+
+			@Override
+			public Instant getInstant() {
+				return instant;
+			}
+
+			@Override
+			public Level getLevel() {
+				return Level.DEBUG;
+			}
+		};
+		given(layout.toByteArray(logEvent))
+				.willReturn("simple message".getBytes(StandardCharsets.UTF_8));
+		final var latencies = new DynatraceGenericLogIngestLatencies();
+
+		var appender = new DynatraceGenericLogIngestAppender(config()
+				.setLatencies(latencies)
+				.build());
+
+		appender.append(logEvent);
+
+		then(manager)
+				.should()
+				.send(any(byte[].class), eq(Level.DEBUG), eq(NOW.getEpochSecond() * 1_000_000_000L));
+		for (var stage : new Stage[] { Stage.LAYOUT, Stage.LOOKUPS, Stage.ENCODING, Stage.SEND }) {
+			assertThat(latencies.getHistogram(stage).getCount())
+					.isEqualTo(1L);
+		}
+	}
+
+	@Test
+	void requireLocationOnlyWhenLocationAttributeEnabled() {
+		var withLogger = new DynatraceGenericLogIngestAppender(config()
+				.setSemanticAttributes(DynatraceGenericLogIngestSemanticAttributes.parse("log.logger, thread.name", null))
+				.build());
+		var withLocation = new DynatraceGenericLogIngestAppender(config()
+				.setSemanticAttributes(DynatraceGenericLogIngestSemanticAttributes.parse("log.logger, code.lineno", null))
+				.build());
+
+		assertThat(withLogger.requiresLocation())
+				.isFalse();
+		assertThat(withLocation.requiresLocation())
+				.isTrue();
+	}
+
+	@Test
+	void shedLogEventsBelowMinimumLevelAndSendLevelChange() {
+		final var instant = mock(Instant.class);
+		given(instant.getEpochMillisecond())
+				.willReturn(NOW.toEpochMilli());
+		final var logEvent = new AbstractLogEvent() {
+
+			@Override
+			public Instant getInstant() {
+				return instant;
+			}
+
+			@Override
+			public Level getLevel() {
+				return Level.DEBUG;
+			}
+		};
+		given(layout.toByteArray(any(LogEvent.class)))
+				.willAnswer(invocation -> invocation.<LogEvent>getArgument(0).getLevel().name().getBytes(StandardCharsets.UTF_8));
+		var appender = new DynatraceGenericLogIngestAppender(config()
+				.setSheddingConfig(new SheddingConfig(0.8, 0.5, Duration.ZERO, Duration.ofSeconds(30L)))
+				.build());
+
+		appender.getLoadShedder().evaluate(0.9, 0L, 0L);
+		appender.getLoadShedder().evaluate(0.9, 0L, 1L);
+		appender.append(logEvent);
+
+		then(manager)
+				.should(times(2))
+				.offer(any(byte[].class), eq(Level.WARN));
+		then(manager)
+				.should(never())
+				.send(any(byte[].class), any(Level.class));
+		assertThat(appender.getLoadShedder().getShed())
+				.isEqualTo(1L);
+	}
+
+	@Test
+	void sampleLogEventsBeforeLayout() {
+		given(layout.toByteArray(any(LogEvent.class)))
+				.willReturn("sampled".getBytes(StandardCharsets.UTF_8));
+		var appender = new DynatraceGenericLogIngestAppender(config()
+				.setSamplingConfig(new SamplingConfig(Level.INFO, 0.0, 0.0))
+				.build());
+
+		appender.append(Log4jLogEvent.newBuilder()
+				.setLevel(Level.INFO)
+				.setContextData(new SortedArrayStringMap(Map.of("trace_id", "4bf92f3577b34da6a3ce929d0e0e4736",
+						"trace_flags", "00")))
+				.build());
+		appender.append(Log4jLogEvent.newBuilder()
+				.setLevel(Level.INFO)
+				.setContextData(new SortedArrayStringMap(Map.of("trace_id", "4bf92f3577b34da6a3ce929d0e0e4736",
+						"trace_flags", "01")))
+				.setTimeMillis(NOW.toEpochMilli())
+				.build());
+
+		then(layout)
+				.should(times(1))
+				.toByteArray(any(LogEvent.class));
+		then(manager)
+				.should(times(1))
+				.send(any(byte[].class), eq(Level.INFO));
+		assertThat(appender.getSampler().getSampledOut())
+				.isEqualTo(1L);
 	}
 
 	@Test
@@ -202,8 +421,8 @@ class DynatraceGenericLogIngestAppenderTest {
 		given(manager.stop(1L, TimeUnit.SECONDS))
 				.willReturn(true);
 
-		var appender =
-				new DynatraceGenericLogIngestAppender("name", layout, filter, substitutor, false, null, manager);
+		var appender = new DynatraceGenericLogIngestAppender(config()
+				.build());
 
 		assertThat(appender.stop(1L, TimeUnit.SECONDS))
 				.isTrue();
@@ -212,4 +431,60 @@ class DynatraceGenericLogIngestAppenderTest {
 				.should()
 				.stop(1L, TimeUnit.SECONDS);
 	}
-}
\ No newline at end of file
+
+	@Test
+	void sendAndStopThroughManagerOfRoute() throws Exception {
+		final var instant = mock(Instant.class);
+		given(instant.getEpochMillisecond())
+				.willReturn(NOW.toEpochMilli());
+		final var logEvent = new AbstractLogEvent() {
+
+			@Override
+			public String getLoggerName() {
+				return "com.acme.payments.Gateway";
+			}
+
+			@Override
+			public Instant getInstant() {
+				return instant;
+			}
+
+			@Override
+			public Level getLevel() {
+				return Level.INFO;
+			}
+		};
+		given(layout.toByteArray(logEvent))
+				.willReturn("payment".getBytes(StandardCharsets.UTF_8));
+		final var routeManager = mock(AbstractDynatraceGenericLogIngestManager.class);
+		given(routeManager.stop(1L, TimeUnit.SECONDS))
+				.willReturn(true);
+		given(manager.stop(1L, TimeUnit.SECONDS))
+				.willReturn(true);
+		final var route = DynatraceGenericLogIngestRoute.createRoute("com.acme.payments", null,
+				new URL("https://payments.live.dynatrace.com/api/v2/logs/ingest"), "token");
+
+		var appender = new DynatraceGenericLogIngestAppender(AppenderConfig.builder("name", layout, substitutor,
+						new DynatraceGenericLogIngestRouter(manager, Map.of(route, routeManager)))
+				.setFilter(filter)
+				.build());
+		appender.append(logEvent);
+
+		then(routeManager)
+				.should()
+				.send(any(byte[].class), eq(Level.INFO));
+		then(manager)
+				.should(never())
+				.send(any(byte[].class), any(Level.class));
+		assertThat(appender.stop(1L, TimeUnit.SECONDS))
+				.isTrue();
+		then(routeManager)
+				.should()
+				.stop(1L, TimeUnit.SECONDS);
+	}
+
+	private AppenderConfig.Builder config() {
+		return AppenderConfig.builder("name", layout, substitutor, manager)
+				.setFilter(filter);
+	}
+}
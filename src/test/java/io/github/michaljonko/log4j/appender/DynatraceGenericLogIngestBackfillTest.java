@@ -0,0 +1,131 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import io.github.michaljonko.log4j.FakeActiveGate;
+
+class DynatraceGenericLogIngestBackfillTest {
+
+	private static final String TOKEN = "backfill-token";
+	private static final String LOG = "2024-01-01 10:00:00 ERROR boom\n"
+			+ "\tat com.acme.Service.run(Service.java:42)\n"
+			+ "2024-01-01 10:00:01 INFO ok\n"
+			+ "2024-01-01 10:00:02 DEBUG done\n";
+
+	@TempDir
+	Path directory;
+	private FakeActiveGate activeGate;
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		activeGate = FakeActiveGate.start(TOKEN);
+	}
+
+	@AfterEach
+	void tearDown() {
+		activeGate.close();
+	}
+
+	@Test
+	void uploadRecordsAndResumeAfterCheckpoint() throws Exception {
+		var file = Files.writeString(directory.resolve("application.log"), LOG);
+		var checkpoint = directory.resolve("backfill.properties");
+		var args = new String[] {
+				"--activeGateUrl=" + activeGate.getUrl(),
+				"--checkpoint=" + checkpoint,
+				"--attribute=service.name=legacy",
+				file.toString()
+		};
+
+		assertThat(run(args))
+				.isZero();
+		assertThat(activeGate.getEvents())
+				.isEqualTo(3L);
+		assertThat(Files.readString(checkpoint, UTF_8))
+				.contains("=" + Files.size(file));
+
+		Files.writeString(file, "2024-01-01 10:00:03 WARN appended\n", StandardOpenOption.APPEND);
+
+		assertThat(run(args))
+				.isZero();
+		assertThat(activeGate.getEvents())
+				.isEqualTo(4L);
+	}
+
+	@Test
+	void failWhenLogEventsAreNotDelivered() throws Exception {
+		var file = Files.writeString(directory.resolve("application.log"), LOG);
+		var checkpoint = directory.resolve("backfill.properties");
+
+		assertThat(run(new String[] {
+				"--activeGateUrl=" + activeGate.getUrl(),
+				"--token=wrong-token",
+				"--checkpoint=" + checkpoint,
+				file.toString()
+		}))
+				.isEqualTo(1);
+		assertThat(err.toString(UTF_8))
+				.contains("not delivered");
+		assertThat(checkpoint)
+				.doesNotExist();
+	}
+
+	@Test
+	void rejectMissingActiveGateUrl() {
+		assertThat(run(new String[] { "application.log" }))
+				.isEqualTo(2);
+		assertThat(err.toString(UTF_8))
+				.contains("--activeGateUrl is required", "Usage:");
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"2024-01-01 10:00:00 ERROR boom, ERROR",
+			"[main] WARNING: deprecated, WARN",
+			"SEVERE: failed, ERROR",
+			"INFORMATION only, INFO",
+			"12:00 DEBUG x, DEBUG"
+	})
+	void detectLevelOfRecord(String content,
+			String level) {
+		assertThat(DynatraceGenericLogIngestBackfill.level(content))
+				.isEqualTo(Level.valueOf(level));
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"2024-01-01T10:00:00.123Z x, 1704103200123",
+			"2024-01-01 11:00:00.123+0100 x, 1704103200123",
+			"[2024-01-01 10:00:00,5] x, 1704103200500",
+			"2024-01-01 10:00:00 x, 1704103200000",
+			"no timestamp, 42"
+	})
+	void parseTimestampAtBeginningOfRecord(String content,
+			long timeMillis) {
+		assertThat(DynatraceGenericLogIngestBackfill.timeMillis(content, ZoneOffset.UTC, 42L))
+				.isEqualTo(timeMillis);
+	}
+
+	private int run(String[] args) {
+		return DynatraceGenericLogIngestBackfill.run(args, Map.of("DT_API_TOKEN", TOKEN),
+				new PrintStream(new ByteArrayOutputStream(), true, UTF_8), new PrintStream(err, true, UTF_8));
+	}
+}
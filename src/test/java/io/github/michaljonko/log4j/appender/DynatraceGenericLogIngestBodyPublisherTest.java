@@ -0,0 +1,162 @@
+package io.github.michaljonko.log4j.appender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Test;
+
+class DynatraceGenericLogIngestBodyPublisherTest {
+
+	private final Random random = new Random(7L);
+
+	@Test
+	void streamWholeBodyInChunks() {
+		var body = body(2_000, 300);
+		var publisher = new DynatraceGenericLogIngestBodyPublisher(body);
+
+		var subscriber = new CollectingSubscriber(1L);
+		publisher.subscribe(subscriber);
+
+		assertThat(subscriber.completed)
+				.isTrue();
+		assertThat(subscriber.bytes.toByteArray())
+				.isEqualTo(join(body));
+		assertThat(publisher.getContentLength())
+				.isEqualTo(subscriber.bytes.size());
+		assertThat(subscriber.items)
+				.allMatch(item -> item <= DynatraceGenericLogIngestBodyPublisher.CHUNK_BYTES)
+				.hasSizeLessThan(body.length / 10);
+	}
+
+	@Test
+	void passBigBuffersWithoutCopy() {
+		var big = new byte[3 * DynatraceGenericLogIngestBodyPublisher.CHUNK_BYTES];
+		random.nextBytes(big);
+		var body = new ByteBuffer[] {
+				ByteBuffer.wrap(new byte[] { '[' }),
+				ByteBuffer.wrap(big),
+				ByteBuffer.wrap(new byte[] { ']' })
+		};
+
+		var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+		new DynatraceGenericLogIngestBodyPublisher(body).subscribe(subscriber);
+
+		assertThat(subscriber.items)
+				.containsExactly(1, big.length, 1);
+		assertThat(subscriber.bytes.toByteArray())
+				.isEqualTo(join(body));
+		assertThat(body[1].position())
+				.isZero();
+	}
+
+	@Test
+	void streamBodyAgainForEverySubscription() {
+		var body = body(500, 100);
+		var publisher = new DynatraceGenericLogIngestBodyPublisher(body);
+
+		var first = new CollectingSubscriber(2L);
+		publisher.subscribe(first);
+		var second = new CollectingSubscriber(3L);
+		publisher.subscribe(second);
+
+		assertThat(second.bytes.toByteArray())
+				.isEqualTo(first.bytes.toByteArray())
+				.isEqualTo(join(body));
+	}
+
+	@Test
+	void returnChunksToPoolWhenReleased() {
+		var publisher = new DynatraceGenericLogIngestBodyPublisher(body(2_000, 300));
+		publisher.subscribe(new CollectingSubscriber(1L));
+		var pooled = DynatraceGenericLogIngestBodyPublisher.getPooledChunks();
+
+		publisher.release();
+
+		assertThat(DynatraceGenericLogIngestBodyPublisher.getPooledChunks())
+				.isGreaterThan(pooled);
+	}
+
+	@Test
+	void failOnNonPositiveRequest() {
+		var subscriber = new CollectingSubscriber(0L);
+
+		new DynatraceGenericLogIngestBodyPublisher(body(10, 10)).subscribe(subscriber);
+
+		assertThat(subscriber.error)
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(subscriber.items)
+				.isEmpty();
+	}
+
+	private ByteBuffer[] body(int buffers,
+			int maxBytes) {
+		var body = new ByteBuffer[buffers];
+		for (var index = 0; index < buffers; index++) {
+			var bytes = new byte[random.nextInt(maxBytes) + 1];
+			random.nextBytes(bytes);
+			body[index] = ByteBuffer.wrap(bytes);
+		}
+		return body;
+	}
+
+	private static byte[] join(ByteBuffer[] body) {
+		var bytes = new ByteArrayOutputStream();
+		for (var buffer : body) {
+			var copy = new byte[buffer.remaining()];
+			buffer.duplicate().get(copy);
+			bytes.writeBytes(copy);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Requests the given number of items at the start and after every item, reads items synchronously.
+	 */
+	private static final class CollectingSubscriber
+			implements Flow.Subscriber<ByteBuffer> {
+
+		private final long batch;
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final List<Integer> items = new ArrayList<>();
+		private Flow.Subscription subscription;
+		private boolean completed;
+		private Throwable error;
+
+		private CollectingSubscriber(long batch) {
+			this.batch = batch;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(batch);
+		}
+
+		@Override
+		public void onNext(ByteBuffer item) {
+			items.add(item.remaining());
+			var copy = new byte[item.remaining()];
+			item.get(copy);
+			bytes.writeBytes(copy);
+			if (batch != Long.MAX_VALUE) {
+				subscription.request(1L);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestConcurrencyLimit.INITIAL_BATCH_EVENTS;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestConcurrencyLimit.INITIAL_LIMIT;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestConcurrencyLimit.MAX_LIMIT;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestConcurrencyLimit.MIN_BATCH_EVENTS;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestConcurrencyLimit.MIN_LIMIT;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestConcurrencyLimit.Outcome;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class DynatraceGenericLogIngestConcurrencyLimitTest {
+
+	private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10L);
+
+	@Test
+	void increaseLimitAndBatchWhenResponsesAreHealthy() throws Exception {
+		var concurrencyLimit = new DynatraceGenericLogIngestConcurrencyLimit(1_000);
+
+		for (var i = 0; i < 1_000; i++) {
+			assertThat(concurrencyLimit.acquire(1L, TimeUnit.SECONDS))
+					.isTrue();
+			concurrencyLimit.release(LATENCY, Outcome.SUCCESS);
+		}
+
+		assertThat(concurrencyLimit.getLimit())
+				.isGreaterThan(INITIAL_LIMIT)
+				.isLessThanOrEqualTo(MAX_LIMIT);
+		assertThat(concurrencyLimit.getBatchEvents())
+				.isEqualTo(1_000);
+	}
+
+	@Test
+	void backOffOnCongestion() throws Exception {
+		var concurrencyLimit = new DynatraceGenericLogIngestConcurrencyLimit(1_000);
+
+		for (var i = 0; i < 10; i++) {
+			concurrencyLimit.acquire(1L, TimeUnit.SECONDS);
+			concurrencyLimit.release(LATENCY, Outcome.CONGESTION);
+		}
+
+		assertThat(concurrencyLimit.getLimit())
+				.isEqualTo(MIN_LIMIT);
+		assertThat(concurrencyLimit.getBatchEvents())
+				.isEqualTo(MIN_BATCH_EVENTS);
+	}
+
+	@Test
+	void decreaseLimitWhenLatencyGrows() throws Exception {
+		var concurrencyLimit = new DynatraceGenericLogIngestConcurrencyLimit(1_000);
+		for (var i = 0; i < 50; i++) {
+			concurrencyLimit.acquire(1L, TimeUnit.SECONDS);
+			concurrencyLimit.release(LATENCY, Outcome.SUCCESS);
+		}
+		var limit = concurrencyLimit.getLimit();
+
+		for (var i = 0; i < 5; i++) {
+			concurrencyLimit.acquire(1L, TimeUnit.SECONDS);
+			concurrencyLimit.release(LATENCY * 10L, Outcome.SUCCESS);
+		}
+
+		assertThat(concurrencyLimit.getLimit())
+				.isLessThan(limit);
+	}
+
+	@Test
+	void doNotExceedLimit() throws Exception {
+		var concurrencyLimit = new DynatraceGenericLogIngestConcurrencyLimit(1_000);
+
+		for (var i = 0; i < INITIAL_LIMIT; i++) {
+			assertThat(concurrencyLimit.acquire(10L, TimeUnit.MILLISECONDS))
+					.isTrue();
+		}
+
+		assertThat(concurrencyLimit.acquire(10L, TimeUnit.MILLISECONDS))
+				.isFalse();
+		assertThat(concurrencyLimit.getInFlight())
+				.isEqualTo(INITIAL_LIMIT);
+		assertThat(concurrencyLimit.awaitIdle(10L, TimeUnit.MILLISECONDS))
+				.isFalse();
+
+		concurrencyLimit.release();
+		assertThat(concurrencyLimit.acquire(10L, TimeUnit.MILLISECONDS))
+				.isTrue();
+	}
+
+	@Test
+	void startWithInitialBatchSize() {
+		assertThat(new DynatraceGenericLogIngestConcurrencyLimit(1_000).getBatchEvents())
+				.isEqualTo(INITIAL_BATCH_EVENTS);
+		assertThat(new DynatraceGenericLogIngestConcurrencyLimit(50).getBatchEvents())
+				.isEqualTo(50);
+	}
+}
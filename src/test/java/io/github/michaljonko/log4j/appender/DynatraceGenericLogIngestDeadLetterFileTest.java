@@ -0,0 +1,50 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DynatraceGenericLogIngestDeadLetterFileTest {
+
+	@TempDir
+	private Path directory;
+
+	@Test
+	void writeJsonLogEventsLineByLine() throws Exception {
+		var deadLetterFile = new DynatraceGenericLogIngestDeadLetterFile(directory.resolve("dead-letter.jsonl"), Protocol.JSON);
+
+		deadLetterFile.write("{\"message\":\"first\"}".getBytes(UTF_8));
+		deadLetterFile.write("{\"message\":\"second\"}".getBytes(UTF_8));
+
+		assertThat(Files.readAllLines(deadLetterFile.getPath()))
+				.containsExactly("{\"message\":\"first\"}", "{\"message\":\"second\"}");
+	}
+
+	@Test
+	void writeOtlpLogRecordsDelimitedBySize() throws Exception {
+		var deadLetterFile = new DynatraceGenericLogIngestDeadLetterFile(directory.resolve("dead-letter.bin"), Protocol.OTLP);
+		var small = new byte[] {0x0A, 0x0A, 0x01};
+		var big = new byte[300];
+		Arrays.fill(big, (byte) 0x0A);
+
+		deadLetterFile.write(small);
+		deadLetterFile.write(big);
+
+		var content = Files.readAllBytes(deadLetterFile.getPath());
+		assertThat(content.length)
+				.isEqualTo(1 + small.length + 2 + big.length);
+		assertThat(Arrays.copyOfRange(content, 0, 1 + small.length))
+				.containsExactly(0x03, 0x0A, 0x0A, 0x01);
+		assertThat(Arrays.copyOfRange(content, 4, 6))
+				.containsExactly((byte) 0xAC, (byte) 0x02);
+		assertThat(Arrays.copyOfRange(content, 6, content.length))
+				.isEqualTo(big);
+	}
+}
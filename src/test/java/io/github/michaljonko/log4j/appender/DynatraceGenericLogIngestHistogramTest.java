@@ -0,0 +1,76 @@
+package io.github.michaljonko.log4j.appender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DynatraceGenericLogIngestHistogramTest {
+
+	@ParameterizedTest
+	@ValueSource(longs = { 0L, 1L, 15L, 16L, 17L, 31L, 32L, 1_000L, 123_456_789L, 1L << 44 })
+	void keepValueWithinBoundsOfItsBucket(long value) {
+		var index = DynatraceGenericLogIngestHistogram.index(value);
+
+		assertThat(value)
+				.isBetween(DynatraceGenericLogIngestHistogram.lowerBound(index),
+						DynatraceGenericLogIngestHistogram.upperBound(index));
+		assertThat(DynatraceGenericLogIngestHistogram.upperBound(index) - DynatraceGenericLogIngestHistogram.lowerBound(index))
+				.isLessThanOrEqualTo(Math.max(0L, value / DynatraceGenericLogIngestHistogram.SUB_BUCKETS));
+	}
+
+	@Test
+	void putHugeValuesIntoLastBucket() {
+		assertThat(DynatraceGenericLogIngestHistogram.index(Long.MAX_VALUE))
+				.isEqualTo(DynatraceGenericLogIngestHistogram.BUCKETS - 1);
+	}
+
+	@Test
+	void estimatePercentilesWithinRelativeError() {
+		var histogram = new DynatraceGenericLogIngestHistogram();
+		for (var value = 1L; value <= 100_000L; value++) {
+			histogram.record(value * 1_000L);
+		}
+
+		assertThat(histogram.getCount())
+				.isEqualTo(100_000L);
+		assertThat((double) histogram.getPercentile(50.0d))
+				.isCloseTo(50_000_000.0d, within(50_000_000.0d / DynatraceGenericLogIngestHistogram.SUB_BUCKETS));
+		assertThat((double) histogram.getPercentile(99.0d))
+				.isCloseTo(99_000_000.0d, within(99_000_000.0d / DynatraceGenericLogIngestHistogram.SUB_BUCKETS));
+		assertThat(histogram.getPercentile(100.0d))
+				.isEqualTo(histogram.getMax())
+				.isEqualTo(100_000_000L);
+	}
+
+	@Test
+	void mergeCountsOfOtherHistogram() {
+		var first = new DynatraceGenericLogIngestHistogram();
+		var second = new DynatraceGenericLogIngestHistogram();
+		for (var i = 0; i < 90; i++) {
+			first.record(10L);
+		}
+		for (var i = 0; i < 10; i++) {
+			second.record(1_000_000L);
+		}
+
+		first.merge(second);
+
+		assertThat(first.getCount())
+				.isEqualTo(100L);
+		assertThat(first.getPercentile(90.0d))
+				.isEqualTo(10L);
+		assertThat(first.getPercentile(91.0d))
+				.isGreaterThanOrEqualTo(1_000_000L);
+		assertThat(first.getMax())
+				.isEqualTo(1_000_000L);
+	}
+
+	@Test
+	void returnZeroWhenNothingRecorded() {
+		assertThat(new DynatraceGenericLogIngestHistogram().getPercentile(99.0d))
+				.isZero();
+	}
+}
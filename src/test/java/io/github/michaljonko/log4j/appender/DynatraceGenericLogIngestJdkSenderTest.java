@@ -0,0 +1,194 @@
+package io.github.michaljonko.log4j.appender;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.Request;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.Response;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.SenderConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.nonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+
+class DynatraceGenericLogIngestJdkSenderTest {
+
+	private WireMockServer mockServer;
+
+	@BeforeEach
+	void setUp() {
+		mockServer = new WireMockServer(
+				WireMockConfiguration.options()
+						.dynamicPort());
+		mockServer.stubFor(
+				post("/ingest")
+						.willReturn(aResponse()
+								.withStatus(400))
+		);
+		mockServer.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (nonNull(mockServer)) {
+			mockServer.stop();
+		}
+	}
+
+	@Test
+	void completeWithStatusCodeOfResponse() throws Exception {
+		var sender = DynatraceGenericLogIngestJdkSender.FACTORY.create(new SenderConfig(true, Duration.ofSeconds(1L)));
+		try {
+			var body = new ByteBuffer[] { ByteBuffer.wrap("[1,".getBytes(UTF_8)), ByteBuffer.wrap("2]".getBytes(UTF_8)) };
+
+			var request = new Request("POST", URI.create(mockServer.url("/ingest")),
+					Map.of("Content-Type", "application/json"), body, Duration.ofSeconds(1L));
+
+			assertThat(sender.send(request).get(5L, TimeUnit.SECONDS))
+					.isEqualTo(400);
+			mockServer.verify(postRequestedFor(urlEqualTo("/ingest"))
+					.withHeader("Content-Type", equalTo("application/json"))
+					.withRequestBody(equalTo("[1,2]")));
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	void keepBodyOfPartialSuccessResponse() throws Exception {
+		mockServer.stubFor(
+				post("/partial")
+						.willReturn(aResponse()
+								.withStatus(200)
+								.withBody("{\"details\":{\"message\":\"1 event was not ingested\"}}"))
+		);
+		var sender = DynatraceGenericLogIngestJdkSender.FACTORY.create(new SenderConfig(true, Duration.ofSeconds(1L)));
+		try {
+			var request = new Request("POST", URI.create(mockServer.url("/partial")), Map.of(),
+					new ByteBuffer[] { ByteBuffer.wrap("[1,2]".getBytes(UTF_8)) }, Duration.ofSeconds(1L));
+
+			var response = sender.exchange(request).get(5L, TimeUnit.SECONDS);
+
+			assertThat(response.getStatusCode())
+					.isEqualTo(200);
+			assertThat(UTF_8.decode(response.getBody()).toString())
+					.isEqualTo("{\"details\":{\"message\":\"1 event was not ingested\"}}");
+			assertThat(sender.exchange(new Request("POST", URI.create(mockServer.url("/ingest")), Map.of(),
+					new ByteBuffer[] { ByteBuffer.wrap("[1]".getBytes(UTF_8)) }, Duration.ofSeconds(1L)))
+					.get(5L, TimeUnit.SECONDS).getBody().hasRemaining())
+					.isFalse();
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	void keepChunkedBodyOfPartialSuccessResponseUpToLimit() throws Exception {
+		mockServer.stubFor(
+				post("/chunked")
+						.willReturn(aResponse()
+								.withStatus(200)
+								.withBody("{\"details\":{\"message\":\"1 event was not ingested\"}}")
+								.withChunkedDribbleDelay(5, 50))
+		);
+		mockServer.stubFor(
+				post("/chunked-big")
+						.willReturn(aResponse()
+								.withStatus(200)
+								.withBody("x".repeat(Response.MAX_BODY_BYTES + 1))
+								.withChunkedDribbleDelay(5, 50))
+		);
+		var sender = DynatraceGenericLogIngestJdkSender.FACTORY.create(new SenderConfig(true, Duration.ofSeconds(1L)));
+		try {
+			var response = sender.exchange(new Request("POST", URI.create(mockServer.url("/chunked")), Map.of(),
+					new ByteBuffer[] { ByteBuffer.wrap("[1,2]".getBytes(UTF_8)) }, Duration.ofSeconds(1L)))
+					.get(5L, TimeUnit.SECONDS);
+			var big = sender.exchange(new Request("POST", URI.create(mockServer.url("/chunked-big")), Map.of(),
+					new ByteBuffer[] { ByteBuffer.wrap("[1,2]".getBytes(UTF_8)) }, Duration.ofSeconds(1L)))
+					.get(5L, TimeUnit.SECONDS);
+
+			assertThat(UTF_8.decode(response.getBody()).toString())
+					.isEqualTo("{\"details\":{\"message\":\"1 event was not ingested\"}}");
+			assertThat(big.getStatusCode())
+					.isEqualTo(200);
+			assertThat(big.getBody().hasRemaining())
+					.isFalse();
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	void streamBigBodyInChunks() throws Exception {
+		var sender = DynatraceGenericLogIngestJdkSender.FACTORY.create(new SenderConfig(true, Duration.ofSeconds(1L)));
+		try {
+			var events = new ByteBuffer[2_001];
+			var expected = new StringBuilder();
+			for (var index = 0; index < events.length; index++) {
+				var part = index % 2 == 0 ? "{\"message\":\"" + index + "\"}" : ",";
+				events[index] = ByteBuffer.wrap(part.getBytes(UTF_8));
+				expected.append(part);
+			}
+
+			var request = new Request("POST", URI.create(mockServer.url("/ingest")),
+					Map.of("Content-Type", "application/json"), events, Duration.ofSeconds(5L));
+
+			assertThat(request.getContentLength())
+					.isGreaterThan(DynatraceGenericLogIngestBodyPublisher.CHUNK_BYTES);
+			assertThat(sender.send(request).get(5L, TimeUnit.SECONDS))
+					.isEqualTo(400);
+			mockServer.verify(postRequestedFor(urlEqualTo("/ingest"))
+					.withRequestBody(equalTo(expected.toString())));
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	void sendWholeArrayWithoutCopy() {
+		var payload = "{\"message\":\"a\"}".getBytes(UTF_8);
+
+		assertThat(DynatraceGenericLogIngestJdkSender.toByteArray(new ByteBuffer[] { ByteBuffer.wrap(payload) }))
+				.isSameAs(payload);
+	}
+
+	@Test
+	void joinRemainingBytesOfBuffers() {
+		var slice = ByteBuffer.wrap("xxabc".getBytes(UTF_8)).position(2);
+		var direct = ByteBuffer.allocateDirect(4).put("de".getBytes(UTF_8)).flip();
+
+		assertThat(DynatraceGenericLogIngestJdkSender.toByteArray(new ByteBuffer[] { slice, direct }))
+				.isEqualTo("abcde".getBytes(UTF_8));
+		assertThat(slice.remaining())
+				.isEqualTo(3);
+	}
+
+	@Test
+	void releaseSharedClientOnce() {
+		var httpClient = DynatraceGenericLogIngestHttpClient.acquire(
+				new DynatraceGenericLogIngestHttpClient.ClientConfig(false, Duration.ofSeconds(3L)));
+		var sender = new DynatraceGenericLogIngestJdkSender(httpClient);
+
+		sender.close();
+		sender.close();
+
+		assertThat(sender.isClosed())
+				.isTrue();
+		assertThat(httpClient.isReleased())
+				.isTrue();
+	}
+}
@@ -0,0 +1,142 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.util.JsonUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DynatraceGenericLogIngestJsonEscaperTest {
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"",
+			"Simple log message",
+			"quote \" and backslash \\ in the middle of a long enough message",
+			"\"",
+			"line\nbreak\r\nand\ttab",
+			"control \u0000\u0001\u001f\u007f characters",
+			"za\u017C\u00F3\u0142\u0107 g\u0119\u015Bl\u0105 ja\u017A\u0144",
+			"emoji \uD83D\uDE00 and \"quotes\" after non-ASCII \u20AC",
+	})
+	void escapeTheSameAsLog4j(String value) {
+		assertThat(escaped(value.getBytes(UTF_8)))
+				.isEqualTo(log4jEscaped(value));
+		assertThat(escaped(value))
+				.isEqualTo(log4jEscaped(value));
+	}
+
+	@Test
+	void findEveryAsciiByteAtEveryPositionOfWord() {
+		for (var value = 0; value < 128; value++) {
+			for (var position = 0; position < 2 * Long.BYTES; position++) {
+				var bytes = new byte[2 * Long.BYTES + 1];
+				Arrays.fill(bytes, (byte) 'x');
+				bytes[position] = (byte) value;
+
+				assertThat(escaped(bytes))
+						.as("byte %d at %d", value, position)
+						.isEqualTo(log4jEscaped(new String(bytes, UTF_8)));
+			}
+		}
+	}
+
+	@Test
+	void escapeRandomTextTheSameAsLog4j() {
+		var random = new Random(42L);
+		var alphabet = "ab\"\\\n\t\u0001 \u00E9\u20AC\uD83D\uDE00~";
+		for (var sample = 0; sample < 10_000; sample++) {
+			var text = new StringBuilder();
+			for (var index = random.nextInt(40); index > 0; index--) {
+				text.append(random.nextInt(4) == 0
+						? alphabet.charAt(random.nextInt(alphabet.length()))
+						: (char) ('a' + random.nextInt(26)));
+			}
+			var bytes = text.toString().getBytes(UTF_8);
+			if (sample % 3 == 0) {
+				random.nextBytes(bytes);
+			}
+
+			assertThat(escaped(bytes))
+					.isEqualTo(log4jEscaped(new String(bytes, UTF_8)));
+		}
+	}
+
+	@Test
+	void copyWellFormedUtf8AsItIs() {
+		var bytes = "za\u017C\u00F3\u0142\u0107 \u20AC \uD83D\uDE00".getBytes(UTF_8);
+
+		assertThat(escapedBytes(bytes))
+				.isEqualTo(bytes);
+		assertThat(DynatraceGenericLogIngestJsonEscaper.isWellFormed(bytes, 0, bytes.length))
+				.isTrue();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "C0AF", "E080AF", "EDA080", "F4908080", "F5", "80", "E282" })
+	void replaceMalformedUtf8(String hex) {
+		var bytes = new byte[hex.length() / 2];
+		for (var index = 0; index < bytes.length; index++) {
+			bytes[index] = (byte) Integer.parseInt(hex.substring(2 * index, 2 * index + 2), 16);
+		}
+
+		assertThat(DynatraceGenericLogIngestJsonEscaper.isWellFormed(bytes, 0, bytes.length))
+				.isFalse();
+		assertThat(escapedBytes(bytes))
+				.isEqualTo(new String(bytes, UTF_8).getBytes(UTF_8));
+	}
+
+	@Test
+	void cacheEncodedLevelFields() {
+		assertThat(new String(DynatraceGenericLogIngestJsonEscaper.levelField(Level.INFO), UTF_8))
+				.isEqualTo("\"level\":\"INFO\",");
+		assertThat(DynatraceGenericLogIngestJsonEscaper.levelField(Level.INFO))
+				.isSameAs(DynatraceGenericLogIngestJsonEscaper.levelField(Level.INFO));
+		assertThat(new String(DynatraceGenericLogIngestJsonEscaper.fieldKey("service\"name"), UTF_8))
+				.isEqualTo("\"service\\\"name\":");
+	}
+
+	@Test
+	void markOnlyBytesToEscape() {
+		var word = 0L;
+		var text = "ab\"c\\d\ne".getBytes(UTF_8);
+		for (var index = Long.BYTES - 1; index >= 0; index--) {
+			word = (word << 8) | (text[index] & 0xFFL);
+		}
+
+		assertThat(DynatraceGenericLogIngestJsonEscaper.hits(word) & 0x80L << 16)
+				.isNotZero();
+		assertThat(DynatraceGenericLogIngestJsonEscaper.hits(word) & 0x80L)
+				.isZero();
+		assertThat(DynatraceGenericLogIngestJsonEscaper.hits(0x7A7A7A7A7A7A7A7AL))
+				.isZero();
+	}
+
+	private static String escaped(byte[] utf8) {
+		return new String(escapedBytes(utf8), UTF_8);
+	}
+
+	private static byte[] escapedBytes(byte[] utf8) {
+		var json = new DynatraceGenericLogIngestJsonWriter(16);
+		DynatraceGenericLogIngestJsonEscaper.escape(utf8, json);
+		return json.toByteArray();
+	}
+
+	private static String escaped(String value) {
+		var json = new DynatraceGenericLogIngestJsonWriter(16);
+		DynatraceGenericLogIngestJsonEscaper.escape(value, json);
+		return new String(json.toByteArray(), UTF_8);
+	}
+
+	private static String log4jEscaped(String value) {
+		var json = new StringBuilder();
+		JsonUtils.quoteAsString(value, json);
+		return json.toString();
+	}
+}
@@ -0,0 +1,44 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DynatraceGenericLogIngestJsonWriterTest {
+
+	@Test
+	void buildJsonOfFragmentsAndValues() {
+		var json = new DynatraceGenericLogIngestJsonWriter(1)
+				.append('{')
+				.append(DynatraceGenericLogIngestJsonEscaper.fieldKey("message"))
+				.string("say \"hello\"".getBytes(UTF_8))
+				.append(',')
+				.append(DynatraceGenericLogIngestJsonEscaper.fieldKey("thread.id"))
+				.append(42L)
+				.append('}');
+
+		assertThat(new String(json.toByteArray(), UTF_8))
+				.isEqualTo("{\"message\":\"say \\\"hello\\\"\",\"thread.id\":42}");
+	}
+
+	@ParameterizedTest
+	@ValueSource(longs = { 0L, 7L, 10L, -10L, 999_999L, 1_000_000_000_000_000_000L, Long.MAX_VALUE, Long.MIN_VALUE })
+	void writeNumbersTheSameAsLongToString(long number) {
+		assertThat(new String(new DynatraceGenericLogIngestJsonWriter(1).append(number).toByteArray(), UTF_8))
+				.isEqualTo(Long.toString(number));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "plain", "za\u017C\u00F3\u0142\u0107 \u20AC", "emoji \uD83D\uDE00", "unpaired \uD83D and \uDE00" })
+	void encodeStringsTheSameAsGetBytes(String value) {
+		var json = new DynatraceGenericLogIngestJsonWriter(1);
+
+		json.utf8(value, 0, value.length());
+
+		assertThat(json.toByteArray())
+				.isEqualTo(value.getBytes(UTF_8));
+	}
+}
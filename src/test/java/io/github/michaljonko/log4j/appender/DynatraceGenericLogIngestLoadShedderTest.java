@@ -0,0 +1,148 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestLoadShedder.SheddingConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+class DynatraceGenericLogIngestLoadShedderTest {
+
+	private static final Duration HYSTERESIS = Duration.ofSeconds(10L);
+	private static final SheddingConfig SHEDDING_CONFIG =
+			new SheddingConfig(0.8, 0.5, Duration.ofMillis(1_000L), HYSTERESIS);
+
+	private final List<String> changes = new CopyOnWriteArrayList<>();
+
+	@Test
+	void raiseMinimumLevelOneStepPerEvaluationAboveHighWater() {
+		var loadShedder = loadShedder(SHEDDING_CONFIG);
+
+		for (var evaluation = 0; evaluation < 4; evaluation++) {
+			loadShedder.evaluate(0.9, 0L, evaluation);
+		}
+
+		assertThat(changes)
+				.containsExactly("ALL>DEBUG", "DEBUG>INFO", "INFO>WARN");
+		assertThat(loadShedder.getMinimumLevel())
+				.isEqualTo(Level.WARN);
+		assertThat(loadShedder.shed(Level.INFO))
+				.isTrue();
+		assertThat(loadShedder.shed(Level.WARN))
+				.isFalse();
+		assertThat(loadShedder.shed(Level.ERROR))
+				.isFalse();
+		assertThat(loadShedder.getShed())
+				.isEqualTo(1L);
+	}
+
+	@Test
+	void raiseMinimumLevelWhenRequestsAreSlow() {
+		var loadShedder = loadShedder(SHEDDING_CONFIG);
+
+		loadShedder.evaluate(0.1, TimeUnit.MILLISECONDS.toNanos(1_500L), 0L);
+
+		assertThat(loadShedder.getMinimumLevel())
+				.isEqualTo(Level.DEBUG);
+		assertThat(loadShedder.shed(Level.TRACE))
+				.isTrue();
+		assertThat(loadShedder.shed(Level.DEBUG))
+				.isFalse();
+	}
+
+	@Test
+	void lowerMinimumLevelOnlyAfterHysteresisBelowLowWater() {
+		var loadShedder = loadShedder(SHEDDING_CONFIG);
+		loadShedder.evaluate(0.9, 0L, 0L);
+		loadShedder.evaluate(0.9, 0L, 1L);
+		var now = HYSTERESIS.toNanos();
+
+		loadShedder.evaluate(0.2, 0L, now);
+		loadShedder.evaluate(0.2, 0L, now + HYSTERESIS.toNanos() / 2L);
+		loadShedder.evaluate(0.6, 0L, now + HYSTERESIS.toNanos() / 2L + 1L);
+		loadShedder.evaluate(0.2, 0L, now + HYSTERESIS.toNanos() + 1L);
+
+		assertThat(loadShedder.getMinimumLevel())
+				.isEqualTo(Level.INFO);
+
+		loadShedder.evaluate(0.2, 0L, now + 2L * HYSTERESIS.toNanos() + 1L);
+
+		assertThat(loadShedder.getMinimumLevel())
+				.isEqualTo(Level.DEBUG);
+
+		loadShedder.evaluate(0.2, 0L, now + 3L * HYSTERESIS.toNanos());
+		loadShedder.evaluate(0.2, 0L, now + 3L * HYSTERESIS.toNanos() + 1L);
+
+		assertThat(loadShedder.getMinimumLevel())
+				.isEqualTo(Level.ALL);
+		assertThat(changes)
+				.containsExactly("ALL>DEBUG", "DEBUG>INFO", "INFO>DEBUG", "DEBUG>ALL");
+	}
+
+	@Test
+	void keepMinimumLevelWhileLatencyIsAboveHalfOfThreshold() {
+		var loadShedder = loadShedder(SHEDDING_CONFIG);
+		loadShedder.evaluate(0.9, 0L, 0L);
+
+		loadShedder.evaluate(0.1, TimeUnit.MILLISECONDS.toNanos(600L), 1L);
+		loadShedder.evaluate(0.1, TimeUnit.MILLISECONDS.toNanos(600L), 2L * HYSTERESIS.toNanos());
+
+		assertThat(loadShedder.getMinimumLevel())
+				.isEqualTo(Level.DEBUG);
+	}
+
+	@Test
+	void evaluateQueuesAndRequestsOfManagers() {
+		var manager = mock(AbstractDynatraceGenericLogIngestManager.class);
+		given(manager.getQueueUtilization())
+				.willReturn(0.95);
+		var loadShedder = new DynatraceGenericLogIngestLoadShedder(SHEDDING_CONFIG, List.of(manager),
+				(previous, current, reason) -> changes.add(reason));
+
+		loadShedder.start();
+		try {
+			Awaitility.await()
+					.timeout(Duration.ofSeconds(5L))
+					.until(() -> !changes.isEmpty());
+		} finally {
+			loadShedder.stop();
+		}
+
+		assertThat(changes.get(0))
+				.isEqualTo("queue utilization 95%, request latency 0 ms");
+	}
+
+	@Test
+	void neverShedWhenDisabled() {
+		var loadShedder = loadShedder(SheddingConfig.DISABLED);
+
+		loadShedder.start();
+		loadShedder.stop();
+
+		assertThat(loadShedder.shed(Level.TRACE))
+				.isFalse();
+		assertThat(SheddingConfig.DISABLED.isEnabled())
+				.isFalse();
+	}
+
+	@Test
+	void rejectLowWaterAboveHighWater() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> new SheddingConfig(0.5, 0.8, Duration.ZERO, HYSTERESIS))
+				.withMessage("lowWater is not between 0 and highWater");
+	}
+
+	private DynatraceGenericLogIngestLoadShedder loadShedder(SheddingConfig sheddingConfig) {
+		return new DynatraceGenericLogIngestLoadShedder(sheddingConfig, List.of(),
+				(previous, current, reason) -> changes.add(previous + ">" + current));
+	}
+}
@@ -0,0 +1,114 @@
+package io.github.michaljonko.log4j.appender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DynatraceGenericLogIngestLogFileReaderTest {
+
+	private static final String LOG = "2024-01-01 10:00:00 ERROR boom\r\n"
+			+ "\tat com.acme.Service.run(Service.java:42)\n"
+			+ "Caused by: java.io.IOException: closed\n"
+			+ "\t... 3 more\n"
+			+ "2024-01-01 10:00:01 INFO ok\n"
+			+ "last line without line break";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void joinContinuationLinesWithRecord() throws Exception {
+		var file = write(LOG);
+
+		assertThat(read(file, 0L, DynatraceGenericLogIngestLogFileReader.DEFAULT_CONTINUATION, 1_024))
+				.extracting(DynatraceGenericLogIngestLogFileReader.Record::getContent)
+				.containsExactly(
+						"2024-01-01 10:00:00 ERROR boom\n\tat com.acme.Service.run(Service.java:42)\n"
+								+ "Caused by: java.io.IOException: closed\n\t... 3 more",
+						"2024-01-01 10:00:01 INFO ok",
+						"last line without line break");
+	}
+
+	@Test
+	void readEveryLineAsRecordWithoutContinuation() throws Exception {
+		var file = write(LOG);
+
+		assertThat(read(file, 0L, null, 1_024))
+				.hasSize(6);
+	}
+
+	@Test
+	void resumeAtEndOffsetOfRecord() throws Exception {
+		var file = write(LOG);
+		var records = read(file, 0L, DynatraceGenericLogIngestLogFileReader.DEFAULT_CONTINUATION, 1_024);
+
+		assertThat(read(file, records.get(0).getEndOffset(), DynatraceGenericLogIngestLogFileReader.DEFAULT_CONTINUATION, 1_024))
+				.extracting(DynatraceGenericLogIngestLogFileReader.Record::getContent)
+				.containsExactly("2024-01-01 10:00:01 INFO ok", "last line without line break");
+		assertThat(records.get(2).getEndOffset())
+				.isEqualTo(Files.size(file));
+	}
+
+	@Test
+	void readLinesCrossingMappedWindows() throws Exception {
+		var file = write(LOG);
+
+		assertThat(read(file, 0L, DynatraceGenericLogIngestLogFileReader.DEFAULT_CONTINUATION, 48))
+				.extracting(DynatraceGenericLogIngestLogFileReader.Record::getContent)
+				.containsExactlyElementsOf(read(file, 0L, DynatraceGenericLogIngestLogFileReader.DEFAULT_CONTINUATION, 1_024)
+						.stream()
+						.map(DynatraceGenericLogIngestLogFileReader.Record::getContent)
+						.collect(Collectors.toList()));
+	}
+
+	@Test
+	void truncateLongRecord() throws Exception {
+		var file = write("x".repeat(100) + "\n y\n");
+
+		try (var reader = new DynatraceGenericLogIngestLogFileReader(file, 0L, Pattern.compile("^\\s"), 1_024, 10)) {
+			var record = reader.next();
+
+			assertThat(record.getContent())
+					.isEqualTo("x".repeat(10));
+			assertThat(record.getEndOffset())
+					.isEqualTo(104L);
+			assertThat(reader.next())
+					.isNull();
+		}
+	}
+
+	@Test
+	void rejectOffsetBeyondEndOfFile() throws Exception {
+		var file = write(LOG);
+
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> new DynatraceGenericLogIngestLogFileReader(file, Files.size(file) + 1L, null));
+	}
+
+	private Path write(String content) throws Exception {
+		return Files.writeString(directory.resolve("application.log"), content);
+	}
+
+	private static List<DynatraceGenericLogIngestLogFileReader.Record> read(Path file,
+			long offset,
+			Pattern continuation,
+			int windowBytes) throws Exception {
+		var records = new ArrayList<DynatraceGenericLogIngestLogFileReader.Record>();
+		try (var reader = new DynatraceGenericLogIngestLogFileReader(file, offset, continuation, windowBytes, 1_024)) {
+			DynatraceGenericLogIngestLogFileReader.Record record;
+			while ((record = reader.next()) != null) {
+				records.add(record);
+			}
+		}
+		return records;
+	}
+}
@@ -1,21 +1,27 @@
 package io.github.michaljonko.log4j.appender;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.head;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
 import static java.util.Objects.nonNull;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.net.URL;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.LoggerContext;
+import org.awaitility.Awaitility;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -74,12 +80,9 @@ class DynatraceGenericLogIngestManagerTest {
 	@Test
 	void returnExceptionWhenTimeoutOccurs() throws Exception {
 		final var activeGateUrl = new URL(mockServer.url("/ingest-timeout"));
-		final var config = new ManagerConfig(
-				loggerContext,
-				activeGateUrl,
-				TOKEN,
-				false
-		);
+		final var config = ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.setSslValidation(false)
+				.build();
 
 		var manager = new DynatraceGenericLogIngestManager("manager", config, Duration.ofMillis(100L));
 
@@ -91,12 +94,8 @@ class DynatraceGenericLogIngestManagerTest {
 	void returnExceptionWhenCannotValidCert() throws Exception {
 		final var activeGateUrl =
 				new URL("https://" + mockServer.getOptions().bindAddress() + ":" + mockServer.httpsPort() + "/ingest");
-		final var config = new ManagerConfig(
-				loggerContext,
-				activeGateUrl,
-				TOKEN,
-				true
-		);
+		final var config = ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.build();
 
 		var manager = new DynatraceGenericLogIngestManager("manager", config);
 
@@ -104,18 +103,154 @@ class DynatraceGenericLogIngestManagerTest {
 				.isEqualTo(Status.EXCEPTION);
 	}
 
+	@Test
+	void giveEveryRouteOwnDeadLetterFile(@TempDir Path directory) throws Exception {
+		final var config = ManagerConfig.builder(loggerContext, new URL(mockServer.url("/ingest")), TOKEN)
+				.setSslValidation(false)
+				.setDeadLetterFile(directory.resolve("dead-letter.jsonl"))
+				.setConnectTimeout(Duration.ofSeconds(5L))
+				.setRequestTimeout(Duration.ofSeconds(5L))
+				.build();
+
+		var routeConfig = config.withEndpoint(new URL("https://payments.live.dynatrace.com/api/v2/logs/ingest"), "other");
+
+		assertThat(routeConfig.getDeadLetterFile())
+				.isEqualTo(directory.resolve("dead-letter.payments.live.dynatrace.com.jsonl"));
+		assertThat(ManagerConfig.deadLetterFileOf(directory.resolve("rejected"), new URL("http://localhost:9999/ingest")))
+				.isEqualTo(directory.resolve("rejected.localhost-9999"));
+	}
+
 	@Test
 	void createAndReleaseManager() throws Exception {
 		final var activeGateUrl = new URL(mockServer.baseUrl());
-		final var config = new ManagerConfig(
-				loggerContext,
-				activeGateUrl,
-				TOKEN,
-				false
+		final var config = ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.setSslValidation(false)
+				.build();
+
+		var manager = new DynatraceGenericLogIngestManager("manager", config);
+
+		assertThat(manager.releaseSub(1L, TimeUnit.SECONDS))
+				.isTrue();
+	}
+
+	@Test
+	void shareTransportBetweenManagersWithTheSameEndpoint() throws Exception {
+		final var activeGateUrl = new URL(mockServer.url("/ingest"));
+		final var config = ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.setSslValidation(false)
+				.build();
+
+		var first = new DynatraceGenericLogIngestManager("first", config);
+		var second = new DynatraceGenericLogIngestManager("second", config);
+
+		assertThat(first.getTransport())
+				.isSameAs(second.getTransport());
+
+		first.releaseSub(1L, TimeUnit.SECONDS);
+		assertThat(second.send("Simple log message"))
+				.isEqualTo(Status.SUCCESS);
+
+		second.releaseSub(1L, TimeUnit.SECONDS);
+		assertThat(second.getTransport().isClosed())
+				.isTrue();
+	}
+
+	@Test
+	void keepManagerTransportWhenReconfiguredWithTheSameEndpoint() throws Exception {
+		final var activeGateUrl = new URL(mockServer.url("/ingest"));
+		final var config = ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.setSslValidation(false)
+				.build();
+
+		var manager = new DynatraceGenericLogIngestManager("manager", config);
+		var transport = manager.getTransport();
+
+		manager.updateData(ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.setSslValidation(false)
+				.setBlocking(false)
+				.build());
+
+		assertThat(manager.getTransport())
+				.isSameAs(transport);
+		assertThat(manager.send("Simple log message"))
+				.isEqualTo(Status.QUEUED);
+		assertThat(manager.releaseSub(1L, TimeUnit.SECONDS))
+				.isTrue();
+		assertThat(manager.getStatistics().getDelivered())
+				.isEqualTo(1L);
+	}
+
+	@Test
+	void switchTransportWhenReconfiguredWithOtherEndpoint() throws Exception {
+		final var activeGateUrl = new URL(mockServer.url("/ingest"));
+		var manager = new DynatraceGenericLogIngestManager("manager",
+				ManagerConfig.builder(loggerContext, activeGateUrl, "x")
+						.setSslValidation(false)
+						.build());
+		var previous = manager.getTransport();
+
+		manager.updateData(ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.setSslValidation(false)
+				.build());
+
+		assertThat(manager.getTransport())
+				.isNotSameAs(previous);
+		assertThat(previous.isClosed())
+				.isTrue();
+		assertThat(manager.send("Simple log message"))
+				.isEqualTo(Status.SUCCESS);
+		manager.releaseSub(1L, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void onlyEnqueueBlockingSendsUntilConnected() throws Exception {
+		mockServer.stubFor(
+				head(urlEqualTo("/ingest"))
+						.willReturn(aResponse()
+								.withFixedDelay((int) TimeUnit.SECONDS.toMillis(1L))
+								.withStatus(204))
 		);
+		final var activeGateUrl = new URL(mockServer.url("/ingest"));
+		final var config = ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.setSslValidation(false)
+				.setConnectTimeout(Duration.ofSeconds(5L))
+				.setRequestTimeout(Duration.ofSeconds(5L))
+				.setBufferUntilConnected(true)
+				.build();
+
+		var manager = new DynatraceGenericLogIngestManager("manager", config);
+
+		assertThat(manager.send("Simple log message"))
+				.isEqualTo(Status.QUEUED);
+		Awaitility.await()
+				.timeout(Duration.ofSeconds(5L))
+				.until(() -> !manager.getTransport().isWarmingUp());
+		assertThat(manager.send("Simple log message"))
+				.isEqualTo(Status.SUCCESS);
+		assertThat(manager.releaseSub(1L, TimeUnit.SECONDS))
+				.isTrue();
+		assertThat(manager.getStatistics().getDelivered())
+				.isEqualTo(2L);
+	}
+
+	@Test
+	void dropLogEventsOverHostQuotaExceptSevereOnes(@TempDir Path directory) throws Exception {
+		final var activeGateUrl = new URL(mockServer.url("/ingest"));
+		final var config = ManagerConfig.builder(loggerContext, activeGateUrl, TOKEN)
+				.setSslValidation(false)
+				.build();
 
 		var manager = new DynatraceGenericLogIngestManager("manager", config);
+		manager.setQuota(DynatraceGenericLogIngestQuota.open(directory.resolve("quota"), 0L, 1L, Duration.ofSeconds(1L)));
 
+		assertThat(manager.send("Simple log message"))
+				.isEqualTo(Status.SUCCESS);
+		assertThat(manager.send("Simple log message"))
+				.isEqualTo(Status.DROPPED);
+		assertThat(manager.send("Simple log message", Level.ERROR))
+				.isEqualTo(Status.SUCCESS);
+		assertThat(manager.getStatistics().getDropped())
+				.isEqualTo(1L);
 		assertThat(manager.releaseSub(1L, TimeUnit.SECONDS))
 				.isTrue();
 	}
@@ -127,12 +262,9 @@ class DynatraceGenericLogIngestManagerTest {
 			final String logMessage,
 			final Status expectedStatus) throws Exception {
 		final var activeGateUrl = new URL(mockServer.url(path));
-		final var config = new ManagerConfig(
-				loggerContext,
-				activeGateUrl,
-				token,
-				false
-		);
+		final var config = ManagerConfig.builder(loggerContext, activeGateUrl, token)
+				.setSslValidation(false)
+				.build();
 
 		var manager = new DynatraceGenericLogIngestManager("manager", config);
 
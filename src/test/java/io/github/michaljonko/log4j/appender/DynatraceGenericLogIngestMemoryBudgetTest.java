@@ -0,0 +1,118 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestMemoryBudget.EVENT_OVERHEAD_BYTES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import org.junit.jupiter.api.Test;
+
+class DynatraceGenericLogIngestMemoryBudgetTest {
+
+	private static final int PAYLOAD_BYTES = 256 - EVENT_OVERHEAD_BYTES;
+
+	@Test
+	void reserveAnythingWhenUnlimited() {
+		var account = DynatraceGenericLogIngestMemoryBudget.UNLIMITED.register("appender");
+
+		assertThat(account.reserve(Integer.MAX_VALUE))
+				.isTrue();
+		assertThat(account.getReservedBytes())
+				.isZero();
+		assertThat(DynatraceGenericLogIngestMemoryBudget.UNLIMITED.getFreeBytes())
+				.isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	void keepShareOfAppenderWhenOtherOneFloods() {
+		var budget = new DynatraceGenericLogIngestMemoryBudget(4_096L);
+		var flooding = budget.register("flooding");
+		var quiet = budget.register("quiet");
+
+		assertThat(reserveAll(flooding))
+				.isEqualTo(12);
+		assertThat(reserveAll(quiet))
+				.isEqualTo(4);
+		assertThat(budget.getReservedBytes())
+				.isEqualTo(4_096L);
+		assertThat(budget.getFreeBytes())
+				.isZero();
+		assertThat(budget.getBorrowedBytes())
+				.isEqualTo(2_048L);
+		assertThat(budget.getShedEvents())
+				.isEqualTo(2L);
+		assertThat(budget.getReservedBytesPerAppender())
+				.containsEntry("flooding", 3_072L)
+				.containsEntry("quiet", 1_024L);
+	}
+
+	@Test
+	void returnBorrowedBytesToPoolFirst() {
+		var budget = new DynatraceGenericLogIngestMemoryBudget(4_096L);
+		var flooding = budget.register("flooding");
+		var quiet = budget.register("quiet");
+		reserveAll(flooding);
+		reserveAll(quiet);
+
+		flooding.release(PAYLOAD_BYTES);
+
+		assertThat(budget.getBorrowedBytes())
+				.isEqualTo(1_792L);
+		assertThat(quiet.reserve(PAYLOAD_BYTES))
+				.isTrue();
+		assertThat(flooding.reserve(PAYLOAD_BYTES))
+				.isFalse();
+	}
+
+	@Test
+	void giveShareBackWhenAccountIsClosed() {
+		var budget = new DynatraceGenericLogIngestMemoryBudget(4_096L);
+		var first = budget.register("first");
+		var second = budget.register("second");
+
+		assertThat(budget.getShareBytes())
+				.isEqualTo(1_024L);
+
+		first.close();
+
+		assertThat(budget.getShareBytes())
+				.isEqualTo(2_048L);
+		assertThat(reserveAll(second))
+				.isEqualTo(16);
+	}
+
+	@Test
+	void releaseMemoryWhenLogEventIsCompleted() {
+		var budget = new DynatraceGenericLogIngestMemoryBudget(1_024L);
+		var statistics = new DynatraceGenericLogIngestStatistics();
+		statistics.setMemoryAccount(budget.register("appender"));
+
+		assertThat(statistics.reserve(PAYLOAD_BYTES))
+				.isTrue();
+		statistics.enqueued();
+		assertThat(budget.getReservedBytes())
+				.isEqualTo(256L);
+
+		statistics.completed(Status.DROPPED, PAYLOAD_BYTES);
+
+		assertThat(budget.getReservedBytes())
+				.isZero();
+		assertThat(budget.getFreeBytes())
+				.isEqualTo(1_024L);
+	}
+
+	@Test
+	void rejectNegativeBudget() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> new DynatraceGenericLogIngestMemoryBudget(-1L))
+				.withMessage("budgetBytes is negative");
+	}
+
+	private static int reserveAll(DynatraceGenericLogIngestMemoryBudget.Account account) {
+		var reserved = 0;
+		while (account.reserve(PAYLOAD_BYTES)) {
+			reserved++;
+		}
+		return reserved;
+	}
+}
@@ -0,0 +1,114 @@
+package io.github.michaljonko.log4j.appender;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.nonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+
+import io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.TransportConfig;
+
+class DynatraceGenericLogIngestMetricsReporterTest {
+
+	private static final String TOKEN = "123456";
+	private final DynatraceGenericLogIngestStatistics statistics = new DynatraceGenericLogIngestStatistics();
+	private WireMockServer mockServer;
+	private DynatraceGenericLogIngestTransport transport;
+
+	@BeforeEach
+	void setUp() {
+		mockServer = new WireMockServer(
+				WireMockConfiguration.options()
+						.dynamicPort());
+		mockServer.stubFor(
+				post("/e/abc/api/v2/logs/ingest")
+						.willReturn(aResponse()
+								.withStatus(204))
+		);
+		mockServer.stubFor(
+				post("/e/abc/api/v2/metrics/ingest")
+						.willReturn(aResponse()
+								.withStatus(202))
+		);
+		mockServer.start();
+		transport = DynatraceGenericLogIngestTransport.acquire(
+				TransportConfig.builder(URI.create(mockServer.url("/e/abc/api/v2/logs/ingest")), TOKEN)
+						.setConnectionTimeout(Duration.ofSeconds(1L))
+						.build());
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (nonNull(transport)) {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+		if (nonNull(mockServer)) {
+			mockServer.stop();
+		}
+	}
+
+	@Test
+	void pushDeltasOfStatisticsToMetricsIngest() {
+		for (var i = 0; i < 3; i++) {
+			assertThat(transport.send(("{\"message\":\"" + i + "\"}").getBytes(UTF_8), Lane.NORMAL, true, statistics))
+					.isEqualTo(Status.SUCCESS);
+		}
+		var reporter = new DynatraceGenericLogIngestMetricsReporter("appender \"A\"", statistics, () -> transport,
+				Duration.ofHours(1L));
+		var dimensions = ",appender=\"appender \\\"A\\\"\",endpoint=\"" + mockServer.url("/e/abc/api/v2/logs/ingest") + "\"";
+
+		reporter.report().join();
+		reporter.close(1L, TimeUnit.SECONDS);
+
+		var requests = mockServer.findAll(postRequestedFor(urlEqualTo("/e/abc/api/v2/metrics/ingest")));
+		assertThat(requests)
+				.hasSize(2)
+				.allSatisfy(request -> assertThat(request.getHeader("Authorization"))
+						.isEqualTo("Api-Token " + TOKEN));
+
+		var bodies = requests.stream()
+				.map(LoggedRequest::getBodyAsString)
+				.collect(Collectors.partitioningBy(body -> body.contains("delivered" + dimensions + " count,delta=3\n")));
+		assertThat(bodies.get(true))
+				.singleElement()
+				.asString()
+				.contains("log4j.appender.dynatrace.events.failed" + dimensions + " count,delta=0\n")
+				.contains("log4j.appender.dynatrace.bytes.delivered" + dimensions + " count,delta=45\n")
+				.contains("log4j.appender.dynatrace.request.latency" + dimensions + " gauge,min=")
+				.contains("log4j.appender.dynatrace.queue.depth" + dimensions + " gauge,0\n");
+		assertThat(bodies.get(false))
+				.singleElement()
+				.asString()
+				.contains("log4j.appender.dynatrace.events.delivered" + dimensions + " count,delta=0\n")
+				.doesNotContain("request.latency");
+	}
+
+	@Test
+	void switchLogIngestUrlToMetricsIngest() {
+		assertThat(DynatraceGenericLogIngestMetricsReporter.metricsEndpoint(
+				URI.create("https://ag:9999/e/abc/api/v2/logs/ingest")))
+				.isEqualTo(URI.create("https://ag:9999/e/abc/api/v2/metrics/ingest"));
+		assertThat(DynatraceGenericLogIngestMetricsReporter.metricsEndpoint(
+				URI.create("https://abc.live.dynatrace.com/api/v2/otlp/v1/logs")))
+				.isEqualTo(URI.create("https://abc.live.dynatrace.com/api/v2/metrics/ingest"));
+		assertThat(DynatraceGenericLogIngestMetricsReporter.metricsEndpoint(URI.create("http://localhost:8080/ingest")))
+				.isEqualTo(URI.create("http://localhost:8080/api/v2/metrics/ingest"));
+	}
+}
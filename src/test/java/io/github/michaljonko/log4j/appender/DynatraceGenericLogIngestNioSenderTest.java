@@ -0,0 +1,202 @@
+package io.github.michaljonko.log4j.appender;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.Request;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSender.SenderConfig;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.nonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+
+class DynatraceGenericLogIngestNioSenderTest {
+
+	private static final String HOST = "127.0.0.1";
+	private static final Duration TIMEOUT = Duration.ofSeconds(5L);
+
+	private WireMockServer mockServer;
+	private DynatraceGenericLogIngestNioSender sender;
+
+	@BeforeEach
+	void setUp() {
+		mockServer = new WireMockServer(
+				WireMockConfiguration.options()
+						.dynamicPort());
+		mockServer.stubFor(
+				post("/ingest")
+						.willReturn(aResponse()
+								.withStatus(204))
+		);
+		mockServer.start();
+		sender = new DynatraceGenericLogIngestNioSender(new SenderConfig(true, TIMEOUT));
+	}
+
+	@AfterEach
+	void tearDown() {
+		sender.close();
+		if (nonNull(mockServer)) {
+			mockServer.stop();
+		}
+	}
+
+	@Test
+	void sendBodyOfHeapAndDirectBuffersOverOneConnection() throws Exception {
+		for (var i = 0; i < 3; i++) {
+			var direct = ByteBuffer.allocateDirect(16).put("{\"b\":2}".getBytes(UTF_8)).flip();
+			var body = new ByteBuffer[] {
+					ByteBuffer.wrap("[{\"a\":1},".getBytes(UTF_8)), direct, ByteBuffer.wrap("]".getBytes(UTF_8)) };
+
+			assertThat(send(new Request("POST", URI.create(mockServer.url("/ingest")), Map.of("Authorization", "Api-Token 123"),
+					body, TIMEOUT)))
+					.isEqualTo(204);
+		}
+
+		mockServer.verify(3, postRequestedFor(urlEqualTo("/ingest"))
+				.withHeader("Authorization", equalTo("Api-Token 123"))
+				.withRequestBody(equalTo("[{\"a\":1},{\"b\":2}]")));
+		assertThat(sender.getConnections())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void sendBodyLargerThanPooledBuffer() throws Exception {
+		var payload = "x".repeat(3 * DynatraceGenericLogIngestNioSender.BUFFER_BYTES + 7);
+
+		assertThat(send(new Request("POST", URI.create(mockServer.url("/ingest")), Map.of(),
+				new ByteBuffer[] { ByteBuffer.wrap(payload.getBytes(UTF_8)) }, TIMEOUT)))
+				.isEqualTo(204);
+		mockServer.verify(postRequestedFor(urlEqualTo("/ingest"))
+				.withRequestBody(equalTo(payload)));
+	}
+
+	@Test
+	void keepBodyOfPartialSuccessResponse() throws Exception {
+		mockServer.stubFor(
+				post("/partial")
+						.willReturn(aResponse()
+								.withStatus(200)
+								.withBody("{\"details\":{\"message\":\"1 event was not ingested\"}}"))
+		);
+
+		var response = sender.exchange(new Request("POST", URI.create(mockServer.url("/partial")), Map.of(),
+				new ByteBuffer[] { ByteBuffer.wrap("[1,2]".getBytes(UTF_8)) }, TIMEOUT))
+				.get(5L, TimeUnit.SECONDS);
+
+		assertThat(response.getStatusCode())
+				.isEqualTo(200);
+		assertThat(UTF_8.decode(response.getBody()).toString())
+				.isEqualTo("{\"details\":{\"message\":\"1 event was not ingested\"}}");
+		assertThat(send(new Request("POST", URI.create(mockServer.url("/ingest")), Map.of(),
+				new ByteBuffer[] { ByteBuffer.wrap("[1]".getBytes(UTF_8)) }, TIMEOUT)))
+				.isEqualTo(204);
+		assertThat(sender.getConnections())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void matchPipelinedResponsesInOrder() throws Exception {
+		try (var server = new ServerSocket(0, 1, InetAddress.getByName(HOST))) {
+			var responded = CompletableFuture.runAsync(() -> {
+				try (var socket = server.accept()) {
+					var reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ISO_8859_1));
+					for (var request = 0; request < 2; request++) {
+						var contentLength = 0;
+						String line;
+						while (!(line = reader.readLine()).isEmpty()) {
+							if (line.startsWith("Content-Length:")) {
+								contentLength = Integer.parseInt(line.substring(15).trim());
+							}
+						}
+						reader.skip(contentLength);
+					}
+					socket.getOutputStream().write(("HTTP/1.1 100 Continue\r\n\r\n"
+							+ "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\n\r\n"
+							+ "HTTP/1.1 400 Bad Request\r\nContent-Length: 3\r\n\r\nbad").getBytes(ISO_8859_1));
+					socket.getOutputStream().flush();
+					socket.getInputStream().read();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			var uri = URI.create("http://" + HOST + ":" + server.getLocalPort() + "/ingest");
+
+			var first = sender.send(new Request("POST", uri, Map.of(), body("first"), TIMEOUT));
+			var second = sender.send(new Request("POST", uri, Map.of(), body("second"), TIMEOUT));
+
+			assertThat(first.get(5L, TimeUnit.SECONDS))
+					.isEqualTo(200);
+			assertThat(second.get(5L, TimeUnit.SECONDS))
+					.isEqualTo(400);
+			assertThat(sender.getConnections())
+					.isEqualTo(1);
+			sender.close();
+			responded.get(5L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void closeConnectionWhenRequestTimesOut() throws Exception {
+		try (var server = new ServerSocket(0, 1, InetAddress.getByName(HOST))) {
+			var uri = URI.create("http://" + HOST + ":" + server.getLocalPort() + "/ingest");
+
+			var result = sender.send(new Request("POST", uri, Map.of(), body("slow"), Duration.ofMillis(200L)));
+
+			assertThatExceptionOfType(ExecutionException.class)
+					.isThrownBy(() -> result.get(5L, TimeUnit.SECONDS))
+					.withCauseInstanceOf(TimeoutException.class);
+			assertThat(sender.getConnections())
+					.isZero();
+		}
+	}
+
+	@Test
+	void rejectHttpsUrl() {
+		var result = sender.send(Request.head(URI.create("https://localhost:9999/ingest"), Map.of(), TIMEOUT));
+
+		assertThatExceptionOfType(ExecutionException.class)
+				.isThrownBy(result::get)
+				.withCauseInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void failRequestsAfterClose() {
+		sender.close();
+
+		var result = sender.send(Request.head(URI.create(mockServer.url("/ingest")), Map.of(), TIMEOUT));
+
+		assertThat(result)
+				.isCompletedExceptionally();
+	}
+
+	private int send(Request request) throws Exception {
+		return sender.send(request).get(5L, TimeUnit.SECONDS);
+	}
+
+	private static ByteBuffer[] body(String content) {
+		return new ByteBuffer[] { ByteBuffer.wrap(content.getBytes(UTF_8)) };
+	}
+}
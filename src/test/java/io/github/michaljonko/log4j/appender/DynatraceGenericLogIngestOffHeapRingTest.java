@@ -0,0 +1,120 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class DynatraceGenericLogIngestOffHeapRingTest {
+
+	@Test
+	void keepRecordsInOrderAcrossTheEndOfTheBuffer() {
+		var ring = new DynatraceGenericLogIngestOffHeapRing(256);
+
+		for (var i = 0; i < 100; i++) {
+			var payload = ("{\"message\":\"" + "x".repeat(i % 40) + "\"}").getBytes(UTF_8);
+			assertThat(ring.offer(payload, i, i, System.nanoTime()))
+					.isTrue();
+
+			assertThat(ring.peek())
+					.isEqualTo(payload.length);
+			assertThat(ring.owner())
+					.isEqualTo(i);
+			assertThat(ring.ticket())
+					.isEqualTo(i);
+			assertThat(ring.take())
+					.isEqualTo(payload);
+		}
+
+		assertThat(ring.peek())
+				.isZero();
+		assertThat(ring.getUsedBytes())
+				.isZero();
+	}
+
+	@Test
+	void rejectRecordsWhenFull() {
+		var ring = new DynatraceGenericLogIngestOffHeapRing(128);
+		var payload = new byte[40];
+
+		assertThat(ring.offer(payload, 0, 0L, 0L))
+				.isTrue();
+		assertThat(ring.offer(payload, 0, 0L, 0L))
+				.isTrue();
+		assertThat(ring.offer(payload, 0, 0L, 0L))
+				.isFalse();
+		assertThat(ring.offer(new byte[200], 0, 0L, 0L))
+				.isFalse();
+
+		ring.peek();
+		ring.skip();
+		assertThat(ring.offer(payload, 0, 0L, 0L))
+				.isTrue();
+	}
+
+	@Test
+	void rejectTooSmallCapacity() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> new DynatraceGenericLogIngestOffHeapRing(16));
+	}
+
+	@Test
+	void deliverEveryRecordFromManyProducers() throws Exception {
+		var ring = new DynatraceGenericLogIngestOffHeapRing(4_096);
+		var producers = 8;
+		var records = 10_000;
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		var start = new CountDownLatch(1);
+		try {
+			for (var producer = 0; producer < producers; producer++) {
+				final var owner = producer;
+				executor.execute(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					for (var i = 0; i < records; i++) {
+						var payload = (owner + ":" + i).getBytes(UTF_8);
+						while (!ring.offer(payload, owner, i, 0L)) {
+							Thread.yield();
+						}
+					}
+				});
+			}
+			start.countDown();
+
+			var received = new HashSet<String>();
+			var lastTicket = new long[producers];
+			Arrays.fill(lastTicket, -1L);
+			var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30L);
+			while (received.size() < producers * records && System.nanoTime() < deadline) {
+				if (ring.peek() == 0) {
+					Thread.yield();
+					continue;
+				}
+				var owner = ring.owner();
+				var ticket = ring.ticket();
+				assertThat(ticket)
+						.isGreaterThan(lastTicket[owner]);
+				lastTicket[owner] = ticket;
+				assertThat(received.add(new String(ring.take(), UTF_8)))
+						.isTrue();
+			}
+
+			assertThat(received)
+					.hasSize(producers * records);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class DynatraceGenericLogIngestOtlpEncoderTest {
+
+	private static final byte[] RESOURCE = {0x0A, 0x08, 0x0A, 0x01, 'a', 0x12, 0x03, 0x0A, 0x01, 'b'};
+
+	@Test
+	void encodeResourceAttributes() {
+		assertThat(DynatraceGenericLogIngestOtlpEncoder.resource(Map.of("a", "b")))
+				.containsExactly(RESOURCE);
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"FATAL, 21",
+			"ERROR, 17",
+			"WARN, 13",
+			"INFO, 9",
+			"DEBUG, 5",
+			"TRACE, 1"
+	})
+	void mapLevelToSeverityNumber(String level,
+			int severityNumber) {
+		assertThat(DynatraceGenericLogIngestOtlpEncoder.severityNumber(Level.toLevel(level)))
+				.isEqualTo(severityNumber);
+	}
+
+	@Test
+	void encodeLogRecord() {
+		var logRecord = DynatraceGenericLogIngestOtlpEncoder.logRecord()
+				.severity(Level.ERROR)
+				.body(new byte[] {'h', 'i'})
+				.attribute("k", "v")
+				.trace("0102030405060708090a0b0c0d0e0f10", "0102030405060708", "01")
+				.toByteArray();
+
+		assertThat(logRecord)
+				.containsSubsequence((byte) 0x10, (byte) 17)
+				.containsSubsequence((byte) 0x1A, (byte) 5, (byte) 'E', (byte) 'R', (byte) 'R', (byte) 'O', (byte) 'R')
+				.containsSubsequence((byte) 0x2A, (byte) 4, (byte) 0x0A, (byte) 2, (byte) 'h', (byte) 'i')
+				.containsSubsequence((byte) 0x32, (byte) 8, (byte) 0x0A, (byte) 1, (byte) 'k', (byte) 0x12, (byte) 3)
+				.containsSubsequence((byte) 0x4A, (byte) 16, (byte) 1, (byte) 2)
+				.containsSubsequence((byte) 0x52, (byte) 8, (byte) 1, (byte) 2)
+				.containsSubsequence((byte) 0x45, (byte) 1, (byte) 0, (byte) 0, (byte) 0);
+	}
+
+	@Test
+	void encodeIntegerAttribute() {
+		var logRecord = DynatraceGenericLogIngestOtlpEncoder.logRecord()
+				.attribute("n", 300L)
+				.toByteArray();
+
+		assertThat(logRecord)
+				.containsExactly(new byte[] {0x32, 8, 0x0A, 1, 'n', 0x12, 3, 0x18, (byte) 0xAC, 0x02});
+	}
+
+	@Test
+	void skipInvalidTraceContext() {
+		var logRecord = DynatraceGenericLogIngestOtlpEncoder.logRecord()
+				.trace("not-a-trace-id", "0102030405060708", "01")
+				.toByteArray();
+
+		assertThat(logRecord)
+				.isEmpty();
+	}
+
+	@Test
+	void frameLogRecordsIntoRequest() {
+		var event = new DynatraceGenericLogIngestEvent(new byte[] {0x10, 0x09}, Lane.NORMAL, null,
+				new DynatraceGenericLogIngestStatistics());
+
+		var request = DynatraceGenericLogIngestOtlpEncoder.request(RESOURCE, List.of(event, event));
+
+		assertThat(request)
+				.hasSize(55)
+				.startsWith(new byte[] {0x0A, 53, 0x0A, 10})
+				.endsWith(new byte[] {0x12, 0x02, 0x10, 0x09, 0x12, 0x02, 0x10, 0x09});
+	}
+
+	@Test
+	void switchLogIngestUrlToOtlpEndpoint() {
+		var activeGateUrl = URI.create("https://activegate:9999/e/tenant/api/v2/logs/ingest");
+
+		assertThat(Protocol.OTLP.endpoint(activeGateUrl))
+				.isEqualTo(URI.create("https://activegate:9999/e/tenant/api/v2/otlp/v1/logs"));
+		assertThat(Protocol.JSON.endpoint(activeGateUrl))
+				.isEqualTo(activeGateUrl);
+		assertThat(Protocol.OTLP.endpoint(URI.create("https://collector:4318/v1/logs")))
+				.isEqualTo(URI.create("https://collector:4318/v1/logs"));
+	}
+}
@@ -0,0 +1,129 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+
+class DynatraceGenericLogIngestPartialSuccessTest {
+
+	@Test
+	void countEventsOfDetailsMessage() {
+		var partialSuccess = json("{\"details\":{\"message\":\"3 events were not ingested\",\"code\":200}}");
+
+		assertThat(partialSuccess.getDropped())
+				.containsExactly(Map.entry("# events were not ingested", 3L));
+		assertThat(partialSuccess.getAdjusted())
+				.isEmpty();
+	}
+
+	@Test
+	void countEveryConstraintViolationPerReason() {
+		var partialSuccess = json("{ \"error\" : { \"code\" : 200, \"message\" : \"Partially ingested\",\n"
+				+ "  \"constraintViolations\" : [\n"
+				+ "    { \"path\" : \"[0]\", \"message\" : \"Log event 12 too big, truncated to 65536 bytes\" },\n"
+				+ "    { \"message\" : \"Log event 14 too big, truncated to 65536 bytes\", \"parameterLocation\" : \"PAYLOAD_BODY\" },\n"
+				+ "    { \"message\" : \"Attribute \\\"caf\\u00e9\\\" of log event 7 dropped\" } ] } }");
+
+		assertThat(partialSuccess.getAdjusted())
+				.containsExactly(Map.entry("Log event # too big, truncated to # bytes", 2L));
+		assertThat(partialSuccess.getDropped())
+				.containsExactly(Map.entry("Attribute \"caf\u00E9\" of log event # dropped", 1L));
+	}
+
+	@Test
+	void ignoreMessagesOutsideOfDetailsAndErrors() {
+		assertThat(json("{\"x\":[1,2.5e3,{\"message\":\"nope\"}],\"message\":\"nope\",\"y\":true,\"z\":null}"))
+				.isSameAs(DynatraceGenericLogIngestPartialSuccess.NONE);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"",
+			"not json",
+			"{\"details\":{\"message\":",
+			"{\"details\":{\"message\":\"unterminated",
+			"[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[[",
+	})
+	void ignoreUnexpectedBodies(String body) {
+		assertThat(json(body))
+				.isSameAs(DynatraceGenericLogIngestPartialSuccess.NONE);
+	}
+
+	@Test
+	void countRejectedOtlpLogRecords() {
+		var partialSuccess = DynatraceGenericLogIngestPartialSuccess.parse(Protocol.OTLP,
+				ByteBuffer.wrap(otlpResponse(1_000L, "timestamp older than 24 hours")));
+
+		assertThat(partialSuccess.getDropped())
+				.containsExactly(Map.entry("timestamp older than # hours", 1_000L));
+		assertThat(partialSuccess.getAdjusted())
+				.isEmpty();
+	}
+
+	@Test
+	void countOtlpWarningAsAdjusted() {
+		var partialSuccess = DynatraceGenericLogIngestPartialSuccess.parse(Protocol.OTLP,
+				ByteBuffer.wrap(otlpResponse(0L, "attributes truncated")));
+
+		assertThat(partialSuccess.getDropped())
+				.isEmpty();
+		assertThat(partialSuccess.getAdjusted())
+				.containsExactly(Map.entry("attributes truncated", 1L));
+	}
+
+	@Test
+	void ignoreEmptyOrMalformedOtlpResponse() {
+		assertThat(DynatraceGenericLogIngestPartialSuccess.parse(Protocol.OTLP, ByteBuffer.wrap(new byte[] { 0x0A, 0x00 })))
+				.isSameAs(DynatraceGenericLogIngestPartialSuccess.NONE);
+		assertThat(DynatraceGenericLogIngestPartialSuccess.parse(Protocol.OTLP, ByteBuffer.wrap(new byte[] { 0x0A, 0x05, 0x08 })))
+				.isSameAs(DynatraceGenericLogIngestPartialSuccess.NONE);
+	}
+
+	@Test
+	void shortenReasons() {
+		assertThat(DynatraceGenericLogIngestPartialSuccess.reason("event 123 at\t45\n"))
+				.isEqualTo("event # at #");
+		assertThat(DynatraceGenericLogIngestPartialSuccess.reason("x".repeat(500)))
+				.hasSize(DynatraceGenericLogIngestPartialSuccess.MAX_REASON_LENGTH);
+	}
+
+	private static DynatraceGenericLogIngestPartialSuccess json(String body) {
+		return DynatraceGenericLogIngestPartialSuccess.parse(Protocol.JSON, ByteBuffer.wrap(body.getBytes(UTF_8)));
+	}
+
+	private static byte[] otlpResponse(long rejected,
+			String message) {
+		var partialSuccess = new ByteArrayOutputStream();
+		partialSuccess.write(1 << 3);
+		varint(partialSuccess, rejected);
+		var bytes = message.getBytes(UTF_8);
+		partialSuccess.write(2 << 3 | 2);
+		varint(partialSuccess, bytes.length);
+		partialSuccess.writeBytes(bytes);
+
+		var response = new ByteArrayOutputStream();
+		response.write(1 << 3 | 2);
+		varint(response, partialSuccess.size());
+		response.writeBytes(partialSuccess.toByteArray());
+		return response.toByteArray();
+	}
+
+	private static void varint(ByteArrayOutputStream output,
+			long value) {
+		var remaining = value;
+		while ((remaining & ~0x7FL) != 0L) {
+			output.write((int) (remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+		output.write((int) remaining);
+	}
+}
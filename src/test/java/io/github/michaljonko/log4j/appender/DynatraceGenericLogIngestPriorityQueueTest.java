@@ -0,0 +1,210 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class DynatraceGenericLogIngestPriorityQueueTest {
+
+	private final DynatraceGenericLogIngestStatistics statistics = new DynatraceGenericLogIngestStatistics();
+
+	@ParameterizedTest
+	@CsvSource({
+			"FATAL, HIGH",
+			"ERROR, HIGH",
+			"WARN, NORMAL",
+			"INFO, NORMAL",
+			"DEBUG, LOW",
+			"TRACE, LOW",
+			"ALL, LOW"
+	})
+	void assignLaneBySeverity(String level,
+			Lane lane) {
+		assertThat(Lane.of(Level.toLevel(level)))
+				.isEqualTo(lane);
+	}
+
+	@Test
+	void takeLogEventsInWeightedRounds() throws Exception {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		for (var i = 0; i < 20; i++) {
+			queue.offer(event(Lane.LOW));
+			queue.offer(event(Lane.NORMAL));
+			queue.offer(event(Lane.HIGH));
+		}
+
+		var lanes = new ArrayList<Lane>();
+		for (var i = 0; i < 13; i++) {
+			lanes.add(queue.poll(0L, TimeUnit.MILLISECONDS).getLane());
+		}
+
+		assertThat(lanes)
+				.containsExactly(
+						Lane.HIGH, Lane.HIGH, Lane.HIGH, Lane.HIGH, Lane.HIGH, Lane.HIGH, Lane.HIGH, Lane.HIGH,
+						Lane.NORMAL, Lane.NORMAL, Lane.NORMAL, Lane.NORMAL,
+						Lane.LOW);
+		assertThat(queue.getDequeued(Lane.HIGH))
+				.isEqualTo(8L);
+	}
+
+	@Test
+	void keepDrainingLowSeverityAlone() throws Exception {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		queue.offer(event(Lane.LOW));
+		queue.offer(event(Lane.LOW));
+
+		assertThat(queue.poll(0L, TimeUnit.MILLISECONDS).getLane())
+				.isEqualTo(Lane.LOW);
+		assertThat(queue.poll(0L, TimeUnit.MILLISECONDS).getLane())
+				.isEqualTo(Lane.LOW);
+		assertThat(queue.poll(0L, TimeUnit.MILLISECONDS))
+				.isNull();
+	}
+
+	@Test
+	void dropOnlyInFullLane() {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		for (var i = 0; i < Lane.LOW.getCapacity(); i++) {
+			assertThat(queue.offer(event(Lane.LOW)))
+					.isTrue();
+		}
+
+		assertThat(queue.offer(event(Lane.LOW)))
+				.isFalse();
+		assertThat(queue.offer(event(Lane.HIGH)))
+				.isTrue();
+		assertThat(queue.getDropped(Lane.LOW))
+				.isEqualTo(1L);
+		assertThat(queue.getDropped(Lane.HIGH))
+				.isZero();
+		assertThat(queue.size())
+				.isEqualTo(Lane.LOW.getCapacity() + 1);
+	}
+
+	@Test
+	void evictLeastSevereLogEventWhenLaneIsFull() {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		var oldest = new CompletableFuture<Status>();
+		queue.offer(new DynatraceGenericLogIngestEvent("{}".getBytes(UTF_8), Lane.LOW, oldest, statistics));
+		for (var i = 1; i < Lane.LOW.getCapacity(); i++) {
+			queue.offer(event(Lane.LOW));
+		}
+		for (var i = 0; i < Lane.HIGH.getCapacity(); i++) {
+			queue.offer(event(Lane.HIGH));
+		}
+
+		assertThat(queue.offer(event(Lane.HIGH)))
+				.isTrue();
+		assertThat(oldest.join())
+				.isEqualTo(Status.DROPPED);
+		assertThat(queue.size(Lane.HIGH))
+				.isEqualTo(Lane.HIGH.getCapacity() + 1);
+		assertThat(queue.size(Lane.LOW))
+				.isEqualTo(Lane.LOW.getCapacity() - 1);
+		assertThat(queue.getDropped(Lane.LOW))
+				.isEqualTo(1L);
+		assertThat(queue.getDropped(Lane.HIGH))
+				.isZero();
+		assertThat(statistics.getDropped())
+				.isEqualTo(1L);
+	}
+
+	@Test
+	void neverHoldMoreThanCapacity() {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		var capacity = 0;
+		for (var lane : Lane.values()) {
+			capacity += lane.getCapacity();
+			for (var i = 0; i < lane.getCapacity(); i++) {
+				queue.offer(event(lane));
+			}
+		}
+
+		assertThat(queue.offer(event(Lane.HIGH)))
+				.isTrue();
+		assertThat(queue.offer(event(Lane.LOW)))
+				.isFalse();
+		assertThat(queue.offer(event(Lane.NORMAL)))
+				.isTrue();
+		assertThat(queue.size())
+				.isEqualTo(capacity);
+		assertThat(queue.size(Lane.LOW))
+				.isEqualTo(Lane.LOW.getCapacity() - 2);
+	}
+
+	@Test
+	void measureUtilizationOfAllLanes() {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		var capacity = 0;
+		for (var lane : Lane.values()) {
+			capacity += lane.getCapacity();
+		}
+		for (var i = 0; i < capacity / 2; i++) {
+			queue.offer(event(Lane.NORMAL));
+		}
+
+		assertThat(queue.getUtilization())
+				.isEqualTo((double) Math.min(capacity / 2, Lane.NORMAL.getCapacity()) / capacity);
+	}
+
+	@Test
+	void doNotTakeLogEventBiggerThanLimit() {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		queue.offer(event(Lane.NORMAL));
+
+		assertThat(queue.poll(1))
+				.isNull();
+		assertThat(queue.poll(100))
+				.isNotNull();
+	}
+
+	@Test
+	void removeMatchingLogEvents() {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		var other = new DynatraceGenericLogIngestStatistics();
+		queue.offer(event(Lane.HIGH));
+		queue.offer(new DynatraceGenericLogIngestEvent("{}".getBytes(UTF_8), Lane.LOW, null, other));
+
+		assertThat(queue.removeIf(event -> event.getStatistics() == other))
+				.hasSize(1);
+		assertThat(queue.size())
+				.isEqualTo(1);
+		assertThat(queue.size(Lane.LOW))
+				.isZero();
+	}
+
+	@Test
+	void giveBackWhatEvictedLogEventTook() {
+		var queue = new DynatraceGenericLogIngestPriorityQueue();
+		var givenBack = new AtomicInteger();
+		for (var i = 0; i < Lane.LOW.getCapacity(); i++) {
+			var event = event(Lane.LOW);
+			event.setOnDropped(givenBack::incrementAndGet);
+			queue.offer(event);
+		}
+		for (var i = 0; i < Lane.HIGH.getCapacity(); i++) {
+			queue.offer(event(Lane.HIGH));
+		}
+
+		queue.offer(event(Lane.HIGH));
+		queue.offer(event(Lane.HIGH));
+
+		assertThat(givenBack.get())
+				.isEqualTo(2);
+	}
+
+	private DynatraceGenericLogIngestEvent event(Lane lane) {
+		return new DynatraceGenericLogIngestEvent("{\"message\":\"test\"}".getBytes(UTF_8), lane, null, statistics);
+	}
+}
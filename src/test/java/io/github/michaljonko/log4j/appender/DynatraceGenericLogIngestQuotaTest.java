@@ -0,0 +1,197 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.util.Objects.nonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DynatraceGenericLogIngestQuotaTest {
+
+	private static final long NOW = 1_750_000_000_000_000_000L;
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+	@TempDir
+	private Path directory;
+
+	@Test
+	void reserveAnythingWhenUnlimited() {
+		assertThat(DynatraceGenericLogIngestQuota.UNLIMITED.reserve(Integer.MAX_VALUE, false))
+				.isNotNull();
+		assertThat(DynatraceGenericLogIngestQuota.UNLIMITED.getAvailableBytes())
+				.isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	void denyLogEventsOverBurstAndRefillByTime() {
+		var quota = DynatraceGenericLogIngestQuota.open(directory.resolve("quota"), 1_000L, 0L, Duration.ofSeconds(2L));
+
+		assertThat(reserveAll(quota, 100, NOW))
+				.isEqualTo(20);
+		assertThat(quota.reserve(100, false, NOW + SECOND / 10L))
+				.isNotNull();
+		assertThat(quota.reserve(100, false, NOW + SECOND / 10L))
+				.isNull();
+		assertThat(reserveAll(quota, 100, NOW + 10L * SECOND))
+				.isEqualTo(20);
+		assertThat(quota.getDeniedEvents())
+				.isEqualTo(3L);
+	}
+
+	@Test
+	void limitLogEventsAndGiveBytesBackWhenEventIsDenied() {
+		var quota = DynatraceGenericLogIngestQuota.open(directory.resolve("quota"), 1_000L, 5L, Duration.ofSeconds(1L));
+
+		assertThat(reserveAll(quota, 100, NOW))
+				.isEqualTo(5);
+		assertThat(quota.reserve(700, false, NOW + SECOND / 5L))
+				.isNotNull();
+	}
+
+	@Test
+	void forceSevereLogEventsWithoutGoingMoreThanBurstInDebt() {
+		var quota = DynatraceGenericLogIngestQuota.open(directory.resolve("quota"), 1_000L, 0L, Duration.ofSeconds(1L));
+
+		assertThat(quota.reserve(50_000, true, NOW))
+				.isNotNull();
+		assertThat(quota.reserve(100, false, NOW))
+				.isNull();
+		assertThat(quota.reserve(100, false, NOW + SECOND / 10L))
+				.isNotNull();
+	}
+
+	@Test
+	void giveBackOnlyCreditsTakenByForcedReservation() {
+		var quota = DynatraceGenericLogIngestQuota.open(directory.resolve("quota"), 1_000L, 0L, Duration.ofSeconds(1L));
+		assertThat(reserveAll(quota, 100, NOW))
+				.isEqualTo(10);
+
+		var forced = quota.reserve(50_000, true, NOW);
+		quota.cancel(forced);
+
+		assertThat(forced.getBytesTaken())
+				.isZero();
+		assertThat(quota.reserve(100, false, NOW + SECOND / 10L))
+				.isNotNull();
+		assertThat(quota.reserve(100, false, NOW + SECOND / 10L))
+				.isNull();
+	}
+
+	@Test
+	void giveBackPartOfCostTakenUpToEmptyBucket() {
+		var quota = DynatraceGenericLogIngestQuota.open(directory.resolve("quota"), 1_000L, 0L, Duration.ofSeconds(1L));
+		assertThat(reserveAll(quota, 100, NOW))
+				.isEqualTo(10);
+
+		var forced = quota.reserve(500, true, NOW + SECOND / 10L);
+		quota.cancel(forced);
+
+		assertThat(forced.getBytesTaken())
+				.isEqualTo(SECOND / 10L);
+		assertThat(reserveAll(quota, 100, NOW + SECOND / 10L))
+				.isEqualTo(1);
+	}
+
+	@Test
+	void shareQuotaBetweenMappingsOfTheSameFile() throws Exception {
+		var file = directory.resolve("quota");
+		var first = DynatraceGenericLogIngestQuota.open(file, 1_000L, 0L, Duration.ofSeconds(1L));
+		var second = DynatraceGenericLogIngestQuota.open(file, 5L, 0L, Duration.ofSeconds(10L));
+
+		assertThat(second.getBytesPerSecond())
+				.isEqualTo(1_000L);
+		assertThat(second.getBurstMillis())
+				.isEqualTo(1_000L);
+
+		var granted = new AtomicInteger();
+		var done = new CountDownLatch(4);
+		var executor = Executors.newFixedThreadPool(4);
+		try {
+			for (var thread = 0; thread < 4; thread++) {
+				var quota = thread % 2 == 0 ? first : second;
+				executor.execute(() -> {
+					granted.addAndGet(reserveAll(quota, 1, NOW));
+					done.countDown();
+				});
+			}
+			assertThat(done.await(5L, TimeUnit.SECONDS))
+					.isTrue();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(granted.get())
+				.isEqualTo(1_000);
+	}
+
+	@Test
+	void resetStateAheadOfTheClockToEmptyBucket() throws Exception {
+		var file = directory.resolve("quota");
+		var quota = DynatraceGenericLogIngestQuota.open(file, 1_000L, 0L, Duration.ofSeconds(1L));
+		writeLong(file, DynatraceGenericLogIngestQuota.BYTES_OFFSET, Long.MAX_VALUE / 2L);
+
+		assertThat(quota.reserve(100, false, NOW))
+				.isNull();
+		assertThat(quota.getResets())
+				.isEqualTo(1L);
+		assertThat(quota.reserve(100, false, NOW + SECOND / 10L))
+				.isNotNull();
+	}
+
+	@Test
+	void rewriteDamagedHeader() throws Exception {
+		var file = directory.resolve("quota");
+		DynatraceGenericLogIngestQuota.open(file, 1_000L, 0L, Duration.ofSeconds(1L));
+		writeLong(file, DynatraceGenericLogIngestQuota.BYTES_RATE_OFFSET, -7L);
+
+		var quota = DynatraceGenericLogIngestQuota.open(file, 2_000L, 10L, Duration.ofSeconds(3L));
+
+		assertThat(quota.getBytesPerSecond())
+				.isEqualTo(2_000L);
+		assertThat(quota.getEventsPerSecond())
+				.isEqualTo(10L);
+		assertThat(Files.size(file))
+				.isEqualTo(DynatraceGenericLogIngestQuota.FILE_BYTES);
+	}
+
+	@Test
+	void rejectInvalidLimits() {
+		var file = directory.resolve("quota");
+
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> DynatraceGenericLogIngestQuota.open(file, -1L, 0L, Duration.ofSeconds(1L)));
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> DynatraceGenericLogIngestQuota.open(file, 1L, 0L, Duration.ZERO));
+	}
+
+	private static int reserveAll(DynatraceGenericLogIngestQuota quota,
+			int payloadBytes,
+			long nowNanos) {
+		var reserved = 0;
+		while (nonNull(quota.reserve(payloadBytes, false, nowNanos))) {
+			reserved++;
+		}
+		return reserved;
+	}
+
+	private static void writeLong(Path file,
+			int offset,
+			long value) throws Exception {
+		try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder()).putLong(value).flip(), offset);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package io.github.michaljonko.log4j.appender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class DynatraceGenericLogIngestRouterTest {
+
+	private static final Marker AUDIT = MarkerManager.getMarker("AUDIT");
+	private static final Marker SECURITY_AUDIT = MarkerManager.getMarker("SECURITY_AUDIT").setParents(AUDIT);
+	@Mock
+	private AbstractDynatraceGenericLogIngestManager defaultManager;
+	@Mock
+	private AbstractDynatraceGenericLogIngestManager platformManager;
+	@Mock
+	private AbstractDynatraceGenericLogIngestManager paymentsManager;
+	@Mock
+	private AbstractDynatraceGenericLogIngestManager auditManager;
+	private DynatraceGenericLogIngestRouter router;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		var routes = new LinkedHashMap<DynatraceGenericLogIngestRoute, AbstractDynatraceGenericLogIngestManager>();
+		routes.put(route("com.acme", null, "platform"), platformManager);
+		routes.put(route("com.acme.payments", null, "payments"), paymentsManager);
+		routes.put(route(null, "AUDIT", "audit"), auditManager);
+		router = new DynatraceGenericLogIngestRouter(defaultManager, routes);
+	}
+
+	@Test
+	void routeByLongestLoggerPrefix() {
+		assertThat(router.route(event("com.acme.payments.Gateway", null)))
+				.isSameAs(paymentsManager);
+		assertThat(router.route(event("com.acme.platform.Scheduler", null)))
+				.isSameAs(platformManager);
+		assertThat(router.route(event("com.acme", null)))
+				.isSameAs(platformManager);
+	}
+
+	@Test
+	void matchLoggerPrefixOnPackageBoundary() {
+		assertThat(router.route(event("com.acmex.Service", null)))
+				.isSameAs(defaultManager);
+		assertThat(router.route(event(null, null)))
+				.isSameAs(defaultManager);
+	}
+
+	@Test
+	void routeByMarkerBeforeLoggerPrefix() {
+		assertThat(router.route(event("com.acme.payments.Gateway", AUDIT)))
+				.isSameAs(auditManager);
+		assertThat(router.route(event("com.acme.payments.Gateway", SECURITY_AUDIT)))
+				.isSameAs(auditManager);
+		assertThat(router.route(event("com.acme.payments.Gateway", MarkerManager.getMarker("OTHER"))))
+				.isSameAs(paymentsManager);
+	}
+
+	@Test
+	void keepDecisionPerLoggerName() {
+		assertThat(router.route(event("com.acme.payments.Gateway", AUDIT)))
+				.isSameAs(auditManager);
+		assertThat(router.route(event("com.acme.payments.Gateway", null)))
+				.isSameAs(router.route(event("com.acme.payments.Gateway", null)))
+				.isSameAs(paymentsManager);
+	}
+
+	@Test
+	void listDefaultManagerFirst() {
+		assertThat(router.getManagers())
+				.containsExactly(defaultManager, platformManager, paymentsManager, auditManager);
+	}
+
+	@Test
+	void requireLoggerPrefixOrMarker() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> route(" ", null, "x"))
+				.withMessage("loggerPrefix or marker is required");
+	}
+
+	@Test
+	void requireTokenOfRoute() {
+		assertThatExceptionOfType(NullPointerException.class)
+				.isThrownBy(() -> DynatraceGenericLogIngestRoute.createRoute("com.acme", null,
+						new URL("https://acme.live.dynatrace.com/api/v2/logs/ingest"), null))
+				.withMessage("token is null");
+	}
+
+	private static DynatraceGenericLogIngestRoute route(String loggerPrefix,
+			String marker,
+			String tenant) throws Exception {
+		return DynatraceGenericLogIngestRoute.createRoute(loggerPrefix, marker,
+				new URL("https://" + tenant + ".live.dynatrace.com/api/v2/logs/ingest"), tenant);
+	}
+
+	private static LogEvent event(String loggerName,
+			Marker marker) {
+		return Log4jLogEvent.newBuilder()
+				.setLoggerName(loggerName)
+				.setMarker(marker)
+				.build();
+	}
+}
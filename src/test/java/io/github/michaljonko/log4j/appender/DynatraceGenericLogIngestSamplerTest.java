@@ -0,0 +1,127 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestSampler.SamplingConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.jupiter.api.Test;
+
+class DynatraceGenericLogIngestSamplerTest {
+
+	private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+	@Test
+	void keepEverythingWhenDisabled() {
+		var sampler = new DynatraceGenericLogIngestSampler(SamplingConfig.DISABLED);
+
+		assertThat(sampler.sample(event(Level.TRACE, Map.of())))
+				.isTrue();
+		assertThat(sampler.getSampledOut())
+				.isZero();
+	}
+
+	@Test
+	void keepLogEventsMoreSevereThanSamplingLevel() {
+		var sampler = new DynatraceGenericLogIngestSampler(new SamplingConfig(Level.INFO, 0.0, 0.0));
+
+		assertThat(sampler.sample(event(Level.WARN, Map.of())))
+				.isTrue();
+		assertThat(sampler.sample(event(Level.INFO, Map.of())))
+				.isFalse();
+		assertThat(sampler.sample(event(Level.DEBUG, Map.of("trace_id", TRACE_ID, "trace_flags", "00"))))
+				.isFalse();
+		assertThat(sampler.getSampledOut())
+				.isEqualTo(2L);
+	}
+
+	@Test
+	void keepEveryLogEventOfSampledTrace() {
+		var sampler = new DynatraceGenericLogIngestSampler(new SamplingConfig(Level.INFO, 0.0, 0.0));
+
+		assertThat(sampler.sample(event(Level.INFO, Map.of("trace_id", TRACE_ID, "trace_flags", "01"))))
+				.isTrue();
+		assertThat(sampler.sample(event(Level.INFO, Map.of("trace_id", TRACE_ID, "trace_flags", "00"))))
+				.isFalse();
+	}
+
+	@Test
+	void decideByTraceIdTheSameAsOpenTelemetry() {
+		var sampler = new DynatraceGenericLogIngestSampler(new SamplingConfig(Level.INFO, 0.5, 0.0));
+
+		assertThat(sampler.sample(event(Level.INFO, Map.of("trace_id", "ffffffffffffffff0000000000000001"))))
+				.isTrue();
+		assertThat(sampler.sample(event(Level.INFO, Map.of("trace_id", "00000000000000007fffffffffffffff"))))
+				.isFalse();
+		assertThat(sampler.sample(event(Level.INFO, Map.of("trace_id", "00000000000000008000000000000001"))))
+				.isFalse();
+		assertThat(DynatraceGenericLogIngestSampler.randomPart(TRACE_ID))
+				.isEqualTo(0xa3ce929d0e0e4736L);
+	}
+
+	@Test
+	void keepTheSameTracesInEverySamplerAtRatio() {
+		var random = new Random(11L);
+		var first = new DynatraceGenericLogIngestSampler(new SamplingConfig(Level.INFO, 0.25, 1.0));
+		var second = new DynatraceGenericLogIngestSampler(new SamplingConfig(Level.DEBUG, 0.25, 0.0));
+		var kept = 0;
+		for (var trace = 0; trace < 10_000; trace++) {
+			var traceId = String.format("%016x%016x", random.nextLong(), random.nextLong());
+			var event = event(Level.DEBUG, Map.of("trace_id", traceId, "trace_flags", "00"));
+
+			var decision = first.sample(event);
+			assertThat(second.sample(event))
+					.isEqualTo(decision);
+			assertThat(first.sample(event))
+					.isEqualTo(decision);
+			kept += decision ? 1 : 0;
+		}
+
+		assertThat(kept)
+				.isBetween(2_300, 2_700);
+	}
+
+	@Test
+	void sampleLogEventsWithoutValidTraceByOwnRatio() {
+		var dropUntraced = new DynatraceGenericLogIngestSampler(new SamplingConfig(Level.INFO, 1.0, 0.0));
+		var keepUntraced = new DynatraceGenericLogIngestSampler(new SamplingConfig(Level.INFO, 0.0, 1.0));
+
+		for (var contextData : List.of(
+				Map.<String, String>of(),
+				Map.of("trace_id", "00000000000000000000000000000000"),
+				Map.of("trace_id", "not-a-trace-id-of-32-characters!"),
+				Map.of("trace_id", "4bf92f35"))) {
+			assertThat(dropUntraced.sample(event(Level.INFO, contextData)))
+					.isFalse();
+			assertThat(keepUntraced.sample(event(Level.INFO, contextData)))
+					.isTrue();
+		}
+		assertThat(dropUntraced.sample(event(Level.INFO, Map.of("trace_id", TRACE_ID))))
+				.isTrue();
+		assertThat(keepUntraced.sample(event(Level.INFO, Map.of("trace_id", TRACE_ID))))
+				.isFalse();
+	}
+
+	@Test
+	void rejectRatioOutOfRange() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> new SamplingConfig(Level.INFO, 1.5, 1.0));
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> new SamplingConfig(Level.INFO, 1.0, -0.1));
+	}
+
+	private static LogEvent event(Level level,
+			Map<String, ?> contextData) {
+		return Log4jLogEvent.newBuilder()
+				.setLevel(level)
+				.setContextData(new SortedArrayStringMap(contextData))
+				.build();
+	}
+}
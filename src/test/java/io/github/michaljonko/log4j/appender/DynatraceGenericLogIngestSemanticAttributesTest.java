@@ -0,0 +1,88 @@
+package io.github.michaljonko.log4j.appender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class DynatraceGenericLogIngestSemanticAttributesTest {
+
+	private static final String ALL =
+			"log.logger, thread.name, thread.id, code.namespace, code.function, code.lineno, log.marker";
+	private static final LogEvent EVENT = Log4jLogEvent.newBuilder()
+			.setLoggerName("com.acme.payments.Gateway")
+			.setThreadName("worker \"1\"")
+			.setThreadId(7L)
+			.setMarker(MarkerManager.getMarker("AUDIT"))
+			.setSource(new StackTraceElement("com.acme.payments.Gateway", "pay", "Gateway.java", 42))
+			.build();
+
+	@Test
+	void appendJsonFieldsOfEnabledAttributes() {
+		var json = new DynatraceGenericLogIngestJsonWriter(16);
+
+		DynatraceGenericLogIngestSemanticAttributes.parse(ALL, "1.").appendJson(EVENT, json);
+
+		assertThat(new String(json.toByteArray(), UTF_8))
+				.isEqualTo("\"log.logger\":\"c.a.p.Gateway\",\"thread.name\":\"worker \\\"1\\\"\",\"thread.id\":7,"
+						+ "\"log.marker\":\"AUDIT\",\"code.namespace\":\"com.acme.payments.Gateway\",\"code.function\":\"pay\","
+						+ "\"code.lineno\":42,");
+	}
+
+	@Test
+	void appendNothingWhenNoAttributeEnabled() {
+		var json = new DynatraceGenericLogIngestJsonWriter(16);
+
+		DynatraceGenericLogIngestSemanticAttributes.parse(" ", null).appendJson(EVENT, json);
+
+		assertThat(json.toByteArray())
+				.isEmpty();
+	}
+
+	@Test
+	void encodeNumbersAsIntegerValuesInOtlp() {
+		var logRecord = DynatraceGenericLogIngestOtlpEncoder.logRecord();
+
+		DynatraceGenericLogIngestSemanticAttributes.parse("thread.id, log.logger", null).appendOtlp(EVENT, logRecord);
+
+		assertThat(new String(logRecord.toByteArray(), UTF_8))
+				.contains("log.logger", "com.acme.payments.Gateway", "thread.id");
+		assertThat(logRecord.toByteArray())
+				.containsSubsequence((byte) 0x12, (byte) 2, (byte) 0x18, (byte) 7);
+	}
+
+	@Test
+	void cacheAbbreviatedLoggerNames() {
+		var attributes = DynatraceGenericLogIngestSemanticAttributes.parse("log.logger", "2");
+
+		assertThat(attributes.loggerName("com.acme.payments.Gateway"))
+				.isEqualTo("payments.Gateway")
+				.isSameAs(attributes.loggerName("com.acme.payments.Gateway"));
+	}
+
+	@ParameterizedTest
+	@CsvSource(delimiter = ';', value = {
+			"log.logger, thread.name, thread.id, log.marker; false",
+			"log.logger, code.lineno; true",
+			"CODE_FUNCTION; true",
+			"code.namespace; true"
+	})
+	void requireLocationOnlyForSourceAttributes(String attributes,
+			boolean requiresLocation) {
+		assertThat(DynatraceGenericLogIngestSemanticAttributes.parse(attributes, null).requiresLocation())
+				.isEqualTo(requiresLocation);
+	}
+
+	@Test
+	void rejectUnknownAttribute() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> DynatraceGenericLogIngestSemanticAttributes.parse("log.logger, host.name", null))
+				.withMessage("unknown semantic attribute: host.name");
+	}
+}
@@ -0,0 +1,243 @@
+package io.github.michaljonko.log4j.appender;
+
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class DynatraceGenericLogIngestStripedQueueTest {
+
+	private final DynatraceGenericLogIngestStatistics statistics = new DynatraceGenericLogIngestStatistics();
+
+	@ParameterizedTest
+	@CsvSource({
+			"1, 1",
+			"2, 2",
+			"3, 4",
+			"48, 64",
+			"64, 64",
+			"1000, 64"
+	})
+	void roundStripesUpToPowerOfTwo(int requested,
+			int stripes) {
+		assertThat(DynatraceGenericLogIngestStripedQueue.stripes(requested))
+				.isEqualTo(stripes);
+		assertThat(new DynatraceGenericLogIngestStripedQueue(requested).getStripes())
+				.isEqualTo(stripes);
+	}
+
+	@Test
+	void useStripePerAvailableProcessorByDefault() {
+		assertThat(DynatraceGenericLogIngestStripedQueue.stripes(0))
+				.isGreaterThanOrEqualTo(Math.min(Runtime.getRuntime().availableProcessors(), 64));
+	}
+
+	@Test
+	void spreadConsecutiveThreadsOverStripes() {
+		var queue = new DynatraceGenericLogIngestStripedQueue(8);
+		var used = new HashSet<Integer>();
+		for (var threadId = 100L; threadId < 132L; threadId++) {
+			used.add(queue.stripeOf(threadId));
+		}
+
+		assertThat(used)
+				.hasSizeGreaterThanOrEqualTo(6);
+	}
+
+	@Test
+	void keepOrderOfLogEventsOfThread() throws Exception {
+		var queue = new DynatraceGenericLogIngestStripedQueue(4);
+		for (var i = 0; i < 100; i++) {
+			queue.offer(event(Lane.NORMAL, String.valueOf(i)));
+		}
+
+		for (var i = 0; i < 100; i++) {
+			assertThat(new String(queue.poll(0L, TimeUnit.MILLISECONDS).getPayload(), UTF_8))
+					.isEqualTo(String.valueOf(i));
+		}
+		assertThat(queue.poll(0L, TimeUnit.MILLISECONDS))
+				.isNull();
+	}
+
+	@Test
+	void takeLogEventsOfProducersInTurn() throws Exception {
+		var queue = new DynatraceGenericLogIngestStripedQueue(8);
+		var producers = new ArrayList<Thread>();
+		var stripes = new HashSet<Integer>();
+		while (producers.size() < 2) {
+			final var name = "producer-" + producers.size();
+			final var producer = new Thread(() -> {
+				for (var i = 0; i < 50; i++) {
+					queue.offer(event(Lane.NORMAL, name));
+				}
+			});
+			if (stripes.add(queue.stripeOf(producer.getId()))) {
+				producers.add(producer);
+			}
+		}
+		for (var producer : producers) {
+			producer.start();
+			producer.join();
+		}
+
+		var taken = new ArrayList<String>();
+		for (var i = 0; i < 10; i++) {
+			taken.add(new String(queue.poll(10).getPayload(), UTF_8));
+		}
+
+		assertThat(taken)
+				.filteredOn("producer-0"::equals)
+				.hasSize(5);
+		assertThat(queue.size())
+				.isEqualTo(90);
+	}
+
+	@Test
+	void wakeUpWaitingSender() throws Exception {
+		var queue = new DynatraceGenericLogIngestStripedQueue(4);
+		var sender = CompletableFuture.supplyAsync(() -> {
+			try {
+				return queue.poll(10L, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		Thread.sleep(100L);
+		var started = System.nanoTime();
+		queue.offer(event(Lane.HIGH, "wake up"));
+
+		assertThat(sender.get(5L, TimeUnit.SECONDS))
+				.isNotNull();
+		assertThat(Duration.ofNanos(System.nanoTime() - started))
+				.isLessThan(Duration.ofSeconds(5L));
+	}
+
+	@Test
+	void guaranteeShareOfLaneCapacityToEveryStripe() throws Exception {
+		var queue = new DynatraceGenericLogIngestStripedQueue(4);
+		var share = Lane.LOW.getCapacity() / 2 / 4;
+		var borrowing = Lane.LOW.getCapacity() - 3 * share;
+		for (var i = 0; i < borrowing; i++) {
+			assertThat(queue.offer(event(Lane.LOW, "low")))
+					.isTrue();
+		}
+
+		assertThat(queue.offer(event(Lane.LOW, "low")))
+				.isFalse();
+		inOtherStripe(queue, () -> assertThat(queue.offer(event(Lane.LOW, "other")))
+				.isTrue());
+		assertThat(queue.offer(event(Lane.HIGH, "high")))
+				.isTrue();
+		assertThat(queue.getDropped(Lane.LOW))
+				.isEqualTo(1L);
+		assertThat(queue.size(Lane.LOW))
+				.isEqualTo(borrowing + 1);
+		assertThat(queue.getUtilization())
+				.isEqualTo((borrowing + 2.0)
+						/ (Lane.HIGH.getCapacity() + Lane.NORMAL.getCapacity() + Lane.LOW.getCapacity()));
+	}
+
+	@Test
+	void evictLessSevereLogEventOfOwnStripeOnly() throws Exception {
+		var queue = new DynatraceGenericLogIngestStripedQueue(4);
+		queue.offer(event(Lane.LOW, "low"));
+		inOtherStripe(queue, () -> queue.offer(event(Lane.LOW, "other")));
+		var accepted = 0;
+		while (queue.offer(event(Lane.HIGH, "high"))) {
+			accepted++;
+		}
+
+		assertThat(accepted)
+				.isEqualTo(Lane.HIGH.getCapacity() - 3 * (Lane.HIGH.getCapacity() / 2 / 4) + 1);
+		assertThat(queue.size(Lane.LOW))
+				.isEqualTo(1);
+		assertThat(queue.getDropped(Lane.LOW))
+				.isEqualTo(1L);
+		assertThat(queue.getDropped(Lane.HIGH))
+				.isEqualTo(1L);
+		assertThat(statistics.getDropped())
+				.isEqualTo(1L);
+	}
+
+	@Test
+	void takeMostSevereLogEventOfAllStripes() throws Exception {
+		var queue = new DynatraceGenericLogIngestStripedQueue(4);
+		for (var i = 0; i < 10; i++) {
+			queue.offer(event(Lane.NORMAL, "normal"));
+		}
+		inOtherStripe(queue, () -> queue.offer(event(Lane.HIGH, "high")));
+
+		assertThat(new String(queue.poll(100).getPayload(), UTF_8))
+				.isEqualTo("high");
+	}
+
+	@Test
+	void takeFittingLogEventOfOtherStripe() throws Exception {
+		var queue = new DynatraceGenericLogIngestStripedQueue(4);
+		queue.offer(event(Lane.NORMAL, "too big for the batch"));
+		inOtherStripe(queue, () -> queue.offer(event(Lane.NORMAL, "fits")));
+
+		assertThat(new String(queue.poll(10).getPayload(), UTF_8))
+				.isEqualTo("fits");
+		assertThat(queue.poll(10))
+				.isNull();
+		assertThat(queue.size())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void removeMatchingLogEventsFromAllStripes() throws Exception {
+		var queue = new DynatraceGenericLogIngestStripedQueue(4);
+		var other = new DynatraceGenericLogIngestStatistics();
+		queue.offer(event(Lane.HIGH, "kept"));
+		var producer = new Thread(() ->
+				queue.offer(new DynatraceGenericLogIngestEvent("{}".getBytes(UTF_8), Lane.LOW, null, other)));
+		producer.start();
+		producer.join();
+
+		assertThat(queue.removeIf(event -> event.getStatistics() == other))
+				.hasSize(1);
+		assertThat(queue.size())
+				.isEqualTo(1);
+	}
+
+	/**
+	 * Runs the action in a thread enqueuing into other stripe than the current thread.
+	 */
+	private static void inOtherStripe(DynatraceGenericLogIngestStripedQueue queue,
+			Runnable action) throws Exception {
+		var failure = new CompletableFuture<Void>();
+		var own = queue.stripeOf(Thread.currentThread().getId());
+		while (true) {
+			var thread = new Thread(() -> {
+				try {
+					action.run();
+					failure.complete(null);
+				} catch (Throwable e) {
+					failure.completeExceptionally(e);
+				}
+			});
+			if (queue.stripeOf(thread.getId()) != own) {
+				thread.start();
+				thread.join();
+				failure.get();
+				return;
+			}
+		}
+	}
+
+	private DynatraceGenericLogIngestEvent event(Lane lane,
+			String payload) {
+		return new DynatraceGenericLogIngestEvent(payload.getBytes(UTF_8), lane, null, statistics);
+	}
+}
@@ -0,0 +1,518 @@
+package io.github.michaljonko.log4j.appender;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.headRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static io.github.michaljonko.log4j.appender.AbstractDynatraceGenericLogIngestManager.Status;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestLatencies.Stage;
+import static io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestPriorityQueue.Lane;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.nonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+
+import io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.Protocol;
+import io.github.michaljonko.log4j.appender.DynatraceGenericLogIngestTransport.TransportConfig;
+
+class DynatraceGenericLogIngestTransportTest {
+
+	private static final String TOKEN = "123456";
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final DynatraceGenericLogIngestStatistics statistics = new DynatraceGenericLogIngestStatistics();
+	private WireMockServer mockServer;
+
+	@BeforeEach
+	void setUp() {
+		mockServer = new WireMockServer(
+				WireMockConfiguration.options()
+						.dynamicPort());
+		mockServer.stubFor(
+				post("/ingest")
+						.willReturn(aResponse()
+								.withFixedDelay(200)
+								.withStatus(204))
+		);
+		mockServer.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (nonNull(mockServer)) {
+			mockServer.stop();
+		}
+	}
+
+	@Test
+	void shareTransportForTheSameEndpoint() {
+		var first = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		var second = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		var other = DynatraceGenericLogIngestTransport.acquire(config("other"));
+
+		assertThat(first)
+				.isSameAs(second)
+				.isNotSameAs(other);
+		assertThat(first.getReferences())
+				.isEqualTo(2);
+
+		first.release(1L, TimeUnit.SECONDS);
+		assertThat(second.isClosed())
+				.isFalse();
+
+		second.release(1L, TimeUnit.SECONDS);
+		other.release(1L, TimeUnit.SECONDS);
+		assertThat(second.isClosed())
+				.isTrue();
+		assertThat(other.isClosed())
+				.isTrue();
+	}
+
+	@Test
+	void coalesceEventsIntoBatches() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		try {
+			for (var i = 0; i < 10; i++) {
+				assertThat(transport.send(("{\"message\":\"" + i + "\"}").getBytes(UTF_8), Lane.NORMAL, false, statistics))
+						.isEqualTo(Status.QUEUED);
+			}
+
+			Awaitility.await()
+					.timeout(Duration.ofSeconds(5L))
+					.until(() -> receivedEvents() == 10);
+
+			assertThat(mockServer.getServeEvents().getRequests())
+					.hasSizeLessThan(10);
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void deliverEventsFromOffHeapQueue() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/ingest")
+						.setOffHeapQueueBytes(DynatraceGenericLogIngestOffHeapQueue.MIN_CAPACITY_BYTES)
+						.build());
+		try {
+			for (var i = 0; i < 10; i++) {
+				assertThat(transport.send(("{\"message\":\"" + i + "\"}").getBytes(UTF_8), Lane.LOW, false, statistics))
+						.isEqualTo(Status.QUEUED);
+			}
+			assertThat(transport.send("{\"message\":\"blocking\"}".getBytes(UTF_8), Lane.HIGH, true, statistics))
+					.isEqualTo(Status.SUCCESS);
+
+			assertThat(statistics.awaitCompletion(5L, TimeUnit.SECONDS))
+					.isTrue();
+			assertThat(statistics.getDelivered())
+					.isEqualTo(11L);
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void returnStatusOfBatchWhenBlocking() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		try {
+			assertThat(transport.send("{\"message\":\"blocking\"}".getBytes(UTF_8), Lane.NORMAL, true, statistics))
+					.isEqualTo(Status.SUCCESS);
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void recordLatenciesOfQueueWaitRequestAndEventAge() {
+		var latencies = new DynatraceGenericLogIngestLatencies();
+		statistics.setLatencies(latencies);
+		var transport = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		try {
+			var eventEpochNanos = DynatraceGenericLogIngestLatencies.epochNanos(Instant.now());
+			assertThat(transport.send("{\"message\":\"timed\"}".getBytes(UTF_8), Lane.NORMAL, true, statistics, eventEpochNanos, null))
+					.isEqualTo(Status.SUCCESS);
+
+			assertThat(latencies.getHistogram(Stage.QUEUE_WAIT).getCount())
+					.isEqualTo(1L);
+			assertThat(latencies.getPercentileNanos(Stage.REQUEST, 50.0d))
+					.isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200L));
+			assertThat(latencies.getPercentileNanos(Stage.EVENT_AGE, 50.0d))
+					.isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200L));
+			assertThat(latencies.getHistogram(Stage.LAYOUT).getCount())
+					.isZero();
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void warmUpConnectionBeforeFirstEvent() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		try {
+			Awaitility.await()
+					.timeout(Duration.ofSeconds(5L))
+					.until(() -> !transport.isWarmingUp());
+
+			assertThat(transport.isConnected())
+					.isTrue();
+			mockServer.verify(1, headRequestedFor(urlEqualTo("/ingest")));
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void warmUpWithoutHeadersOfRequestBody() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/ingest")
+						.setCompression(true)
+						.build());
+		try {
+			Awaitility.await()
+					.timeout(Duration.ofSeconds(5L))
+					.until(() -> !transport.isWarmingUp());
+
+			mockServer.verify(1, headRequestedFor(urlEqualTo("/ingest"))
+					.withHeader("Authorization", equalTo("Api-Token " + TOKEN))
+					.withoutHeader("Content-Type")
+					.withoutHeader("Content-Encoding"));
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void pingIdleConnection() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/ingest")
+						.setKeepAliveInterval(Duration.ofMillis(200L))
+						.build());
+		try {
+			Awaitility.await()
+					.timeout(Duration.ofSeconds(5L))
+					.until(() -> mockServer.findAll(headRequestedFor(urlEqualTo("/ingest"))).size() >= 3);
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void rejectEventsWhenClosed() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		transport.release(1L, TimeUnit.SECONDS);
+
+		assertThat(transport.send("{\"message\":\"closed\"}".getBytes(UTF_8), Lane.NORMAL, true, statistics))
+				.isEqualTo(Status.CLOSED);
+		assertThat(statistics.getPending())
+				.isZero();
+	}
+
+	@Test
+	void drainPendingEventsOnRelease() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		for (var i = 0; i < 5; i++) {
+			transport.send(("{\"message\":\"" + i + "\"}").getBytes(UTF_8), Lane.NORMAL, false, statistics);
+		}
+
+		assertThat(transport.release(5L, TimeUnit.SECONDS))
+				.isTrue();
+		assertThat(statistics.getDelivered())
+				.isEqualTo(5L);
+		assertThat(statistics.getPending())
+				.isZero();
+	}
+
+	@Test
+	void abandonEventsWhenDrainTimeoutElapses() {
+		mockServer.stubFor(
+				post("/slow-ingest")
+						.willReturn(aResponse()
+								.withFixedDelay(2_000)
+								.withStatus(204))
+		);
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/slow-ingest")
+						.setConnectionTimeout(Duration.ofSeconds(5L))
+						.build());
+		transport.send("{\"message\":\"slow\"}".getBytes(UTF_8), Lane.NORMAL, false, statistics);
+
+		assertThat(transport.release(100L, TimeUnit.MILLISECONDS))
+				.isFalse();
+		assertThat(statistics.getAbandoned())
+				.isEqualTo(1L);
+		assertThat(transport.isClosed())
+				.isTrue();
+	}
+
+	@Test
+	void transferPendingEventsToOtherTransport() {
+		mockServer.stubFor(
+				post("/slow-ingest")
+						.willReturn(aResponse()
+								.withFixedDelay(500)
+								.withStatus(204))
+		);
+		var source = DynatraceGenericLogIngestTransport.acquire(
+				builder("/slow-ingest")
+						.setConnectionTimeout(Duration.ofSeconds(5L))
+						.build());
+		var target = DynatraceGenericLogIngestTransport.acquire(config(TOKEN));
+		var other = new DynatraceGenericLogIngestStatistics();
+		try {
+			for (var i = 0; i < 5; i++) {
+				source.send(("{\"message\":\"" + i + "\"}").getBytes(UTF_8), Lane.NORMAL, false, statistics);
+				source.send(("{\"other\":\"" + i + "\"}").getBytes(UTF_8), Lane.NORMAL, false, other);
+			}
+
+			var moved = source.transferTo(target, statistics);
+
+			assertThat(moved)
+					.isBetween(0, 5);
+			assertThat(statistics.awaitCompletion(5L, TimeUnit.SECONDS))
+					.isTrue();
+			assertThat(statistics.getDelivered())
+					.isEqualTo(5L);
+		} finally {
+			source.release(5L, TimeUnit.SECONDS);
+			target.release(1L, TimeUnit.SECONDS);
+		}
+		assertThat(other.getDelivered())
+				.isEqualTo(5L);
+	}
+
+	@Test
+	void isolateRejectedEventsAndDeliverOthers(@TempDir Path directory) throws Exception {
+		mockServer.stubFor(
+				post("/poison-ingest")
+						.willReturn(aResponse()
+								.withStatus(204))
+		);
+		mockServer.stubFor(
+				post("/poison-ingest")
+						.withRequestBody(containing("poison"))
+						.willReturn(aResponse()
+								.withStatus(400))
+		);
+		var deadLetterFile = directory.resolve("dead-letter.jsonl");
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/poison-ingest")
+						.setDeadLetterFile(deadLetterFile)
+						.build());
+		try {
+			for (var i = 0; i < 32; i++) {
+				var message = i == 20 ? "poison" : String.valueOf(i);
+				transport.send(("{\"message\":\"" + message + "\"}").getBytes(UTF_8), Lane.NORMAL, false, statistics);
+			}
+
+			assertThat(statistics.awaitCompletion(5L, TimeUnit.SECONDS))
+					.isTrue();
+			assertThat(statistics.getDelivered())
+					.isEqualTo(31L);
+			assertThat(statistics.getFailed())
+					.isEqualTo(1L);
+			assertThat(transport.getQuarantined())
+					.isEqualTo(1L);
+			assertThat(transport.getSplitRequests())
+					.isLessThanOrEqualTo(2L * 5L);
+			assertThat(Files.readAllLines(deadLetterFile))
+					.containsExactly("{\"message\":\"poison\"}");
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void sendBatchesThroughConfiguredSender() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/ingest")
+						.setSender(TransportConfig.MEMORY_SENDER)
+						.build());
+		var sender = (DynatraceGenericLogIngestMemorySender) transport.getRequestSender();
+		try {
+			for (var i = 0; i < 3; i++) {
+				transport.send(("{\"message\":\"" + i + "\"}").getBytes(UTF_8), Lane.NORMAL, false, statistics);
+			}
+
+			assertThat(statistics.awaitCompletion(5L, TimeUnit.SECONDS))
+					.isTrue();
+			var bodies = sender.getRecordedRequests().stream()
+					.filter(request -> request.getMethod().equals("POST"))
+					.map(request -> new String(request.getBody(), UTF_8))
+					.collect(Collectors.toList());
+			assertThat(bodies)
+					.allMatch(body -> body.startsWith("[") == body.contains("},{"));
+			assertThat(String.join("", bodies))
+					.contains("{\"message\":\"0\"}", "{\"message\":\"1\"}", "{\"message\":\"2\"}");
+			assertThat(statistics.getDelivered())
+					.isEqualTo(3L);
+			assertThat(mockServer.getServeEvents().getRequests())
+					.isEmpty();
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+		assertThat(sender.isClosed())
+				.isTrue();
+	}
+
+	@Test
+	void countEventsDroppedAndAdjustedByPartialSuccess() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/ingest")
+						.setSender(TransportConfig.MEMORY_SENDER)
+						.build());
+		var sender = (DynatraceGenericLogIngestMemorySender) transport.getRequestSender();
+		sender.setResponseBody(("{\"error\":{\"code\":200,\"constraintViolations\":["
+				+ "{\"message\":\"Log event 1 truncated to 65536 bytes\"},"
+				+ "{\"message\":\"Log event 2 rejected, timestamp too old\"}]}}").getBytes(UTF_8));
+		try {
+			transport.send("{\"message\":\"partial\"}".getBytes(UTF_8), Lane.NORMAL, false, statistics);
+
+			assertThat(statistics.awaitCompletion(5L, TimeUnit.SECONDS))
+					.isTrue();
+			assertThat(transport.getDroppedByReason())
+					.containsExactly(Map.entry("Log event # rejected, timestamp too old", 1L));
+			assertThat(transport.getAdjustedByReason())
+					.containsExactly(Map.entry("Log event # truncated to # bytes", 1L));
+			assertThat(transport.getDelivered())
+					.isEqualTo(1L);
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void compressRequestBodiesWithGzip() throws Exception {
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/ingest")
+						.setSender(TransportConfig.MEMORY_SENDER)
+						.setCompression(true)
+						.build());
+		var sender = (DynatraceGenericLogIngestMemorySender) transport.getRequestSender();
+		try {
+			transport.send("{\"message\":\"compressed\"}".getBytes(UTF_8), Lane.NORMAL, false, statistics);
+
+			assertThat(statistics.awaitCompletion(5L, TimeUnit.SECONDS))
+					.isTrue();
+			var request = sender.getRecordedRequests().stream()
+					.filter(recorded -> recorded.getMethod().equals("POST"))
+					.findFirst()
+					.orElseThrow();
+			assertThat(request.getHeaders())
+					.containsEntry("Content-Encoding", "gzip");
+			try (var gzip = new GZIPInputStream(new ByteArrayInputStream(request.getBody()))) {
+				assertThat(new String(gzip.readAllBytes(), UTF_8))
+						.isEqualTo("{\"message\":\"compressed\"}");
+			}
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void rejectAggregatorSenderForOtlp() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> builder("/ingest")
+						.setProtocol(Protocol.OTLP)
+						.setSender(TransportConfig.AGGREGATOR_SENDER)
+						.build())
+				.withMessage("Aggregator sender supports only JSON protocol");
+	}
+
+	@Test
+	void rejectAggregatorSenderWithCompression() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> builder("/ingest")
+						.setCompression(true)
+						.setSender(TransportConfig.AGGREGATOR_SENDER)
+						.build())
+				.withMessage("Aggregator sender does not support compression");
+	}
+
+	@Test
+	void createSenderByFactoryClassName() {
+		var transport = DynatraceGenericLogIngestTransport.acquire(
+				builder("/ingest")
+						.setSender(MemorySenderFactory.class.getName())
+						.build());
+		try {
+			assertThat(transport.getRequestSender())
+					.isInstanceOf(DynatraceGenericLogIngestMemorySender.class);
+		} finally {
+			transport.release(1L, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void rejectUnknownSender() {
+		var config = builder("/ingest")
+				.setSender("com.acme.MissingSenderFactory")
+				.build();
+
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> DynatraceGenericLogIngestTransport.acquire(config));
+	}
+
+	@Test
+	void rejectNioSenderForHttps() {
+		assertThatExceptionOfType(IllegalArgumentException.class)
+				.isThrownBy(() -> TransportConfig.builder(URI.create("https://localhost:9999/api/v2/logs/ingest"), TOKEN)
+						.setSender(TransportConfig.NIO_SENDER)
+						.build());
+	}
+
+	private TransportConfig config(String token) {
+		return TransportConfig.builder(URI.create(mockServer.url("/ingest")), token)
+				.setConnectionTimeout(Duration.ofSeconds(1L))
+				.build();
+	}
+
+	private TransportConfig.Builder builder(String path) {
+		return TransportConfig.builder(URI.create(mockServer.url(path)), TOKEN)
+				.setConnectionTimeout(Duration.ofSeconds(1L));
+	}
+
+	private int receivedEvents() throws Exception {
+		var events = 0;
+		for (var request : mockServer.getServeEvents().getRequests()) {
+			if (request.getRequest().getMethod() != RequestMethod.POST) {
+				continue;
+			}
+			JsonNode body = objectMapper.readTree(request.getRequest().getBodyAsString());
+			events += body.isArray() ? body.size() : 1;
+		}
+		return events;
+	}
+
+	public static final class MemorySenderFactory
+			implements DynatraceGenericLogIngestSender.Factory {
+
+		@Override
+		public DynatraceGenericLogIngestSender create(DynatraceGenericLogIngestSender.SenderConfig senderConfig) {
+			return new DynatraceGenericLogIngestMemorySender();
+		}
+	}
+}